@@ -0,0 +1,64 @@
+package edu.duke.cs.tpie.bench;
+
+import org.jerkar.api.depmanagement.JkDependencies;
+import org.jerkar.api.depmanagement.JkModuleId;
+import org.jerkar.api.depmanagement.JkVersion;
+import org.jerkar.api.file.JkFileTreeSet;
+import org.jerkar.api.java.JkJavaCompiler;
+import org.jerkar.tool.JkProject;
+import org.jerkar.tool.builtins.javabuild.JkJavaBuild;
+
+
+/**
+ * JMH benchmarks for TPIE-Java, kept out of the main build so the library doesn't depend on JMH.
+ * <p>
+ * Build the library first, then the benchmarks, then run them with:
+ * <pre>
+ * java -cp "build/output/*:build/output/libs/compile/*" edu.duke.cs.tpie.bench.Benchmarks [JMH options]
+ * </pre>
+ */
+public class Build extends JkJavaBuild {
+	
+	@JkProject("..")
+	private JkJavaBuild tpie;
+	
+	public Build() {
+		pack.javadoc = false;
+	}
+
+	@Override
+	public JkModuleId moduleId() {
+		return JkModuleId.of("edu.duke.cs", "tpie-bench");
+	}
+	
+	@Override
+	public JkVersion version() {
+		return JkVersion.name("1.1");
+	}
+
+	@Override
+	public String javaSourceVersion() {
+		return JkJavaCompiler.V8;
+	}
+	
+	@Override
+	public JkDependencies dependencies() {
+		return JkDependencies.builder()
+			
+			// the library itself
+			.on(tpie.asDependency(tpie.packer().jarFile()))
+			.on("commons-io:commons-io:2.5")
+			.on("org.apache.commons:commons-collections4:4.1")
+			
+			// JMH, and its annotation processor that generates the benchmark harness
+			.on("org.openjdk.jmh:jmh-core:1.19")
+			.on("org.openjdk.jmh:jmh-generator-annprocess:1.19").scope(PROVIDED)
+			
+			.build();
+	}
+	
+	@Override
+	public JkFileTreeSet editedSources() {
+		return JkFileTreeSet.of(file("src"));
+	}
+}
@@ -0,0 +1,27 @@
+package edu.duke.cs.tpie.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC and TPIE profilers, so every result reports
+ * throughput, allocation rate, and disk use together.
+ * <p>
+ * Takes the usual JMH command line options, eg. {@code -p regime=Spill FIFOQueueBenchmark}
+ */
+public class Benchmarks {
+	
+	public static void main(String[] args)
+	throws CommandLineOptionException, RunnerException {
+		new Runner(new OptionsBuilder()
+			.parent(new CommandLineOptions(args))
+			.addProfiler(GCProfiler.class)
+			.addProfiler(TPIEProfiler.class)
+			.build()
+		).run();
+	}
+}
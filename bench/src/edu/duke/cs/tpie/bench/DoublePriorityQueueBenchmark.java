@@ -0,0 +1,48 @@
+package edu.duke.cs.tpie.bench;
+
+import java.nio.ByteBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import edu.duke.cs.tpie.DoublePriorityQueue;
+
+public class DoublePriorityQueueBenchmark extends QueueBenchmark {
+	
+	private static final int BatchSize = 1024;
+	
+	private DoublePriorityQueue queue;
+	private DoublePriorityQueue.Entry entry;
+	
+	@Override
+	protected void create() {
+		queue = new DoublePriorityQueue(entrySize, true);
+		entry = queue.new Entry();
+	}
+	
+	@Override
+	protected void fill(int numEntries) {
+		ByteBuffer batch = queue.allocateBatch(BatchSize);
+		double[] priorities = new double[BatchSize];
+		for (int i=0; i<numEntries; i+=BatchSize) {
+			int count = Math.min(BatchSize, numEntries - i);
+			for (int j=0; j<count; j++) {
+				priorities[j] = nextRandom();
+			}
+			batch.clear();
+			queue.pushAll(priorities, batch, count);
+		}
+	}
+	
+	@Override
+	protected void close() {
+		queue.close();
+	}
+	
+	@Benchmark
+	public DoublePriorityQueue.Entry popPush() {
+		queue.popTop(entry);
+		entry.priority += nextRandom();
+		queue.push(entry);
+		return entry;
+	}
+}
@@ -0,0 +1,43 @@
+package edu.duke.cs.tpie.bench;
+
+import java.nio.ByteBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import edu.duke.cs.tpie.FIFOQueue;
+
+public class FIFOQueueBenchmark extends QueueBenchmark {
+	
+	private static final int BatchSize = 1024;
+	
+	private FIFOQueue queue;
+	private FIFOQueue.Entry entry;
+	
+	@Override
+	protected void create() {
+		queue = new FIFOQueue(entrySize, true);
+		entry = queue.new Entry();
+	}
+	
+	@Override
+	protected void fill(int numEntries) {
+		ByteBuffer batch = queue.allocateBatch(BatchSize);
+		for (int i=0; i<numEntries; i+=BatchSize) {
+			int count = Math.min(BatchSize, numEntries - i);
+			batch.clear();
+			queue.pushAll(batch, count);
+		}
+	}
+	
+	@Override
+	protected void close() {
+		queue.close();
+	}
+	
+	@Benchmark
+	public FIFOQueue.Entry popPush() {
+		queue.popFront(entry);
+		queue.push(entry);
+		return entry;
+	}
+}
@@ -0,0 +1,69 @@
+package edu.duke.cs.tpie.bench;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * The same hold model as the other benchmarks, on plain Java collections, for comparison.
+ * <p>
+ * Entries are the same size as the TPIE entries, but they live on the Java heap, so the
+ * {@link Regime#Spill} regime can only make these queues bigger, not spill them.
+ */
+public class HeapBaselineBenchmark extends QueueBenchmark {
+	
+	private static class Entry implements Comparable<Entry> {
+		
+		double priority;
+		final byte[] data;
+		
+		Entry(double priority, int numBytes) {
+			this.priority = priority;
+			this.data = new byte[numBytes];
+		}
+		
+		@Override
+		public int compareTo(Entry other) {
+			return Double.compare(priority, other.priority);
+		}
+	}
+	
+	private PriorityQueue<Entry> priorityQueue;
+	private ArrayDeque<Entry> fifoQueue;
+	
+	@Override
+	protected void create() {
+		priorityQueue = new PriorityQueue<>();
+		fifoQueue = new ArrayDeque<>();
+	}
+	
+	@Override
+	protected void fill(int numEntries) {
+		for (int i=0; i<numEntries; i++) {
+			priorityQueue.add(new Entry(nextRandom(), entrySize.numBytes));
+			fifoQueue.add(new Entry(0, entrySize.numBytes));
+		}
+	}
+	
+	@Override
+	protected void close() {
+		priorityQueue = null;
+		fifoQueue = null;
+	}
+	
+	@Benchmark
+	public Entry priorityQueuePopPush() {
+		Entry entry = priorityQueue.poll();
+		entry.priority += nextRandom();
+		priorityQueue.add(entry);
+		return entry;
+	}
+	
+	@Benchmark
+	public Entry fifoQueuePopPush() {
+		Entry entry = fifoQueue.poll();
+		fifoQueue.add(entry);
+		return entry;
+	}
+}
@@ -0,0 +1,83 @@
+package edu.duke.cs.tpie.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.duke.cs.tpie.EntrySize;
+import edu.duke.cs.tpie.TPIE;
+
+/**
+ * Common setup for the queue benchmarks.
+ * <p>
+ * Each benchmark measures a queue in steady state: the queue is filled once per trial to hold
+ * {@link Regime#queueMiB} of payloads, then each operation takes one entry out and puts one entry back,
+ * so the queue stays the same size while it's measured. Priority queues put back the popped entry with a
+ * slightly bigger priority (the classic <em>hold</em> model), so entries keep moving through the whole queue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend={ "-Xmx4g" })
+public abstract class QueueBenchmark {
+	
+	@Param({ "Bytes8", "Bytes16", "Bytes32", "Bytes64", "Bytes128", "Bytes256", "Bytes512", "Bytes1024" })
+	public EntrySize entrySize;
+	
+	@Param({ "InMemory", "Spill" })
+	public Regime regime;
+	
+	// xorshift, so picking priorities doesn't allocate or contend
+	private long seed = 0x2545F4914F6CDD1DL;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		TPIE.start(regime.internalMiB);
+		create();
+		fill(regime.numEntries(entrySize.numBytes));
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		close();
+		TPIE.stop();
+	}
+	
+	/**
+	 * Make the queue for this trial.
+	 */
+	protected abstract void create();
+	
+	/**
+	 * Push {@code numEntries} entries with random priorities.
+	 */
+	protected abstract void fill(int numEntries);
+	
+	/**
+	 * Free the queue for this trial.
+	 */
+	protected abstract void close();
+	
+	/**
+	 * A random number in [0,1).
+	 */
+	protected double nextRandom() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 7;
+		seed ^= seed << 17;
+		return (seed >>> 11)*0x1.0p-53;
+	}
+}
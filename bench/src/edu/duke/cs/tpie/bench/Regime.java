@@ -0,0 +1,37 @@
+package edu.duke.cs.tpie.bench;
+
+/**
+ * How much internal memory TPIE gets, relative to how much data the queues hold.
+ */
+public enum Regime {
+	
+	/**
+	 * TPIE has much more internal memory than the queues need, so priority queues never spill to disk.
+	 */
+	InMemory(256, 1),
+	
+	/**
+	 * TPIE gets the smallest internal memory it accepts, and the queues hold several times that,
+	 * so every queue spills to disk.
+	 */
+	Spill(16, 64);
+	
+	/**
+	 * Internal memory for {@link edu.duke.cs.tpie.TPIE#start(int)}, in MiB.
+	 */
+	public final int internalMiB;
+	
+	/**
+	 * Payload bytes each queue holds while it's being measured, in MiB.
+	 */
+	public final int queueMiB;
+	
+	private Regime(int internalMiB, int queueMiB) {
+		this.internalMiB = internalMiB;
+		this.queueMiB = queueMiB;
+	}
+	
+	public int numEntries(int entryBytes) {
+		return (int)((long)queueMiB*1024*1024/entryBytes);
+	}
+}
@@ -0,0 +1,36 @@
+package edu.duke.cs.tpie.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import edu.duke.cs.tpie.serialization.SerializingDoublePriorityQueue;
+
+public class SerializingDoublePriorityQueueBenchmark extends QueueBenchmark {
+	
+	private SerializingDoublePriorityQueue<Thing> queue;
+	
+	@Override
+	protected void create() {
+		queue = new SerializingDoublePriorityQueue<>(new Thing.PrioritySerializer(entrySize));
+	}
+	
+	@Override
+	protected void fill(int numEntries) {
+		for (int i=0; i<numEntries; i++) {
+			queue.push(new Thing(nextRandom(), i));
+		}
+	}
+	
+	@Override
+	protected void close() {
+		queue.close();
+	}
+	
+	@Benchmark
+	public Thing popPush() {
+		Thing thing = queue.top();
+		queue.pop();
+		thing.priority += nextRandom();
+		queue.push(thing);
+		return thing;
+	}
+}
@@ -0,0 +1,35 @@
+package edu.duke.cs.tpie.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import edu.duke.cs.tpie.serialization.SerializingFIFOQueue;
+
+public class SerializingFIFOQueueBenchmark extends QueueBenchmark {
+	
+	private SerializingFIFOQueue<Thing> queue;
+	
+	@Override
+	protected void create() {
+		queue = new SerializingFIFOQueue<>(new Thing.FIFOSerializer(entrySize));
+	}
+	
+	@Override
+	protected void fill(int numEntries) {
+		for (int i=0; i<numEntries; i++) {
+			queue.push(new Thing(0, i));
+		}
+	}
+	
+	@Override
+	protected void close() {
+		queue.close();
+	}
+	
+	@Benchmark
+	public Thing popPush() {
+		Thing thing = queue.front();
+		queue.pop();
+		queue.push(thing);
+		return thing;
+	}
+}
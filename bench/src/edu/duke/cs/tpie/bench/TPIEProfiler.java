@@ -0,0 +1,50 @@
+package edu.duke.cs.tpie.bench;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import edu.duke.cs.tpie.TPIEStats;
+
+/**
+ * Reports how much TPIE used the disk during each iteration, from {@link TPIEStats}.
+ * <p>
+ * Use with {@code -prof edu.duke.cs.tpie.bench.TPIEProfiler}, or see {@link Benchmarks}.
+ */
+public class TPIEProfiler implements InternalProfiler {
+	
+	private long bytesRead;
+	private long bytesWritten;
+	
+	@Override
+	public String getDescription() {
+		return "TPIE external memory and I/O";
+	}
+	
+	@Override
+	public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+		TPIEStats stats = TPIEStats.get();
+		bytesRead = stats.getBytesRead();
+		bytesWritten = stats.getBytesWritten();
+	}
+	
+	@Override
+	public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams, IterationResult result) {
+		TPIEStats stats = TPIEStats.get();
+		long ops = Math.max(1, result.getMetadata().getMeasuredOps());
+		long read = stats.getBytesRead() - bytesRead;
+		long written = stats.getBytesWritten() - bytesWritten;
+		return Arrays.asList(
+			new ScalarResult("tpie.external", stats.getExternalBytes(), "bytes", AggregationPolicy.MAX),
+			new ScalarResult("tpie.read.norm", (double)read/ops, "bytes/op", AggregationPolicy.AVG),
+			new ScalarResult("tpie.written.norm", (double)written/ops, "bytes/op", AggregationPolicy.AVG)
+		);
+	}
+}
@@ -0,0 +1,73 @@
+package edu.duke.cs.tpie.bench;
+
+import java.nio.ByteBuffer;
+
+import edu.duke.cs.tpie.EntrySize;
+import edu.duke.cs.tpie.serialization.SerializingDoublePriorityQueue;
+import edu.duke.cs.tpie.serialization.SerializingFIFOQueue;
+
+/**
+ * A small Java object for the serializing queues.
+ * <p>
+ * Only the id is serialized, and the rest of the entry is left as padding,
+ * so the benchmarks measure the queues rather than the serializers.
+ */
+public class Thing {
+	
+	public double priority;
+	public long id;
+	
+	public Thing(double priority, long id) {
+		this.priority = priority;
+		this.id = id;
+	}
+	
+	public static class FIFOSerializer implements SerializingFIFOQueue.Serializer<Thing> {
+		
+		private final EntrySize entrySize;
+		
+		public FIFOSerializer(EntrySize entrySize) {
+			this.entrySize = entrySize;
+		}
+		
+		@Override
+		public EntrySize getEntrySize() {
+			return entrySize;
+		}
+		
+		@Override
+		public void serialize(Thing thing, ByteBuffer buf) {
+			buf.putLong(thing.id);
+		}
+		
+		@Override
+		public Thing deserialize(ByteBuffer buf) {
+			return new Thing(0, buf.getLong());
+		}
+	}
+	
+	public static class PrioritySerializer implements SerializingDoublePriorityQueue.Serializer<Thing> {
+		
+		private final EntrySize entrySize;
+		
+		public PrioritySerializer(EntrySize entrySize) {
+			this.entrySize = entrySize;
+		}
+		
+		@Override
+		public EntrySize getEntrySize() {
+			return entrySize;
+		}
+		
+		@Override
+		public double serialize(Thing thing, ByteBuffer buf) {
+			buf.putLong(thing.id);
+			return thing.priority;
+		}
+		
+		@Override
+		public Thing deserialize(double priority, ByteBuffer buf) {
+			return new Thing(priority, buf.getLong());
+		}
+	}
+}
@@ -0,0 +1,570 @@
+
+#include <cstring>
+#include <memory>
+#include <tpie/tpie.h>
+#include <tpie/tempname.h>
+#include <tpie/btree.h>
+#include "BTree.hpp"
+#include "jni.hpp"
+
+
+/*
+	Entries are stored as the key bytes, then the value bytes, then zeros out to the template size.
+	Entries are ordered by comparing only their key bytes as unsigned bytes, in order,
+	so a lookup only needs the key filled in.
+*/
+template <int NumBytes>
+struct BTreeEntry {
+	uint8_t bytes[NumBytes];
+};
+
+template <int NumBytes>
+struct BTreeKeyCompare {
+
+	uint32_t key_bytes;
+
+	BTreeKeyCompare(const uint32_t & key_bytes = 0) : key_bytes(key_bytes) {}
+
+	bool operator () (const BTreeEntry<NumBytes> & a, const BTreeEntry<NumBytes> & b) const {
+		return std::memcmp(a.bytes, b.bytes, key_bytes) < 0;
+	}
+};
+
+template <int NumBytes>
+using BTreeTree = tpie::btree<BTreeEntry<NumBytes>, tpie::btree_external, tpie::btree_comp<BTreeKeyCompare<NumBytes>>>;
+
+template <int NumBytes>
+using BTreeTreeBuilder = tpie::btree_builder<BTreeEntry<NumBytes>, tpie::btree_external, tpie::btree_comp<BTreeKeyCompare<NumBytes>>>;
+
+
+class IBTree {
+public:
+
+	static IBTree * make(const uint32_t & key_bytes, const uint32_t & num_bytes);
+
+	virtual ~IBTree() {}
+
+	virtual uint64_t to_handle() const {
+		return (uint64_t)this;
+	}
+
+	static IBTree * from_handle(const uint64_t handle) {
+		return (IBTree *)handle;
+	}
+
+	virtual uint32_t get_key_bytes() = 0;
+	virtual uint32_t get_num_bytes() = 0;
+
+	virtual void put(const uint8_t * key, const uint8_t * bytes) = 0;
+	virtual void put_all(const uint8_t * records, const uint64_t count) = 0;
+	virtual bool get(const uint8_t * key, uint8_t * bytes) = 0;
+	virtual bool remove(const uint8_t * key) = 0;
+	virtual uint64_t scan(const uint8_t * key, const bool inclusive, uint8_t * records, const uint64_t max) = 0;
+	virtual uint64_t size() = 0;
+	virtual bool empty() = 0;
+};
+
+template <int NumBytes>
+class BTree : public IBTree {
+public:
+
+	BTree(const uint32_t & key_bytes, const uint32_t & num_bytes) :
+		m_key_bytes(key_bytes),
+		m_num_bytes(num_bytes),
+		m_file(new tpie::temp_file()),
+		m_tree(m_file->path(), BTreeKeyCompare<NumBytes>(key_bytes))
+	{}
+
+	// takes over a tree made by a builder
+	BTree(const uint32_t & key_bytes, const uint32_t & num_bytes, std::unique_ptr<tpie::temp_file> & file, BTreeTree<NumBytes> && tree) :
+		m_key_bytes(key_bytes),
+		m_num_bytes(num_bytes),
+		m_file(std::move(file)),
+		m_tree(std::move(tree))
+	{}
+
+	uint32_t get_key_bytes() {
+		return m_key_bytes;
+	}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void put(const uint8_t * key, const uint8_t * bytes) {
+		BTreeEntry<NumBytes> entry;
+		std::memcpy(entry.bytes, key, m_key_bytes);
+		std::memcpy(entry.bytes + m_key_bytes, bytes, m_num_bytes);
+		std::memset(entry.bytes + m_key_bytes + m_num_bytes, 0, NumBytes - m_key_bytes - m_num_bytes);
+		put(entry);
+	}
+
+	void put_all(const uint8_t * records, const uint64_t count) {
+		uint32_t record_bytes = m_key_bytes + m_num_bytes;
+		BTreeEntry<NumBytes> entry;
+		std::memset(entry.bytes + record_bytes, 0, NumBytes - record_bytes);
+		for (uint64_t i=0; i<count; i++) {
+			std::memcpy(entry.bytes, records + i*record_bytes, record_bytes);
+			put(entry);
+		}
+	}
+
+	bool get(const uint8_t * key, uint8_t * bytes) {
+		auto it = m_tree.find(make_key(key));
+		if (it == m_tree.end()) {
+			return false;
+		}
+		std::memcpy(bytes, (*it).bytes + m_key_bytes, m_num_bytes);
+		return true;
+	}
+
+	bool remove(const uint8_t * key) {
+		return m_tree.erase(make_key(key)) > 0;
+	}
+
+	uint64_t scan(const uint8_t * key, const bool inclusive, uint8_t * records, const uint64_t max) {
+
+		// find the first entry in the range
+		auto it = m_tree.begin();
+		if (key != NULL) {
+			if (inclusive) {
+				it = m_tree.lower_bound(make_key(key));
+			} else {
+				it = m_tree.upper_bound(make_key(key));
+			}
+		}
+
+		// then copy out entries in key order
+		uint32_t record_bytes = m_key_bytes + m_num_bytes;
+		uint64_t count = 0;
+		while (count < max && it != m_tree.end()) {
+			std::memcpy(records + count*record_bytes, (*it).bytes, record_bytes);
+			++it;
+			count++;
+		}
+		return count;
+	}
+
+	uint64_t size() {
+		return m_tree.size();
+	}
+
+	bool empty() {
+		return m_tree.empty();
+	}
+
+private:
+
+	uint32_t m_key_bytes;
+	uint32_t m_num_bytes;
+
+	// the tree's blocks live in a temp file that goes away with the tree
+	std::unique_ptr<tpie::temp_file> m_file;
+	BTreeTree<NumBytes> m_tree;
+
+	BTreeEntry<NumBytes> make_key(const uint8_t * key) {
+		BTreeEntry<NumBytes> entry;
+		std::memcpy(entry.bytes, key, m_key_bytes);
+		return entry;
+	}
+
+	void put(const BTreeEntry<NumBytes> & entry) {
+		// replace any old value for the key: erase finds it, so there's no separate lookup first
+		m_tree.erase(entry);
+		m_tree.insert(entry);
+	}
+};
+
+
+class IBTreeBuilder {
+public:
+
+	static IBTreeBuilder * make(const uint32_t & key_bytes, const uint32_t & num_bytes);
+
+	virtual ~IBTreeBuilder() {}
+
+	virtual uint64_t to_handle() const {
+		return (uint64_t)this;
+	}
+
+	static IBTreeBuilder * from_handle(const uint64_t handle) {
+		return (IBTreeBuilder *)handle;
+	}
+
+	virtual void push_all(const uint8_t * records, const uint64_t count) = 0;
+	virtual IBTree * build() = 0;
+};
+
+template <int NumBytes>
+class BTreeBuilder : public IBTreeBuilder {
+public:
+
+	BTreeBuilder(const uint32_t & key_bytes, const uint32_t & num_bytes) :
+		m_key_bytes(key_bytes),
+		m_num_bytes(num_bytes),
+		m_compare(key_bytes),
+		m_file(new tpie::temp_file()),
+		m_builder(m_file->path(), m_compare),
+		m_has_last(false),
+		m_built(false)
+	{}
+
+	void push_all(const uint8_t * records, const uint64_t count) {
+		check_building();
+		uint32_t record_bytes = m_key_bytes + m_num_bytes;
+		BTreeEntry<NumBytes> entry;
+		std::memset(entry.bytes + record_bytes, 0, NumBytes - record_bytes);
+		for (uint64_t i=0; i<count; i++) {
+			std::memcpy(entry.bytes, records + i*record_bytes, record_bytes);
+
+			// the builder lays out leaves in the order it gets them, so the keys had better be sorted
+			if (m_has_last && !m_compare(m_last, entry)) {
+				throw_exception("keys must be pushed to the builder in strictly increasing order");
+			}
+			m_last = entry;
+			m_has_last = true;
+
+			m_builder.push(entry);
+		}
+	}
+
+	IBTree * build() {
+		check_building();
+		m_built = true;
+		return new BTree<NumBytes>(m_key_bytes, m_num_bytes, m_file, m_builder.build());
+	}
+
+private:
+
+	uint32_t m_key_bytes;
+	uint32_t m_num_bytes;
+	BTreeKeyCompare<NumBytes> m_compare;
+	std::unique_ptr<tpie::temp_file> m_file;
+	BTreeTreeBuilder<NumBytes> m_builder;
+
+	// the last entry pushed, to check the order
+	BTreeEntry<NumBytes> m_last;
+	bool m_has_last;
+
+	bool m_built;
+
+	void check_building() {
+		if (m_built) {
+			throw_exception("tree was already built");
+		}
+	}
+};
+
+
+static void check_sizes(const uint32_t & key_bytes, const uint32_t & num_bytes) {
+	if (key_bytes == 0) {
+		throw_exception("unsupported key size for tree: %d", key_bytes);
+	}
+	if (key_bytes + num_bytes > 1024) {
+		throw_exception("unsupported entry size for tree: %d key bytes + %d value bytes", key_bytes, num_bytes);
+	}
+}
+
+IBTree * IBTree::make(const uint32_t & key_bytes, const uint32_t & num_bytes) {
+
+	check_sizes(key_bytes, num_bytes);
+
+	// pad entries out to the next template size
+	uint32_t entry_bytes = key_bytes + num_bytes;
+	if (entry_bytes <=    8) return new BTree<   8>(key_bytes, num_bytes);
+	if (entry_bytes <=   16) return new BTree<  16>(key_bytes, num_bytes);
+	if (entry_bytes <=   32) return new BTree<  32>(key_bytes, num_bytes);
+	if (entry_bytes <=   64) return new BTree<  64>(key_bytes, num_bytes);
+	if (entry_bytes <=  128) return new BTree< 128>(key_bytes, num_bytes);
+	if (entry_bytes <=  256) return new BTree< 256>(key_bytes, num_bytes);
+	if (entry_bytes <=  512) return new BTree< 512>(key_bytes, num_bytes);
+	return new BTree<1024>(key_bytes, num_bytes);
+}
+
+IBTreeBuilder * IBTreeBuilder::make(const uint32_t & key_bytes, const uint32_t & num_bytes) {
+
+	check_sizes(key_bytes, num_bytes);
+
+	// pad entries out to the next template size
+	uint32_t entry_bytes = key_bytes + num_bytes;
+	if (entry_bytes <=    8) return new BTreeBuilder<   8>(key_bytes, num_bytes);
+	if (entry_bytes <=   16) return new BTreeBuilder<  16>(key_bytes, num_bytes);
+	if (entry_bytes <=   32) return new BTreeBuilder<  32>(key_bytes, num_bytes);
+	if (entry_bytes <=   64) return new BTreeBuilder<  64>(key_bytes, num_bytes);
+	if (entry_bytes <=  128) return new BTreeBuilder< 128>(key_bytes, num_bytes);
+	if (entry_bytes <=  256) return new BTreeBuilder< 256>(key_bytes, num_bytes);
+	if (entry_bytes <=  512) return new BTreeBuilder< 512>(key_bytes, num_bytes);
+	return new BTreeBuilder<1024>(key_bytes, num_bytes);
+}
+
+
+// java ids
+
+define_class(btree_entry, "edu/duke/cs/tpie/BTree$Entry");
+
+define_field_id(btree_entry, key, "key", "Ljava/nio/ByteBuffer;");
+define_field_id(btree_entry, data, "data", "Ljava/nio/ByteBuffer;");
+
+
+// java methods
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_BTree_create(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint key_bytes,
+	jint num_bytes
+) {
+	try_jni_exceptions();
+
+	IBTree * t = IBTree::make((uint32_t)key_bytes, (uint32_t)num_bytes);
+	return (jlong)t->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_BTree_cleanup(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	delete IBTree::from_handle((uint64_t)handle);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_BTree_put(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get the jentry bytes
+	jobject jkey = get_field(env, btree_entry, key, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer key(env, jkey);
+	jobject jbuf = get_field(env, btree_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
+
+	// put in the tree
+	IBTree & t = *IBTree::from_handle(handle);
+	t.put(key.get_bytes(), buf.get_bytes());
+
+	// jni cleanup
+	buf.release(JNI_ABORT);
+	key.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_BTree_putAll(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jdata,
+	jint offset,
+	jint count
+) {
+	try_jni_exceptions();
+
+	// get the java buffer
+	jni_buffer data(env, jdata);
+
+	// put everything in the tree
+	IBTree & t = *IBTree::from_handle(handle);
+	t.put_all(data.get_bytes() + offset, (uint64_t)count);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_BTree_get(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get the jentry bytes
+	jobject jkey = get_field(env, btree_entry, key, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer key(env, jkey);
+	jobject jbuf = get_field(env, btree_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
+
+	// look up the value
+	IBTree & t = *IBTree::from_handle(handle);
+	bool found = t.get(key.get_bytes(), buf.get_bytes());
+
+	// jni cleanup
+	buf.release(found ? 0 : JNI_ABORT);
+	key.release(JNI_ABORT);
+
+	return (jboolean)found;
+
+	catch_jni_exceptions(env);
+	return false;
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_BTree_remove(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get the jentry key
+	jobject jkey = get_field(env, btree_entry, key, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer key(env, jkey);
+
+	// remove from the tree
+	IBTree & t = *IBTree::from_handle(handle);
+	bool removed = t.remove(key.get_bytes());
+
+	// jni cleanup
+	key.release(JNI_ABORT);
+
+	return (jboolean)removed;
+
+	catch_jni_exceptions(env);
+	return false;
+}
+
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_BTree_scan(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jkey,
+	jint key_offset,
+	jboolean inclusive,
+	jobject jdata,
+	jint offset,
+	jint max
+) {
+	try_jni_exceptions();
+
+	// get the java buffers
+	jni_buffer data(env, jdata);
+	IBTree & t = *IBTree::from_handle(handle);
+	uint64_t count;
+	if (jkey != NULL) {
+		jni_buffer key(env, jkey);
+		count = t.scan(key.get_bytes() + key_offset, (bool)inclusive, data.get_bytes() + offset, (uint64_t)max);
+		key.release(JNI_ABORT);
+	} else {
+		count = t.scan(NULL, true, data.get_bytes() + offset, (uint64_t)max);
+	}
+
+	// jni cleanup
+	data.release(0);
+
+	return (jint)count;
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_BTree_size(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IBTree & t = *IBTree::from_handle(handle);
+	return (jlong)t.size();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_BTree_empty(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IBTree & t = *IBTree::from_handle(handle);
+	return (jboolean)t.empty();
+
+	catch_jni_exceptions(env);
+	return true;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_BTree_createBuilder(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint key_bytes,
+	jint num_bytes
+) {
+	try_jni_exceptions();
+
+	IBTreeBuilder * b = IBTreeBuilder::make((uint32_t)key_bytes, (uint32_t)num_bytes);
+	return (jlong)b->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_BTree_cleanupBuilder(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	delete IBTreeBuilder::from_handle((uint64_t)handle);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_BTree_builderPushAll(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jdata,
+	jint offset,
+	jint count
+) {
+	try_jni_exceptions();
+
+	// get the java buffer
+	jni_buffer data(env, jdata);
+
+	// push everything to the builder
+	IBTreeBuilder & b = *IBTreeBuilder::from_handle(handle);
+	b.push_all(data.get_bytes() + offset, (uint64_t)count);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_BTree_build(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IBTreeBuilder & b = *IBTreeBuilder::from_handle(handle);
+	IBTree * t = b.build();
+	return (jlong)t->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
@@ -0,0 +1,139 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class edu_duke_cs_tpie_BTree */
+
+#ifndef _Included_edu_duke_cs_tpie_BTree
+#define _Included_edu_duke_cs_tpie_BTree
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    create
+ * Signature: (II)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_BTree_create
+  (JNIEnv *, jclass, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    cleanup
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_BTree_cleanup
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    put
+ * Signature: (JLedu/duke/cs/tpie/BTree/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_BTree_put
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    putAll
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_BTree_putAll
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    get
+ * Signature: (JLedu/duke/cs/tpie/BTree/Entry;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_BTree_get
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    remove
+ * Signature: (JLedu/duke/cs/tpie/BTree/Entry;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_BTree_remove
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    scan
+ * Signature: (JLjava/nio/ByteBuffer;IZLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_BTree_scan
+  (JNIEnv *, jclass, jlong, jobject, jint, jboolean, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_BTree_size
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    empty
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_BTree_empty
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    createBuilder
+ * Signature: (II)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_BTree_createBuilder
+  (JNIEnv *, jclass, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    cleanupBuilder
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_BTree_cleanupBuilder
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    builderPushAll
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_BTree_builderPushAll
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_BTree
+ * Method:    build
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_BTree_build
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
+/* Header for class edu_duke_cs_tpie_BTree_Builder */
+
+#ifndef _Included_edu_duke_cs_tpie_BTree_Builder
+#define _Included_edu_duke_cs_tpie_BTree_Builder
+#ifdef __cplusplus
+extern "C" {
+#endif
+#ifdef __cplusplus
+}
+#endif
+#endif
+/* Header for class edu_duke_cs_tpie_BTree_Entry */
+
+#ifndef _Included_edu_duke_cs_tpie_BTree_Entry
+#define _Included_edu_duke_cs_tpie_BTree_Entry
+#ifdef __cplusplus
+extern "C" {
+#endif
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -1,157 +1,243 @@
-
 #include <cstring>
 #include <tpie/tpie.h>
 #include <tpie/priority_queue.h>
 #include "DoublePriorityQueue.hpp"
 #include "jni.hpp"
+#include "priority_queue.hpp"
+#include "fifo_queue.hpp"
+#include "file_stream.hpp"
+#include "memory.hpp"
 
 
-template <int NumBytes>
-struct DPQEntry {
-	double priority;
-	uint8_t bytes[NumBytes];
-};
+typedef IPriorityQueue<double> IDoublePriorityQueue;
 
-template <int NumBytes>
-inline bool operator == (const DPQEntry<NumBytes> & a, const DPQEntry<NumBytes> & b) {
-	return a.priority == b.priority;
-}
 
-template <int NumBytes>
-inline bool operator != (const DPQEntry<NumBytes> & a, const DPQEntry<NumBytes> & b) {
-	return a.priority != b.priority;
-}
+// java ids
 
-template <int NumBytes>
-inline bool operator < (const DPQEntry<NumBytes> & a, const DPQEntry<NumBytes> & b) {
-	return a.priority < b.priority;
-}
+define_class(dpq_entry, "edu/duke/cs/tpie/DoublePriorityQueue$Entry");
 
-template <int NumBytes>
-inline bool operator <= (const DPQEntry<NumBytes> & a, const DPQEntry<NumBytes> & b) {
-	return a.priority <= b.priority;
-}
+define_field_id(dpq_entry, priority, "priority", "D");
+define_field_id(dpq_entry, data, "data", "Ljava/nio/ByteBuffer;");
 
-template <int NumBytes>
-inline bool operator > (const DPQEntry<NumBytes> & a, const DPQEntry<NumBytes> & b) {
-	return a.priority > b.priority;
-}
+define_method_id(dpq_entry, ctor, "<init>", "(Ledu/duke/cs/tpie/DoublePriorityQueue;)V");
 
-template <int NumBytes>
-inline bool operator >= (const DPQEntry<NumBytes> & a, const DPQEntry<NumBytes> & b) {
-	return a.priority >= b.priority;
+
+// writes the top entry into the jentry, without allocating anything on the Java heap
+static void write_top(JNIEnv * env, IDoublePriorityQueue & q, jobject jentry) {
+	set_field(env, dpq_entry, priority, SetDoubleField, jentry, (jdouble)q.top_priority());
+	check_jni_exception(env);
+	jobject jbuf = get_field(env, dpq_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	write_buffer(env, jbuf, q.top_bytes(), q.get_num_bytes());
+	env->DeleteLocalRef(jbuf);
 }
 
 
-class IDoublePriorityQueue {
-public:
+// java methods
 
-	static IDoublePriorityQueue * make(const uint32_t & num_bytes);
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_create(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes,
+	jdouble memory_fraction,
+	jboolean compressed
+) {
+	try_jni_exceptions();
 
-	virtual ~IDoublePriorityQueue() {}
+	IDoublePriorityQueue * q = make_checkpointable<double>((uint32_t)num_bytes, memory_budget_for_fraction((double)memory_fraction), (bool)compressed, false);
+	return (jlong)q->to_handle();
 
-	virtual uint64_t to_handle() const {
-		return (uint64_t)this;
-	}
+	catch_jni_exceptions(env);
+	return -1;
+}
 
-	static IDoublePriorityQueue * from_handle(const uint64_t handle) {
-		return (IDoublePriorityQueue *)handle;
-	}
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_createBudgeted(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes,
+	jlong memory_bytes,
+	jboolean compressed
+) {
+	try_jni_exceptions();
 
-	virtual uint32_t get_num_bytes() = 0;
+	// queues with their own budgets are the ones that get rebalanced, so they start out resizable
+	IDoublePriorityQueue * q = make_checkpointable<double>((uint32_t)num_bytes, (uint64_t)memory_bytes, (bool)compressed, true);
+	return (jlong)q->to_handle();
 
-	virtual void push(const double & priority, const uint8_t * bytes) = 0;
-	virtual double top_priority() = 0;
-	virtual const uint8_t * top_bytes() = 0;
-	virtual void pop() = 0;
-	virtual uint64_t size() = 0;
-	virtual bool empty() = 0;
-};
+	catch_jni_exceptions(env);
+	return -1;
+}
 
-template <int NumBytes>
-class DoublePriorityQueue : public IDoublePriorityQueue {
-public:
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_createBounded(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes,
+	jlong max_entries
+) {
+	try_jni_exceptions();
 
-	DoublePriorityQueue() : m_num_bytes(NumBytes) {}
+	IDoublePriorityQueue * q = new BoundedPriorityQueue<double>((uint32_t)num_bytes, (uint64_t)max_entries);
+	return (jlong)q->to_handle();
 
-	uint32_t get_num_bytes() {
-		return m_num_bytes;
-	}
+	catch_jni_exceptions(env);
+	return -1;
+}
 
-	void push(const double & priority, const uint8_t * bytes) {
-		DPQEntry<NumBytes> entry;
-		entry.priority = priority;
-		std::memcpy(entry.bytes, bytes, m_num_bytes);
-		m_queue.push(entry);
-	}
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_buildFromBatch(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes,
+	jdoubleArray jpriorities,
+	jobject jdata,
+	jint offset,
+	jint count,
+	jboolean compressed
+) {
+	try_jni_exceptions();
 
-	double top_priority() {
-		return m_queue.top().priority;
-	}
+	// get the java arrays and buffers
+	jdouble * jprioritiesDoubles = env->GetDoubleArrayElements(jpriorities, NULL);
+	check_jni_exception(env);
+	jni_buffer data(env, jdata);
 
-	const uint8_t * top_bytes() {
-		return m_queue.top().bytes;
+	IDoublePriorityQueue * q;
+	try {
+		PriorityQueueBuilder<double> builder((uint32_t)num_bytes, memory_budget_for_fraction(1.0), (bool)compressed);
+		builder.add_all(
+			(double *)jprioritiesDoubles,
+			data.get_bytes() + offset,
+			(uint64_t)count
+		);
+		q = builder.build();
+	} catch (char * msg) {
+		env->ReleaseDoubleArrayElements(jpriorities, jprioritiesDoubles, JNI_ABORT);
+		throw msg;
 	}
 
-	void pop() {
-		m_queue.pop();
-	}
+	// jni cleanup
+	data.release(JNI_ABORT);
+	env->ReleaseDoubleArrayElements(jpriorities, jprioritiesDoubles, JNI_ABORT);
+	check_jni_exception(env);
+
+	return (jlong)q->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_buildFromFIFOQueue(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes,
+	jlong fifo_handle,
+	jboolean compressed
+) {
+	try_jni_exceptions();
 
-	uint64_t size() {
-		return m_queue.size();
+	IFIFOQueue & records = *IFIFOQueue::from_handle(fifo_handle);
+	if (records.get_num_bytes() != (uint32_t)(sizeof(double) + num_bytes)) {
+		throw_exception("FIFO queue entries are %d bytes, not a priority and a %d-byte payload", records.get_num_bytes(), num_bytes);
 	}
 
-	bool empty() {
-		return m_queue.empty();
+	// drain the FIFO queue into the builder
+	PriorityQueueBuilder<double> builder((uint32_t)num_bytes, memory_budget_for_fraction(1.0), (bool)compressed);
+	tpie_vector<uint8_t> batch(PQ_CHECKPOINT_BATCH*records.get_num_bytes());
+	while (true) {
+		uint64_t count = records.pop_into(batch.data(), PQ_CHECKPOINT_BATCH);
+		if (count == 0) {
+			break;
+		}
+		builder.add_records(batch.data(), count);
 	}
+	return (jlong)builder.build()->to_handle();
 
-private:
+	catch_jni_exceptions(env);
+	return -1;
+}
 
-	uint32_t m_num_bytes;
-	tpie::priority_queue<DPQEntry<NumBytes>> m_queue;
-};
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_buildFromFileStream(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes,
+	jlong stream_handle,
+	jboolean compressed
+) {
+	try_jni_exceptions();
 
+	FileStream & records = *FileStream::from_handle(stream_handle);
+	if (records.get_num_bytes() != (uint32_t)(sizeof(double) + num_bytes)) {
+		throw_exception("file stream records are %d bytes, not a priority and a %d-byte payload", records.get_num_bytes(), num_bytes);
+	}
 
-IDoublePriorityQueue * IDoublePriorityQueue::make(const uint32_t & num_bytes) {
-	switch (num_bytes) {
-		case     8: return new DoublePriorityQueue<    8>();
-		case    16: return new DoublePriorityQueue<   16>();
-		case    32: return new DoublePriorityQueue<   32>();
-		case    64: return new DoublePriorityQueue<   64>();
-		case   128: return new DoublePriorityQueue<  128>();
-		case   256: return new DoublePriorityQueue<  256>();
-		case   512: return new DoublePriorityQueue<  512>();
-		case  1024: return new DoublePriorityQueue< 1024>();
+	// read the rest of the stream into the builder
+	PriorityQueueBuilder<double> builder((uint32_t)num_bytes, memory_budget_for_fraction(1.0), (bool)compressed);
+	tpie_vector<uint8_t> batch(PQ_CHECKPOINT_BATCH*records.get_num_bytes());
+	while (true) {
+		uint64_t count = records.read_all(batch.data(), PQ_CHECKPOINT_BATCH);
+		if (count == 0) {
+			break;
+		}
+		builder.add_records(batch.data(), count);
 	}
-	throw_exception("unsupported entry size for queue: %d", num_bytes);
-	return NULL;
-}
+	return (jlong)builder.build()->to_handle();
 
+	catch_jni_exceptions(env);
+	return -1;
+}
 
-// java ids
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_restore(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes,
+	jstring jpath
+) {
+	try_jni_exceptions();
 
-define_class(dpq_entry, "edu/duke/cs/tpie/DoublePriorityQueue$Entry");
+	// get the path string from java
+	const char * path = env->GetStringUTFChars(jpath, NULL);
+	check_jni_exception(env);
 
-define_field_id(dpq_entry, priority, "priority", "D");
-define_field_id(dpq_entry, data, "data", "Ljava/nio/ByteBuffer;");
+	IDoublePriorityQueue * q;
+	try {
+		q = restore_priority_queue<double>((uint32_t)num_bytes, path);
+	} catch (char * msg) {
+		env->ReleaseStringUTFChars(jpath, path);
+		throw msg;
+	}
 
-define_method_id(dpq_entry, ctor, "<init>", "(Ledu/duke/cs/tpie/DoublePriorityQueue;)V");
+	// cleanup JNI
+	env->ReleaseStringUTFChars(jpath, path);
 
+	return (jlong)q->to_handle();
 
-// java methods
+	catch_jni_exceptions(env);
+	return -1;
+}
 
-JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_create(
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_checkpoint(
 	JNIEnv * env,
 	jclass c __attribute__((unused)),
-	jint num_bytes
+	jlong handle,
+	jstring jpath
 ) {
 	try_jni_exceptions();
 
-	IDoublePriorityQueue * q = IDoublePriorityQueue::make((uint32_t)num_bytes);
-	return (jlong)q->to_handle();
+	// get the path string from java
+	const char * path = env->GetStringUTFChars(jpath, NULL);
+	check_jni_exception(env);
+
+	IDoublePriorityQueue & q = *IDoublePriorityQueue::from_handle(handle);
+	try {
+		q.checkpoint(path);
+	} catch (char * msg) {
+		env->ReleaseStringUTFChars(jpath, path);
+		throw msg;
+	}
+
+	// cleanup JNI
+	env->ReleaseStringUTFChars(jpath, path);
 
 	catch_jni_exceptions(env);
-	return -1;
 }
 
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_cleanup(
@@ -176,24 +262,118 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_push(
 
 	// get the jentry bytes
 	jobject jbuf = get_field(env, dpq_entry, data, GetObjectField, jentry);
-	jbyteArray jbufArray = (jbyteArray)call_method(env, byte_buffer, array, CallObjectMethod, jbuf);
-	check_jni_exception(env);
-	jbyte * jbufBytes = env->GetByteArrayElements(jbufArray, NULL);
 	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
 
 	// push to the queue
 	IDoublePriorityQueue & q = *IDoublePriorityQueue::from_handle(handle);
 	q.push(
 		get_field(env, dpq_entry, priority, GetDoubleField, jentry),
-		(uint8_t *)jbufBytes
+		buf.get_bytes()
+	);
+	check_jni_exception(env);
+
+	// jni cleanup
+	buf.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_pushAll(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jdoubleArray jpriorities,
+	jobject jdata,
+	jint offset,
+	jint count
+) {
+	try_jni_exceptions();
+
+	// get the java arrays and buffers
+	jdouble * jprioritiesDoubles = env->GetDoubleArrayElements(jpriorities, NULL);
+	check_jni_exception(env);
+	jni_buffer data(env, jdata);
+
+	// push everything to the queue
+	IDoublePriorityQueue & q = *IDoublePriorityQueue::from_handle(handle);
+	q.push_all(
+		(double *)jprioritiesDoubles,
+		data.get_bytes() + offset,
+		(uint64_t)count
+	);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
+	env->ReleaseDoubleArrayElements(jpriorities, jprioritiesDoubles, JNI_ABORT);
+	check_jni_exception(env);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jdouble JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_pushBounded(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get the jentry bytes
+	jobject jbuf = get_field(env, dpq_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
+
+	// push to the queue
+	BoundedPriorityQueue<double> & q = *BoundedPriorityQueue<double>::from_handle(handle);
+	q.push(
+		get_field(env, dpq_entry, priority, GetDoubleField, jentry),
+		buf.get_bytes()
 	);
 	check_jni_exception(env);
 
 	// jni cleanup
-	env->ReleaseByteArrayElements(jbufArray, jbufBytes, JNI_ABORT);
+	buf.release(JNI_ABORT);
+
+	return (jdouble)q.drop_priority();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jdouble JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_pushAllBounded(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jdoubleArray jpriorities,
+	jobject jdata,
+	jint offset,
+	jint count
+) {
+	try_jni_exceptions();
+
+	// get the java arrays and buffers
+	jdouble * jprioritiesDoubles = env->GetDoubleArrayElements(jpriorities, NULL);
+	check_jni_exception(env);
+	jni_buffer data(env, jdata);
+
+	// push everything to the queue
+	BoundedPriorityQueue<double> & q = *BoundedPriorityQueue<double>::from_handle(handle);
+	q.push_all(
+		(double *)jprioritiesDoubles,
+		data.get_bytes() + offset,
+		(uint64_t)count
+	);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
+	env->ReleaseDoubleArrayElements(jpriorities, jprioritiesDoubles, JNI_ABORT);
 	check_jni_exception(env);
 
+	return (jdouble)q.drop_priority();
+
 	catch_jni_exceptions(env);
+	return 0;
 }
 
 JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_top(
@@ -211,19 +391,15 @@ JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_top(
 	jobject jentry = new_class(env, dpq_entry, ctor, jqueue);
 	jobject jbuf = get_field(env, dpq_entry, data, GetObjectField, jentry);
 	check_jni_exception(env);
-	jbyteArray jbufArray = (jbyteArray)call_method(env, byte_buffer, array, CallObjectMethod, jbuf);
-	check_jni_exception(env);
-	jbyte * jbufBytes = env->GetByteArrayElements(jbufArray, NULL);
-	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
 
 	// convert entry
 	set_field(env, dpq_entry, priority, SetDoubleField, jentry, (jdouble)q.top_priority());
 	check_jni_exception(env);
-	std::memcpy((uint8_t *)jbufBytes, q.top_bytes(), q.get_num_bytes());
+	std::memcpy(buf.get_bytes(), q.top_bytes(), q.get_num_bytes());
 
 	// jni cleanup
-	env->ReleaseByteArrayElements(jbufArray, jbufBytes, 0);
-	check_jni_exception(env);
+	buf.release(0);
 
 	return jentry;
 
@@ -231,6 +407,66 @@ JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_top(
 	return NULL;
 }
 
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_topInto(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IDoublePriorityQueue & q = *IDoublePriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("queue is empty");
+	}
+
+	write_top(env, q, jentry);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jdouble JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_topPriority(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IDoublePriorityQueue & q = *IDoublePriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("queue is empty");
+	}
+
+	return (jdouble)q.top_priority();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_popTop(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IDoublePriorityQueue & q = *IDoublePriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		return false;
+	}
+
+	write_top(env, q, jentry);
+	q.pop();
+	return true;
+
+	catch_jni_exceptions(env);
+	return false;
+}
+
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_pop(
 	JNIEnv * env,
 	jclass c __attribute__((unused)),
@@ -248,6 +484,40 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_pop(
 	catch_jni_exceptions(env);
 }
 
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_popInto(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jdoubleArray jpriorities,
+	jobject jdata,
+	jint offset,
+	jint max
+) {
+	try_jni_exceptions();
+
+	// get the java arrays and buffers
+	jdouble * jprioritiesDoubles = env->GetDoubleArrayElements(jpriorities, NULL);
+	check_jni_exception(env);
+	jni_buffer data(env, jdata);
+
+	// pop everything we can from the queue
+	IDoublePriorityQueue & q = *IDoublePriorityQueue::from_handle(handle);
+	uint64_t count = q.pop_into(
+		(double *)jprioritiesDoubles,
+		data.get_bytes() + offset,
+		(uint64_t)max
+	);
+
+	// jni cleanup
+	data.release(0);
+	env->ReleaseDoubleArrayElements(jpriorities, jprioritiesDoubles, 0);
+	check_jni_exception(env);
+
+	return (jint)count;
+
+	catch_jni_exceptions(env);
+	return 0;
+}
 
 JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_size(
 	JNIEnv * env,
@@ -277,3 +547,45 @@ JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_empty(
 	return true;
 }
 
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_getMemoryBudget(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IDoublePriorityQueue & q = *IDoublePriorityQueue::from_handle(handle);
+	return (jlong)q.get_memory_budget();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_setMemoryBudget(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jlong memory_bytes
+) {
+	try_jni_exceptions();
+
+	IDoublePriorityQueue & q = *IDoublePriorityQueue::from_handle(handle);
+	q.set_memory_budget((uint64_t)memory_bytes);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_trackStats(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jblock
+) {
+	try_jni_exceptions();
+
+	IDoublePriorityQueue & q = *IDoublePriorityQueue::from_handle(handle);
+	q.attach_stats(get_stats_block(env, jblock));
+
+	catch_jni_exceptions(env);
+}
+
@@ -10,10 +10,58 @@ extern "C" {
 /*
  * Class:     edu_duke_cs_tpie_DoublePriorityQueue
  * Method:    create
- * Signature: (I)J
+ * Signature: (IDZ)J
  */
 JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_create
-  (JNIEnv *, jclass, jint);
+  (JNIEnv *, jclass, jint, jdouble, jboolean);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    createBudgeted
+ * Signature: (IJZ)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_createBudgeted
+  (JNIEnv *, jclass, jint, jlong, jboolean);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    createBounded
+ * Signature: (IJ)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_createBounded
+  (JNIEnv *, jclass, jint, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    buildFromBatch
+ * Signature: (I[DLjava/nio/ByteBuffer;IIZ)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_buildFromBatch
+  (JNIEnv *, jclass, jint, jdoubleArray, jobject, jint, jint, jboolean);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    buildFromFIFOQueue
+ * Signature: (IJZ)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_buildFromFIFOQueue
+  (JNIEnv *, jclass, jint, jlong, jboolean);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    buildFromFileStream
+ * Signature: (IJZ)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_buildFromFileStream
+  (JNIEnv *, jclass, jint, jlong, jboolean);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    restore
+ * Signature: (ILjava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_restore
+  (JNIEnv *, jclass, jint, jstring);
 
 /*
  * Class:     edu_duke_cs_tpie_DoublePriorityQueue
@@ -23,6 +71,14 @@ JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_create
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_cleanup
   (JNIEnv *, jclass, jlong);
 
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    checkpoint
+ * Signature: (JLjava/lang/String;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_checkpoint
+  (JNIEnv *, jclass, jlong, jstring);
+
 /*
  * Class:     edu_duke_cs_tpie_DoublePriorityQueue
  * Method:    push
@@ -31,6 +87,30 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_cleanup
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_push
   (JNIEnv *, jclass, jlong, jobject);
 
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    pushAll
+ * Signature: (J[DLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_pushAll
+  (JNIEnv *, jclass, jlong, jdoubleArray, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    pushBounded
+ * Signature: (JLedu/duke/cs/tpie/DoublePriorityQueue/Entry;)D
+ */
+JNIEXPORT jdouble JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_pushBounded
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    pushAllBounded
+ * Signature: (J[DLjava/nio/ByteBuffer;II)D
+ */
+JNIEXPORT jdouble JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_pushAllBounded
+  (JNIEnv *, jclass, jlong, jdoubleArray, jobject, jint, jint);
+
 /*
  * Class:     edu_duke_cs_tpie_DoublePriorityQueue
  * Method:    top
@@ -39,6 +119,22 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_push
 JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_top
   (JNIEnv *, jclass, jlong, jobject);
 
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    topInto
+ * Signature: (JLedu/duke/cs/tpie/DoublePriorityQueue/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_topInto
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    topPriority
+ * Signature: (J)D
+ */
+JNIEXPORT jdouble JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_topPriority
+  (JNIEnv *, jclass, jlong);
+
 /*
  * Class:     edu_duke_cs_tpie_DoublePriorityQueue
  * Method:    pop
@@ -47,6 +143,22 @@ JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_top
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_pop
   (JNIEnv *, jclass, jlong);
 
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    popTop
+ * Signature: (JLedu/duke/cs/tpie/DoublePriorityQueue/Entry;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_popTop
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    popInto
+ * Signature: (J[DLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_popInto
+  (JNIEnv *, jclass, jlong, jdoubleArray, jobject, jint, jint);
+
 /*
  * Class:     edu_duke_cs_tpie_DoublePriorityQueue
  * Method:    size
@@ -63,6 +175,30 @@ JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_size
 JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_empty
   (JNIEnv *, jclass, jlong);
 
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    getMemoryBudget
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_getMemoryBudget
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    setMemoryBudget
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_setMemoryBudget
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_DoublePriorityQueue
+ * Method:    trackStats
+ * Signature: (JLjava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_DoublePriorityQueue_trackStats
+  (JNIEnv *, jclass, jlong, jobject);
+
 #ifdef __cplusplus
 }
 #endif
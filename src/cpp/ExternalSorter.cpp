@@ -0,0 +1,462 @@
+
+#include <cstring>
+#include <tpie/tpie.h>
+#include <tpie/memory.h>
+#include <tpie/dummy_progress.h>
+#include <tpie/pipelining/merge_sorter.h>
+#include "ExternalSorter.hpp"
+#include "jni.hpp"
+#include "priority_queue.hpp"
+
+
+class IExternalSorter {
+public:
+
+	static IExternalSorter * make(const uint32_t & num_bytes);
+
+	virtual ~IExternalSorter() {}
+
+	virtual uint64_t to_handle() const {
+		return (uint64_t)this;
+	}
+
+	static IExternalSorter * from_handle(const uint64_t handle) {
+		return (IExternalSorter *)handle;
+	}
+
+	virtual uint32_t get_num_bytes() = 0;
+
+	virtual void push(const double & priority, const uint8_t * bytes) = 0;
+	virtual void push_all(const double * priorities, const uint8_t * bytes, const uint64_t count) = 0;
+	virtual void sort() = 0;
+	virtual bool is_sorted() = 0;
+	virtual bool pull(double & priority, uint8_t * bytes) = 0;
+	virtual uint64_t pull_into(double * priorities, uint8_t * bytes, const uint64_t max) = 0;
+	virtual uint64_t size() = 0;
+};
+
+template <int NumBytes>
+class ExternalSorter : public IExternalSorter {
+public:
+
+	ExternalSorter(const uint32_t & num_bytes) :
+		m_num_bytes(num_bytes),
+		m_sorted(false),
+		m_size(0)
+	{
+		m_sorter.set_available_memory(tpie::get_memory_manager().available());
+		m_sorter.begin();
+	}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const double & priority, const uint8_t * bytes) {
+		check_pushing();
+		PQEntry<double,NumBytes> entry;
+		entry.priority = priority;
+		std::memcpy(entry.bytes, bytes, m_num_bytes);
+		m_sorter.push(entry);
+		m_size++;
+	}
+
+	void push_all(const double * priorities, const uint8_t * bytes, const uint64_t count) {
+		check_pushing();
+		PQEntry<double,NumBytes> entry;
+		for (uint64_t i=0; i<count; i++) {
+			entry.priority = priorities[i];
+			std::memcpy(entry.bytes, bytes + i*m_num_bytes, m_num_bytes);
+			m_sorter.push(entry);
+		}
+		m_size += count;
+	}
+
+	void sort() {
+		check_pushing();
+		m_sorter.end();
+		tpie::dummy_progress_indicator progress;
+		m_sorter.calc(progress);
+		m_sorted = true;
+	}
+
+	bool is_sorted() {
+		return m_sorted;
+	}
+
+	bool pull(double & priority, uint8_t * bytes) {
+		check_pulling();
+		if (!m_sorter.can_pull()) {
+			return false;
+		}
+		const PQEntry<double,NumBytes> entry = m_sorter.pull();
+		priority = entry.priority;
+		std::memcpy(bytes, entry.bytes, m_num_bytes);
+		m_size--;
+		return true;
+	}
+
+	uint64_t pull_into(double * priorities, uint8_t * bytes, const uint64_t max) {
+		check_pulling();
+		uint64_t count = 0;
+		while (count < max && m_sorter.can_pull()) {
+			const PQEntry<double,NumBytes> entry = m_sorter.pull();
+			priorities[count] = entry.priority;
+			std::memcpy(bytes + count*m_num_bytes, entry.bytes, m_num_bytes);
+			count++;
+		}
+		m_size -= count;
+		return count;
+	}
+
+	uint64_t size() {
+		return m_size;
+	}
+
+private:
+
+	uint32_t m_num_bytes;
+	bool m_sorted;
+
+	// number of entries pushed, but not pulled yet
+	uint64_t m_size;
+
+	tpie::merge_sorter<PQEntry<double,NumBytes>, false> m_sorter;
+
+	void check_pushing() {
+		if (m_sorted) {
+			throw_exception("can't push entries after sorting");
+		}
+	}
+
+	void check_pulling() {
+		if (!m_sorted) {
+			throw_exception("can't pull entries before sorting");
+		}
+	}
+};
+
+
+/*
+	Sorter for entries that aren't one of the template sizes.
+	TPIE's merge sorter only takes compile-time entry sizes, so entries are sorted into runs of their exact size
+	instead of being padded out to the next template size.
+*/
+
+#define SORTER_BATCH 256
+
+class RunExternalSorter : public IExternalSorter {
+public:
+
+	RunExternalSorter(const uint32_t & num_bytes) :
+		m_num_bytes(num_bytes),
+		m_record_bytes(sizeof(double) + num_bytes),
+		m_sorter(new RunSorter<double>(num_bytes, tpie::get_memory_manager().available(), false)),
+		m_size(0)
+	{}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const double & priority, const uint8_t * bytes) {
+		check_pushing();
+		m_sorter->add(priority, bytes);
+		m_size++;
+	}
+
+	void push_all(const double * priorities, const uint8_t * bytes, const uint64_t count) {
+		check_pushing();
+		m_sorter->add_all(priorities, bytes, count);
+		m_size += count;
+	}
+
+	void sort() {
+		check_pushing();
+		m_sorted.reset(m_sorter->sort());
+		m_sorter.reset();
+		m_records.resize(SORTER_BATCH*m_record_bytes);
+	}
+
+	bool is_sorted() {
+		return m_sorter == NULL;
+	}
+
+	bool pull(double & priority, uint8_t * bytes) {
+		return pull_into(&priority, bytes, 1) == 1;
+	}
+
+	uint64_t pull_into(double * priorities, uint8_t * bytes, const uint64_t max) {
+		check_pulling();
+		uint64_t count = 0;
+		while (count < max && m_size > 0) {
+			uint64_t num_read = m_sorted->read_all(m_records.data(), std::min(max - count, (uint64_t)SORTER_BATCH));
+			if (num_read == 0) {
+				throw_exception("sorted run ended early");
+			}
+			for (uint64_t i=0; i<num_read; i++) {
+				std::memcpy(&priorities[count], m_records.data() + i*m_record_bytes, sizeof(double));
+				std::memcpy(bytes + count*m_num_bytes, m_records.data() + i*m_record_bytes + sizeof(double), m_num_bytes);
+				count++;
+			}
+			m_size -= num_read;
+		}
+		return count;
+	}
+
+	uint64_t size() {
+		return m_size;
+	}
+
+private:
+
+	uint32_t m_num_bytes;
+	uint32_t m_record_bytes;
+
+	// the sorter until the entries are sorted, then the sorted run
+	std::unique_ptr<RunSorter<double>> m_sorter;
+	std::unique_ptr<FileStream> m_sorted;
+
+	// number of entries pushed, but not pulled yet
+	uint64_t m_size;
+
+	// buffer for reading the sorted run
+	tpie_vector<uint8_t> m_records;
+
+	void check_pushing() {
+		if (is_sorted()) {
+			throw_exception("can't push entries after sorting");
+		}
+	}
+
+	void check_pulling() {
+		if (!is_sorted()) {
+			throw_exception("can't pull entries before sorting");
+		}
+	}
+};
+
+
+IExternalSorter * IExternalSorter::make(const uint32_t & num_bytes) {
+
+	if (num_bytes == 0) {
+		throw_exception("unsupported entry size for sorter: %d", num_bytes);
+	}
+
+	// use the template sizes when they fit exactly, so TPIE's merge sorter can sort the entries
+	switch (num_bytes) {
+		case     8: return new ExternalSorter<   8>(num_bytes);
+		case    16: return new ExternalSorter<  16>(num_bytes);
+		case    32: return new ExternalSorter<  32>(num_bytes);
+		case    64: return new ExternalSorter<  64>(num_bytes);
+		case   128: return new ExternalSorter< 128>(num_bytes);
+		case   256: return new ExternalSorter< 256>(num_bytes);
+		case   512: return new ExternalSorter< 512>(num_bytes);
+		case  1024: return new ExternalSorter<1024>(num_bytes);
+	}
+	return new RunExternalSorter(num_bytes);
+}
+
+
+// java ids
+
+define_class(sorter_entry, "edu/duke/cs/tpie/ExternalSorter$Entry");
+
+define_field_id(sorter_entry, priority, "priority", "D");
+define_field_id(sorter_entry, data, "data", "Ljava/nio/ByteBuffer;");
+
+
+// java methods
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_ExternalSorter_create(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes
+) {
+	try_jni_exceptions();
+
+	IExternalSorter * s = IExternalSorter::make((uint32_t)num_bytes);
+	return (jlong)s->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_ExternalSorter_cleanup(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	delete IExternalSorter::from_handle((uint64_t)handle);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_ExternalSorter_push(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get the jentry bytes
+	jobject jbuf = get_field(env, sorter_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
+
+	// push to the sorter
+	IExternalSorter & s = *IExternalSorter::from_handle(handle);
+	s.push(
+		get_field(env, sorter_entry, priority, GetDoubleField, jentry),
+		buf.get_bytes()
+	);
+	check_jni_exception(env);
+
+	// jni cleanup
+	buf.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_ExternalSorter_pushAll(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jdoubleArray jpriorities,
+	jobject jdata,
+	jint offset,
+	jint count
+) {
+	try_jni_exceptions();
+
+	// get the java arrays and buffers
+	jdouble * jprioritiesDoubles = env->GetDoubleArrayElements(jpriorities, NULL);
+	check_jni_exception(env);
+	jni_buffer data(env, jdata);
+
+	// push everything to the sorter
+	IExternalSorter & s = *IExternalSorter::from_handle(handle);
+	s.push_all(
+		(double *)jprioritiesDoubles,
+		data.get_bytes() + offset,
+		(uint64_t)count
+	);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
+	env->ReleaseDoubleArrayElements(jpriorities, jprioritiesDoubles, JNI_ABORT);
+	check_jni_exception(env);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_ExternalSorter_sort(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IExternalSorter & s = *IExternalSorter::from_handle(handle);
+	s.sort();
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_ExternalSorter_isSorted(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IExternalSorter & s = *IExternalSorter::from_handle(handle);
+	return (jboolean)s.is_sorted();
+
+	catch_jni_exceptions(env);
+	return false;
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_ExternalSorter_pull(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get the jentry bytes
+	jobject jbuf = get_field(env, sorter_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
+
+	// pull from the sorter
+	IExternalSorter & s = *IExternalSorter::from_handle(handle);
+	double priority;
+	bool pulled = s.pull(priority, buf.get_bytes());
+	if (pulled) {
+		set_field(env, sorter_entry, priority, SetDoubleField, jentry, (jdouble)priority);
+		check_jni_exception(env);
+	}
+
+	// jni cleanup
+	buf.release(0);
+
+	return (jboolean)pulled;
+
+	catch_jni_exceptions(env);
+	return false;
+}
+
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_ExternalSorter_pullInto(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jdoubleArray jpriorities,
+	jobject jdata,
+	jint offset,
+	jint max
+) {
+	try_jni_exceptions();
+
+	// get the java arrays and buffers
+	jdouble * jprioritiesDoubles = env->GetDoubleArrayElements(jpriorities, NULL);
+	check_jni_exception(env);
+	jni_buffer data(env, jdata);
+
+	// pull everything we can from the sorter
+	IExternalSorter & s = *IExternalSorter::from_handle(handle);
+	uint64_t count = s.pull_into(
+		(double *)jprioritiesDoubles,
+		data.get_bytes() + offset,
+		(uint64_t)max
+	);
+
+	// jni cleanup
+	data.release(0);
+	env->ReleaseDoubleArrayElements(jpriorities, jprioritiesDoubles, 0);
+	check_jni_exception(env);
+
+	return (jint)count;
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_ExternalSorter_size(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IExternalSorter & s = *IExternalSorter::from_handle(handle);
+	return (jlong)s.size();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
@@ -0,0 +1,96 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class edu_duke_cs_tpie_ExternalSorter */
+
+#ifndef _Included_edu_duke_cs_tpie_ExternalSorter
+#define _Included_edu_duke_cs_tpie_ExternalSorter
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     edu_duke_cs_tpie_ExternalSorter
+ * Method:    create
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_ExternalSorter_create
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_ExternalSorter
+ * Method:    cleanup
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_ExternalSorter_cleanup
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_ExternalSorter
+ * Method:    push
+ * Signature: (JLedu/duke/cs/tpie/ExternalSorter/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_ExternalSorter_push
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_ExternalSorter
+ * Method:    pushAll
+ * Signature: (J[DLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_ExternalSorter_pushAll
+  (JNIEnv *, jclass, jlong, jdoubleArray, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_ExternalSorter
+ * Method:    sort
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_ExternalSorter_sort
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_ExternalSorter
+ * Method:    isSorted
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_ExternalSorter_isSorted
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_ExternalSorter
+ * Method:    pull
+ * Signature: (JLedu/duke/cs/tpie/ExternalSorter/Entry;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_ExternalSorter_pull
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_ExternalSorter
+ * Method:    pullInto
+ * Signature: (J[DLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_ExternalSorter_pullInto
+  (JNIEnv *, jclass, jlong, jdoubleArray, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_ExternalSorter
+ * Method:    size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_ExternalSorter_size
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
+/* Header for class edu_duke_cs_tpie_ExternalSorter_Entry */
+
+#ifndef _Included_edu_duke_cs_tpie_ExternalSorter_Entry
+#define _Included_edu_duke_cs_tpie_ExternalSorter_Entry
+#ifdef __cplusplus
+extern "C" {
+#endif
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -1,9 +1,22 @@
 
 #include <cstring>
+#include <vector>
+#include <memory>
+#include <algorithm>
+#include <limits>
+#include <deque>
+#include <thread>
+#include <mutex>
+#include <condition_variable>
+#include <atomic>
 #include <tpie/tpie.h>
+#include <tpie/file_stream.h>
 #include <tpie/queue.h>
 #include "FIFOQueue.hpp"
 #include "jni.hpp"
+#include "fifo_queue.hpp"
+#include "file_stream.hpp"
+#include "memory.hpp"
 
 
 template <int NumBytes>
@@ -12,35 +25,58 @@ struct FIFOQEntry {
 };
 
 
-class IFIFOQueue {
-public:
+/*
+	Internal memory budgets, in bytes.
+	TPIE queues keep a block of entries in memory at each end, and everything in between on disk,
+	so a queue's budget sets its block size, relative to TPIE's default block size.
+*/
 
-	static IFIFOQueue * make(const uint32_t & num_bytes);
+template <typename T>
+uint64_t default_memory_budget() {
+	return 2*tpie::file_stream<T>::memory_usage(1.0);
+}
 
-	virtual ~IFIFOQueue() {}
+template <typename T>
+tpie::queue<T> * make_tpie_queue(const uint64_t & memory_bytes) {
+	double block_factor = (double)memory_bytes/default_memory_budget<T>();
+	return new tpie::queue<T>(std::numeric_limits<tpie::stream_size_type>::max(), block_factor);
+}
 
-	virtual uint64_t to_handle() const {
-		return (uint64_t)this;
+template <typename T>
+uint64_t budget_or_default(const uint64_t & memory_bytes) {
+	if (memory_bytes == 0) {
+		return default_memory_budget<T>();
 	}
+	return memory_bytes;
+}
 
-	static IFIFOQueue * from_handle(const uint64_t handle) {
-		return (IFIFOQueue *)handle;
+// replaces an empty TPIE queue with one with a different budget
+// the old queue is freed before the new one is made, so their buffers are never in memory at the same time,
+// and if the new one can't be made, the old budget is put back
+template <typename T>
+void rebudget_queue(std::unique_ptr<tpie::queue<T>> & queue, const uint64_t & old_bytes, const uint64_t & new_bytes) {
+	if (!queue->empty()) {
+		throw_exception("can't change the memory budget of a queue that has entries");
 	}
+	queue.reset();
+	try {
+		queue.reset(make_tpie_queue<T>(new_bytes));
+	} catch (...) {
+		queue.reset(make_tpie_queue<T>(old_bytes));
+		throw;
+	}
+}
 
-	virtual uint32_t get_num_bytes() = 0;
-
-	virtual void push(const uint8_t * bytes) = 0;
-	virtual const uint8_t * front() = 0;
-	virtual void pop() = 0;
-	virtual uint64_t size() = 0;
-	virtual bool empty() = 0;
-};
 
 template <int NumBytes>
 class FIFOQueue : public IFIFOQueue {
 public:
 
-	FIFOQueue() : m_num_bytes(NumBytes) {}
+	FIFOQueue(const uint64_t & memory_bytes) :
+		m_num_bytes(NumBytes),
+		m_memory_bytes(memory_bytes),
+		m_queue(make_tpie_queue<FIFOQEntry<NumBytes>>(memory_bytes))
+	{}
 
 	uint32_t get_num_bytes() {
 		return m_num_bytes;
@@ -49,48 +85,1102 @@ public:
 	void push(const uint8_t * bytes) {
 		FIFOQEntry<NumBytes> entry;
 		std::memcpy(entry.bytes, bytes, m_num_bytes);
-		m_queue.push(entry);
+		m_queue->push(entry);
+	}
+
+	void push_all(const uint8_t * bytes, const uint64_t count) {
+		FIFOQEntry<NumBytes> entry;
+		for (uint64_t i=0; i<count; i++) {
+			std::memcpy(entry.bytes, bytes + i*m_num_bytes, m_num_bytes);
+			m_queue->push(entry);
+		}
 	}
 
 	const uint8_t * front() {
-		return m_queue.front().bytes;
+		return m_queue->front().bytes;
 	}
 
 	void pop() {
-		m_queue.pop();
+		m_queue->pop();
+	}
+
+	uint64_t pop_into(uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		while (count < max && !m_queue->empty()) {
+			std::memcpy(bytes + count*m_num_bytes, m_queue->front().bytes, m_num_bytes);
+			m_queue->pop();
+			count++;
+		}
+		return count;
 	}
 
 	uint64_t size() {
-		return m_queue.size();
+		return m_queue->size();
 	}
 
 	bool empty() {
-		return m_queue.empty();
+		return m_queue->empty();
+	}
+
+	uint64_t get_memory_budget() {
+		return m_memory_bytes;
+	}
+
+	// the queue must be empty
+	void set_memory_budget(const uint64_t & memory_bytes) {
+		rebudget_queue(m_queue, m_memory_bytes, memory_bytes);
+		m_memory_bytes = memory_bytes;
+	}
+
+private:
+
+	uint32_t m_num_bytes;
+	uint64_t m_memory_bytes;
+	std::unique_ptr<tpie::queue<FIFOQEntry<NumBytes>>> m_queue;
+};
+
+
+/*
+	Queue for entries whose size isn't one of the template sizes.
+	Entries are packed back-to-back into fixed-size blocks, so no space is wasted on padding.
+	Entries can span block boundaries, so the front entry is reassembled in memory.
+	Only full blocks go to TPIE; the partially-filled blocks at either end of the queue stay in memory.
+*/
+
+#define PACKED_FIFOQ_BLOCK_BYTES 1024
+
+struct PackedFIFOQBlock {
+	uint8_t bytes[PACKED_FIFOQ_BLOCK_BYTES];
+};
+
+class PackedFIFOQueue : public IFIFOQueue {
+public:
+
+	PackedFIFOQueue(const uint32_t & num_bytes, const uint64_t & memory_bytes) :
+		m_num_bytes(num_bytes),
+		m_front(num_bytes),
+		m_has_front(false),
+		m_tail_bytes(0),
+		m_head_offset(0),
+		m_head_bytes(0),
+		m_size(0),
+		m_memory_bytes(memory_bytes),
+		m_queue(make_tpie_queue<PackedFIFOQBlock>(memory_bytes))
+	{}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const uint8_t * bytes) {
+		uint32_t offset = 0;
+		while (offset < m_num_bytes) {
+			uint32_t n = std::min(PACKED_FIFOQ_BLOCK_BYTES - m_tail_bytes, m_num_bytes - offset);
+			std::memcpy(m_tail.bytes + m_tail_bytes, bytes + offset, n);
+			offset += n;
+			m_tail_bytes += n;
+			if (m_tail_bytes == PACKED_FIFOQ_BLOCK_BYTES) {
+				m_queue->push(m_tail);
+				m_tail_bytes = 0;
+			}
+		}
+		m_size++;
+	}
+
+	void push_all(const uint8_t * bytes, const uint64_t count) {
+		for (uint64_t i=0; i<count; i++) {
+			push(bytes + i*m_num_bytes);
+		}
+	}
+
+	const uint8_t * front() {
+		load_front();
+		return m_front.data();
+	}
+
+	void pop() {
+		load_front();
+		m_has_front = false;
+		m_size--;
+	}
+
+	uint64_t pop_into(uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		while (count < max && m_size > 0) {
+			if (m_has_front) {
+				std::memcpy(bytes + count*m_num_bytes, m_front.data(), m_num_bytes);
+				m_has_front = false;
+			} else {
+				read(bytes + count*m_num_bytes);
+			}
+			m_size--;
+			count++;
+		}
+		return count;
+	}
+
+	uint64_t size() {
+		return m_size;
+	}
+
+	bool empty() {
+		return m_size == 0;
+	}
+
+	uint64_t get_memory_budget() {
+		return m_memory_bytes;
+	}
+
+	// the queue must be empty
+	void set_memory_budget(const uint64_t & memory_bytes) {
+		rebudget_queue(m_queue, m_memory_bytes, memory_bytes);
+		m_memory_bytes = memory_bytes;
 	}
 
 private:
 
 	uint32_t m_num_bytes;
-	tpie::queue<FIFOQEntry<NumBytes>> m_queue;
+
+	// the front entry, reassembled
+	std::vector<uint8_t> m_front;
+	bool m_has_front;
+
+	// the block being filled by pushes
+	PackedFIFOQBlock m_tail;
+	uint32_t m_tail_bytes;
+
+	// the block being drained by pops
+	PackedFIFOQBlock m_head;
+	uint32_t m_head_offset;
+	uint32_t m_head_bytes;
+
+	// number of entries, rather than blocks
+	uint64_t m_size;
+
+	uint64_t m_memory_bytes;
+	std::unique_ptr<tpie::queue<PackedFIFOQBlock>> m_queue;
+
+	void load_front() {
+		if (m_size == 0) {
+			throw_exception("end of stream");
+		}
+		if (!m_has_front) {
+			read(m_front.data());
+			m_has_front = true;
+		}
+	}
+
+	void read(uint8_t * bytes) {
+		uint32_t offset = 0;
+		while (offset < m_num_bytes) {
+
+			// move on to the next block if needed
+			if (m_head_offset == m_head_bytes) {
+				if (!m_queue->empty()) {
+					m_head = m_queue->front();
+					m_queue->pop();
+					m_head_bytes = PACKED_FIFOQ_BLOCK_BYTES;
+				} else {
+					// no full blocks left, so the rest of the entries are in the tail block
+					m_head = m_tail;
+					m_head_bytes = m_tail_bytes;
+					m_tail_bytes = 0;
+				}
+				m_head_offset = 0;
+			}
+
+			uint32_t n = std::min(m_head_bytes - m_head_offset, m_num_bytes - offset);
+			std::memcpy(bytes + offset, m_head.bytes + m_head_offset, n);
+			offset += n;
+			m_head_offset += n;
+		}
+	}
 };
 
 
-IFIFOQueue * IFIFOQueue::make(const uint32_t & num_bytes) {
+/*
+	Queue that does its own spilling to streams, for entries of any size, for compressed spill files,
+	and for queues whose memory budgets change in place.
+	Compressed TPIE streams can only be written at the end and read from the start, so pushes fill a tail block
+	in memory, full tail blocks are written to the write stream, and pops read from the read stream.
+	When the read stream runs out, the streams swap: the write stream is rewound and read,
+	and the old read stream is emptied and written. When both streams are empty, pops read the tail block directly.
+	So each entry is still written and read at most once, and small queues never touch the disk.
+	Only the tail block changes size with the budget. When it shrinks, only the oldest entries that don't fit
+	are written to the write stream, since they come before the rest of the tail.
+	The tail block is allocated through TPIE, so it counts against TPIE's memory like the stream buffers do.
+*/
+
+class StreamFIFOQueue : public IFIFOQueue {
+public:
+
+	StreamFIFOQueue(const uint32_t & num_bytes, const uint64_t & memory_bytes, const bool & compressed) :
+		m_num_bytes(num_bytes),
+		m_compressed(compressed),
+		m_front(num_bytes),
+		m_has_front(false),
+		m_tail_capacity(0),
+		m_tail_offset(0),
+		m_tail_size(0),
+		m_size(0),
+		m_memory_bytes(memory_bytes),
+		m_block_factor(block_factor_for(memory_bytes/2, 2)),
+		m_read(new_stream()),
+		m_write(new_stream())
+	{
+		resize_tail(tail_capacity(memory_bytes));
+	}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const uint8_t * bytes) {
+		push_all(bytes, 1);
+	}
+
+	void push_all(const uint8_t * bytes, const uint64_t count) {
+		uint64_t i = 0;
+		while (i < count) {
+			if (m_tail_size == m_tail_capacity) {
+				flush_tail();
+			}
+			uint64_t n = std::min(m_tail_capacity - m_tail_size, count - i);
+			std::memcpy(m_tail.data() + m_tail_size*m_num_bytes, bytes + i*m_num_bytes, n*m_num_bytes);
+			m_tail_size += n;
+			m_size += n;
+			i += n;
+		}
+	}
+
+	const uint8_t * front() {
+		load_front();
+		return m_front.data();
+	}
+
+	void pop() {
+		load_front();
+		m_has_front = false;
+		m_size--;
+	}
+
+	uint64_t pop_into(uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		if (m_has_front && max > 0) {
+			std::memcpy(bytes, m_front.data(), m_num_bytes);
+			m_has_front = false;
+			count++;
+		}
+		while (count < max) {
+			uint64_t n = read(bytes + count*m_num_bytes, max - count);
+			if (n == 0) {
+				break;
+			}
+			count += n;
+		}
+		m_size -= count;
+		return count;
+	}
+
+	uint64_t size() {
+		return m_size;
+	}
+
+	bool empty() {
+		return m_size == 0;
+	}
+
+	uint64_t get_memory_budget() {
+		return m_memory_bytes;
+	}
+
+	// only the tail block changes size, the streams keep the buffers they were made with
+	void set_memory_budget(const uint64_t & memory_bytes) {
+		resize_tail(tail_capacity(memory_bytes));
+		m_memory_bytes = memory_bytes;
+	}
+
+	bool resizes_in_place() {
+		return true;
+	}
+
+	// everything but the tail and the front entry is in the streams
+	bool get_disk_stats(uint64_t & entries_on_disk, IOCounts & io) {
+		entries_on_disk = m_size - (m_tail_size - m_tail_offset) - (m_has_front ? 1 : 0);
+		io = m_io;
+		return true;
+	}
+
+private:
+
+	uint32_t m_num_bytes;
+	bool m_compressed;
+	IOCounts m_io;
+
+	// the front entry, if it's been read
+	tpie_vector<uint8_t> m_front;
+	bool m_has_front;
+
+	// entries pushed since the last write, from the offset to the size
+	tpie_vector<uint8_t> m_tail;
+	uint64_t m_tail_capacity;
+	uint64_t m_tail_offset;
+	uint64_t m_tail_size;
+
+	uint64_t m_size;
+
+	uint64_t m_memory_bytes;
+	double m_block_factor;
+	std::unique_ptr<FileStream> m_read;
+	std::unique_ptr<FileStream> m_write;
+
+	FileStream * new_stream() {
+		std::unique_ptr<FileStream> stream(new FileStream(m_num_bytes, m_block_factor));
+		stream->open_temp(m_compressed);
+		stream->count_io(&m_io);
+		return stream.release();
+	}
+
+	// half the budget goes to the tail, the other half to the stream buffers
+	uint64_t tail_capacity(const uint64_t & memory_bytes) {
+		return std::max((uint64_t)1, memory_bytes/2/m_num_bytes);
+	}
+
+	// moves the tail's entries to the start of a new tail block, after writing the oldest ones that don't fit
+	// the new block is allocated first, so if it can't be, the tail stays as it was
+	void resize_tail(const uint64_t & capacity) {
+		tpie_vector<uint8_t> tail(capacity*m_num_bytes);
+		uint64_t count = m_tail_size - m_tail_offset;
+		if (count > capacity) {
+			m_write->write_all(m_tail.data() + m_tail_offset*m_num_bytes, count - capacity);
+			m_tail_offset += count - capacity;
+			count = capacity;
+		}
+		std::copy(m_tail.begin() + m_tail_offset*m_num_bytes, m_tail.begin() + m_tail_size*m_num_bytes, tail.begin());
+		m_tail.swap(tail);
+		m_tail_capacity = capacity;
+		m_tail_offset = 0;
+		m_tail_size = count;
+	}
+
+	void flush_tail() {
+		m_write->write_all(m_tail.data() + m_tail_offset*m_num_bytes, m_tail_size - m_tail_offset);
+		m_tail_offset = 0;
+		m_tail_size = 0;
+	}
+
+	void load_front() {
+		if (m_size == 0) {
+			throw_exception("end of stream");
+		}
+		if (!m_has_front) {
+			read(m_front.data(), 1);
+			m_has_front = true;
+		}
+	}
+
+	// reads entries from the read stream, then the write stream, then the tail
+	uint64_t read(uint8_t * bytes, const uint64_t & max) {
+
+		if (m_read->remaining() == 0 && m_write->size() > 0) {
+			m_read.swap(m_write);
+			m_read->seek(0);
+			m_write->truncate(0);
+		}
+		uint64_t count = m_read->read_all(bytes, max);
+		if (count > 0) {
+			return count;
+		}
+
+		count = std::min(max, m_tail_size - m_tail_offset);
+		std::memcpy(bytes, m_tail.data() + m_tail_offset*m_num_bytes, count*m_num_bytes);
+		m_tail_offset += count;
+		if (m_tail_offset == m_tail_size) {
+			m_tail_offset = 0;
+			m_tail_size = 0;
+		}
+		return count;
+	}
+};
+
+
+IFIFOQueue * IFIFOQueue::make(const uint32_t & num_bytes, const uint64_t & memory_budget, const bool & compressed, const bool & resizable) {
+	if ((compressed || resizable) && num_bytes > 0) {
+		return new StreamFIFOQueue(num_bytes, budget_or_default<PackedFIFOQBlock>(memory_budget), compressed);
+	}
 	switch (num_bytes) {
-		case     8: return new FIFOQueue<    8>();
-		case    16: return new FIFOQueue<   16>();
-		case    32: return new FIFOQueue<   32>();
-		case    64: return new FIFOQueue<   64>();
-		case   128: return new FIFOQueue<  128>();
-		case   256: return new FIFOQueue<  256>();
-		case   512: return new FIFOQueue<  512>();
-		case  1024: return new FIFOQueue< 1024>();
+		case     8: return new FIFOQueue<    8>(budget_or_default<FIFOQEntry<8>>(memory_budget));
+		case    16: return new FIFOQueue<   16>(budget_or_default<FIFOQEntry<16>>(memory_budget));
+		case    32: return new FIFOQueue<   32>(budget_or_default<FIFOQEntry<32>>(memory_budget));
+		case    64: return new FIFOQueue<   64>(budget_or_default<FIFOQEntry<64>>(memory_budget));
+		case   128: return new FIFOQueue<  128>(budget_or_default<FIFOQEntry<128>>(memory_budget));
+		case   256: return new FIFOQueue<  256>(budget_or_default<FIFOQEntry<256>>(memory_budget));
+		case   512: return new FIFOQueue<  512>(budget_or_default<FIFOQEntry<512>>(memory_budget));
+		case  1024: return new FIFOQueue< 1024>(budget_or_default<FIFOQEntry<1024>>(memory_budget));
+	}
+	if (num_bytes > 0) {
+		return new PackedFIFOQueue(num_bytes, budget_or_default<PackedFIFOQBlock>(memory_budget));
 	}
 	throw_exception("unsupported entry size for queue: %d", num_bytes);
 	return NULL;
 }
 
 
+/*
+	Queue whose front entries are in files on disk, followed by the entries in a queue.
+	Queues restored from a checkpoint start out with the checkpoint file, and every queue made from Java
+	is one of these, so checkpoints can move the queue's entries into the checkpoint instead of pushing them back.
+
+	To checkpoint, the queue is drained into a new file, then the files are copied into the checkpoint file,
+	which becomes the only file. Entries are only popped from the queue the first time they're checkpointed,
+	so a checkpoint costs about as much as reading and writing every entry once.
+	If anything fails, the entries stay where they were, so none are lost, and they stay in order.
+	Queues that resize in place change their memory budgets directly. TPIE's queues can't, so the first time
+	their budget changes, they're drained into a file the same way, and replaced with a StreamFIFOQueue,
+	so later changes don't touch the disk.
+*/
+
+#define FIFOQ_CHECKPOINT_BATCH 256
+
+class CheckpointableFIFOQueue : public IFIFOQueue {
+public:
+
+	// file holds the front entries to start with, or is NULL
+	// compressed queues compress their files
+	CheckpointableFIFOQueue(IFIFOQueue * queue, FileStream * file, const bool & compressed) :
+		m_queue(queue),
+		m_num_bytes(queue->get_num_bytes()),
+		m_compressed(compressed),
+		m_front(queue->get_num_bytes()),
+		m_has_front(false),
+		m_held_pos(0)
+	{
+		add_file(file);
+	}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const uint8_t * bytes) {
+		m_queue->push(bytes);
+		publish_stats();
+	}
+
+	void push_all(const uint8_t * bytes, const uint64_t count) {
+		m_queue->push_all(bytes, count);
+		publish_stats();
+	}
+
+	const uint8_t * front() {
+		if (load_front()) {
+			return m_front.data();
+		} else if (held_count() > 0) {
+			return m_held.data() + m_held_pos*m_num_bytes;
+		}
+		return m_queue->front();
+	}
+
+	void pop() {
+		if (load_front()) {
+			m_has_front = false;
+		} else if (held_count() > 0) {
+			pop_held(1);
+		} else {
+			m_queue->pop();
+		}
+		publish_stats();
+	}
+
+	uint64_t pop_into(uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		if (m_has_front && count < max) {
+			std::memcpy(bytes, m_front.data(), m_num_bytes);
+			m_has_front = false;
+			count++;
+		}
+		while (count < max && !m_files.empty()) {
+			count += m_files.front()->read_all(bytes + count*m_num_bytes, max - count);
+			remove_used_files();
+		}
+		uint64_t num_held = std::min(max - count, held_count());
+		if (num_held > 0) {
+			std::memcpy(bytes + count*m_num_bytes, m_held.data() + m_held_pos*m_num_bytes, num_held*m_num_bytes);
+			pop_held(num_held);
+			count += num_held;
+		}
+		count += m_queue->pop_into(bytes + count*m_num_bytes, max - count);
+		publish_stats();
+		return count;
+	}
+
+	uint64_t size() {
+		uint64_t size = m_has_front ? 1 : 0;
+		for (std::unique_ptr<FileStream> & file : m_files) {
+			size += file->remaining();
+		}
+		return size + held_count() + m_queue->size();
+	}
+
+	bool empty() {
+		return size() == 0;
+	}
+
+	uint64_t get_memory_budget() {
+		return m_queue->get_memory_budget();
+	}
+
+	void set_memory_budget(const uint64_t & memory_bytes) {
+
+		if (m_queue->resizes_in_place()) {
+			m_queue->set_memory_budget(memory_bytes);
+			publish_stats();
+			return;
+		}
+
+		// the old queue is freed before the new one is made, so their buffers are never in memory at the same time
+		drain_queue();
+		uint64_t old_bytes = m_queue->get_memory_budget();
+		m_queue.reset();
+		try {
+			m_queue.reset(new StreamFIFOQueue(m_num_bytes, memory_bytes, m_compressed));
+		} catch (...) {
+			m_queue.reset(new StreamFIFOQueue(m_num_bytes, old_bytes, m_compressed));
+			throw;
+		}
+		publish_stats();
+	}
+
+	// the files are on disk, and the queue counts its own entries on disk, if it can
+	bool get_disk_stats(uint64_t & entries_on_disk, IOCounts & io) {
+		bool exact = m_queue->get_disk_stats(entries_on_disk, io);
+		for (std::unique_ptr<FileStream> & file : m_files) {
+			entries_on_disk += file->remaining();
+		}
+		io += m_io;
+		return exact;
+	}
+
+	void attach_stats(uint64_t * words) {
+		m_stats.attach(words);
+		publish_stats();
+	}
+
+	void checkpoint(const char * path) {
+
+		drain_queue();
+
+		// copy the files into the checkpoint, but leave them where they were in case anything fails
+		std::vector<tpie::stream_position> positions = file_positions();
+		try {
+			FileStream out(m_num_bytes);
+			out.open(checkpoint_temp_path(path).c_str(), tpie::access_write);
+			out.truncate(0);
+			out.count_io(&m_io);
+			if (m_has_front) {
+				out.write_all(m_front.data(), 1);
+			}
+			copy_files(out);
+			out.close();
+			commit_checkpoint(path);
+		} catch (...) {
+			reset_files(positions);
+			throw;
+		}
+
+		// then read the entries from the checkpoint, instead of from the old files
+		std::unique_ptr<FileStream> checkpoint(open_checkpoint(m_num_bytes, path));
+		m_files.clear();
+		m_has_front = false;
+		add_file(checkpoint.release());
+		publish_stats();
+	}
+
+	static FileStream * open_checkpoint(const uint32_t & num_bytes, const char * path) {
+		std::unique_ptr<FileStream> stream(new FileStream(num_bytes));
+		stream->open(path, tpie::access_read);
+		if (stream->has_partial_record()) {
+			throw_exception("checkpoint %s doesn't hold %d-byte entries", path, num_bytes);
+		}
+		return stream.release();
+	}
+
+private:
+
+	std::unique_ptr<IFIFOQueue> m_queue;
+	uint32_t m_num_bytes;
+	bool m_compressed;
+
+	// entries are in this order: front entry, files, held entries, queue
+
+	// the front entry, if it came from the first file
+	tpie_vector<uint8_t> m_front;
+	bool m_has_front;
+
+	std::vector<std::unique_ptr<FileStream>> m_files;
+
+	// entries popped from the queue while checkpointing, that couldn't be written to a file
+	tpie_vector<uint8_t> m_held;
+	uint64_t m_held_pos;
+
+	IOCounts m_io;
+	StatsBlock m_stats;
+
+	void publish_stats() {
+		if (!m_stats.is_attached()) {
+			return;
+		}
+		uint64_t entries_on_disk = 0;
+		IOCounts io;
+		bool exact = get_disk_stats(entries_on_disk, io);
+		m_stats.publish(size(), exact, entries_on_disk, io);
+	}
+
+	// takes ownership of the file, and reads it from where it is now
+	void add_file(FileStream * file) {
+		std::unique_ptr<FileStream> owned(file);
+		if (owned) {
+			owned->count_io(&m_io);
+		}
+		if (owned && owned->remaining() > 0) {
+			m_files.push_back(std::move(owned));
+		}
+	}
+
+	void remove_used_files() {
+		while (!m_files.empty() && m_files.front()->remaining() == 0) {
+			m_files.erase(m_files.begin());
+		}
+	}
+
+	// returns true if the front entry came from a file
+	bool load_front() {
+		if (!m_has_front && !m_files.empty()) {
+			m_has_front = m_files.front()->read_all(m_front.data(), 1) == 1;
+			remove_used_files();
+		}
+		return m_has_front;
+	}
+
+	uint64_t held_count() {
+		return m_held.size()/m_num_bytes - m_held_pos;
+	}
+
+	void pop_held(const uint64_t & count) {
+		m_held_pos += count;
+		if (held_count() == 0) {
+			m_held.clear();
+			m_held_pos = 0;
+		}
+	}
+
+	std::vector<tpie::stream_position> file_positions() {
+		std::vector<tpie::stream_position> positions;
+		for (std::unique_ptr<FileStream> & file : m_files) {
+			positions.push_back(file->get_position());
+		}
+		return positions;
+	}
+
+	void reset_files(const std::vector<tpie::stream_position> & positions) {
+		for (uint64_t i=0; i<m_files.size(); i++) {
+			m_files[i]->set_position(positions[i]);
+		}
+	}
+
+	// writes the rest of every file to the stream, in order
+	void copy_files(FileStream & out) {
+		tpie_vector<uint8_t> batch(FIFOQ_CHECKPOINT_BATCH*m_num_bytes);
+		for (std::unique_ptr<FileStream> & file : m_files) {
+			while (true) {
+				uint64_t count = file->read_all(batch.data(), FIFOQ_CHECKPOINT_BATCH);
+				if (count == 0) {
+					break;
+				}
+				out.write_all(batch.data(), count);
+			}
+		}
+	}
+
+	// moves the held entries and the queue's entries into a new file, after the other files
+	void drain_queue() {
+
+		if (held_count() == 0 && m_queue->empty()) {
+			return;
+		}
+
+		std::unique_ptr<FileStream> file(new FileStream(m_num_bytes));
+		file->open_temp(m_compressed);
+		file->count_io(&m_io);
+		if (held_count() > 0) {
+			file->write_all(m_held.data() + m_held_pos*m_num_bytes, held_count());
+			pop_held(held_count());
+		}
+
+		tpie_vector<uint8_t> batch(FIFOQ_CHECKPOINT_BATCH*m_num_bytes);
+		while (true) {
+			uint64_t count = m_queue->pop_into(batch.data(), FIFOQ_CHECKPOINT_BATCH);
+			if (count == 0) {
+				break;
+			}
+			try {
+				file->write_all(batch.data(), count);
+			} catch (...) {
+				// keep the entries that made it into the file, and hold the batch in memory,
+				// since pushing it back would put it behind the rest of the queue
+				m_held.assign(batch.begin(), batch.begin() + count*m_num_bytes);
+				file->seek(0);
+				add_file(file.release());
+				throw;
+			}
+		}
+		file->seek(0);
+		add_file(file.release());
+	}
+};
+
+
+/*
+	Write-behind queue, that keeps disk I/O off the calling thread.
+	Pushes fill a block of entries in memory, and full blocks are handed to a background I/O thread
+	that pushes them to the wrapped queue, so the caller only waits when too many blocks are in flight.
+	The I/O thread also reads the next block from the wrapped queue ahead of time, so pops only wait when
+	they catch up with the reads. When nothing is on disk, pops take blocks straight from the writes, or the tail.
+
+	Entries are always in this order, front to back:
+	head block, read-ahead blocks, wrapped queue, in-flight writes, tail block.
+	Only the I/O thread uses the wrapped queue, except while it's idle and the caller holds the lock.
+
+	Blocks are allocated through TPIE, and count against the queue's memory budget: the wrapped queue gets
+	whatever is left of the budget after the most blocks there can be at once, i.e. the blocks in flight,
+	the one being written, the head, the tail, and the read-ahead.
+*/
+
+#define ASYNC_FIFOQ_READ_AHEAD 1
+#define ASYNC_FIFOQ_EXTRA_BLOCKS (3 + ASYNC_FIFOQ_READ_AHEAD)
+
+struct AsyncFIFOQBlock {
+
+	tpie_vector<uint8_t> bytes;
+	uint64_t count;
+
+	AsyncFIFOQBlock(const uint64_t & num_bytes) :
+		bytes(num_bytes),
+		count(0)
+	{}
+};
+
+class AsyncFIFOQueue : public IFIFOQueue {
+public:
+
+	typedef std::unique_ptr<AsyncFIFOQBlock> Block;
+
+	static uint64_t block_entries(const uint32_t & num_bytes) {
+		return std::max<uint64_t>(1, tpie::get_block_size()/num_bytes);
+	}
+
+	static uint64_t blocks_bytes(const uint32_t & num_bytes, const uint32_t & max_in_flight) {
+		return (max_in_flight + ASYNC_FIFOQ_EXTRA_BLOCKS)*block_entries(num_bytes)*num_bytes;
+	}
+
+	// the budget left for the wrapped queue, or 0 for TPIE's default
+	static uint64_t queue_budget(const uint32_t & num_bytes, const uint64_t & memory_bytes, const uint32_t & max_in_flight) {
+		if (memory_bytes == 0) {
+			return 0;
+		}
+		uint64_t min_bytes = blocks_bytes(num_bytes, max_in_flight);
+		if (memory_bytes <= min_bytes) {
+			throw_exception("write-behind queue needs more than %lu bytes for its blocks, not %lu", min_bytes, memory_bytes);
+		}
+		return memory_bytes - min_bytes;
+	}
+
+	AsyncFIFOQueue(IFIFOQueue * queue, const uint32_t & max_in_flight) :
+		m_queue(queue),
+		m_num_bytes(queue->get_num_bytes()),
+		m_block_entries(block_entries(queue->get_num_bytes())),
+		m_max_in_flight(max_in_flight),
+		m_tail(new_block()),
+		m_head(new_block()),
+		m_head_offset(0),
+		m_size(0),
+		m_queue_size(0),
+		m_busy(false),
+		m_stop(false),
+		m_error(NULL)
+	{
+		update_disk_stats();
+		m_thread = std::thread(&AsyncFIFOQueue::run_io, this);
+	}
+
+	~AsyncFIFOQueue() {
+		{
+			std::lock_guard<std::mutex> lock(m_mutex);
+			m_stop = true;
+		}
+		m_changed.notify_all();
+		m_thread.join();
+		delete[] m_error;
+	}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const uint8_t * bytes) {
+		push_all(bytes, 1);
+	}
+
+	void push_all(const uint8_t * bytes, const uint64_t count) {
+		uint64_t i = 0;
+		while (i < count) {
+			uint64_t n = std::min(m_block_entries - m_tail->count, count - i);
+			std::memcpy(m_tail->bytes.data() + m_tail->count*m_num_bytes, bytes + i*m_num_bytes, n*m_num_bytes);
+			m_tail->count += n;
+			m_size += n;
+			i += n;
+			if (m_tail->count == m_block_entries) {
+				write_tail();
+			}
+		}
+	}
+
+	const uint8_t * front() {
+		load_head();
+		return m_head->bytes.data() + m_head_offset*m_num_bytes;
+	}
+
+	void pop() {
+		load_head();
+		m_head_offset++;
+		m_size--;
+	}
+
+	uint64_t pop_into(uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		while (count < max && m_size > 0) {
+			load_head();
+			uint64_t n = std::min(m_head->count - m_head_offset, max - count);
+			std::memcpy(bytes + count*m_num_bytes, m_head->bytes.data() + m_head_offset*m_num_bytes, n*m_num_bytes);
+			m_head_offset += n;
+			m_size -= n;
+			count += n;
+		}
+		return count;
+	}
+
+	uint64_t size() {
+		return m_size;
+	}
+
+	bool empty() {
+		return m_size == 0;
+	}
+
+	uint64_t get_memory_budget() {
+		std::unique_lock<std::mutex> lock(m_mutex);
+		wait_idle(lock);
+		return m_queue->get_memory_budget() + blocks_bytes(m_num_bytes, m_max_in_flight);
+	}
+
+	void set_memory_budget(const uint64_t & memory_bytes) {
+		uint64_t queue_bytes = queue_budget(m_num_bytes, memory_bytes, m_max_in_flight);
+		std::unique_lock<std::mutex> lock(m_mutex);
+		wait_idle(lock);
+		m_queue->set_memory_budget(queue_bytes);
+		update_disk_stats();
+	}
+
+	// the blocks never change size, so this is up to the wrapped queue
+	bool resizes_in_place() {
+		return m_queue->resizes_in_place();
+	}
+
+	// the wrapped queue's stats, as of its last change, so callers don't wait for the I/O thread
+	bool get_disk_stats(uint64_t & entries_on_disk, IOCounts & io) {
+		entries_on_disk = m_entries_on_disk.load(std::memory_order_relaxed);
+		io.bytes_read = m_bytes_read.load(std::memory_order_relaxed);
+		io.bytes_written = m_bytes_written.load(std::memory_order_relaxed);
+		return m_exact.load(std::memory_order_relaxed);
+	}
+
+private:
+
+	std::unique_ptr<IFIFOQueue> m_queue;
+	uint32_t m_num_bytes;
+	uint64_t m_block_entries;
+	uint32_t m_max_in_flight;
+
+	// only used by the calling thread
+	Block m_tail;
+	Block m_head;
+	uint64_t m_head_offset;
+	uint64_t m_size;
+
+	// shared with the I/O thread, guarded by the mutex
+	std::mutex m_mutex;
+	std::condition_variable m_changed;
+	std::deque<Block> m_writes;
+	std::deque<Block> m_reads;
+	std::vector<Block> m_free;
+	uint64_t m_queue_size;
+	bool m_busy;
+	bool m_stop;
+	char * m_error;
+
+	// copies of the wrapped queue's disk stats, written by whichever thread last changed it
+	std::atomic<bool> m_exact;
+	std::atomic<uint64_t> m_entries_on_disk;
+	std::atomic<uint64_t> m_bytes_read;
+	std::atomic<uint64_t> m_bytes_written;
+
+	std::thread m_thread;
+
+	Block new_block() {
+		return Block(new AsyncFIFOQBlock(m_block_entries*m_num_bytes));
+	}
+
+	// reuse old blocks, so there are never more than a few blocks in memory
+	Block take_free_block() {
+		if (m_free.empty()) {
+			return new_block();
+		}
+		Block block = std::move(m_free.back());
+		m_free.pop_back();
+		return block;
+	}
+
+	void check_error() {
+		if (m_error) {
+			throw_exception("I/O thread failed: %s", m_error);
+		}
+	}
+
+	void wait_idle(std::unique_lock<std::mutex> & lock) {
+		m_changed.wait(lock, [this] { return !m_busy; });
+		check_error();
+	}
+
+	void write_tail() {
+		{
+			std::unique_lock<std::mutex> lock(m_mutex);
+			m_changed.wait(lock, [this] { return m_writes.size() < m_max_in_flight || m_error; });
+			check_error();
+			m_writes.push_back(std::move(m_tail));
+			m_tail = take_free_block();
+		}
+		m_changed.notify_all();
+	}
+
+	void load_head() {
+
+		if (m_size == 0) {
+			throw_exception("end of stream");
+		}
+		if (m_head_offset < m_head->count) {
+			return;
+		}
+
+		{
+			std::unique_lock<std::mutex> lock(m_mutex);
+
+			// wait for the read-ahead, unless nothing is on disk
+			m_changed.wait(lock, [this] { return !m_reads.empty() || (m_queue_size == 0 && !m_busy) || m_error; });
+			check_error();
+
+			// take the next block, skipping the disk if we can
+			Block next;
+			if (!m_reads.empty()) {
+				next = std::move(m_reads.front());
+				m_reads.pop_front();
+			} else if (!m_writes.empty()) {
+				next = std::move(m_writes.front());
+				m_writes.pop_front();
+			} else {
+				next = std::move(m_tail);
+				m_tail = take_free_block();
+			}
+
+			m_head->count = 0;
+			m_free.push_back(std::move(m_head));
+			m_head = std::move(next);
+			m_head_offset = 0;
+		}
+		m_changed.notify_all();
+	}
+
+	// only call while no other thread is using the wrapped queue
+	void update_disk_stats() {
+		uint64_t entries_on_disk = 0;
+		IOCounts io;
+		m_exact.store(m_queue->get_disk_stats(entries_on_disk, io), std::memory_order_relaxed);
+		m_entries_on_disk.store(entries_on_disk, std::memory_order_relaxed);
+		m_bytes_read.store(io.bytes_read, std::memory_order_relaxed);
+		m_bytes_written.store(io.bytes_written, std::memory_order_relaxed);
+	}
+
+	bool wants_read() {
+		return m_reads.size() < ASYNC_FIFOQ_READ_AHEAD && m_queue_size > 0;
+	}
+
+	void run_io() {
+		std::unique_lock<std::mutex> lock(m_mutex);
+		while (true) {
+
+			m_changed.wait(lock, [this] { return m_stop || (!m_error && (wants_read() || !m_writes.empty())); });
+			if (m_stop) {
+				return;
+			}
+
+			// do the I/O without holding the lock, so the caller can keep going
+			// reads go first, since the caller may be waiting for them
+			m_busy = true;
+			try {
+				if (wants_read()) {
+					Block block = take_free_block();
+					lock.unlock();
+					block->count = m_queue->pop_into(block->bytes.data(), m_block_entries);
+					update_disk_stats();
+					lock.lock();
+					m_queue_size -= block->count;
+					m_reads.push_back(std::move(block));
+				} else {
+					Block block = std::move(m_writes.front());
+					m_writes.pop_front();
+					lock.unlock();
+					m_queue->push_all(block->bytes.data(), block->count);
+					update_disk_stats();
+					lock.lock();
+					m_queue_size += block->count;
+					block->count = 0;
+					m_free.push_back(std::move(block));
+				}
+			} catch (char * msg) {
+				set_error(lock, msg);
+			} catch (std::exception & ex) {
+				char * msg = new char[std::strlen(ex.what()) + 1];
+				std::strcpy(msg, ex.what());
+				set_error(lock, msg);
+			}
+			m_busy = false;
+			m_changed.notify_all();
+		}
+	}
+
+	// keeps the first error, and reports it to the caller on its next wait
+	void set_error(std::unique_lock<std::mutex> & lock, char * msg) {
+		if (!lock.owns_lock()) {
+			lock.lock();
+		}
+		if (m_error) {
+			delete[] msg;
+		} else {
+			m_error = msg;
+		}
+	}
+};
+
+
 // java ids
 
 define_class(fifoq_entry, "edu/duke/cs/tpie/FIFOQueue$Entry");
@@ -100,22 +1190,120 @@ define_field_id(fifoq_entry, data, "data", "Ljava/nio/ByteBuffer;");
 define_method_id(fifoq_entry, ctor, "<init>", "(Ledu/duke/cs/tpie/FIFOQueue;)V");
 
 
+// writes the front entry into the jentry, without allocating anything on the Java heap
+static void write_front(JNIEnv * env, IFIFOQueue & q, jobject jentry) {
+	jobject jbuf = get_field(env, fifoq_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	write_buffer(env, jbuf, q.front(), q.get_num_bytes());
+	env->DeleteLocalRef(jbuf);
+}
+
+
 // java methods
 
 JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_create(
 	JNIEnv * env,
 	jclass c __attribute__((unused)),
-	jint num_bytes
+	jint num_bytes,
+	jlong memory_bytes,
+	jboolean compressed
 ) {
 	try_jni_exceptions();
 
-	IFIFOQueue * q = IFIFOQueue::make((uint32_t)num_bytes);
+	// queues with their own budgets are the ones that get rebalanced, so they start out resizable
+	std::unique_ptr<IFIFOQueue> queue(IFIFOQueue::make((uint32_t)num_bytes, (uint64_t)memory_bytes, (bool)compressed, memory_bytes > 0));
+	IFIFOQueue * q = new CheckpointableFIFOQueue(queue.release(), NULL, (bool)compressed);
 	return (jlong)q->to_handle();
 
 	catch_jni_exceptions(env);
 	return -1;
 }
 
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_createAsync(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes,
+	jlong memory_bytes,
+	jboolean compressed,
+	jint max_blocks_in_flight
+) {
+	try_jni_exceptions();
+
+	if (max_blocks_in_flight <= 0) {
+		throw_exception("need at least one block in flight, not %d", max_blocks_in_flight);
+	}
+	if (num_bytes <= 0) {
+		throw_exception("unsupported entry size for queue: %d", num_bytes);
+	}
+
+	uint64_t queue_bytes = AsyncFIFOQueue::queue_budget((uint32_t)num_bytes, (uint64_t)memory_bytes, (uint32_t)max_blocks_in_flight);
+	// the wrapped queue resizes in place, so the I/O thread never has to be stopped to replace it
+	std::unique_ptr<IFIFOQueue> inner(IFIFOQueue::make((uint32_t)num_bytes, queue_bytes, (bool)compressed, true));
+	std::unique_ptr<IFIFOQueue> queue(new AsyncFIFOQueue(inner.release(), (uint32_t)max_blocks_in_flight));
+	IFIFOQueue * q = new CheckpointableFIFOQueue(queue.release(), NULL, (bool)compressed);
+	return (jlong)q->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_restore(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes,
+	jstring jpath
+) {
+	try_jni_exceptions();
+
+	// get the path string from java
+	const char * path = env->GetStringUTFChars(jpath, NULL);
+	check_jni_exception(env);
+
+	IFIFOQueue * q;
+	try {
+		std::unique_ptr<IFIFOQueue> queue(IFIFOQueue::make((uint32_t)num_bytes));
+		FileStream * file = CheckpointableFIFOQueue::open_checkpoint((uint32_t)num_bytes, path);
+		q = new CheckpointableFIFOQueue(queue.release(), file, false);
+	} catch (char * msg) {
+		env->ReleaseStringUTFChars(jpath, path);
+		throw msg;
+	}
+
+	// cleanup JNI
+	env->ReleaseStringUTFChars(jpath, path);
+
+	return (jlong)q->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_checkpoint(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jstring jpath
+) {
+	try_jni_exceptions();
+
+	// get the path string from java
+	const char * path = env->GetStringUTFChars(jpath, NULL);
+	check_jni_exception(env);
+
+	IFIFOQueue & q = *IFIFOQueue::from_handle(handle);
+	try {
+		q.checkpoint(path);
+	} catch (char * msg) {
+		env->ReleaseStringUTFChars(jpath, path);
+		throw msg;
+	}
+
+	// cleanup JNI
+	env->ReleaseStringUTFChars(jpath, path);
+
+	catch_jni_exceptions(env);
+}
+
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_cleanup(
 	JNIEnv * env,
 	jclass c __attribute__((unused)),
@@ -139,18 +1327,37 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_push(
 	// get the jentry bytes
 	jobject jbuf = get_field(env, fifoq_entry, data, GetObjectField, jentry);
 	check_jni_exception(env);
-	jbyteArray jbufArray = (jbyteArray)call_method(env, byte_buffer, array, CallObjectMethod, jbuf);
-	check_jni_exception(env);
-	jbyte * jbufBytes = env->GetByteArrayElements(jbufArray, NULL);
-	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
 
 	// push to the queue
 	IFIFOQueue & q = *IFIFOQueue::from_handle(handle);
-	q.push((uint8_t *)jbufBytes);
+	q.push(buf.get_bytes());
 
 	// jni cleanup
-	env->ReleaseByteArrayElements(jbufArray, jbufBytes, JNI_ABORT);
-	check_jni_exception(env);
+	buf.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_pushAll(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jdata,
+	jint offset,
+	jint count
+) {
+	try_jni_exceptions();
+
+	// get the java buffer
+	jni_buffer data(env, jdata);
+
+	// push everything to the queue
+	IFIFOQueue & q = *IFIFOQueue::from_handle(handle);
+	q.push_all(data.get_bytes() + offset, (uint64_t)count);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
 
 	catch_jni_exceptions(env);
 }
@@ -170,17 +1377,13 @@ JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_FIFOQueue_front(
 	jobject jentry = new_class(env, fifoq_entry, ctor, jqueue);
 	jobject jbuf = get_field(env, fifoq_entry, data, GetObjectField, jentry);
 	check_jni_exception(env);
-	jbyteArray jbufArray = (jbyteArray)call_method(env, byte_buffer, array, CallObjectMethod, jbuf);
-	check_jni_exception(env);
-	jbyte * jbufBytes = env->GetByteArrayElements(jbufArray, NULL);
-	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
 
 	// convert entry
-	std::memcpy((uint8_t *)jbufBytes, q.front(), q.get_num_bytes());
+	std::memcpy(buf.get_bytes(), q.front(), q.get_num_bytes());
 
 	// jni cleanup
-	env->ReleaseByteArrayElements(jbufArray, jbufBytes, 0);
-	check_jni_exception(env);
+	buf.release(0);
 
 	return jentry;
 
@@ -188,6 +1391,47 @@ JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_FIFOQueue_front(
 	return NULL;
 }
 
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_frontInto(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IFIFOQueue & q = *IFIFOQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("queue is empty");
+	}
+
+	write_front(env, q, jentry);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_FIFOQueue_popFront(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IFIFOQueue & q = *IFIFOQueue::from_handle(handle);
+	if (q.empty()) {
+		return false;
+	}
+
+	write_front(env, q, jentry);
+	q.pop();
+	return true;
+
+	catch_jni_exceptions(env);
+	return false;
+}
+
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_pop(
 	JNIEnv * env,
 	jclass c __attribute__((unused)),
@@ -205,6 +1449,32 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_pop(
 	catch_jni_exceptions(env);
 }
 
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_FIFOQueue_popInto(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jdata,
+	jint offset,
+	jint max
+) {
+	try_jni_exceptions();
+
+	// get the java buffer
+	jni_buffer data(env, jdata);
+
+	// pop everything we can from the queue
+	IFIFOQueue & q = *IFIFOQueue::from_handle(handle);
+	uint64_t count = q.pop_into(data.get_bytes() + offset, (uint64_t)max);
+
+	// jni cleanup
+	data.release(0);
+
+	return (jint)count;
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
 JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_size(
 	JNIEnv * env,
 	jclass c __attribute__((unused)),
@@ -233,3 +1503,45 @@ JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_FIFOQueue_empty(
 	return true;
 }
 
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_getMemoryBudget(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IFIFOQueue & q = *IFIFOQueue::from_handle(handle);
+	return (jlong)q.get_memory_budget();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_setMemoryBudget(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jlong memory_bytes
+) {
+	try_jni_exceptions();
+
+	IFIFOQueue & q = *IFIFOQueue::from_handle(handle);
+	q.set_memory_budget((uint64_t)memory_bytes);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_trackStats(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jblock
+) {
+	try_jni_exceptions();
+
+	IFIFOQueue & q = *IFIFOQueue::from_handle(handle);
+	q.attach_stats(get_stats_block(env, jblock));
+
+	catch_jni_exceptions(env);
+}
+
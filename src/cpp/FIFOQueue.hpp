@@ -10,10 +10,26 @@ extern "C" {
 /*
  * Class:     edu_duke_cs_tpie_FIFOQueue
  * Method:    create
- * Signature: (I)J
+ * Signature: (IJZ)J
  */
 JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_create
-  (JNIEnv *, jclass, jint);
+  (JNIEnv *, jclass, jint, jlong, jboolean);
+
+/*
+ * Class:     edu_duke_cs_tpie_FIFOQueue
+ * Method:    createAsync
+ * Signature: (IJZI)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_createAsync
+  (JNIEnv *, jclass, jint, jlong, jboolean, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_FIFOQueue
+ * Method:    restore
+ * Signature: (ILjava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_restore
+  (JNIEnv *, jclass, jint, jstring);
 
 /*
  * Class:     edu_duke_cs_tpie_FIFOQueue
@@ -23,6 +39,14 @@ JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_create
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_cleanup
   (JNIEnv *, jclass, jlong);
 
+/*
+ * Class:     edu_duke_cs_tpie_FIFOQueue
+ * Method:    checkpoint
+ * Signature: (JLjava/lang/String;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_checkpoint
+  (JNIEnv *, jclass, jlong, jstring);
+
 /*
  * Class:     edu_duke_cs_tpie_FIFOQueue
  * Method:    push
@@ -31,6 +55,14 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_cleanup
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_push
   (JNIEnv *, jclass, jlong, jobject);
 
+/*
+ * Class:     edu_duke_cs_tpie_FIFOQueue
+ * Method:    pushAll
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_pushAll
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
 /*
  * Class:     edu_duke_cs_tpie_FIFOQueue
  * Method:    front
@@ -39,6 +71,14 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_push
 JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_FIFOQueue_front
   (JNIEnv *, jclass, jlong, jobject);
 
+/*
+ * Class:     edu_duke_cs_tpie_FIFOQueue
+ * Method:    frontInto
+ * Signature: (JLedu/duke/cs/tpie/FIFOQueue/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_frontInto
+  (JNIEnv *, jclass, jlong, jobject);
+
 /*
  * Class:     edu_duke_cs_tpie_FIFOQueue
  * Method:    pop
@@ -47,6 +87,22 @@ JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_FIFOQueue_front
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_pop
   (JNIEnv *, jclass, jlong);
 
+/*
+ * Class:     edu_duke_cs_tpie_FIFOQueue
+ * Method:    popFront
+ * Signature: (JLedu/duke/cs/tpie/FIFOQueue/Entry;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_FIFOQueue_popFront
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_FIFOQueue
+ * Method:    popInto
+ * Signature: (JLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_FIFOQueue_popInto
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
 /*
  * Class:     edu_duke_cs_tpie_FIFOQueue
  * Method:    size
@@ -63,6 +119,30 @@ JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_size
 JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_FIFOQueue_empty
   (JNIEnv *, jclass, jlong);
 
+/*
+ * Class:     edu_duke_cs_tpie_FIFOQueue
+ * Method:    getMemoryBudget
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FIFOQueue_getMemoryBudget
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_FIFOQueue
+ * Method:    setMemoryBudget
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_setMemoryBudget
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_FIFOQueue
+ * Method:    trackStats
+ * Signature: (JLjava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FIFOQueue_trackStats
+  (JNIEnv *, jclass, jlong, jobject);
+
 #ifdef __cplusplus
 }
 #endif
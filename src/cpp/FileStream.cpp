@@ -0,0 +1,192 @@
+
+#include <tpie/tpie.h>
+#include <tpie/file_stream.h>
+#include "FileStream.hpp"
+#include "jni.hpp"
+#include "file_stream.hpp"
+
+
+static tpie::access_type to_access_type(const jint & access) {
+	switch (access) {
+		case 0: return tpie::access_read;
+		case 1: return tpie::access_write;
+		case 2: return tpie::access_read_write;
+	}
+	throw_exception("unknown access type: %d", access);
+	return tpie::access_read_write;
+}
+
+
+// java methods
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FileStream_create(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes
+) {
+	try_jni_exceptions();
+
+	if (num_bytes <= 0) {
+		throw_exception("unsupported record size for file stream: %d", num_bytes);
+	}
+
+	FileStream * s = new FileStream((uint32_t)num_bytes);
+	s->open_temp();
+	return (jlong)s->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FileStream_createNamed(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes,
+	jstring jpath,
+	jint access
+) {
+	try_jni_exceptions();
+
+	if (num_bytes <= 0) {
+		throw_exception("unsupported record size for file stream: %d", num_bytes);
+	}
+
+	// get the path string from java
+	const char * path = env->GetStringUTFChars(jpath, NULL);
+	check_jni_exception(env);
+
+	FileStream * s = new FileStream((uint32_t)num_bytes);
+	try {
+		s->open(path, to_access_type(access));
+	} catch (char * msg) {
+		delete s;
+		env->ReleaseStringUTFChars(jpath, path);
+		throw msg;
+	}
+
+	// cleanup JNI
+	env->ReleaseStringUTFChars(jpath, path);
+
+	return (jlong)s->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FileStream_cleanup(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	delete FileStream::from_handle((uint64_t)handle);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FileStream_writeAll(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jdata,
+	jint offset,
+	jint count
+) {
+	try_jni_exceptions();
+
+	// get the java buffer
+	jni_buffer data(env, jdata);
+
+	// write everything to the stream
+	FileStream & s = *FileStream::from_handle(handle);
+	s.write_all(data.get_bytes() + offset, (uint64_t)count);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_FileStream_readAll(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jdata,
+	jint offset,
+	jint max
+) {
+	try_jni_exceptions();
+
+	// get the java buffer
+	jni_buffer data(env, jdata);
+
+	// read everything we can from the stream
+	FileStream & s = *FileStream::from_handle(handle);
+	uint64_t count = s.read_all(data.get_bytes() + offset, (uint64_t)max);
+
+	// jni cleanup
+	data.release(0);
+
+	return (jint)count;
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FileStream_offset(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	FileStream & s = *FileStream::from_handle(handle);
+	return (jlong)s.offset();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FileStream_seek(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jlong index
+) {
+	try_jni_exceptions();
+
+	FileStream & s = *FileStream::from_handle(handle);
+	s.seek((uint64_t)index);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FileStream_size(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	FileStream & s = *FileStream::from_handle(handle);
+	return (jlong)s.size();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FileStream_truncate(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jlong count
+) {
+	try_jni_exceptions();
+
+	FileStream & s = *FileStream::from_handle(handle);
+	s.truncate((uint64_t)count);
+
+	catch_jni_exceptions(env);
+}
+
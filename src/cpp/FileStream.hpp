@@ -0,0 +1,96 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class edu_duke_cs_tpie_FileStream */
+
+#ifndef _Included_edu_duke_cs_tpie_FileStream
+#define _Included_edu_duke_cs_tpie_FileStream
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     edu_duke_cs_tpie_FileStream
+ * Method:    create
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FileStream_create
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_FileStream
+ * Method:    createNamed
+ * Signature: (ILjava/lang/String;I)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FileStream_createNamed
+  (JNIEnv *, jclass, jint, jstring, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_FileStream
+ * Method:    cleanup
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FileStream_cleanup
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_FileStream
+ * Method:    writeAll
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FileStream_writeAll
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_FileStream
+ * Method:    readAll
+ * Signature: (JLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_FileStream_readAll
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_FileStream
+ * Method:    offset
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FileStream_offset
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_FileStream
+ * Method:    seek
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FileStream_seek
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_FileStream
+ * Method:    size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_FileStream_size
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_FileStream
+ * Method:    truncate
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_FileStream_truncate
+  (JNIEnv *, jclass, jlong, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
+/* Header for class edu_duke_cs_tpie_FileStream_Access */
+
+#ifndef _Included_edu_duke_cs_tpie_FileStream_Access
+#define _Included_edu_duke_cs_tpie_FileStream_Access
+#ifdef __cplusplus
+extern "C" {
+#endif
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,271 @@
+#include <cstring>
+#include <tpie/tpie.h>
+#include <tpie/priority_queue.h>
+#include "IntPriorityQueue.hpp"
+#include "jni.hpp"
+#include "priority_queue.hpp"
+
+
+typedef IPriorityQueue<int32_t> IIntPriorityQueue;
+
+
+// java ids
+
+define_class(ipq_entry, "edu/duke/cs/tpie/IntPriorityQueue$Entry");
+
+define_field_id(ipq_entry, priority, "priority", "I");
+define_field_id(ipq_entry, data, "data", "Ljava/nio/ByteBuffer;");
+
+define_method_id(ipq_entry, ctor, "<init>", "(Ledu/duke/cs/tpie/IntPriorityQueue;)V");
+
+
+// writes the top entry into the jentry, without allocating anything on the Java heap
+static void write_top(JNIEnv * env, IIntPriorityQueue & q, jobject jentry) {
+	set_field(env, ipq_entry, priority, SetIntField, jentry, (jint)q.top_priority());
+	check_jni_exception(env);
+	jobject jbuf = get_field(env, ipq_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	write_buffer(env, jbuf, q.top_bytes(), q.get_num_bytes());
+	env->DeleteLocalRef(jbuf);
+}
+
+
+// java methods
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_create(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes
+) {
+	try_jni_exceptions();
+
+	IIntPriorityQueue * q = IIntPriorityQueue::make((uint32_t)num_bytes);
+	return (jlong)q->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_cleanup(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	delete IIntPriorityQueue::from_handle((uint64_t)handle);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_push(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get the jentry bytes
+	jobject jbuf = get_field(env, ipq_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
+
+	// push to the queue
+	IIntPriorityQueue & q = *IIntPriorityQueue::from_handle(handle);
+	q.push(
+		get_field(env, ipq_entry, priority, GetIntField, jentry),
+		buf.get_bytes()
+	);
+	check_jni_exception(env);
+
+	// jni cleanup
+	buf.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_pushAll(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jintArray jpriorities,
+	jobject jdata,
+	jint offset,
+	jint count
+) {
+	try_jni_exceptions();
+
+	// get the java arrays and buffers
+	jint * jprioritiesInts = env->GetIntArrayElements(jpriorities, NULL);
+	check_jni_exception(env);
+	jni_buffer data(env, jdata);
+
+	// push everything to the queue
+	IIntPriorityQueue & q = *IIntPriorityQueue::from_handle(handle);
+	q.push_all(
+		(int32_t *)jprioritiesInts,
+		data.get_bytes() + offset,
+		(uint64_t)count
+	);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
+	env->ReleaseIntArrayElements(jpriorities, jprioritiesInts, JNI_ABORT);
+	check_jni_exception(env);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_top(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jqueue
+) {
+	try_jni_exceptions();
+	
+	// get our queue
+	IIntPriorityQueue & q = *IIntPriorityQueue::from_handle(handle);
+
+	// make the jentry and get the bytes
+	jobject jentry = new_class(env, ipq_entry, ctor, jqueue);
+	jobject jbuf = get_field(env, ipq_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
+
+	// convert entry
+	set_field(env, ipq_entry, priority, SetIntField, jentry, (jint)q.top_priority());
+	check_jni_exception(env);
+	std::memcpy(buf.get_bytes(), q.top_bytes(), q.get_num_bytes());
+
+	// jni cleanup
+	buf.release(0);
+
+	return jentry;
+
+	catch_jni_exceptions(env);
+	return NULL;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_topInto(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IIntPriorityQueue & q = *IIntPriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("queue is empty");
+	}
+
+	write_top(env, q, jentry);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_popTop(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IIntPriorityQueue & q = *IIntPriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		return false;
+	}
+
+	write_top(env, q, jentry);
+	q.pop();
+	return true;
+
+	catch_jni_exceptions(env);
+	return false;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_pop(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IIntPriorityQueue & q = *IIntPriorityQueue::from_handle(handle);
+	try {
+		q.pop();
+	} catch (tpie::end_of_stream_exception ex) {
+		throw_exception("end of stream");
+	}
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_popInto(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jintArray jpriorities,
+	jobject jdata,
+	jint offset,
+	jint max
+) {
+	try_jni_exceptions();
+
+	// get the java arrays and buffers
+	jint * jprioritiesInts = env->GetIntArrayElements(jpriorities, NULL);
+	check_jni_exception(env);
+	jni_buffer data(env, jdata);
+
+	// pop everything we can from the queue
+	IIntPriorityQueue & q = *IIntPriorityQueue::from_handle(handle);
+	uint64_t count = q.pop_into(
+		(int32_t *)jprioritiesInts,
+		data.get_bytes() + offset,
+		(uint64_t)max
+	);
+
+	// jni cleanup
+	data.release(0);
+	env->ReleaseIntArrayElements(jpriorities, jprioritiesInts, 0);
+	check_jni_exception(env);
+
+	return (jint)count;
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_size(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IIntPriorityQueue & q = *IIntPriorityQueue::from_handle(handle);
+	return (jlong)q.size();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_empty(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IIntPriorityQueue & q = *IIntPriorityQueue::from_handle(handle);
+	return (jboolean)q.empty();
+
+	catch_jni_exceptions(env);
+	return true;
+}
+
@@ -0,0 +1,112 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class edu_duke_cs_tpie_IntPriorityQueue */
+
+#ifndef _Included_edu_duke_cs_tpie_IntPriorityQueue
+#define _Included_edu_duke_cs_tpie_IntPriorityQueue
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    create
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_create
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    cleanup
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_cleanup
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    push
+ * Signature: (JLedu/duke/cs/tpie/IntPriorityQueue/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_push
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    pushAll
+ * Signature: (J[ILjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_pushAll
+  (JNIEnv *, jclass, jlong, jintArray, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    top
+ * Signature: (JLedu/duke/cs/tpie/IntPriorityQueue;)Ledu/duke/cs/tpie/IntPriorityQueue/Entry;
+ */
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_top
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    topInto
+ * Signature: (JLedu/duke/cs/tpie/IntPriorityQueue/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_topInto
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    pop
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_pop
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    popTop
+ * Signature: (JLedu/duke/cs/tpie/IntPriorityQueue/Entry;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_popTop
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    popInto
+ * Signature: (J[ILjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_popInto
+  (JNIEnv *, jclass, jlong, jintArray, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_size
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_IntPriorityQueue
+ * Method:    empty
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_IntPriorityQueue_empty
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
+/* Header for class edu_duke_cs_tpie_IntPriorityQueue_Entry */
+
+#ifndef _Included_edu_duke_cs_tpie_IntPriorityQueue_Entry
+#define _Included_edu_duke_cs_tpie_IntPriorityQueue_Entry
+#ifdef __cplusplus
+extern "C" {
+#endif
+#ifdef __cplusplus
+}
+#endif
+#endif
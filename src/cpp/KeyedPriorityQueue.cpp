@@ -0,0 +1,313 @@
+
+#include <cstring>
+#include <tpie/tpie.h>
+#include <tpie/priority_queue.h>
+#include "KeyedPriorityQueue.hpp"
+#include "jni.hpp"
+
+
+/*
+	Entries are stored as the key bytes, then the payload bytes, then zeros out to the template size.
+	Entries are ordered by comparing all their bytes as unsigned bytes, in order.
+	So the key decides the order, and the payload only breaks ties between equal keys.
+*/
+template <int NumBytes>
+struct KPQEntry {
+	uint8_t bytes[NumBytes];
+};
+
+template <int NumBytes>
+inline bool operator < (const KPQEntry<NumBytes> & a, const KPQEntry<NumBytes> & b) {
+	return std::memcmp(a.bytes, b.bytes, NumBytes) < 0;
+}
+
+
+class IKeyedPriorityQueue {
+public:
+
+	static IKeyedPriorityQueue * make(const uint32_t & key_bytes, const uint32_t & num_bytes);
+
+	virtual ~IKeyedPriorityQueue() {}
+
+	virtual uint64_t to_handle() const {
+		return (uint64_t)this;
+	}
+
+	static IKeyedPriorityQueue * from_handle(const uint64_t handle) {
+		return (IKeyedPriorityQueue *)handle;
+	}
+
+	virtual uint32_t get_key_bytes() = 0;
+	virtual uint32_t get_num_bytes() = 0;
+
+	virtual void push(const uint8_t * key, const uint8_t * bytes) = 0;
+	virtual const uint8_t * top_key() = 0;
+	virtual const uint8_t * top_bytes() = 0;
+	virtual void pop() = 0;
+	virtual uint64_t size() = 0;
+	virtual bool empty() = 0;
+};
+
+template <int NumBytes>
+class KeyedPriorityQueue : public IKeyedPriorityQueue {
+public:
+
+	KeyedPriorityQueue(const uint32_t & key_bytes, const uint32_t & num_bytes) :
+		m_key_bytes(key_bytes),
+		m_num_bytes(num_bytes)
+	{}
+
+	uint32_t get_key_bytes() {
+		return m_key_bytes;
+	}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const uint8_t * key, const uint8_t * bytes) {
+		KPQEntry<NumBytes> entry;
+		std::memcpy(entry.bytes, key, m_key_bytes);
+		std::memcpy(entry.bytes + m_key_bytes, bytes, m_num_bytes);
+		std::memset(entry.bytes + m_key_bytes + m_num_bytes, 0, NumBytes - m_key_bytes - m_num_bytes);
+		m_queue.push(entry);
+	}
+
+	const uint8_t * top_key() {
+		return m_queue.top().bytes;
+	}
+
+	const uint8_t * top_bytes() {
+		return m_queue.top().bytes + m_key_bytes;
+	}
+
+	void pop() {
+		m_queue.pop();
+	}
+
+	uint64_t size() {
+		return m_queue.size();
+	}
+
+	bool empty() {
+		return m_queue.empty();
+	}
+
+private:
+
+	uint32_t m_key_bytes;
+	uint32_t m_num_bytes;
+	tpie::priority_queue<KPQEntry<NumBytes>> m_queue;
+};
+
+
+IKeyedPriorityQueue * IKeyedPriorityQueue::make(const uint32_t & key_bytes, const uint32_t & num_bytes) {
+
+	if (key_bytes == 0) {
+		throw_exception("unsupported key size for queue: %d", key_bytes);
+	}
+
+	// pad entries out to the next template size
+	uint32_t entry_bytes = key_bytes + num_bytes;
+	if (entry_bytes <=    8) return new KeyedPriorityQueue<   8>(key_bytes, num_bytes);
+	if (entry_bytes <=   16) return new KeyedPriorityQueue<  16>(key_bytes, num_bytes);
+	if (entry_bytes <=   32) return new KeyedPriorityQueue<  32>(key_bytes, num_bytes);
+	if (entry_bytes <=   64) return new KeyedPriorityQueue<  64>(key_bytes, num_bytes);
+	if (entry_bytes <=  128) return new KeyedPriorityQueue< 128>(key_bytes, num_bytes);
+	if (entry_bytes <=  256) return new KeyedPriorityQueue< 256>(key_bytes, num_bytes);
+	if (entry_bytes <=  512) return new KeyedPriorityQueue< 512>(key_bytes, num_bytes);
+	if (entry_bytes <= 1024) return new KeyedPriorityQueue<1024>(key_bytes, num_bytes);
+	throw_exception("unsupported entry size for queue: %d key bytes + %d payload bytes", key_bytes, num_bytes);
+	return NULL;
+}
+
+
+// java ids
+
+define_class(kpq_entry, "edu/duke/cs/tpie/KeyedPriorityQueue$Entry");
+
+define_field_id(kpq_entry, key, "key", "Ljava/nio/ByteBuffer;");
+define_field_id(kpq_entry, data, "data", "Ljava/nio/ByteBuffer;");
+
+define_method_id(kpq_entry, ctor, "<init>", "(Ledu/duke/cs/tpie/KeyedPriorityQueue;)V");
+
+
+// writes the top entry into the jentry, without allocating anything on the Java heap
+static void write_top(JNIEnv * env, IKeyedPriorityQueue & q, jobject jentry) {
+	jobject jkey = get_field(env, kpq_entry, key, GetObjectField, jentry);
+	check_jni_exception(env);
+	write_buffer(env, jkey, q.top_key(), q.get_key_bytes());
+	env->DeleteLocalRef(jkey);
+	jobject jbuf = get_field(env, kpq_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	write_buffer(env, jbuf, q.top_bytes(), q.get_num_bytes());
+	env->DeleteLocalRef(jbuf);
+}
+
+
+// java methods
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_create(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint key_bytes,
+	jint num_bytes
+) {
+	try_jni_exceptions();
+
+	IKeyedPriorityQueue * q = IKeyedPriorityQueue::make((uint32_t)key_bytes, (uint32_t)num_bytes);
+	return (jlong)q->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_cleanup(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	delete IKeyedPriorityQueue::from_handle((uint64_t)handle);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_push(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get the jentry bytes
+	jobject jkey = get_field(env, kpq_entry, key, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer key(env, jkey);
+	jobject jbuf = get_field(env, kpq_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
+
+	// push to the queue
+	IKeyedPriorityQueue & q = *IKeyedPriorityQueue::from_handle(handle);
+	q.push(key.get_bytes(), buf.get_bytes());
+
+	// jni cleanup
+	buf.release(JNI_ABORT);
+	key.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_top(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jqueue
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IKeyedPriorityQueue & q = *IKeyedPriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("queue is empty");
+	}
+
+	// make the jentry and fill it
+	jobject jentry = new_class(env, kpq_entry, ctor, jqueue);
+	check_jni_exception(env);
+	write_top(env, q, jentry);
+
+	return jentry;
+
+	catch_jni_exceptions(env);
+	return NULL;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_topInto(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IKeyedPriorityQueue & q = *IKeyedPriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("queue is empty");
+	}
+
+	write_top(env, q, jentry);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_popTop(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IKeyedPriorityQueue & q = *IKeyedPriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		return false;
+	}
+
+	write_top(env, q, jentry);
+	q.pop();
+	return true;
+
+	catch_jni_exceptions(env);
+	return false;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_pop(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IKeyedPriorityQueue & q = *IKeyedPriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("end of stream");
+	}
+	q.pop();
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_size(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IKeyedPriorityQueue & q = *IKeyedPriorityQueue::from_handle(handle);
+	return (jlong)q.size();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_empty(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IKeyedPriorityQueue & q = *IKeyedPriorityQueue::from_handle(handle);
+	return (jboolean)q.empty();
+
+	catch_jni_exceptions(env);
+	return true;
+}
+
@@ -0,0 +1,96 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class edu_duke_cs_tpie_KeyedPriorityQueue */
+
+#ifndef _Included_edu_duke_cs_tpie_KeyedPriorityQueue
+#define _Included_edu_duke_cs_tpie_KeyedPriorityQueue
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     edu_duke_cs_tpie_KeyedPriorityQueue
+ * Method:    create
+ * Signature: (II)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_create
+  (JNIEnv *, jclass, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_KeyedPriorityQueue
+ * Method:    cleanup
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_cleanup
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_KeyedPriorityQueue
+ * Method:    push
+ * Signature: (JLedu/duke/cs/tpie/KeyedPriorityQueue/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_push
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_KeyedPriorityQueue
+ * Method:    top
+ * Signature: (JLedu/duke/cs/tpie/KeyedPriorityQueue;)Ledu/duke/cs/tpie/KeyedPriorityQueue/Entry;
+ */
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_top
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_KeyedPriorityQueue
+ * Method:    topInto
+ * Signature: (JLedu/duke/cs/tpie/KeyedPriorityQueue/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_topInto
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_KeyedPriorityQueue
+ * Method:    pop
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_pop
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_KeyedPriorityQueue
+ * Method:    popTop
+ * Signature: (JLedu/duke/cs/tpie/KeyedPriorityQueue/Entry;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_popTop
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_KeyedPriorityQueue
+ * Method:    size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_size
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_KeyedPriorityQueue
+ * Method:    empty
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_KeyedPriorityQueue_empty
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
+/* Header for class edu_duke_cs_tpie_KeyedPriorityQueue_Entry */
+
+#ifndef _Included_edu_duke_cs_tpie_KeyedPriorityQueue_Entry
+#define _Included_edu_duke_cs_tpie_KeyedPriorityQueue_Entry
+#ifdef __cplusplus
+extern "C" {
+#endif
+#ifdef __cplusplus
+}
+#endif
+#endif
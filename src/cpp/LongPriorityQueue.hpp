@@ -0,0 +1,112 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class edu_duke_cs_tpie_LongPriorityQueue */
+
+#ifndef _Included_edu_duke_cs_tpie_LongPriorityQueue
+#define _Included_edu_duke_cs_tpie_LongPriorityQueue
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    create
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_create
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    cleanup
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_cleanup
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    push
+ * Signature: (JLedu/duke/cs/tpie/LongPriorityQueue/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_push
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    pushAll
+ * Signature: (J[JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_pushAll
+  (JNIEnv *, jclass, jlong, jlongArray, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    top
+ * Signature: (JLedu/duke/cs/tpie/LongPriorityQueue;)Ledu/duke/cs/tpie/LongPriorityQueue/Entry;
+ */
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_top
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    topInto
+ * Signature: (JLedu/duke/cs/tpie/LongPriorityQueue/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_topInto
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    pop
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_pop
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    popTop
+ * Signature: (JLedu/duke/cs/tpie/LongPriorityQueue/Entry;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_popTop
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    popInto
+ * Signature: (J[JLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_popInto
+  (JNIEnv *, jclass, jlong, jlongArray, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_size
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_LongPriorityQueue
+ * Method:    empty
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_LongPriorityQueue_empty
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
+/* Header for class edu_duke_cs_tpie_LongPriorityQueue_Entry */
+
+#ifndef _Included_edu_duke_cs_tpie_LongPriorityQueue_Entry
+#define _Included_edu_duke_cs_tpie_LongPriorityQueue_Entry
+#ifdef __cplusplus
+extern "C" {
+#endif
+#ifdef __cplusplus
+}
+#endif
+#endif
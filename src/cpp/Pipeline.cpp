@@ -0,0 +1,425 @@
+
+#include <cstring>
+#include <vector>
+#include <memory>
+#include <tpie/tpie.h>
+#include <tpie/memory.h>
+#include <tpie/dummy_progress.h>
+#include <tpie/pipelining/merge_sorter.h>
+#include "Pipeline.hpp"
+#include "jni.hpp"
+#include "fifo_queue.hpp"
+#include "file_stream.hpp"
+
+
+/*
+	Pipelines are described by Java as a flat program of ints, so the whole pipeline runs in one JNI call.
+	Each stage is an opcode followed by its arguments. Queues and file streams are referred to
+	by their index in a separate array of handles.
+
+	Stages are fused into a chain of nodes that push records to each other, so records only touch disk
+	inside the stages that need external memory, like sorting.
+*/
+
+#define PIPELINE_FROM_QUEUE  1 // handle index
+#define PIPELINE_FROM_STREAM 2 // handle index
+#define PIPELINE_PROJECT     3 // num ranges, then offset and length for each range
+#define PIPELINE_SORT        4 // key offset, key length
+#define PIPELINE_TO_QUEUE    5 // handle index
+#define PIPELINE_TO_STREAM   6 // handle index
+
+// number of records to read from a file stream at once
+#define PIPELINE_READ_RECORDS 256
+
+
+class PipelineNode {
+public:
+
+	virtual ~PipelineNode() {}
+
+	virtual void begin() = 0;
+	virtual void push(const uint8_t * bytes) = 0;
+	virtual void end() = 0;
+};
+
+
+// the last node in the pipeline, which counts the records that come out
+class OutputNode : public PipelineNode {
+public:
+
+	OutputNode() : m_count(0) {}
+
+	uint64_t get_count() {
+		return m_count;
+	}
+
+protected:
+
+	uint64_t m_count;
+};
+
+
+class QueueOutputNode : public OutputNode {
+public:
+
+	QueueOutputNode(IFIFOQueue & queue) : m_queue(queue) {}
+
+	void begin() {}
+
+	void push(const uint8_t * bytes) {
+		m_queue.push(bytes);
+		m_count++;
+	}
+
+	void end() {}
+
+private:
+
+	IFIFOQueue & m_queue;
+};
+
+
+class StreamOutputNode : public OutputNode {
+public:
+
+	StreamOutputNode(FileStream & stream) : m_stream(stream) {}
+
+	void begin() {}
+
+	void push(const uint8_t * bytes) {
+		m_stream.write_all(bytes, 1);
+		m_count++;
+	}
+
+	void end() {}
+
+private:
+
+	FileStream & m_stream;
+};
+
+
+class ProjectNode : public PipelineNode {
+public:
+
+	ProjectNode(PipelineNode & dest, const std::vector<uint32_t> & offsets, const std::vector<uint32_t> & lengths, const uint32_t num_bytes) :
+		m_dest(dest),
+		m_offsets(offsets),
+		m_lengths(lengths),
+		m_record(num_bytes)
+	{}
+
+	void begin() {
+		m_dest.begin();
+	}
+
+	void push(const uint8_t * bytes) {
+		uint32_t offset = 0;
+		for (size_t i=0; i<m_offsets.size(); i++) {
+			std::memcpy(m_record.data() + offset, bytes + m_offsets[i], m_lengths[i]);
+			offset += m_lengths[i];
+		}
+		m_dest.push(m_record.data());
+	}
+
+	void end() {
+		m_dest.end();
+	}
+
+private:
+
+	PipelineNode & m_dest;
+	std::vector<uint32_t> m_offsets;
+	std::vector<uint32_t> m_lengths;
+	std::vector<uint8_t> m_record;
+};
+
+
+template <int NumBytes>
+struct PipelineRecord {
+	uint8_t bytes[NumBytes];
+};
+
+template <int NumBytes>
+struct PipelineKeyCompare {
+
+	uint32_t key_offset;
+	uint32_t key_bytes;
+
+	PipelineKeyCompare(const uint32_t & key_offset = 0, const uint32_t & key_bytes = 0) :
+		key_offset(key_offset),
+		key_bytes(key_bytes)
+	{}
+
+	bool operator () (const PipelineRecord<NumBytes> & a, const PipelineRecord<NumBytes> & b) const {
+		return std::memcmp(a.bytes + key_offset, b.bytes + key_offset, key_bytes) < 0;
+	}
+};
+
+/*
+	Sorting splits the pipeline into phases: every record has to come in before any can go out.
+	Records are padded out to the next template size for the sorter.
+*/
+template <int NumBytes>
+class SortNode : public PipelineNode {
+public:
+
+	SortNode(PipelineNode & dest, const uint32_t num_bytes, const uint32_t key_offset, const uint32_t key_bytes, const tpie::memory_size_type memory) :
+		m_dest(dest),
+		m_num_bytes(num_bytes),
+		m_memory(memory),
+		m_sorter(PipelineKeyCompare<NumBytes>(key_offset, key_bytes))
+	{}
+
+	void begin() {
+		m_sorter.set_available_memory(m_memory);
+		m_sorter.begin();
+	}
+
+	void push(const uint8_t * bytes) {
+		PipelineRecord<NumBytes> record;
+		std::memcpy(record.bytes, bytes, m_num_bytes);
+		m_sorter.push(record);
+	}
+
+	void end() {
+		m_sorter.end();
+		tpie::dummy_progress_indicator progress;
+		m_sorter.calc(progress);
+
+		// then start the next phase
+		m_dest.begin();
+		while (m_sorter.can_pull()) {
+			const PipelineRecord<NumBytes> record = m_sorter.pull();
+			m_dest.push(record.bytes);
+		}
+		m_dest.end();
+	}
+
+private:
+
+	PipelineNode & m_dest;
+	uint32_t m_num_bytes;
+	tpie::memory_size_type m_memory;
+	tpie::merge_sorter<PipelineRecord<NumBytes>, false, PipelineKeyCompare<NumBytes>> m_sorter;
+};
+
+static PipelineNode * make_sort_node(PipelineNode & dest, const uint32_t num_bytes, const uint32_t key_offset, const uint32_t key_bytes, const tpie::memory_size_type memory) {
+	if (num_bytes <=    8) return new SortNode<   8>(dest, num_bytes, key_offset, key_bytes, memory);
+	if (num_bytes <=   16) return new SortNode<  16>(dest, num_bytes, key_offset, key_bytes, memory);
+	if (num_bytes <=   32) return new SortNode<  32>(dest, num_bytes, key_offset, key_bytes, memory);
+	if (num_bytes <=   64) return new SortNode<  64>(dest, num_bytes, key_offset, key_bytes, memory);
+	if (num_bytes <=  128) return new SortNode< 128>(dest, num_bytes, key_offset, key_bytes, memory);
+	if (num_bytes <=  256) return new SortNode< 256>(dest, num_bytes, key_offset, key_bytes, memory);
+	if (num_bytes <=  512) return new SortNode< 512>(dest, num_bytes, key_offset, key_bytes, memory);
+	if (num_bytes <= 1024) return new SortNode<1024>(dest, num_bytes, key_offset, key_bytes, memory);
+	throw_exception("unsupported record size for sorting: %d", num_bytes);
+	return NULL;
+}
+
+
+class Pipeline {
+public:
+
+	Pipeline(const std::vector<int32_t> & program, const std::vector<uint64_t> & handles) :
+		m_program(program),
+		m_handles(handles),
+		m_pc(0),
+		m_source(0),
+		m_output(NULL)
+	{}
+
+	uint64_t run() {
+
+		// read the source
+		int32_t op = next();
+		if (op != PIPELINE_FROM_QUEUE && op != PIPELINE_FROM_STREAM) {
+			throw_exception("pipeline must start with a source");
+		}
+		uint64_t source = next_handle();
+		m_source = source;
+		uint32_t num_bytes;
+		if (op == PIPELINE_FROM_QUEUE) {
+			num_bytes = IFIFOQueue::from_handle(source)->get_num_bytes();
+		} else {
+			num_bytes = FileStream::from_handle(source)->get_num_bytes();
+		}
+
+		// split the available memory evenly among the sorts
+		uint32_t num_sorts = count_sorts();
+		tpie::memory_size_type memory = tpie::get_memory_manager().available();
+		if (num_sorts > 1) {
+			memory /= num_sorts;
+		}
+
+		// build the rest of the chain, then run it
+		PipelineNode * first = build(num_bytes, memory);
+		first->begin();
+		if (op == PIPELINE_FROM_QUEUE) {
+			run_queue(*IFIFOQueue::from_handle(source), *first);
+		} else {
+			run_stream(*FileStream::from_handle(source), *first);
+		}
+		first->end();
+
+		return m_output->get_count();
+	}
+
+private:
+
+	std::vector<int32_t> m_program;
+	std::vector<uint64_t> m_handles;
+	size_t m_pc;
+	uint64_t m_source;
+
+	// the nodes of the chain, each one built after the node it pushes to
+	std::vector<std::unique_ptr<PipelineNode>> m_nodes;
+	OutputNode * m_output;
+
+	int32_t next() {
+		if (m_pc >= m_program.size()) {
+			throw_exception("pipeline program ended early");
+		}
+		return m_program[m_pc++];
+	}
+
+	uint64_t next_handle() {
+		int32_t i = next();
+		if (i < 0 || (size_t)i >= m_handles.size()) {
+			throw_exception("pipeline program has a bad handle index: %d", i);
+		}
+		return m_handles[i];
+	}
+
+	uint32_t count_sorts() {
+		uint32_t count = 0;
+		size_t pc = m_pc;
+		while (pc < m_program.size()) {
+			switch (m_program[pc]) {
+				case PIPELINE_PROJECT: pc += 2 + 2*m_program[pc + 1]; break;
+				case PIPELINE_SORT: count++; pc += 3; break;
+				default: pc += 2; break;
+			}
+		}
+		return count;
+	}
+
+	PipelineNode * build(const uint32_t num_bytes, const tpie::memory_size_type memory) {
+		int32_t op = next();
+		switch (op) {
+
+			case PIPELINE_PROJECT: {
+				int32_t num_ranges = next();
+				std::vector<uint32_t> offsets;
+				std::vector<uint32_t> lengths;
+				uint32_t out_bytes = 0;
+				for (int32_t i=0; i<num_ranges; i++) {
+					uint32_t offset = (uint32_t)next();
+					uint32_t length = (uint32_t)next();
+					if (offset + length > num_bytes) {
+						throw_exception("projection range [%d,%d) is outside of the %d-byte record", offset, offset + length, num_bytes);
+					}
+					offsets.push_back(offset);
+					lengths.push_back(length);
+					out_bytes += length;
+				}
+				PipelineNode * dest = build(out_bytes, memory);
+				return add(new ProjectNode(*dest, offsets, lengths, out_bytes));
+			}
+
+			case PIPELINE_SORT: {
+				uint32_t key_offset = (uint32_t)next();
+				uint32_t key_bytes = (uint32_t)next();
+				if (key_offset + key_bytes > num_bytes) {
+					throw_exception("sort key [%d,%d) is outside of the %d-byte record", key_offset, key_offset + key_bytes, num_bytes);
+				}
+				PipelineNode * dest = build(num_bytes, memory);
+				return add(make_sort_node(*dest, num_bytes, key_offset, key_bytes, memory));
+			}
+
+			case PIPELINE_TO_QUEUE: {
+				uint64_t sink = next_handle();
+				IFIFOQueue & queue = *IFIFOQueue::from_handle(sink);
+				check_sink(sink, queue.get_num_bytes(), num_bytes);
+				m_output = new QueueOutputNode(queue);
+				return add(m_output);
+			}
+
+			case PIPELINE_TO_STREAM: {
+				uint64_t sink = next_handle();
+				FileStream & stream = *FileStream::from_handle(sink);
+				check_sink(sink, stream.get_num_bytes(), num_bytes);
+				m_output = new StreamOutputNode(stream);
+				return add(m_output);
+			}
+		}
+		throw_exception("unknown pipeline stage: %d", op);
+		return NULL;
+	}
+
+	PipelineNode * add(PipelineNode * node) {
+		m_nodes.push_back(std::unique_ptr<PipelineNode>(node));
+		return node;
+	}
+
+	void check_sink(const uint64_t sink, const uint32_t sink_bytes, const uint32_t num_bytes) {
+		if (sink == m_source) {
+			// the source would never run out, since every record read from it is written back to it
+			throw_exception("pipeline can't write to its own source");
+		}
+		if (sink_bytes != num_bytes) {
+			throw_exception("pipeline makes %d-byte records, but the output takes %d-byte records", num_bytes, sink_bytes);
+		}
+		if (m_pc != m_program.size()) {
+			throw_exception("pipeline has stages after the output");
+		}
+	}
+
+	void run_queue(IFIFOQueue & queue, PipelineNode & dest) {
+		while (!queue.empty()) {
+			dest.push(queue.front());
+			queue.pop();
+		}
+	}
+
+	void run_stream(FileStream & stream, PipelineNode & dest) {
+		uint32_t num_bytes = stream.get_num_bytes();
+		std::vector<uint8_t> buf(PIPELINE_READ_RECORDS*num_bytes);
+		while (true) {
+			uint64_t count = stream.read_all(buf.data(), PIPELINE_READ_RECORDS);
+			if (count == 0) {
+				break;
+			}
+			for (uint64_t i=0; i<count; i++) {
+				dest.push(buf.data() + i*num_bytes);
+			}
+		}
+	}
+};
+
+
+// java methods
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_Pipeline_run(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jintArray jprogram,
+	jlongArray jhandles
+) {
+	try_jni_exceptions();
+
+	// copy the program and handles out of java
+	std::vector<int32_t> program(env->GetArrayLength(jprogram));
+	env->GetIntArrayRegion(jprogram, 0, (jsize)program.size(), (jint *)program.data());
+	check_jni_exception(env);
+	std::vector<uint64_t> handles(env->GetArrayLength(jhandles));
+	env->GetLongArrayRegion(jhandles, 0, (jsize)handles.size(), (jlong *)handles.data());
+	check_jni_exception(env);
+
+	Pipeline pipeline(program, handles);
+	return (jlong)pipeline.run();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
@@ -0,0 +1,33 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class edu_duke_cs_tpie_Pipeline */
+
+#ifndef _Included_edu_duke_cs_tpie_Pipeline
+#define _Included_edu_duke_cs_tpie_Pipeline
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef edu_duke_cs_tpie_Pipeline_FromQueue
+#define edu_duke_cs_tpie_Pipeline_FromQueue 1L
+#undef edu_duke_cs_tpie_Pipeline_FromStream
+#define edu_duke_cs_tpie_Pipeline_FromStream 2L
+#undef edu_duke_cs_tpie_Pipeline_Project
+#define edu_duke_cs_tpie_Pipeline_Project 3L
+#undef edu_duke_cs_tpie_Pipeline_Sort
+#define edu_duke_cs_tpie_Pipeline_Sort 4L
+#undef edu_duke_cs_tpie_Pipeline_ToQueue
+#define edu_duke_cs_tpie_Pipeline_ToQueue 5L
+#undef edu_duke_cs_tpie_Pipeline_ToStream
+#define edu_duke_cs_tpie_Pipeline_ToStream 6L
+/*
+ * Class:     edu_duke_cs_tpie_Pipeline
+ * Method:    run
+ * Signature: ([I[J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_Pipeline_run
+  (JNIEnv *, jclass, jintArray, jlongArray);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
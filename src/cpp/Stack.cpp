@@ -0,0 +1,490 @@
+
+#include <cstring>
+#include <vector>
+#include <algorithm>
+#include <tpie/tpie.h>
+#include <tpie/stack.h>
+#include "Stack.hpp"
+#include "jni.hpp"
+
+
+template <int NumBytes>
+struct StackEntry {
+	uint8_t bytes[NumBytes];
+};
+
+
+class IStack {
+public:
+
+	static IStack * make(const uint32_t & num_bytes);
+
+	virtual ~IStack() {}
+
+	virtual uint64_t to_handle() const {
+		return (uint64_t)this;
+	}
+
+	static IStack * from_handle(const uint64_t handle) {
+		return (IStack *)handle;
+	}
+
+	virtual uint32_t get_num_bytes() = 0;
+
+	virtual void push(const uint8_t * bytes) = 0;
+	virtual void push_all(const uint8_t * bytes, const uint64_t count) = 0;
+	virtual const uint8_t * top() = 0;
+	virtual void pop() = 0;
+	virtual uint64_t pop_into(uint8_t * bytes, const uint64_t max) = 0;
+	virtual uint64_t size() = 0;
+	virtual bool empty() = 0;
+};
+
+template <int NumBytes>
+class Stack : public IStack {
+public:
+
+	Stack() : m_num_bytes(NumBytes) {}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const uint8_t * bytes) {
+		StackEntry<NumBytes> entry;
+		std::memcpy(entry.bytes, bytes, m_num_bytes);
+		m_stack.push(entry);
+	}
+
+	void push_all(const uint8_t * bytes, const uint64_t count) {
+		StackEntry<NumBytes> entry;
+		for (uint64_t i=0; i<count; i++) {
+			std::memcpy(entry.bytes, bytes + i*m_num_bytes, m_num_bytes);
+			m_stack.push(entry);
+		}
+	}
+
+	const uint8_t * top() {
+		return m_stack.top().bytes;
+	}
+
+	void pop() {
+		m_stack.pop();
+	}
+
+	uint64_t pop_into(uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		while (count < max && !m_stack.empty()) {
+			std::memcpy(bytes + count*m_num_bytes, m_stack.pop().bytes, m_num_bytes);
+			count++;
+		}
+		return count;
+	}
+
+	uint64_t size() {
+		return m_stack.size();
+	}
+
+	bool empty() {
+		return m_stack.empty();
+	}
+
+private:
+
+	uint32_t m_num_bytes;
+	tpie::stack<StackEntry<NumBytes>> m_stack;
+};
+
+
+/*
+	Stack for entries whose size isn't one of the template sizes.
+	Entries are packed back-to-back into fixed-size blocks, so no space is wasted on padding.
+	Entries can span block boundaries, so popped entries are read backwards across blocks.
+	Only full blocks go to TPIE; the partially-filled block at the top of the stack stays in memory.
+*/
+
+#define PACKED_STACK_BLOCK_BYTES 1024
+
+struct PackedStackBlock {
+	uint8_t bytes[PACKED_STACK_BLOCK_BYTES];
+};
+
+class PackedStack : public IStack {
+public:
+
+	PackedStack(const uint32_t & num_bytes) :
+		m_num_bytes(num_bytes),
+		m_top(num_bytes),
+		m_has_top(false),
+		m_block_bytes(0),
+		m_size(0)
+	{}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const uint8_t * bytes) {
+
+		// put the top entry back first, if we took it out
+		if (m_has_top) {
+			write(m_top.data());
+			m_has_top = false;
+		}
+
+		write(bytes);
+		m_size++;
+	}
+
+	void push_all(const uint8_t * bytes, const uint64_t count) {
+		for (uint64_t i=0; i<count; i++) {
+			push(bytes + i*m_num_bytes);
+		}
+	}
+
+	const uint8_t * top() {
+		load_top();
+		return m_top.data();
+	}
+
+	void pop() {
+		load_top();
+		m_has_top = false;
+		m_size--;
+	}
+
+	uint64_t pop_into(uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		while (count < max && m_size > 0) {
+			if (m_has_top) {
+				std::memcpy(bytes + count*m_num_bytes, m_top.data(), m_num_bytes);
+				m_has_top = false;
+			} else {
+				read(bytes + count*m_num_bytes);
+			}
+			m_size--;
+			count++;
+		}
+		return count;
+	}
+
+	uint64_t size() {
+		return m_size;
+	}
+
+	bool empty() {
+		return m_size == 0;
+	}
+
+private:
+
+	uint32_t m_num_bytes;
+
+	// the top entry, reassembled
+	std::vector<uint8_t> m_top;
+	bool m_has_top;
+
+	// the block at the top of the stack
+	PackedStackBlock m_block;
+	uint32_t m_block_bytes;
+
+	// number of entries, rather than blocks
+	uint64_t m_size;
+
+	tpie::stack<PackedStackBlock> m_stack;
+
+	void load_top() {
+		if (m_size == 0) {
+			throw_exception("end of stream");
+		}
+		if (!m_has_top) {
+			read(m_top.data());
+			m_has_top = true;
+		}
+	}
+
+	void write(const uint8_t * bytes) {
+		uint32_t offset = 0;
+		while (offset < m_num_bytes) {
+
+			// flush the top block only when we need room, so a full block can still be popped from memory
+			if (m_block_bytes == PACKED_STACK_BLOCK_BYTES) {
+				m_stack.push(m_block);
+				m_block_bytes = 0;
+			}
+
+			uint32_t n = std::min(PACKED_STACK_BLOCK_BYTES - m_block_bytes, m_num_bytes - offset);
+			std::memcpy(m_block.bytes + m_block_bytes, bytes + offset, n);
+			offset += n;
+			m_block_bytes += n;
+		}
+	}
+
+	void read(uint8_t * bytes) {
+
+		// the entry ends at the top of the stack, so read it from back to front
+		uint32_t remaining = m_num_bytes;
+		while (remaining > 0) {
+
+			// move down to the next block if needed
+			if (m_block_bytes == 0) {
+				m_block = m_stack.pop();
+				m_block_bytes = PACKED_STACK_BLOCK_BYTES;
+			}
+
+			uint32_t n = std::min(m_block_bytes, remaining);
+			std::memcpy(bytes + remaining - n, m_block.bytes + m_block_bytes - n, n);
+			remaining -= n;
+			m_block_bytes -= n;
+		}
+	}
+};
+
+
+IStack * IStack::make(const uint32_t & num_bytes) {
+	switch (num_bytes) {
+		case     8: return new Stack<    8>();
+		case    16: return new Stack<   16>();
+		case    32: return new Stack<   32>();
+		case    64: return new Stack<   64>();
+		case   128: return new Stack<  128>();
+		case   256: return new Stack<  256>();
+		case   512: return new Stack<  512>();
+		case  1024: return new Stack< 1024>();
+	}
+	if (num_bytes > 0) {
+		return new PackedStack(num_bytes);
+	}
+	throw_exception("unsupported entry size for stack: %d", num_bytes);
+	return NULL;
+}
+
+
+// java ids
+
+define_class(stack_entry, "edu/duke/cs/tpie/Stack$Entry");
+
+define_field_id(stack_entry, data, "data", "Ljava/nio/ByteBuffer;");
+
+define_method_id(stack_entry, ctor, "<init>", "(Ledu/duke/cs/tpie/Stack;)V");
+
+
+// writes the top entry into the jentry, without allocating anything on the Java heap
+static void write_top(JNIEnv * env, IStack & s, jobject jentry) {
+	jobject jbuf = get_field(env, stack_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	write_buffer(env, jbuf, s.top(), s.get_num_bytes());
+	env->DeleteLocalRef(jbuf);
+}
+
+
+// java methods
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_Stack_create(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint num_bytes
+) {
+	try_jni_exceptions();
+
+	IStack * s = IStack::make((uint32_t)num_bytes);
+	return (jlong)s->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_Stack_cleanup(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	delete IStack::from_handle((uint64_t)handle);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_Stack_push(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get the jentry bytes
+	jobject jbuf = get_field(env, stack_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	jni_buffer buf(env, jbuf);
+
+	// push to the stack
+	IStack & s = *IStack::from_handle(handle);
+	s.push(buf.get_bytes());
+
+	// jni cleanup
+	buf.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_Stack_pushAll(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jdata,
+	jint offset,
+	jint count
+) {
+	try_jni_exceptions();
+
+	// get the java buffer
+	jni_buffer data(env, jdata);
+
+	// push everything to the stack
+	IStack & s = *IStack::from_handle(handle);
+	s.push_all(data.get_bytes() + offset, (uint64_t)count);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_Stack_top(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jstack
+) {
+	try_jni_exceptions();
+
+	// get our stack
+	IStack & s = *IStack::from_handle(handle);
+	if (s.empty()) {
+		throw_exception("stack is empty");
+	}
+
+	// make the jentry and fill it
+	jobject jentry = new_class(env, stack_entry, ctor, jstack);
+	check_jni_exception(env);
+	write_top(env, s, jentry);
+
+	return jentry;
+
+	catch_jni_exceptions(env);
+	return NULL;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_Stack_topInto(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get our stack
+	IStack & s = *IStack::from_handle(handle);
+	if (s.empty()) {
+		throw_exception("stack is empty");
+	}
+
+	write_top(env, s, jentry);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_Stack_popTop(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jentry
+) {
+	try_jni_exceptions();
+
+	// get our stack
+	IStack & s = *IStack::from_handle(handle);
+	if (s.empty()) {
+		return false;
+	}
+
+	write_top(env, s, jentry);
+	s.pop();
+	return true;
+
+	catch_jni_exceptions(env);
+	return false;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_Stack_pop(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IStack & s = *IStack::from_handle(handle);
+	if (s.empty()) {
+		throw_exception("end of stream");
+	}
+	s.pop();
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_Stack_popInto(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jdata,
+	jint offset,
+	jint max
+) {
+	try_jni_exceptions();
+
+	// get the java buffer
+	jni_buffer data(env, jdata);
+
+	// pop everything we can from the stack
+	IStack & s = *IStack::from_handle(handle);
+	uint64_t count = s.pop_into(data.get_bytes() + offset, (uint64_t)max);
+
+	// jni cleanup
+	data.release(0);
+
+	return (jint)count;
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_Stack_size(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IStack & s = *IStack::from_handle(handle);
+	return (jlong)s.size();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_Stack_empty(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IStack & s = *IStack::from_handle(handle);
+	return (jboolean)s.empty();
+
+	catch_jni_exceptions(env);
+	return true;
+}
+
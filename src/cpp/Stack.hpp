@@ -0,0 +1,112 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class edu_duke_cs_tpie_Stack */
+
+#ifndef _Included_edu_duke_cs_tpie_Stack
+#define _Included_edu_duke_cs_tpie_Stack
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    create
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_Stack_create
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    cleanup
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_Stack_cleanup
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    push
+ * Signature: (JLedu/duke/cs/tpie/Stack/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_Stack_push
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    pushAll
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_Stack_pushAll
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    top
+ * Signature: (JLedu/duke/cs/tpie/Stack;)Ledu/duke/cs/tpie/Stack/Entry;
+ */
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_Stack_top
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    topInto
+ * Signature: (JLedu/duke/cs/tpie/Stack/Entry;)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_Stack_topInto
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    pop
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_Stack_pop
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    popTop
+ * Signature: (JLedu/duke/cs/tpie/Stack/Entry;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_Stack_popTop
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    popInto
+ * Signature: (JLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_edu_duke_cs_tpie_Stack_popInto
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_Stack_size
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_Stack
+ * Method:    empty
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_Stack_empty
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
+/* Header for class edu_duke_cs_tpie_Stack_Entry */
+
+#ifndef _Included_edu_duke_cs_tpie_Stack_Entry
+#define _Included_edu_duke_cs_tpie_Stack_Entry
+#ifdef __cplusplus
+extern "C" {
+#endif
+#ifdef __cplusplus
+}
+#endif
+#endif
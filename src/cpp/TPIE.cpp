@@ -3,6 +3,7 @@
 #include <tpie/memory.h>
 #include <tpie/tempname.h>
 #include <tpie/stats.h>
+#include <tpie/file_stream.h>
 #include "TPIE.hpp"
 #include "jni.hpp"
 
@@ -65,6 +66,21 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_TPIE_setTempDir(
 	catch_jni_exceptions(env);
 }
 
+JNIEXPORT jstring JNICALL Java_edu_duke_cs_tpie_TPIE_getTempDir(
+	JNIEnv * env,
+	jclass c __attribute__((unused))
+) {
+	try_jni_exceptions();
+
+	std::string dir = tpie::tempname::get_actual_path();
+	jstring jdir = env->NewStringUTF(dir.c_str());
+	check_jni_exception(env);
+	return jdir;
+
+	catch_jni_exceptions(env);
+	return NULL;
+}
+
 JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getExternalBytes(
 	JNIEnv * env,
 	jclass c __attribute__((unused))
@@ -77,3 +93,63 @@ JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getExternalBytes(
 	return -1;
 }
 
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getInternalBytesLimit(
+	JNIEnv * env,
+	jclass c __attribute__((unused))
+) {
+	try_jni_exceptions();
+
+	return (jlong)tpie::get_memory_manager().limit();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getInternalBytesUsed(
+	JNIEnv * env,
+	jclass c __attribute__((unused))
+) {
+	try_jni_exceptions();
+
+	return (jlong)tpie::get_memory_manager().used();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getBytesRead(
+	JNIEnv * env,
+	jclass c __attribute__((unused))
+) {
+	try_jni_exceptions();
+
+	return (jlong)tpie::get_bytes_read();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getBytesWritten(
+	JNIEnv * env,
+	jclass c __attribute__((unused))
+) {
+	try_jni_exceptions();
+
+	return (jlong)tpie::get_bytes_written();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getBlockSize(
+	JNIEnv * env,
+	jclass c __attribute__((unused))
+) {
+	try_jni_exceptions();
+
+	return (jlong)tpie::get_block_size();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
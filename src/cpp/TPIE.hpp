@@ -31,6 +31,14 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_TPIE_cleanup
 JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_TPIE_setTempDir
   (JNIEnv *, jclass, jstring, jstring);
 
+/*
+ * Class:     edu_duke_cs_tpie_TPIE
+ * Method:    getTempDir
+ * Signature: ()Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL Java_edu_duke_cs_tpie_TPIE_getTempDir
+  (JNIEnv *, jclass);
+
 /*
  * Class:     edu_duke_cs_tpie_TPIE
  * Method:    getExternalBytes
@@ -39,6 +47,46 @@ JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_TPIE_setTempDir
 JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getExternalBytes
   (JNIEnv *, jclass);
 
+/*
+ * Class:     edu_duke_cs_tpie_TPIE
+ * Method:    getInternalBytesLimit
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getInternalBytesLimit
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     edu_duke_cs_tpie_TPIE
+ * Method:    getInternalBytesUsed
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getInternalBytesUsed
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     edu_duke_cs_tpie_TPIE
+ * Method:    getBytesRead
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getBytesRead
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     edu_duke_cs_tpie_TPIE
+ * Method:    getBytesWritten
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getBytesWritten
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     edu_duke_cs_tpie_TPIE
+ * Method:    getBlockSize
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_TPIE_getBlockSize
+  (JNIEnv *, jclass);
+
 #ifdef __cplusplus
 }
 #endif
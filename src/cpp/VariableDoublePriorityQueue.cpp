@@ -0,0 +1,550 @@
+#include <cstring>
+#include <vector>
+#include <memory>
+#include <algorithm>
+#include <tpie/tpie.h>
+#include "VariableDoublePriorityQueue.hpp"
+#include "jni.hpp"
+#include "priority_queue.hpp"
+#include "file_stream.hpp"
+#include "memory.hpp"
+
+
+/*
+	Each entry is stored once, with its ordering key: the priority, and a sequence number that keeps
+	entries with equal priorities in push order.
+	Entries go to a heap in memory, with their payloads packed back-to-back in one buffer, and when the buffer
+	fills up, the heap is sorted and written to a run on disk. Runs pack each entry's key, payload length,
+	and payload back-to-back into fixed-size chunks, so entries share chunks, and only the last chunk of a run is padded.
+	The top entry is the smallest of the heap top and the heads of the runs. Once there are VDPQ_MERGE_FANOUT runs,
+	the smaller half of them are merged into one, just like RunPriorityQueue does.
+	Half the memory TPIE has available when the queue is made goes to the heap, the other half to the run buffers.
+*/
+
+#define VDPQ_MERGE_FANOUT 8
+#define VDPQ_BATCH_BYTES 4096
+
+struct VDPQKey {
+	double priority;
+	uint64_t seq;
+};
+
+inline bool operator < (const VDPQKey & a, const VDPQKey & b) {
+	if (a.priority == b.priority) {
+		return a.seq < b.seq;
+	}
+	return a.priority < b.priority;
+}
+
+// an entry in the heap, whose payload is in the heap's buffer
+struct VDPQEntry {
+	VDPQKey key;
+	uint64_t offset;
+	uint32_t num_bytes;
+};
+
+
+// bytes packed back-to-back into the fixed-size records of a stream, read and written a batch of records at a time
+class PackedStream {
+public:
+
+	PackedStream(const uint32_t & chunk_bytes, const double & block_factor) :
+		m_stream(chunk_bytes, block_factor),
+		m_chunk_bytes(chunk_bytes),
+		m_batch(std::max((uint32_t)1, VDPQ_BATCH_BYTES/chunk_bytes)*chunk_bytes),
+		m_offset(0),
+		m_end(0)
+	{
+		m_stream.open_temp();
+	}
+
+	void write(const uint8_t * bytes, const uint64_t & num_bytes) {
+		uint64_t offset = 0;
+		while (offset < num_bytes) {
+			uint64_t n = std::min((uint64_t)m_batch.size() - m_offset, num_bytes - offset);
+			std::memcpy(m_batch.data() + m_offset, bytes + offset, n);
+			offset += n;
+			m_offset += n;
+			if (m_offset == m_batch.size()) {
+				m_stream.write_all(m_batch.data(), m_batch.size()/m_chunk_bytes);
+				m_offset = 0;
+			}
+		}
+	}
+
+	// writes the rest of the batch, padding out the last chunk, and rewinds the stream for reading
+	void rewind() {
+		m_stream.write_all(m_batch.data(), (m_offset + m_chunk_bytes - 1)/m_chunk_bytes);
+		m_stream.seek(0);
+		m_offset = 0;
+		m_end = 0;
+	}
+
+	void read(uint8_t * bytes, const uint64_t & num_bytes) {
+		uint64_t offset = 0;
+		while (offset < num_bytes) {
+			if (m_offset == m_end) {
+				uint64_t count = m_stream.read_all(m_batch.data(), m_batch.size()/m_chunk_bytes);
+				if (count == 0) {
+					throw_exception("run ended in the middle of an entry");
+				}
+				m_offset = 0;
+				m_end = count*m_chunk_bytes;
+			}
+			uint64_t n = std::min(m_end - m_offset, num_bytes - offset);
+			std::memcpy(bytes + offset, m_batch.data() + m_offset, n);
+			offset += n;
+			m_offset += n;
+		}
+	}
+
+private:
+
+	FileStream m_stream;
+	uint32_t m_chunk_bytes;
+	tpie_vector<uint8_t> m_batch;
+	uint64_t m_offset;
+	uint64_t m_end;
+};
+
+
+// a sorted run on disk, and the entry at its head
+class VDPQRun {
+public:
+
+	// the run must have at least one entry
+	VDPQRun(PackedStream * stream, const uint64_t & size) :
+		m_stream(stream),
+		m_remaining(size)
+	{
+		advance();
+	}
+
+	const VDPQKey & key() const {
+		return m_key;
+	}
+
+	const std::vector<uint8_t> & bytes() const {
+		return m_bytes;
+	}
+
+	// reads the next entry into the head, or returns false if the run is used up
+	bool advance() {
+		if (m_remaining == 0) {
+			return false;
+		}
+		uint32_t num_bytes;
+		m_stream->read((uint8_t *)&m_key, sizeof(VDPQKey));
+		m_stream->read((uint8_t *)&num_bytes, sizeof(uint32_t));
+		m_bytes.resize(num_bytes);
+		m_stream->read(m_bytes.data(), num_bytes);
+		m_remaining--;
+		return true;
+	}
+
+	// entries left in the run, including the head
+	uint64_t size() const {
+		return m_remaining + 1;
+	}
+
+private:
+
+	std::unique_ptr<PackedStream> m_stream;
+	uint64_t m_remaining;
+	VDPQKey m_key;
+	std::vector<uint8_t> m_bytes;
+};
+
+
+class IVariableDoublePriorityQueue {
+public:
+
+	static IVariableDoublePriorityQueue * make(const uint32_t & chunk_bytes);
+
+	virtual ~IVariableDoublePriorityQueue() {}
+
+	virtual uint64_t to_handle() const {
+		return (uint64_t)this;
+	}
+
+	static IVariableDoublePriorityQueue * from_handle(const uint64_t handle) {
+		return (IVariableDoublePriorityQueue *)handle;
+	}
+
+	virtual void push(const double & priority, const uint8_t * bytes, const uint32_t num_bytes) = 0;
+	virtual double top_priority() = 0;
+	virtual const std::vector<uint8_t> & top_bytes() = 0;
+	virtual void pop() = 0;
+	virtual uint64_t size() = 0;
+	virtual bool empty() = 0;
+};
+
+class VariableDoublePriorityQueue : public IVariableDoublePriorityQueue {
+public:
+
+	VariableDoublePriorityQueue(const uint32_t & chunk_bytes, const uint64_t & memory_bytes) :
+		m_chunk_bytes(chunk_bytes),
+		m_heap_bytes(memory_bytes/2),
+		m_block_factor(block_factor_for(memory_bytes/2, VDPQ_MERGE_FANOUT + 1)),
+		m_live_bytes(0),
+		m_next_seq(0),
+		m_size(0)
+	{}
+
+	void push(const double & priority, const uint8_t * bytes, const uint32_t num_bytes) {
+
+		// make room in the buffer: drop the payloads of popped entries first, and only spill if that's not enough
+		if (heap_bytes_used() + sizeof(VDPQEntry) + num_bytes > m_heap_bytes && !m_heap.empty()) {
+			if (m_live_bytes + (m_heap.size() + 1)*sizeof(VDPQEntry) + num_bytes <= m_heap_bytes/2) {
+				compact();
+			} else {
+				spill();
+			}
+		}
+
+		// grow the buffer in steps, so it never ends up much bigger than the budget
+		if (m_payloads.size() + num_bytes > m_payloads.capacity()) {
+			uint64_t capacity = std::min(std::max((uint64_t)m_payloads.capacity()*2, (uint64_t)VDPQ_BATCH_BYTES), m_heap_bytes);
+			m_payloads.reserve(std::max((uint64_t)(m_payloads.size() + num_bytes), capacity));
+		}
+
+		VDPQEntry entry;
+		entry.key.priority = priority;
+		entry.key.seq = m_next_seq++;
+		entry.offset = m_payloads.size();
+		entry.num_bytes = num_bytes;
+		m_payloads.insert(m_payloads.end(), bytes, bytes + num_bytes);
+		m_heap.push_back(entry);
+		std::push_heap(m_heap.begin(), m_heap.end(), is_after);
+		m_live_bytes += num_bytes;
+		m_size++;
+	}
+
+	double top_priority() {
+		VDPQRun * run = top_run();
+		if (run == NULL) {
+			return m_heap.front().key.priority;
+		}
+		return run->key().priority;
+	}
+
+	const std::vector<uint8_t> & top_bytes() {
+		VDPQRun * run = top_run();
+		if (run == NULL) {
+			const VDPQEntry & entry = m_heap.front();
+			m_top.assign(m_payloads.data() + entry.offset, m_payloads.data() + entry.offset + entry.num_bytes);
+			return m_top;
+		}
+		return run->bytes();
+	}
+
+	void pop() {
+		VDPQRun * run = top_run();
+		if (run == NULL) {
+			m_live_bytes -= m_heap.front().num_bytes;
+			std::pop_heap(m_heap.begin(), m_heap.end(), is_after);
+			m_heap.pop_back();
+			if (m_heap.empty()) {
+				m_payloads.clear();
+			}
+		} else if (!run->advance()) {
+			remove_run(run);
+		}
+		m_size--;
+	}
+
+	uint64_t size() {
+		return m_size;
+	}
+
+	bool empty() {
+		return m_size == 0;
+	}
+
+private:
+
+	uint32_t m_chunk_bytes;
+	uint64_t m_heap_bytes;
+	double m_block_factor;
+
+	// the heap holds keys and offsets, the buffer holds the payloads, including those of popped entries until it's compacted
+	tpie_vector<VDPQEntry> m_heap;
+	tpie_vector<uint8_t> m_payloads;
+	uint64_t m_live_bytes;
+
+	std::vector<std::unique_ptr<VDPQRun>> m_runs;
+
+	// the top entry's payload, when it comes from the heap
+	std::vector<uint8_t> m_top;
+
+	uint64_t m_next_seq;
+	uint64_t m_size;
+
+	// orders the heap so the smallest key is at the front
+	static bool is_after(const VDPQEntry & a, const VDPQEntry & b) {
+		return b.key < a.key;
+	}
+
+	uint64_t heap_bytes_used() {
+		return m_payloads.size() + m_heap.size()*sizeof(VDPQEntry);
+	}
+
+	// null if the heap top comes first
+	VDPQRun * top_run() {
+		if (m_size == 0) {
+			throw_exception("priority queue is empty");
+		}
+		VDPQRun * top = NULL;
+		for (std::unique_ptr<VDPQRun> & run : m_runs) {
+			if (top == NULL || run->key() < top->key()) {
+				top = run.get();
+			}
+		}
+		if (top != NULL && !m_heap.empty() && m_heap.front().key < top->key()) {
+			return NULL;
+		}
+		return top;
+	}
+
+	void remove_run(VDPQRun * run) {
+		for (auto i = m_runs.begin(); i != m_runs.end(); i++) {
+			if (i->get() == run) {
+				m_runs.erase(i);
+				return;
+			}
+		}
+	}
+
+	// moves the payloads of the entries still in the heap to the front of the buffer
+	void compact() {
+		tpie_vector<uint8_t> payloads;
+		payloads.reserve(m_live_bytes);
+		for (VDPQEntry & entry : m_heap) {
+			const uint8_t * payload = m_payloads.data() + entry.offset;
+			entry.offset = payloads.size();
+			payloads.insert(payloads.end(), payload, payload + entry.num_bytes);
+		}
+		m_payloads.swap(payloads);
+	}
+
+	void write_entry(PackedStream & stream, const VDPQKey & key, const uint8_t * bytes, const uint32_t & num_bytes) {
+		stream.write((const uint8_t *)&key, sizeof(VDPQKey));
+		stream.write((const uint8_t *)&num_bytes, sizeof(uint32_t));
+		stream.write(bytes, num_bytes);
+	}
+
+	// writes the heap to a new run, in key order
+	void spill() {
+
+		std::sort_heap(m_heap.begin(), m_heap.end(), is_after);
+		std::reverse(m_heap.begin(), m_heap.end());
+
+		std::unique_ptr<PackedStream> stream(new PackedStream(m_chunk_bytes, m_block_factor));
+		for (const VDPQEntry & entry : m_heap) {
+			write_entry(*stream, entry.key, m_payloads.data() + entry.offset, entry.num_bytes);
+		}
+		stream->rewind();
+		uint64_t count = m_heap.size();
+
+		m_heap.clear();
+		m_payloads.clear();
+		m_live_bytes = 0;
+
+		m_runs.push_back(std::unique_ptr<VDPQRun>(new VDPQRun(stream.release(), count)));
+		merge_runs();
+	}
+
+	// merges the smaller half of the runs once there are VDPQ_MERGE_FANOUT of them,
+	// so at most VDPQ_MERGE_FANOUT + 1 streams are ever open
+	void merge_runs() {
+
+		if (m_runs.size() < VDPQ_MERGE_FANOUT) {
+			return;
+		}
+
+		std::sort(m_runs.begin(), m_runs.end(), [](const std::unique_ptr<VDPQRun> & a, const std::unique_ptr<VDPQRun> & b) {
+			return a->size() < b->size();
+		});
+		std::vector<VDPQRun *> inputs;
+		for (uint64_t i=0; i<VDPQ_MERGE_FANOUT/2; i++) {
+			inputs.push_back(m_runs[i].get());
+		}
+
+		// merge the inputs into one run, one entry at a time
+		std::unique_ptr<PackedStream> stream(new PackedStream(m_chunk_bytes, m_block_factor));
+		uint64_t count = 0;
+		while (!inputs.empty()) {
+			uint64_t top = 0;
+			for (uint64_t i=1; i<inputs.size(); i++) {
+				if (inputs[i]->key() < inputs[top]->key()) {
+					top = i;
+				}
+			}
+			const std::vector<uint8_t> & bytes = inputs[top]->bytes();
+			write_entry(*stream, inputs[top]->key(), bytes.data(), (uint32_t)bytes.size());
+			count++;
+			if (!inputs[top]->advance()) {
+				remove_run(inputs[top]);
+				inputs.erase(inputs.begin() + top);
+			}
+		}
+		stream->rewind();
+
+		m_runs.push_back(std::unique_ptr<VDPQRun>(new VDPQRun(stream.release(), count)));
+	}
+};
+
+
+IVariableDoublePriorityQueue * IVariableDoublePriorityQueue::make(const uint32_t & chunk_bytes) {
+	switch (chunk_bytes) {
+		case     8:
+		case    16:
+		case    32:
+		case    64:
+		case   128:
+		case   256:
+		case   512:
+		case  1024:
+			return new VariableDoublePriorityQueue(chunk_bytes, memory_budget_for_fraction(1.0));
+	}
+	throw_exception("unsupported chunk size for queue: %d", chunk_bytes);
+	return NULL;
+}
+
+
+// java ids
+
+define_class(vdpq_entry, "edu/duke/cs/tpie/VariableDoublePriorityQueue$Entry");
+
+define_field_id(vdpq_entry, priority, "priority", "D");
+define_field_id(vdpq_entry, data, "data", "Ljava/nio/ByteBuffer;");
+
+define_method_id(vdpq_entry, ctor, "<init>", "(Ledu/duke/cs/tpie/VariableDoublePriorityQueue;I)V");
+
+
+// java methods
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_create(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint chunk_bytes
+) {
+	try_jni_exceptions();
+
+	IVariableDoublePriorityQueue * q = IVariableDoublePriorityQueue::make((uint32_t)chunk_bytes);
+	return (jlong)q->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_cleanup(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	delete IVariableDoublePriorityQueue::from_handle((uint64_t)handle);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_push(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jdouble priority,
+	jobject jdata,
+	jint offset,
+	jint num_bytes
+) {
+	try_jni_exceptions();
+
+	// get the java buffer
+	jni_buffer data(env, jdata);
+
+	// push to the queue
+	IVariableDoublePriorityQueue & q = *IVariableDoublePriorityQueue::from_handle(handle);
+	q.push((double)priority, data.get_bytes() + offset, (uint32_t)num_bytes);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_top(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jqueue
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IVariableDoublePriorityQueue & q = *IVariableDoublePriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("queue is empty");
+	}
+	const std::vector<uint8_t> & bytes = q.top_bytes();
+
+	// make a jentry just big enough for the payload
+	jobject jentry = new_class(env, vdpq_entry, ctor, jqueue, (jint)bytes.size());
+	check_jni_exception(env);
+	set_field(env, vdpq_entry, priority, SetDoubleField, jentry, (jdouble)q.top_priority());
+	check_jni_exception(env);
+	jobject jbuf = get_field(env, vdpq_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	write_buffer(env, jbuf, bytes.data(), (uint32_t)bytes.size());
+
+	return jentry;
+
+	catch_jni_exceptions(env);
+	return NULL;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_pop(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IVariableDoublePriorityQueue & q = *IVariableDoublePriorityQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("end of stream");
+	}
+	q.pop();
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_size(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IVariableDoublePriorityQueue & q = *IVariableDoublePriorityQueue::from_handle(handle);
+	return (jlong)q.size();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_empty(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IVariableDoublePriorityQueue & q = *IVariableDoublePriorityQueue::from_handle(handle);
+	return (jboolean)q.empty();
+
+	catch_jni_exceptions(env);
+	return true;
+}
+
@@ -0,0 +1,80 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class edu_duke_cs_tpie_VariableDoublePriorityQueue */
+
+#ifndef _Included_edu_duke_cs_tpie_VariableDoublePriorityQueue
+#define _Included_edu_duke_cs_tpie_VariableDoublePriorityQueue
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     edu_duke_cs_tpie_VariableDoublePriorityQueue
+ * Method:    create
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_create
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableDoublePriorityQueue
+ * Method:    cleanup
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_cleanup
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableDoublePriorityQueue
+ * Method:    push
+ * Signature: (JDLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_push
+  (JNIEnv *, jclass, jlong, jdouble, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableDoublePriorityQueue
+ * Method:    top
+ * Signature: (JLedu/duke/cs/tpie/VariableDoublePriorityQueue;)Ledu/duke/cs/tpie/VariableDoublePriorityQueue/Entry;
+ */
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_top
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableDoublePriorityQueue
+ * Method:    pop
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_pop
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableDoublePriorityQueue
+ * Method:    size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_size
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableDoublePriorityQueue
+ * Method:    empty
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_VariableDoublePriorityQueue_empty
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
+/* Header for class edu_duke_cs_tpie_VariableDoublePriorityQueue_Entry */
+
+#ifndef _Included_edu_duke_cs_tpie_VariableDoublePriorityQueue_Entry
+#define _Included_edu_duke_cs_tpie_VariableDoublePriorityQueue_Entry
+#ifdef __cplusplus
+extern "C" {
+#endif
+#ifdef __cplusplus
+}
+#endif
+#endif
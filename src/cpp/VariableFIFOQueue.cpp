@@ -0,0 +1,307 @@
+
+#include <cstring>
+#include <vector>
+#include <algorithm>
+#include <tpie/tpie.h>
+#include <tpie/queue.h>
+#include "VariableFIFOQueue.hpp"
+#include "jni.hpp"
+
+
+/*
+	Variable-length entries are packed back-to-back into fixed-size chunks: the length of the payload,
+	then the payload bytes, then the next entry, so entries share chunks and nothing is padded.
+	Entries can span chunk boundaries, so the front entry is reassembled in memory.
+	Only full chunks go to TPIE; the partially-filled chunks at either end of the queue stay in memory,
+	just like PackedFIFOQueue.
+*/
+template <int ChunkBytes>
+struct VFIFOQChunk {
+	uint8_t bytes[ChunkBytes];
+};
+
+
+class IVariableFIFOQueue {
+public:
+
+	static IVariableFIFOQueue * make(const uint32_t & chunk_bytes);
+
+	virtual ~IVariableFIFOQueue() {}
+
+	virtual uint64_t to_handle() const {
+		return (uint64_t)this;
+	}
+
+	static IVariableFIFOQueue * from_handle(const uint64_t handle) {
+		return (IVariableFIFOQueue *)handle;
+	}
+
+	virtual void push(const uint8_t * bytes, const uint32_t num_bytes) = 0;
+	virtual const std::vector<uint8_t> & front() = 0;
+	virtual void pop() = 0;
+	virtual uint64_t size() = 0;
+	virtual bool empty() = 0;
+};
+
+template <int ChunkBytes>
+class VariableFIFOQueue : public IVariableFIFOQueue {
+public:
+
+	VariableFIFOQueue() :
+		m_has_front(false),
+		m_tail_bytes(0),
+		m_head_offset(0),
+		m_head_bytes(0),
+		m_size(0)
+	{}
+
+	void push(const uint8_t * bytes, const uint32_t num_bytes) {
+		write((const uint8_t *)&num_bytes, sizeof(uint32_t));
+		write(bytes, num_bytes);
+		m_size++;
+	}
+
+	const std::vector<uint8_t> & front() {
+		load_front();
+		return m_front;
+	}
+
+	void pop() {
+		load_front();
+		m_has_front = false;
+		m_size--;
+	}
+
+	uint64_t size() {
+		return m_size;
+	}
+
+	bool empty() {
+		return m_size == 0;
+	}
+
+private:
+
+	// the front entry, reassembled
+	std::vector<uint8_t> m_front;
+	bool m_has_front;
+
+	// the chunk being filled by pushes
+	VFIFOQChunk<ChunkBytes> m_tail;
+	uint32_t m_tail_bytes;
+
+	// the chunk being drained by pops
+	VFIFOQChunk<ChunkBytes> m_head;
+	uint32_t m_head_offset;
+	uint32_t m_head_bytes;
+
+	// number of entries, rather than chunks
+	uint64_t m_size;
+
+	tpie::queue<VFIFOQChunk<ChunkBytes>> m_queue;
+
+	void write(const uint8_t * bytes, const uint32_t num_bytes) {
+		uint32_t offset = 0;
+		while (offset < num_bytes) {
+			uint32_t n = std::min((uint32_t)ChunkBytes - m_tail_bytes, num_bytes - offset);
+			std::memcpy(m_tail.bytes + m_tail_bytes, bytes + offset, n);
+			offset += n;
+			m_tail_bytes += n;
+			if (m_tail_bytes == ChunkBytes) {
+				m_queue.push(m_tail);
+				m_tail_bytes = 0;
+			}
+		}
+	}
+
+	void read(uint8_t * bytes, const uint32_t num_bytes) {
+		uint32_t offset = 0;
+		while (offset < num_bytes) {
+
+			// move on to the next chunk if needed
+			if (m_head_offset == m_head_bytes) {
+				if (!m_queue.empty()) {
+					m_head = m_queue.front();
+					m_queue.pop();
+					m_head_bytes = ChunkBytes;
+				} else {
+					// no full chunks left, so the rest of the entries are in the tail chunk
+					m_head = m_tail;
+					m_head_bytes = m_tail_bytes;
+					m_tail_bytes = 0;
+				}
+				m_head_offset = 0;
+			}
+
+			uint32_t n = std::min(m_head_bytes - m_head_offset, num_bytes - offset);
+			std::memcpy(bytes + offset, m_head.bytes + m_head_offset, n);
+			offset += n;
+			m_head_offset += n;
+		}
+	}
+
+	void load_front() {
+
+		if (m_has_front) {
+			return;
+		}
+
+		// the length comes first, then the payload
+		uint32_t num_bytes;
+		read((uint8_t *)&num_bytes, sizeof(uint32_t));
+		m_front.resize(num_bytes);
+		read(m_front.data(), num_bytes);
+
+		m_has_front = true;
+	}
+};
+
+
+IVariableFIFOQueue * IVariableFIFOQueue::make(const uint32_t & chunk_bytes) {
+	switch (chunk_bytes) {
+		case     8: return new VariableFIFOQueue<    8>();
+		case    16: return new VariableFIFOQueue<   16>();
+		case    32: return new VariableFIFOQueue<   32>();
+		case    64: return new VariableFIFOQueue<   64>();
+		case   128: return new VariableFIFOQueue<  128>();
+		case   256: return new VariableFIFOQueue<  256>();
+		case   512: return new VariableFIFOQueue<  512>();
+		case  1024: return new VariableFIFOQueue< 1024>();
+	}
+	throw_exception("unsupported chunk size for queue: %d", chunk_bytes);
+	return NULL;
+}
+
+
+// java ids
+
+define_class(vfifoq_entry, "edu/duke/cs/tpie/VariableFIFOQueue$Entry");
+
+define_field_id(vfifoq_entry, data, "data", "Ljava/nio/ByteBuffer;");
+
+define_method_id(vfifoq_entry, ctor, "<init>", "(Ledu/duke/cs/tpie/VariableFIFOQueue;I)V");
+
+
+// java methods
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_create(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jint chunk_bytes
+) {
+	try_jni_exceptions();
+
+	IVariableFIFOQueue * q = IVariableFIFOQueue::make((uint32_t)chunk_bytes);
+	return (jlong)q->to_handle();
+
+	catch_jni_exceptions(env);
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_cleanup(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	delete IVariableFIFOQueue::from_handle((uint64_t)handle);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_push(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jdata,
+	jint offset,
+	jint num_bytes
+) {
+	try_jni_exceptions();
+
+	// get the java buffer
+	jni_buffer data(env, jdata);
+
+	// push to the queue
+	IVariableFIFOQueue & q = *IVariableFIFOQueue::from_handle(handle);
+	q.push(data.get_bytes() + offset, (uint32_t)num_bytes);
+
+	// jni cleanup
+	data.release(JNI_ABORT);
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_front(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle,
+	jobject jqueue
+) {
+	try_jni_exceptions();
+
+	// get our queue
+	IVariableFIFOQueue & q = *IVariableFIFOQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("queue is empty");
+	}
+	const std::vector<uint8_t> & bytes = q.front();
+
+	// make a jentry just big enough for the payload
+	jobject jentry = new_class(env, vfifoq_entry, ctor, jqueue, (jint)bytes.size());
+	check_jni_exception(env);
+	jobject jbuf = get_field(env, vfifoq_entry, data, GetObjectField, jentry);
+	check_jni_exception(env);
+	write_buffer(env, jbuf, bytes.data(), (uint32_t)bytes.size());
+
+	return jentry;
+
+	catch_jni_exceptions(env);
+	return NULL;
+}
+
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_pop(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IVariableFIFOQueue & q = *IVariableFIFOQueue::from_handle(handle);
+	if (q.empty()) {
+		throw_exception("end of stream");
+	}
+	q.pop();
+
+	catch_jni_exceptions(env);
+}
+
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_size(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IVariableFIFOQueue & q = *IVariableFIFOQueue::from_handle(handle);
+	return (jlong)q.size();
+
+	catch_jni_exceptions(env);
+	return 0;
+}
+
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_empty(
+	JNIEnv * env,
+	jclass c __attribute__((unused)),
+	jlong handle
+) {
+	try_jni_exceptions();
+
+	IVariableFIFOQueue & q = *IVariableFIFOQueue::from_handle(handle);
+	return (jboolean)q.empty();
+
+	catch_jni_exceptions(env);
+	return true;
+}
+
@@ -0,0 +1,80 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class edu_duke_cs_tpie_VariableFIFOQueue */
+
+#ifndef _Included_edu_duke_cs_tpie_VariableFIFOQueue
+#define _Included_edu_duke_cs_tpie_VariableFIFOQueue
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     edu_duke_cs_tpie_VariableFIFOQueue
+ * Method:    create
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_create
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableFIFOQueue
+ * Method:    cleanup
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_cleanup
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableFIFOQueue
+ * Method:    push
+ * Signature: (JLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_push
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableFIFOQueue
+ * Method:    front
+ * Signature: (JLedu/duke/cs/tpie/VariableFIFOQueue;)Ledu/duke/cs/tpie/VariableFIFOQueue/Entry;
+ */
+JNIEXPORT jobject JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_front
+  (JNIEnv *, jclass, jlong, jobject);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableFIFOQueue
+ * Method:    pop
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_pop
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableFIFOQueue
+ * Method:    size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_size
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     edu_duke_cs_tpie_VariableFIFOQueue
+ * Method:    empty
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_edu_duke_cs_tpie_VariableFIFOQueue_empty
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
+/* Header for class edu_duke_cs_tpie_VariableFIFOQueue_Entry */
+
+#ifndef _Included_edu_duke_cs_tpie_VariableFIFOQueue_Entry
+#define _Included_edu_duke_cs_tpie_VariableFIFOQueue_Entry
+#ifdef __cplusplus
+extern "C" {
+#endif
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,65 @@
+#ifndef __FIFO_QUEUE_HPP__
+#define __FIFO_QUEUE_HPP__
+
+#include <cstdint>
+#include "jni.hpp"
+#include "queue_stats.hpp"
+
+
+/*
+	Interface for FIFO queues of fixed-size entries, so other native code can use queues made from Java.
+*/
+
+class IFIFOQueue {
+public:
+
+	// memory_bytes is the queue's internal memory budget, or 0 to use TPIE's default block size
+	// compressed queues compress their spill files
+	// resizable queues can change their memory budgets in place
+	static IFIFOQueue * make(const uint32_t & num_bytes, const uint64_t & memory_bytes = 0, const bool & compressed = false, const bool & resizable = false);
+
+	virtual ~IFIFOQueue() {}
+
+	virtual uint64_t to_handle() const {
+		return (uint64_t)this;
+	}
+
+	static IFIFOQueue * from_handle(const uint64_t handle) {
+		return (IFIFOQueue *)handle;
+	}
+
+	virtual uint32_t get_num_bytes() = 0;
+
+	virtual void push(const uint8_t * bytes) = 0;
+	virtual void push_all(const uint8_t * bytes, const uint64_t count) = 0;
+	virtual const uint8_t * front() = 0;
+	virtual void pop() = 0;
+	virtual uint64_t pop_into(uint8_t * bytes, const uint64_t max) = 0;
+	virtual uint64_t size() = 0;
+	virtual bool empty() = 0;
+	virtual uint64_t get_memory_budget() = 0;
+	virtual void set_memory_budget(const uint64_t & memory_bytes) = 0;
+
+	// false if the queue can only change its memory budget while it's empty
+	virtual bool resizes_in_place() {
+		return false;
+	}
+
+	// counts the entries in the queue's files on disk, and the bytes read and written for them
+	// returns false if the queue can't, because TPIE does its spilling
+	virtual bool get_disk_stats(uint64_t & entries_on_disk __attribute__((unused)), IOCounts & io __attribute__((unused))) {
+		return false;
+	}
+
+	// the queue publishes its stats to the block from now on, see StatsBlock
+	virtual void attach_stats(uint64_t * words __attribute__((unused))) {
+		throw_exception("queue doesn't publish stats");
+	}
+
+	// writes every entry to the checkpoint file in order, and leaves the queue with the same entries
+	virtual void checkpoint(const char * path) {
+		throw_exception("queue can't be checkpointed to %s", path);
+	}
+};
+
+#endif
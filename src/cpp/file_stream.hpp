@@ -0,0 +1,310 @@
+#ifndef __FILE_STREAM_HPP__
+#define __FILE_STREAM_HPP__
+
+#include <cstdint>
+#include <cstdio>
+#include <string>
+#include <memory>
+#include <algorithm>
+#include <exception>
+#include <fcntl.h>
+#include <unistd.h>
+#include <jni.h>
+#include <tpie/tpie.h>
+#include <tpie/file_stream.h>
+#include "jni.hpp"
+#include "queue_stats.hpp"
+
+
+/*
+	Records are stored back-to-back in a stream of fixed-size chunks, so records of any size
+	can share the same stream type, and nothing is wasted on padding.
+	Record i starts at byte i*num_bytes.
+
+	TPIE streams copy one item at a time, so the chunks are as big as they can be while still
+	dividing the record size evenly: the largest power of two that divides num_bytes, up to 1024 bytes.
+	So most records are copied in one or a few steps, rather than byte by byte.
+	Chunk sizes only depend on the record size, so streams with the same record size can always read each other's files.
+
+	Temporary streams can be compressed, to trade CPU time for less disk traffic.
+	Compressed streams can only be written at the end, and only seeked to the start or the end,
+	or back to a position saved from the stream.
+*/
+
+template <int ChunkBytes>
+struct StreamChunk {
+	uint8_t bytes[ChunkBytes];
+};
+
+// the stream of chunks, with offsets and sizes counted in chunks
+class IChunkStream {
+public:
+
+	virtual ~IChunkStream() {}
+
+	virtual void open_temp(const bool & compressed) = 0;
+	virtual void open(const char * path, const tpie::access_type & access) = 0;
+	virtual void close() = 0;
+	virtual void write(const uint8_t * bytes, const uint64_t & count) = 0;
+	virtual void read(uint8_t * bytes, const uint64_t & count) = 0;
+	virtual uint64_t offset() = 0;
+	virtual void seek(const uint64_t & index) = 0;
+	virtual tpie::stream_position get_position() = 0;
+	virtual void set_position(const tpie::stream_position & position) = 0;
+	virtual uint64_t size() = 0;
+	virtual void truncate(const uint64_t & count) = 0;
+};
+
+template <int ChunkBytes>
+class ChunkStream : public IChunkStream {
+public:
+
+	ChunkStream(const double & block_factor) :
+		m_stream(block_factor)
+	{}
+
+	void open_temp(const bool & compressed) {
+		m_stream.open(0, tpie::access_sequential, compressed ? tpie::compression_normal : tpie::compression_none);
+	}
+
+	void open(const char * path, const tpie::access_type & access) {
+		m_stream.open(path, access);
+	}
+
+	void close() {
+		m_stream.close();
+	}
+
+	void write(const uint8_t * bytes, const uint64_t & count) {
+		const StreamChunk<ChunkBytes> * chunks = (const StreamChunk<ChunkBytes> *)bytes;
+		m_stream.write(chunks, chunks + count);
+	}
+
+	void read(uint8_t * bytes, const uint64_t & count) {
+		StreamChunk<ChunkBytes> * chunks = (StreamChunk<ChunkBytes> *)bytes;
+		m_stream.read(chunks, chunks + count);
+	}
+
+	uint64_t offset() {
+		return m_stream.offset();
+	}
+
+	void seek(const uint64_t & index) {
+		m_stream.seek(index);
+	}
+
+	tpie::stream_position get_position() {
+		return m_stream.get_position();
+	}
+
+	void set_position(const tpie::stream_position & position) {
+		m_stream.set_position(position);
+	}
+
+	uint64_t size() {
+		return m_stream.size();
+	}
+
+	void truncate(const uint64_t & count) {
+		m_stream.truncate(count);
+	}
+
+private:
+
+	tpie::file_stream<StreamChunk<ChunkBytes>> m_stream;
+};
+
+// the largest power of two that divides num_bytes, up to 1024
+inline uint32_t chunk_bytes_for(const uint32_t & num_bytes) {
+	if (num_bytes == 0) {
+		return 1;
+	}
+	return std::min(num_bytes & (~num_bytes + 1), (uint32_t)1024);
+}
+
+inline IChunkStream * make_chunk_stream(const uint32_t & chunk_bytes, const double & block_factor) {
+	switch (chunk_bytes) {
+		case     1: return new ChunkStream<   1>(block_factor);
+		case     2: return new ChunkStream<   2>(block_factor);
+		case     4: return new ChunkStream<   4>(block_factor);
+		case     8: return new ChunkStream<   8>(block_factor);
+		case    16: return new ChunkStream<  16>(block_factor);
+		case    32: return new ChunkStream<  32>(block_factor);
+		case    64: return new ChunkStream<  64>(block_factor);
+		case   128: return new ChunkStream< 128>(block_factor);
+		case   256: return new ChunkStream< 256>(block_factor);
+		case   512: return new ChunkStream< 512>(block_factor);
+		case  1024: return new ChunkStream<1024>(block_factor);
+	}
+	throw_exception("unsupported chunk size for file stream: %d", chunk_bytes);
+	return NULL;
+}
+
+class FileStream {
+public:
+
+	FileStream(const uint32_t & num_bytes, const double & block_factor = 1.0) :
+		m_num_bytes(num_bytes),
+		m_chunk_bytes(chunk_bytes_for(num_bytes)),
+		m_chunks_per_record(num_bytes/m_chunk_bytes),
+		m_stream(make_chunk_stream(m_chunk_bytes, block_factor)),
+		m_counts(NULL)
+	{}
+
+	uint64_t to_handle() const {
+		return (uint64_t)this;
+	}
+
+	static FileStream * from_handle(const uint64_t handle) {
+		return (FileStream *)handle;
+	}
+
+	void open_temp(const bool & compressed = false) {
+		m_stream->open_temp(compressed);
+	}
+
+	void open(const char * path, const tpie::access_type & access) {
+		try {
+			m_stream->open(path, access);
+		} catch (std::exception & ex) {
+			throw_exception("can't open file stream %s: %s", path, ex.what());
+		}
+	}
+
+	// flushes everything to the file
+	void close() {
+		m_stream->close();
+	}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	// adds the bytes of every record read or written from now on to the counts, which must outlive the stream
+	void count_io(IOCounts * counts) {
+		m_counts = counts;
+	}
+
+	void write_all(const uint8_t * bytes, const uint64_t count) {
+		m_stream->write(bytes, count*m_chunks_per_record);
+		if (m_counts != NULL) {
+			m_counts->bytes_written += count*m_num_bytes;
+		}
+	}
+
+	uint64_t read_all(uint8_t * bytes, const uint64_t max) {
+		uint64_t count = std::min(max, remaining());
+		m_stream->read(bytes, count*m_chunks_per_record);
+		if (m_counts != NULL) {
+			m_counts->bytes_read += count*m_num_bytes;
+		}
+		return count;
+	}
+
+	uint64_t offset() {
+		return m_stream->offset()/m_chunks_per_record;
+	}
+
+	void seek(const uint64_t & index) {
+		if (index > size()) {
+			throw_exception("can't seek to record %lu, stream only has %lu records", index, size());
+		}
+		m_stream->seek(index*m_chunks_per_record);
+	}
+
+	// saved positions work for compressed streams too, unlike seeking to an index
+	tpie::stream_position get_position() {
+		return m_stream->get_position();
+	}
+
+	void set_position(const tpie::stream_position & position) {
+		m_stream->set_position(position);
+	}
+
+	uint64_t size() {
+		return m_stream->size()/m_chunks_per_record;
+	}
+
+	// number of records between the current index and the end of the stream
+	uint64_t remaining() {
+		return size() - offset();
+	}
+
+	// true if the file doesn't hold a whole number of records, e.g. if it was written with another record size
+	bool has_partial_record() {
+		return m_stream->size() % m_chunks_per_record != 0;
+	}
+
+	void truncate(const uint64_t & count) {
+		if (count > size()) {
+			throw_exception("can't truncate to %lu records, stream only has %lu records", count, size());
+		}
+		uint64_t index = std::min(offset(), count);
+		m_stream->seek(0);
+		m_stream->truncate(count*m_chunks_per_record);
+		m_stream->seek(index*m_chunks_per_record);
+	}
+
+private:
+
+	uint32_t m_num_bytes;
+	uint32_t m_chunk_bytes;
+	uint32_t m_chunks_per_record;
+	std::unique_ptr<IChunkStream> m_stream;
+	IOCounts * m_counts;
+};
+
+
+// block factor for num_streams streams that share memory_bytes for their buffers
+inline double block_factor_for(const uint64_t & memory_bytes, const uint32_t & num_streams) {
+	double block_factor = (double)memory_bytes/num_streams/tpie::file_stream<uint8_t>::memory_usage(1.0);
+	return std::max(1.0/64, std::min(1.0, block_factor));
+}
+
+
+/*
+	Checkpoints are written to a temporary file next to the real one, then renamed over it,
+	so a crash while writing a checkpoint leaves the last good checkpoint in place.
+*/
+inline std::string checkpoint_temp_path(const char * path) {
+	return std::string(path) + ".tmp";
+}
+
+// flushes a file or directory to disk, so it survives a crash
+inline void sync_path(const char * path) {
+	int fd = ::open(path, O_RDONLY);
+	if (fd < 0) {
+		throw_exception("can't open %s to sync it", path);
+	}
+	int result = ::fsync(fd);
+	::close(fd);
+	if (result != 0) {
+		throw_exception("can't sync %s", path);
+	}
+}
+
+inline std::string parent_dir(const char * path) {
+	std::string dir(path);
+	size_t i = dir.find_last_of('/');
+	if (i == std::string::npos) {
+		return ".";
+	} else if (i == 0) {
+		return "/";
+	}
+	return dir.substr(0, i);
+}
+
+// the new checkpoint is synced before it replaces the old one, and the rename is synced before returning,
+// so the checkpoint file always holds a whole checkpoint, even if the machine crashes
+inline void commit_checkpoint(const char * path) {
+	std::string temp_path = checkpoint_temp_path(path);
+	std::string dir = parent_dir(path);
+	sync_path(temp_path.c_str());
+	sync_path(dir.c_str());
+	if (std::rename(temp_path.c_str(), path) != 0) {
+		throw_exception("can't move checkpoint %s to %s", temp_path.c_str(), path);
+	}
+	sync_path(dir.c_str());
+}
+
+#endif
@@ -1,4 +1,5 @@
 
+#include <cstring>
 #include <jni.h>
 #include "jni.hpp"
 
@@ -60,6 +61,57 @@ jmethodID find_method_or_throw(JNIEnv * env, const jclass c, const char * name,
 }
 
 
+void write_buffer(JNIEnv * env, jobject jbuf, const uint8_t * bytes, const uint32_t num_bytes) {
+
+	// direct buffers can be written in place
+	uint8_t * addr = (uint8_t *)env->GetDirectBufferAddress(jbuf);
+	check_jni_exception(env);
+	if (addr != NULL) {
+		std::memcpy(addr, bytes, num_bytes);
+		return;
+	}
+
+	// otherwise, copy just the bytes we need into the backing array
+	jbyteArray array = (jbyteArray)call_method(env, byte_buffer, array, CallObjectMethod, jbuf);
+	check_jni_exception(env);
+	env->SetByteArrayRegion(array, 0, num_bytes, (const jbyte *)bytes);
+	check_jni_exception(env);
+	env->DeleteLocalRef(array);
+}
+
+jni_buffer::jni_buffer(JNIEnv * env, jobject jbuf)
+	: m_env(env), m_array(NULL), m_array_bytes(NULL) {
+
+	// direct buffers have an address we can use as-is
+	m_bytes = (uint8_t *)env->GetDirectBufferAddress(jbuf);
+	check_jni_exception(env);
+
+	if (m_bytes == NULL) {
+
+		// otherwise, fall back to the backing array
+		m_array = (jbyteArray)call_method(env, byte_buffer, array, CallObjectMethod, jbuf);
+		check_jni_exception(env);
+		m_array_bytes = env->GetByteArrayElements(m_array, NULL);
+		check_jni_exception(env);
+		m_bytes = (uint8_t *)m_array_bytes;
+	}
+}
+
+jni_buffer::~jni_buffer() {
+	if (m_array_bytes != NULL) {
+		m_env->ReleaseByteArrayElements(m_array, m_array_bytes, JNI_ABORT);
+	}
+}
+
+void jni_buffer::release(jint mode) {
+	if (m_array_bytes != NULL) {
+		m_env->ReleaseByteArrayElements(m_array, m_array_bytes, mode);
+		m_array_bytes = NULL;
+		check_jni_exception(m_env);
+	}
+}
+
+
 // shared java ids
 
 define_class(byte_buffer, "java/nio/ByteBuffer");
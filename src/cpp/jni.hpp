@@ -2,6 +2,8 @@
 #ifndef __JNI_HPP__
 #define __JNI_HPP__
 
+#include <cstdint>
+
 
 /*
 	JNI code is just terrible to deal with.
@@ -97,6 +99,42 @@ jmethodID find_method_or_throw(JNIEnv * env, const jclass c, const char * name,
 #define call_method(env, class_name, method_name, caller, obj, ...) \
 	env->caller(obj, get_method_id(env, class_name, method_name), ##__VA_ARGS__)
 
+
+// copies bytes into the start of a java.nio.ByteBuffer without allocating anything on the Java heap
+void write_buffer(JNIEnv * env, jobject jbuf, const uint8_t * bytes, const uint32_t num_bytes);
+
+
+/*
+	Gets at the bytes of a java.nio.ByteBuffer.
+	Direct buffers are read and written in place, without any copies.
+	Heap buffers go through their backing arrays, which the JVM may copy (and pin) for us.
+	Either way, call release() when you're done with the bytes. If an exception gets thrown first,
+	the destructor releases them without writing anything back.
+*/
+class jni_buffer {
+public:
+
+	jni_buffer(JNIEnv * env, jobject jbuf);
+	~jni_buffer();
+
+	jni_buffer(const jni_buffer &) = delete;
+	jni_buffer & operator = (const jni_buffer &) = delete;
+
+	uint8_t * get_bytes() {
+		return m_bytes;
+	}
+
+	// use JNI_ABORT if the bytes weren't modified, or 0 to write them back
+	void release(jint mode);
+
+private:
+
+	JNIEnv * m_env;
+	jbyteArray m_array;
+	jbyte * m_array_bytes;
+	uint8_t * m_bytes;
+};
+
 #endif
 
 
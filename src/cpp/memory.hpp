@@ -0,0 +1,17 @@
+#ifndef __MEMORY_HPP__
+#define __MEMORY_HPP__
+
+#include <vector>
+#include <tpie/memory.h>
+
+
+/*
+	Vectors whose memory is charged to TPIE's memory manager, so buffers that native code keeps
+	in memory count against the budget given to TPIE.start, like TPIE's own buffers do.
+*/
+
+template <typename T>
+using tpie_vector = std::vector<T, tpie::allocator<T>>;
+
+
+#endif
@@ -0,0 +1,1477 @@
+#ifndef __PRIORITY_QUEUE_HPP__
+#define __PRIORITY_QUEUE_HPP__
+
+#include <cstring>
+#include <cstdint>
+#include <vector>
+#include <memory>
+#include <algorithm>
+#include <functional>
+#include <limits>
+#include <jni.h>
+#include <tpie/tpie.h>
+#include <tpie/memory.h>
+#include <tpie/priority_queue.h>
+#include "jni.hpp"
+#include "file_stream.hpp"
+#include "memory.hpp"
+
+
+/*
+	Priority queues for fixed-size entries, shared by the queues for each key type.
+	Keys are compared natively, so they never lose precision by going through another type.
+*/
+
+template <typename Key, int NumBytes>
+struct PQEntry {
+	Key priority;
+	uint8_t bytes[NumBytes];
+};
+
+template <typename Key, int NumBytes>
+inline bool operator == (const PQEntry<Key,NumBytes> & a, const PQEntry<Key,NumBytes> & b) {
+	return a.priority == b.priority;
+}
+
+template <typename Key, int NumBytes>
+inline bool operator != (const PQEntry<Key,NumBytes> & a, const PQEntry<Key,NumBytes> & b) {
+	return a.priority != b.priority;
+}
+
+template <typename Key, int NumBytes>
+inline bool operator < (const PQEntry<Key,NumBytes> & a, const PQEntry<Key,NumBytes> & b) {
+	return a.priority < b.priority;
+}
+
+template <typename Key, int NumBytes>
+inline bool operator <= (const PQEntry<Key,NumBytes> & a, const PQEntry<Key,NumBytes> & b) {
+	return a.priority <= b.priority;
+}
+
+template <typename Key, int NumBytes>
+inline bool operator > (const PQEntry<Key,NumBytes> & a, const PQEntry<Key,NumBytes> & b) {
+	return a.priority > b.priority;
+}
+
+template <typename Key, int NumBytes>
+inline bool operator >= (const PQEntry<Key,NumBytes> & a, const PQEntry<Key,NumBytes> & b) {
+	return a.priority >= b.priority;
+}
+
+
+/*
+	Internal memory budgets, in bytes.
+	Queues use their budgets for TPIE's in-memory buffers, and spill everything else to disk.
+*/
+
+// the budget for a queue that gets a fraction of the memory TPIE has available right now
+inline uint64_t memory_budget_for_fraction(const double & memory_fraction) {
+	if (!(memory_fraction > 0 && memory_fraction <= 1)) {
+		throw_exception("memory fraction for queue must be in (0,1]: %f", memory_fraction);
+	}
+	return (uint64_t)(tpie::get_memory_manager().available()*memory_fraction);
+}
+
+// checkpoints and bulk builds read and write this many records at a time
+#define PQ_CHECKPOINT_BATCH 256
+
+
+template <typename Key>
+class IPriorityQueue {
+public:
+
+	// memory_bytes is the queue's internal memory budget, or 0 to use all the memory TPIE has available
+	// compressed queues compress their spill files
+	// resizable queues can change their memory budgets in place
+	static IPriorityQueue<Key> * make(const uint32_t & num_bytes, const uint64_t & memory_bytes = 0, const bool & compressed = false, const bool & resizable = false);
+
+	virtual ~IPriorityQueue() {}
+
+	virtual uint64_t to_handle() const {
+		return (uint64_t)this;
+	}
+
+	static IPriorityQueue<Key> * from_handle(const uint64_t handle) {
+		return (IPriorityQueue<Key> *)handle;
+	}
+
+	virtual uint32_t get_num_bytes() = 0;
+
+	virtual void push(const Key & priority, const uint8_t * bytes) = 0;
+	virtual void push_all(const Key * priorities, const uint8_t * bytes, const uint64_t count) = 0;
+	virtual Key top_priority() = 0;
+	virtual const uint8_t * top_bytes() = 0;
+	virtual void pop() = 0;
+	virtual uint64_t pop_into(Key * priorities, uint8_t * bytes, const uint64_t max) = 0;
+	virtual uint64_t size() = 0;
+	virtual bool empty() = 0;
+	virtual uint64_t get_memory_budget() = 0;
+	virtual void set_memory_budget(const uint64_t & memory_bytes) = 0;
+
+	// false if the queue can only change its memory budget while it's empty
+	virtual bool resizes_in_place() {
+		return false;
+	}
+
+	// counts the entries in the queue's runs on disk, and the bytes read and written for them
+	// returns false if the queue can't, because TPIE does its spilling
+	virtual bool get_disk_stats(uint64_t & entries_on_disk __attribute__((unused)), IOCounts & io __attribute__((unused))) {
+		return false;
+	}
+
+	// the queue publishes its stats to the block from now on, see StatsBlock
+	virtual void attach_stats(uint64_t * words __attribute__((unused))) {
+		throw_exception("queue doesn't publish stats");
+	}
+
+	// writes every entry to the checkpoint file in priority order, and leaves the queue with the same entries
+	virtual void checkpoint(const char * path) {
+		throw_exception("queue can't be checkpointed to %s", path);
+	}
+};
+
+template <typename Key, int NumBytes>
+class PriorityQueue : public IPriorityQueue<Key> {
+public:
+
+	PriorityQueue(const uint32_t & num_bytes, const uint64_t & memory_bytes) :
+		m_num_bytes(num_bytes),
+		m_memory_bytes(memory_bytes),
+		m_queue(new tpie::priority_queue<PQEntry<Key,NumBytes>>((tpie::memory_size_type)memory_bytes))
+	{}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const Key & priority, const uint8_t * bytes) {
+		PQEntry<Key,NumBytes> entry;
+		entry.priority = priority;
+		std::memcpy(entry.bytes, bytes, m_num_bytes);
+		m_queue->push(entry);
+	}
+
+	void push_all(const Key * priorities, const uint8_t * bytes, const uint64_t count) {
+		PQEntry<Key,NumBytes> entry;
+		for (uint64_t i=0; i<count; i++) {
+			entry.priority = priorities[i];
+			std::memcpy(entry.bytes, bytes + i*m_num_bytes, m_num_bytes);
+			m_queue->push(entry);
+		}
+	}
+
+	Key top_priority() {
+		return m_queue->top().priority;
+	}
+
+	const uint8_t * top_bytes() {
+		return m_queue->top().bytes;
+	}
+
+	void pop() {
+		m_queue->pop();
+	}
+
+	uint64_t pop_into(Key * priorities, uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		while (count < max && !m_queue->empty()) {
+			const PQEntry<Key,NumBytes> & entry = m_queue->top();
+			priorities[count] = entry.priority;
+			std::memcpy(bytes + count*m_num_bytes, entry.bytes, m_num_bytes);
+			m_queue->pop();
+			count++;
+		}
+		return count;
+	}
+
+	uint64_t size() {
+		return m_queue->size();
+	}
+
+	bool empty() {
+		return m_queue->empty();
+	}
+
+	uint64_t get_memory_budget() {
+		return m_memory_bytes;
+	}
+
+	// TPIE's queue can't resize its buffers, so it's replaced with a new one, which only works while it's empty
+	// the old queue is freed before the new one is made, so their buffers are never in memory at the same time,
+	// and if the new one can't be made, the old budget is put back
+	void set_memory_budget(const uint64_t & memory_bytes) {
+		if (!m_queue->empty()) {
+			throw_exception("can't change the memory budget of a queue that has entries");
+		}
+		m_queue.reset();
+		try {
+			m_queue.reset(new tpie::priority_queue<PQEntry<Key,NumBytes>>((tpie::memory_size_type)memory_bytes));
+		} catch (...) {
+			m_queue.reset(new tpie::priority_queue<PQEntry<Key,NumBytes>>((tpie::memory_size_type)m_memory_bytes));
+			throw;
+		}
+		m_memory_bytes = memory_bytes;
+	}
+
+private:
+
+	uint32_t m_num_bytes;
+	uint64_t m_memory_bytes;
+	std::unique_ptr<tpie::priority_queue<PQEntry<Key,NumBytes>>> m_queue;
+};
+
+
+// queue for entries that are exactly one of the template sizes, or NULL for other sizes
+template <typename Key>
+IPriorityQueue<Key> * make_exact(const uint32_t & num_bytes, const uint64_t & memory_bytes) {
+	switch (num_bytes) {
+		case     8: return new PriorityQueue<Key,    8>(num_bytes, memory_bytes);
+		case    16: return new PriorityQueue<Key,   16>(num_bytes, memory_bytes);
+		case    32: return new PriorityQueue<Key,   32>(num_bytes, memory_bytes);
+		case    64: return new PriorityQueue<Key,   64>(num_bytes, memory_bytes);
+		case   128: return new PriorityQueue<Key,  128>(num_bytes, memory_bytes);
+		case   256: return new PriorityQueue<Key,  256>(num_bytes, memory_bytes);
+		case   512: return new PriorityQueue<Key,  512>(num_bytes, memory_bytes);
+		case  1024: return new PriorityQueue<Key, 1024>(num_bytes, memory_bytes);
+	}
+	return NULL;
+}
+
+
+// a sorted run on disk, and the record at its head
+template <typename Key>
+class SortedRun {
+public:
+
+	// the stream must have at least one record left
+	SortedRun(FileStream * stream) :
+		m_stream(stream),
+		m_head(stream->get_num_bytes())
+	{
+		advance();
+	}
+
+	Key priority() const {
+		Key priority;
+		std::memcpy(&priority, m_head.data(), sizeof(Key));
+		return priority;
+	}
+
+	const uint8_t * bytes() const {
+		return m_head.data() + sizeof(Key);
+	}
+
+	const uint8_t * record() const {
+		return m_head.data();
+	}
+
+	// reads the next record into the head, or returns false if the run is used up
+	bool advance() {
+		return m_stream->read_all(m_head.data(), 1) == 1;
+	}
+
+	// entries left in the run, including the head
+	uint64_t size() {
+		return m_stream->remaining() + 1;
+	}
+
+	// remembers where the run is, so reset() can undo the reads after it
+	void mark() {
+		m_mark_position = m_stream->get_position();
+		m_mark_head = m_head;
+	}
+
+	void reset() {
+		m_stream->set_position(m_mark_position);
+		m_head = m_mark_head;
+	}
+
+private:
+
+	std::unique_ptr<FileStream> m_stream;
+	tpie_vector<uint8_t> m_head;
+
+	tpie::stream_position m_mark_position;
+	tpie_vector<uint8_t> m_mark_head;
+};
+
+
+/*
+	Queue that does its own spilling, for entries that aren't one of the template sizes, and for compressed spill files.
+	TPIE's priority queue only takes compile-time entry sizes, and writes its spill files itself, so entries
+	go to a heap in memory instead, and when the heap fills up, it's sorted and written to a run on disk.
+	Entries are stored at their exact size, both in memory and in the runs, so no space is wasted on padding.
+	Once there are RUN_PQ_MERGE_FANOUT runs, the smaller half of them are merged into one, so there are never
+	more runs open than the stream buffers were budgeted for, and big runs aren't rewritten on every merge. The top entry is the smallest of the heap top and the heads of the runs.
+	Half the budget goes to the heap, which is allocated up front, the other half to the run buffers.
+	All of it is charged to TPIE's memory manager.
+	The budget changes in place: a bigger heap just takes the entries of the old one, and a smaller heap
+	spills only the largest entries that don't fit. Runs keep the buffers they were made with.
+	Run records are the priority, then the payload.
+*/
+
+#define RUN_PQ_MERGE_FANOUT 8
+#define RUN_PQ_BATCH 256
+
+template <typename Key>
+class RunPriorityQueue : public IPriorityQueue<Key> {
+public:
+
+	RunPriorityQueue(const uint32_t & num_bytes, const uint64_t & memory_bytes, const bool & compressed) :
+		m_num_bytes(num_bytes),
+		m_compressed(compressed),
+		m_record_bytes(sizeof(Key) + num_bytes),
+		m_size(0),
+		m_memory_bytes(memory_bytes),
+		m_block_factor(block_factor_for(memory_bytes/2, RUN_PQ_MERGE_FANOUT + 1)),
+		m_records(RUN_PQ_BATCH*m_record_bytes)
+	{
+		resize_heap(heap_capacity(memory_bytes));
+	}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const Key & priority, const uint8_t * bytes) {
+		if (m_heap.size() >= m_heap_capacity) {
+			spill();
+		}
+		uint64_t slot;
+		if (m_free_slots.empty()) {
+			// never reallocates, the slots are reserved up front
+			slot = m_slots.size()/m_num_bytes;
+			m_slots.resize(m_slots.size() + m_num_bytes);
+		} else {
+			slot = m_free_slots.back();
+			m_free_slots.pop_back();
+		}
+		std::memcpy(m_slots.data() + slot*m_num_bytes, bytes, m_num_bytes);
+		m_heap.push_back(std::make_pair(priority, slot));
+		std::push_heap(m_heap.begin(), m_heap.end(), is_after);
+		m_size++;
+	}
+
+	void push_all(const Key * priorities, const uint8_t * bytes, const uint64_t count) {
+		for (uint64_t i=0; i<count; i++) {
+			push(priorities[i], bytes + i*m_num_bytes);
+		}
+	}
+
+	Key top_priority() {
+		Run * run = top_run();
+		if (run == NULL) {
+			return m_heap.front().first;
+		}
+		return run->priority();
+	}
+
+	const uint8_t * top_bytes() {
+		Run * run = top_run();
+		if (run == NULL) {
+			return m_slots.data() + m_heap.front().second*m_num_bytes;
+		}
+		return run->bytes();
+	}
+
+	void pop() {
+		Run * run = top_run();
+		if (run == NULL) {
+			m_free_slots.push_back(m_heap.front().second);
+			std::pop_heap(m_heap.begin(), m_heap.end(), is_after);
+			m_heap.pop_back();
+		} else if (!run->advance()) {
+			remove_run(run);
+		}
+		m_size--;
+	}
+
+	uint64_t pop_into(Key * priorities, uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		while (count < max && m_size > 0) {
+			priorities[count] = top_priority();
+			std::memcpy(bytes + count*m_num_bytes, top_bytes(), m_num_bytes);
+			pop();
+			count++;
+		}
+		return count;
+	}
+
+	uint64_t size() {
+		return m_size;
+	}
+
+	bool empty() {
+		return m_size == 0;
+	}
+
+	uint64_t get_memory_budget() {
+		return m_memory_bytes;
+	}
+
+	// only the heap changes size, and only the entries that don't fit in it are spilled
+	// new runs get buffers for the new budget
+	void set_memory_budget(const uint64_t & memory_bytes) {
+		uint64_t capacity = heap_capacity(memory_bytes);
+		if (m_heap.size() > capacity) {
+			spill_largest(m_heap.size() - capacity);
+		}
+		resize_heap(capacity);
+		m_memory_bytes = memory_bytes;
+		m_block_factor = block_factor_for(memory_bytes/2, RUN_PQ_MERGE_FANOUT + 1);
+	}
+
+	bool resizes_in_place() {
+		return true;
+	}
+
+	// the run heads count as on disk, since they're read back into the runs' buffers
+	bool get_disk_stats(uint64_t & entries_on_disk, IOCounts & io) {
+		entries_on_disk = m_size - m_heap.size();
+		io = m_io;
+		return true;
+	}
+
+private:
+
+	typedef SortedRun<Key> Run;
+
+	uint32_t m_num_bytes;
+	bool m_compressed;
+	uint32_t m_record_bytes;
+	uint64_t m_size;
+	IOCounts m_io;
+
+	uint64_t m_memory_bytes;
+	double m_block_factor;
+
+	// the heap holds priorities and slots, the slots hold the payloads
+	tpie_vector<std::pair<Key,uint64_t>> m_heap;
+	uint64_t m_heap_capacity;
+	tpie_vector<uint8_t> m_slots;
+	tpie_vector<uint64_t> m_free_slots;
+
+	std::vector<std::unique_ptr<Run>> m_runs;
+
+	// buffer for writing runs
+	tpie_vector<uint8_t> m_records;
+
+	// orders the heap so the smallest priority is at the front
+	static bool is_after(const std::pair<Key,uint64_t> & a, const std::pair<Key,uint64_t> & b) {
+		return a.first > b.first;
+	}
+
+	// half the budget goes to the heap, the other half to the run buffers
+	uint64_t heap_capacity(const uint64_t & memory_bytes) {
+		return std::max((uint64_t)1, memory_bytes/2/(m_num_bytes + sizeof(std::pair<Key,uint64_t>) + sizeof(uint64_t)));
+	}
+
+	// copies the heap into new buffers with room for capacity entries, which must be at least the heap size
+	// the slots are packed in heap order, so none are free afterwards
+	// the new buffers are all reserved before anything moves, so if one can't be, the heap stays as it was
+	void resize_heap(const uint64_t & capacity) {
+
+		tpie_vector<std::pair<Key,uint64_t>> heap;
+		tpie_vector<uint8_t> slots;
+		tpie_vector<uint64_t> free_slots;
+		heap.reserve(capacity);
+		slots.reserve(capacity*m_num_bytes);
+		free_slots.reserve(capacity);
+
+		for (const std::pair<Key,uint64_t> & entry : m_heap) {
+			const uint8_t * payload = m_slots.data() + entry.second*m_num_bytes;
+			heap.push_back(std::make_pair(entry.first, slots.size()/m_num_bytes));
+			slots.insert(slots.end(), payload, payload + m_num_bytes);
+		}
+
+		m_heap.swap(heap);
+		m_slots.swap(slots);
+		m_free_slots.swap(free_slots);
+		m_heap_capacity = capacity;
+	}
+
+	FileStream * new_run_stream() {
+		std::unique_ptr<FileStream> stream(new FileStream(m_record_bytes, m_block_factor));
+		stream->open_temp(m_compressed);
+		stream->count_io(&m_io);
+		return stream.release();
+	}
+
+	// null if the heap top comes first
+	Run * top_run() {
+		if (m_size == 0) {
+			throw_exception("priority queue is empty");
+		}
+		Run * top = NULL;
+		for (std::unique_ptr<Run> & run : m_runs) {
+			if (top == NULL || run->priority() < top->priority()) {
+				top = run.get();
+			}
+		}
+		if (top != NULL && !m_heap.empty() && !(top->priority() < m_heap.front().first)) {
+			return NULL;
+		}
+		return top;
+	}
+
+	void remove_run(Run * run) {
+		for (auto i = m_runs.begin(); i != m_runs.end(); i++) {
+			if (i->get() == run) {
+				m_runs.erase(i);
+				return;
+			}
+		}
+	}
+
+	// writes the heap to a new run, in priority order
+	void spill() {
+		spill_largest(m_heap.size());
+	}
+
+	// writes the count entries with the largest priorities to a new run, in priority order, and keeps the rest
+	void spill_largest(const uint64_t & count) {
+
+		if (count == 0) {
+			return;
+		}
+
+		// sorted in ascending order, which is still a heap, so the rest of the entries can stay where they are
+		std::sort_heap(m_heap.begin(), m_heap.end(), is_after);
+		std::reverse(m_heap.begin(), m_heap.end());
+		auto first = m_heap.end() - count;
+
+		std::unique_ptr<FileStream> stream(new_run_stream());
+		uint64_t batch = 0;
+		for (auto i = first; i != m_heap.end(); i++) {
+			uint8_t * record = m_records.data() + batch*m_record_bytes;
+			std::memcpy(record, &i->first, sizeof(Key));
+			std::memcpy(record + sizeof(Key), m_slots.data() + i->second*m_num_bytes, m_num_bytes);
+			batch++;
+			if (batch == RUN_PQ_BATCH) {
+				stream->write_all(m_records.data(), batch);
+				batch = 0;
+			}
+		}
+		stream->write_all(m_records.data(), batch);
+
+		if (count == m_heap.size()) {
+			m_heap.clear();
+			m_slots.clear();
+			m_free_slots.clear();
+		} else {
+			for (auto i = first; i != m_heap.end(); i++) {
+				m_free_slots.push_back(i->second);
+			}
+			m_heap.erase(first, m_heap.end());
+		}
+
+		stream->seek(0);
+		m_runs.push_back(std::unique_ptr<Run>(new Run(stream.release())));
+		merge_runs();
+	}
+
+	// merges the smaller half of the runs once there are RUN_PQ_MERGE_FANOUT of them,
+	// so at most RUN_PQ_MERGE_FANOUT + 1 streams are ever open
+	void merge_runs() {
+
+		if (m_runs.size() < RUN_PQ_MERGE_FANOUT) {
+			return;
+		}
+
+		std::sort(m_runs.begin(), m_runs.end(), [](const std::unique_ptr<Run> & a, const std::unique_ptr<Run> & b) {
+			return a->size() < b->size();
+		});
+		std::vector<Run *> inputs;
+		for (uint64_t i=0; i<RUN_PQ_MERGE_FANOUT/2; i++) {
+			inputs.push_back(m_runs[i].get());
+		}
+
+		// merge the inputs into one run, one entry at a time
+		std::unique_ptr<FileStream> stream(new_run_stream());
+		uint64_t count = 0;
+		while (!inputs.empty()) {
+			uint64_t top = 0;
+			for (uint64_t i=1; i<inputs.size(); i++) {
+				if (inputs[i]->priority() < inputs[top]->priority()) {
+					top = i;
+				}
+			}
+			std::memcpy(m_records.data() + count*m_record_bytes, inputs[top]->record(), m_record_bytes);
+			count++;
+			if (count == RUN_PQ_BATCH) {
+				stream->write_all(m_records.data(), count);
+				count = 0;
+			}
+			if (!inputs[top]->advance()) {
+				remove_run(inputs[top]);
+				inputs.erase(inputs.begin() + top);
+			}
+		}
+		stream->write_all(m_records.data(), count);
+
+		stream->seek(0);
+		m_runs.push_back(std::unique_ptr<Run>(new Run(stream.release())));
+	}
+};
+
+
+/*
+	Queue that only keeps the max_entries entries with the smallest priorities, for beam search and k-best enumeration.
+	Entries are kept in a min-max heap in memory, so the queue can pop the smallest entry, and drop the
+	largest one when a push overflows the queue, both in O(log max_entries) time. So memory use is
+	proportional to max_entries, no matter how many entries are pushed, and nothing ever spills to disk.
+	The space for max_entries entries is allocated up front and charged to TPIE's memory manager, so
+	queues whose max_entries doesn't fit in the memory TPIE has left are rejected.
+	When the queue is full, entries no smaller than the largest entry are dropped without touching the heap.
+*/
+
+template <typename Key>
+class BoundedPriorityQueue : public IPriorityQueue<Key> {
+public:
+
+	static BoundedPriorityQueue<Key> * from_handle(const uint64_t handle) {
+		return static_cast<BoundedPriorityQueue<Key> *>(IPriorityQueue<Key>::from_handle(handle));
+	}
+
+	BoundedPriorityQueue(const uint32_t & num_bytes, const uint64_t & max_entries) :
+		m_num_bytes(num_bytes),
+		m_max_entries(max_entries)
+	{
+		if (num_bytes == 0) {
+			throw_exception("unsupported entry size for queue: %d", num_bytes);
+		}
+		if (max_entries == 0) {
+			throw_exception("bounded queue must hold at least one entry");
+		}
+		uint64_t available = tpie::get_memory_manager().available();
+		if (max_entries > available/entry_bytes(num_bytes)) {
+			throw_exception("bounded queue of %lu entries needs more memory than TPIE has available: %lu bytes",
+				max_entries, available);
+		}
+		m_heap.reserve(max_entries);
+		m_slots.reserve(max_entries*num_bytes);
+		m_free_slots.reserve(max_entries);
+	}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const Key & priority, const uint8_t * bytes) {
+		insert(priority, bytes);
+		publish_stats();
+	}
+
+	void push_all(const Key * priorities, const uint8_t * bytes, const uint64_t count) {
+		for (uint64_t i=0; i<count; i++) {
+			insert(priorities[i], bytes + i*m_num_bytes);
+		}
+		publish_stats();
+	}
+
+	Key top_priority() {
+		check_not_empty();
+		return m_heap[0].first;
+	}
+
+	const uint8_t * top_bytes() {
+		check_not_empty();
+		return m_slots.data() + m_heap[0].second*m_num_bytes;
+	}
+
+	void pop() {
+		remove_top();
+		publish_stats();
+	}
+
+	uint64_t pop_into(Key * priorities, uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		while (count < max && !m_heap.empty()) {
+			priorities[count] = top_priority();
+			std::memcpy(bytes + count*m_num_bytes, top_bytes(), m_num_bytes);
+			remove_top();
+			count++;
+		}
+		publish_stats();
+		return count;
+	}
+
+	uint64_t size() {
+		return m_heap.size();
+	}
+
+	bool empty() {
+		return m_heap.empty();
+	}
+
+	// the queue always keeps its entries in memory, so the budget is just the space for max_entries entries
+	uint64_t get_memory_budget() {
+		return m_max_entries*entry_bytes(m_num_bytes);
+	}
+
+	void set_memory_budget(const uint64_t & memory_bytes __attribute__((unused))) {
+		// nothing to do
+	}
+
+	bool resizes_in_place() {
+		return true;
+	}
+
+	// nothing is ever spilled, so the only I/O is for checkpoints
+	bool get_disk_stats(uint64_t & entries_on_disk, IOCounts & io) {
+		entries_on_disk = 0;
+		io = m_io;
+		return true;
+	}
+
+	void attach_stats(uint64_t * words) {
+		m_stats.attach(words);
+		publish_stats();
+	}
+
+	// writes a sorted copy of the heap, so the queue itself is never touched
+	void checkpoint(const char * path) {
+
+		tpie_vector<std::pair<Key,uint64_t>> sorted(m_heap.begin(), m_heap.end());
+		std::sort(sorted.begin(), sorted.end());
+
+		uint32_t record_bytes = sizeof(Key) + m_num_bytes;
+		tpie_vector<uint8_t> records(PQ_CHECKPOINT_BATCH*record_bytes);
+		FileStream out(record_bytes);
+		out.open(checkpoint_temp_path(path).c_str(), tpie::access_write);
+		out.truncate(0);
+		out.count_io(&m_io);
+		uint64_t count = 0;
+		for (const std::pair<Key,uint64_t> & entry : sorted) {
+			uint8_t * record = records.data() + count*record_bytes;
+			std::memcpy(record, &entry.first, sizeof(Key));
+			std::memcpy(record + sizeof(Key), m_slots.data() + entry.second*m_num_bytes, m_num_bytes);
+			count++;
+			if (count == PQ_CHECKPOINT_BATCH) {
+				out.write_all(records.data(), count);
+				count = 0;
+			}
+		}
+		out.write_all(records.data(), count);
+		out.close();
+		commit_checkpoint(path);
+		publish_stats();
+	}
+
+	bool is_full() {
+		return m_heap.size() >= m_max_entries;
+	}
+
+	// pushes with priorities at least this big are dropped
+	Key drop_priority() {
+		if (is_full()) {
+			return max_priority();
+		}
+		return std::numeric_limits<Key>::has_infinity ? std::numeric_limits<Key>::infinity() : std::numeric_limits<Key>::max();
+	}
+
+private:
+
+	uint32_t m_num_bytes;
+	uint64_t m_max_entries;
+
+	// the heap holds priorities and slots, the slots hold the payloads
+	// even levels of the heap are min levels, odd levels are max levels
+	tpie_vector<std::pair<Key,uint64_t>> m_heap;
+	tpie_vector<uint8_t> m_slots;
+	tpie_vector<uint64_t> m_free_slots;
+
+	IOCounts m_io;
+	StatsBlock m_stats;
+
+	void publish_stats() {
+		m_stats.publish(m_heap.size(), true, 0, m_io);
+	}
+
+	// keeps the entry if it's one of the best max_entries, and drops the largest entry if the queue overflows
+	void insert(const Key & priority, const uint8_t * bytes) {
+
+		uint64_t slot;
+		if (m_heap.size() < m_max_entries) {
+			if (m_free_slots.empty()) {
+				slot = m_slots.size()/m_num_bytes;
+				m_slots.resize(m_slots.size() + m_num_bytes);
+			} else {
+				slot = m_free_slots.back();
+				m_free_slots.pop_back();
+			}
+		} else if (priority < max_priority()) {
+			// replace the largest entry
+			uint64_t i = max_index();
+			slot = m_heap[i].second;
+			remove(i);
+		} else {
+			return;
+		}
+
+		std::memcpy(m_slots.data() + slot*m_num_bytes, bytes, m_num_bytes);
+		m_heap.push_back(std::make_pair(priority, slot));
+		bubble_up(m_heap.size() - 1);
+	}
+
+	void remove_top() {
+		check_not_empty();
+		m_free_slots.push_back(m_heap[0].second);
+		remove(0);
+	}
+
+	// memory for one entry: its payload, its heap entry, and its place in the free list
+	static uint64_t entry_bytes(const uint32_t & num_bytes) {
+		return num_bytes + sizeof(std::pair<Key,uint64_t>) + sizeof(uint64_t);
+	}
+
+	void check_not_empty() {
+		if (m_heap.empty()) {
+			throw_exception("priority queue is empty");
+		}
+	}
+
+	static bool is_min_level(const uint64_t & i) {
+		return (63 - __builtin_clzll(i + 1)) % 2 == 0;
+	}
+
+	// true if a comes before b on a min level, or after b on a max level
+	bool is_before(const uint64_t & a, const uint64_t & b, const bool & is_min) const {
+		return is_min ? m_heap[a].first < m_heap[b].first : m_heap[b].first < m_heap[a].first;
+	}
+
+	uint64_t max_index() const {
+		if (m_heap.size() == 1) {
+			return 0;
+		} else if (m_heap.size() == 2 || m_heap[2].first < m_heap[1].first) {
+			return 1;
+		}
+		return 2;
+	}
+
+	Key max_priority() const {
+		return m_heap[max_index()].first;
+	}
+
+	// removes the heap entry at i, but not its slot
+	void remove(const uint64_t & i) {
+		m_heap[i] = m_heap.back();
+		m_heap.pop_back();
+		if (i < m_heap.size()) {
+			trickle_down(i);
+			bubble_up(i);
+		}
+	}
+
+	void bubble_up(uint64_t i) {
+		if (i == 0) {
+			return;
+		}
+		bool is_min = is_min_level(i);
+		uint64_t parent = (i - 1)/2;
+		if (is_before(parent, i, is_min)) {
+			// i belongs on the parent's levels instead
+			std::swap(m_heap[i], m_heap[parent]);
+			i = parent;
+			is_min = !is_min;
+		}
+		while (i >= 3) {
+			uint64_t grandparent = ((i - 1)/2 - 1)/2;
+			if (!is_before(i, grandparent, is_min)) {
+				break;
+			}
+			std::swap(m_heap[i], m_heap[grandparent]);
+			i = grandparent;
+		}
+	}
+
+	void trickle_down(uint64_t i) {
+		bool is_min = is_min_level(i);
+		while (true) {
+
+			// find the first of the children and grandchildren
+			uint64_t first = i;
+			for (uint64_t c=2*i + 1; c<=2*i + 2 && c<m_heap.size(); c++) {
+				if (is_before(c, first, is_min)) {
+					first = c;
+				}
+				for (uint64_t g=2*c + 1; g<=2*c + 2 && g<m_heap.size(); g++) {
+					if (is_before(g, first, is_min)) {
+						first = g;
+					}
+				}
+			}
+			if (first == i) {
+				return;
+			}
+
+			std::swap(m_heap[i], m_heap[first]);
+			if (first <= 2*i + 2) {
+				// a child is on the other levels, so it's already in order
+				return;
+			}
+
+			// a grandchild may now be out of order with its parent
+			uint64_t parent = (first - 1)/2;
+			if (is_before(parent, first, is_min)) {
+				std::swap(m_heap[first], m_heap[parent]);
+			}
+			i = first;
+		}
+	}
+};
+
+
+template <typename Key>
+IPriorityQueue<Key> * IPriorityQueue<Key>::make(const uint32_t & num_bytes, const uint64_t & memory_budget, const bool & compressed, const bool & resizable) {
+
+	if (num_bytes == 0) {
+		throw_exception("unsupported entry size for queue: %d", num_bytes);
+	}
+	uint64_t memory_bytes = memory_budget;
+	if (memory_bytes == 0) {
+		memory_bytes = memory_budget_for_fraction(1.0);
+	}
+	if (!compressed && !resizable) {
+		IPriorityQueue<Key> * queue = make_exact<Key>(num_bytes, memory_bytes);
+		if (queue != NULL) {
+			return queue;
+		}
+	}
+	return new RunPriorityQueue<Key>(num_bytes, memory_bytes, compressed);
+}
+
+
+/*
+	Queue whose entries are split between a queue and sorted runs on disk, that are merged one entry at a time.
+	Queues restored from a checkpoint, or built in bulk, start out with a sorted run, and every queue made from Java
+	is one of these, so checkpoints can move the queue's entries into the checkpoint instead of pushing them back.
+
+	To checkpoint, the queue is drained into a new sorted run, then the runs are merged into the checkpoint file,
+	which becomes the only run. Entries are only popped from the queue the first time they're checkpointed,
+	so a checkpoint costs O(k log k) for the k entries pushed since the last checkpoint, plus reading and writing
+	every entry once. If anything fails, the entries stay where they were, so none are lost.
+	Queues that resize in place change their memory budgets directly. TPIE's queues can't, so the first time
+	their budget changes, they're drained into a run the same way, and replaced with a RunPriorityQueue,
+	so later changes don't touch the disk.
+	Checkpoint records are the priority, then the payload.
+*/
+
+template <typename Key>
+class CheckpointablePriorityQueue : public IPriorityQueue<Key> {
+public:
+
+	// run is a sorted run to start with, or NULL
+	// compressed queues compress their runs
+	CheckpointablePriorityQueue(IPriorityQueue<Key> * queue, FileStream * run, const bool & compressed) :
+		m_queue(queue),
+		m_num_bytes(queue->get_num_bytes()),
+		m_record_bytes(sizeof(Key) + queue->get_num_bytes()),
+		m_compressed(compressed)
+	{
+		add_run(run);
+	}
+
+	uint32_t get_num_bytes() {
+		return m_num_bytes;
+	}
+
+	void push(const Key & priority, const uint8_t * bytes) {
+		m_queue->push(priority, bytes);
+		publish_stats();
+	}
+
+	void push_all(const Key * priorities, const uint8_t * bytes, const uint64_t count) {
+		m_queue->push_all(priorities, bytes, count);
+		publish_stats();
+	}
+
+	Key top_priority() {
+		Run * run = top_run();
+		if (run == NULL) {
+			return m_queue->top_priority();
+		}
+		return run->priority();
+	}
+
+	const uint8_t * top_bytes() {
+		Run * run = top_run();
+		if (run == NULL) {
+			return m_queue->top_bytes();
+		}
+		return run->bytes();
+	}
+
+	void pop() {
+		pop_top();
+		publish_stats();
+	}
+
+	uint64_t pop_into(Key * priorities, uint8_t * bytes, const uint64_t max) {
+		uint64_t count = 0;
+		while (count < max && !empty()) {
+			priorities[count] = top_priority();
+			std::memcpy(bytes + count*m_num_bytes, top_bytes(), m_num_bytes);
+			pop_top();
+			count++;
+		}
+		publish_stats();
+		return count;
+	}
+
+	uint64_t size() {
+		uint64_t size = m_queue->size();
+		for (std::unique_ptr<Run> & run : m_runs) {
+			size += run->size();
+		}
+		return size;
+	}
+
+	bool empty() {
+		return m_runs.empty() && m_queue->empty();
+	}
+
+	uint64_t get_memory_budget() {
+		return m_queue->get_memory_budget();
+	}
+
+	void set_memory_budget(const uint64_t & memory_bytes) {
+
+		if (m_queue->resizes_in_place()) {
+			m_queue->set_memory_budget(memory_bytes);
+			publish_stats();
+			return;
+		}
+
+		// the old queue is freed before the new one is made, so their buffers are never in memory at the same time
+		drain_queue();
+		uint64_t old_bytes = m_queue->get_memory_budget();
+		m_queue.reset();
+		try {
+			m_queue.reset(new RunPriorityQueue<Key>(m_num_bytes, memory_bytes, m_compressed));
+		} catch (...) {
+			m_queue.reset(new RunPriorityQueue<Key>(m_num_bytes, old_bytes, m_compressed));
+			throw;
+		}
+		publish_stats();
+	}
+
+	// the runs are on disk, except for their heads, and the queue counts its own entries on disk, if it can
+	bool get_disk_stats(uint64_t & entries_on_disk, IOCounts & io) {
+		bool exact = m_queue->get_disk_stats(entries_on_disk, io);
+		for (std::unique_ptr<Run> & run : m_runs) {
+			entries_on_disk += run->size();
+		}
+		io += m_io;
+		return exact;
+	}
+
+	void attach_stats(uint64_t * words) {
+		m_stats.attach(words);
+		publish_stats();
+	}
+
+	void checkpoint(const char * path) {
+
+		drain_queue();
+
+		// merge the runs into the checkpoint, but leave them where they were in case anything fails
+		mark_runs();
+		try {
+			FileStream out(m_record_bytes);
+			out.open(checkpoint_temp_path(path).c_str(), tpie::access_write);
+			out.truncate(0);
+			out.count_io(&m_io);
+			merge_runs(out);
+			out.close();
+			commit_checkpoint(path);
+		} catch (...) {
+			reset_runs();
+			throw;
+		}
+
+		// then read the entries from the checkpoint, instead of from the old runs
+		std::unique_ptr<FileStream> checkpoint(open_checkpoint(m_num_bytes, path));
+		m_runs.clear();
+		add_run(checkpoint.release());
+		publish_stats();
+	}
+
+	// checkpoints hold records with the priority, then the payload
+	static FileStream * open_checkpoint(const uint32_t & num_bytes, const char * path) {
+		std::unique_ptr<FileStream> stream(new FileStream(sizeof(Key) + num_bytes));
+		stream->open(path, tpie::access_read);
+		if (stream->has_partial_record()) {
+			throw_exception("checkpoint %s doesn't hold entries with %d-byte payloads", path, num_bytes);
+		}
+		return stream.release();
+	}
+
+private:
+
+	typedef SortedRun<Key> Run;
+
+	std::unique_ptr<IPriorityQueue<Key>> m_queue;
+	uint32_t m_num_bytes;
+	uint32_t m_record_bytes;
+	bool m_compressed;
+
+	std::vector<std::unique_ptr<Run>> m_runs;
+
+	IOCounts m_io;
+	StatsBlock m_stats;
+
+	void publish_stats() {
+		if (!m_stats.is_attached()) {
+			return;
+		}
+		uint64_t entries_on_disk = 0;
+		IOCounts io;
+		bool exact = get_disk_stats(entries_on_disk, io);
+		m_stats.publish(size(), exact, entries_on_disk, io);
+	}
+
+	// takes ownership of the stream, and reads it from where it is now
+	void add_run(FileStream * stream) {
+		std::unique_ptr<FileStream> owned(stream);
+		if (owned) {
+			owned->count_io(&m_io);
+		}
+		if (owned && owned->remaining() > 0) {
+			m_runs.push_back(std::unique_ptr<Run>(new Run(owned.release())));
+		}
+	}
+
+	void remove_run(Run * run) {
+		for (auto i = m_runs.begin(); i != m_runs.end(); i++) {
+			if (i->get() == run) {
+				m_runs.erase(i);
+				return;
+			}
+		}
+	}
+
+	// the run whose head comes first, or NULL if the queue's top comes first
+	// runs win ties, since their entries were pushed first
+	Run * top_run() {
+		Run * top = NULL;
+		for (std::unique_ptr<Run> & run : m_runs) {
+			if (top == NULL || run->priority() < top->priority()) {
+				top = run.get();
+			}
+		}
+		if (top == NULL) {
+			if (m_queue->empty()) {
+				throw_exception("queue is empty");
+			}
+			return NULL;
+		}
+		if (!m_queue->empty() && m_queue->top_priority() < top->priority()) {
+			return NULL;
+		}
+		return top;
+	}
+
+	void pop_top() {
+		Run * run = top_run();
+		if (run == NULL) {
+			m_queue->pop();
+		} else if (!run->advance()) {
+			remove_run(run);
+		}
+	}
+
+	// moves the queue's entries into a new sorted run
+	void drain_queue() {
+
+		if (m_queue->empty()) {
+			return;
+		}
+
+		tpie_vector<Key> priorities(PQ_CHECKPOINT_BATCH);
+		tpie_vector<uint8_t> bytes(PQ_CHECKPOINT_BATCH*m_num_bytes);
+		tpie_vector<uint8_t> records(PQ_CHECKPOINT_BATCH*m_record_bytes);
+
+		std::unique_ptr<FileStream> stream(new FileStream(m_record_bytes));
+		stream->open_temp(m_compressed);
+		stream->count_io(&m_io);
+		while (true) {
+			uint64_t count = m_queue->pop_into(priorities.data(), bytes.data(), PQ_CHECKPOINT_BATCH);
+			if (count == 0) {
+				break;
+			}
+			for (uint64_t i=0; i<count; i++) {
+				std::memcpy(records.data() + i*m_record_bytes, &priorities[i], sizeof(Key));
+				std::memcpy(records.data() + i*m_record_bytes + sizeof(Key), bytes.data() + i*m_num_bytes, m_num_bytes);
+			}
+			try {
+				stream->write_all(records.data(), count);
+			} catch (...) {
+				// put the batch back, and keep the entries that made it into the run
+				m_queue->push_all(priorities.data(), bytes.data(), count);
+				stream->seek(0);
+				add_run(stream.release());
+				throw;
+			}
+		}
+		stream->seek(0);
+		add_run(stream.release());
+	}
+
+	void mark_runs() {
+		for (std::unique_ptr<Run> & run : m_runs) {
+			run->mark();
+		}
+	}
+
+	void reset_runs() {
+		for (std::unique_ptr<Run> & run : m_runs) {
+			run->reset();
+		}
+	}
+
+	// writes the runs to the stream in priority order
+	void merge_runs(FileStream & out) {
+
+		tpie_vector<uint8_t> records(PQ_CHECKPOINT_BATCH*m_record_bytes);
+		std::vector<Run *> inputs;
+		for (std::unique_ptr<Run> & run : m_runs) {
+			inputs.push_back(run.get());
+		}
+
+		uint64_t count = 0;
+		while (!inputs.empty()) {
+			uint64_t top = 0;
+			for (uint64_t i=1; i<inputs.size(); i++) {
+				if (inputs[i]->priority() < inputs[top]->priority()) {
+					top = i;
+				}
+			}
+			std::memcpy(records.data() + count*m_record_bytes, inputs[top]->record(), m_record_bytes);
+			count++;
+			if (count == PQ_CHECKPOINT_BATCH) {
+				out.write_all(records.data(), count);
+				count = 0;
+			}
+			if (!inputs[top]->advance()) {
+				inputs.erase(inputs.begin() + top);
+			}
+		}
+		out.write_all(records.data(), count);
+	}
+};
+
+// queues made from Java can be checkpointed
+template <typename Key>
+IPriorityQueue<Key> * make_checkpointable(const uint32_t & num_bytes, const uint64_t & memory_bytes, const bool & compressed, const bool & resizable) {
+	std::unique_ptr<IPriorityQueue<Key>> queue(IPriorityQueue<Key>::make(num_bytes, memory_bytes, compressed, resizable));
+	return new CheckpointablePriorityQueue<Key>(queue.release(), NULL, compressed);
+}
+
+template <typename Key>
+IPriorityQueue<Key> * restore_priority_queue(const uint32_t & num_bytes, const char * path) {
+	std::unique_ptr<IPriorityQueue<Key>> queue(IPriorityQueue<Key>::make(num_bytes));
+	FileStream * run = CheckpointablePriorityQueue<Key>::open_checkpoint(num_bytes, path);
+	return new CheckpointablePriorityQueue<Key>(queue.release(), run, false);
+}
+
+
+/*
+	External sort for entries of any size: entries are sorted in memory into runs that fill half the memory budget,
+	then the runs are merged PQ_BUILD_MERGE_FANOUT at a time into one sorted run. Entries are stored at their
+	exact size, so no space is wasted on padding.
+	The run buffers are allocated up front and charged to TPIE's memory manager, and freed once the entries are sorted.
+	Records are the priority, then the payload, just like checkpoints.
+*/
+
+#define PQ_BUILD_MERGE_FANOUT 64
+
+template <typename Key>
+class RunSorter {
+public:
+
+	RunSorter(const uint32_t & num_bytes, const uint64_t & memory_bytes, const bool & compressed) :
+		m_num_bytes(num_bytes),
+		m_record_bytes(sizeof(Key) + num_bytes),
+		m_compressed(compressed),
+		m_run_capacity(std::max((uint64_t)1, memory_bytes/2/(num_bytes + sizeof(std::pair<Key,uint64_t>)))),
+		m_block_factor(block_factor_for(memory_bytes/2, PQ_BUILD_MERGE_FANOUT + 1)),
+		m_records(PQ_CHECKPOINT_BATCH*m_record_bytes)
+	{
+		if (num_bytes == 0) {
+			throw_exception("unsupported entry size for queue: %d", num_bytes);
+		}
+		m_order.reserve(m_run_capacity);
+		m_payloads.reserve(m_run_capacity*num_bytes);
+	}
+
+	void add(const Key & priority, const uint8_t * bytes) {
+		if (m_order.size() == m_run_capacity) {
+			write_run();
+		}
+		m_order.push_back(std::make_pair(priority, m_order.size()));
+		m_payloads.insert(m_payloads.end(), bytes, bytes + m_num_bytes);
+	}
+
+	void add_all(const Key * priorities, const uint8_t * bytes, const uint64_t count) {
+		for (uint64_t i=0; i<count; i++) {
+			add(priorities[i], bytes + i*m_num_bytes);
+		}
+	}
+
+	// adds records that hold the priority, then the payload
+	void add_records(const uint8_t * records, const uint64_t count) {
+		Key priority;
+		for (uint64_t i=0; i<count; i++) {
+			std::memcpy(&priority, records + i*m_record_bytes, sizeof(Key));
+			add(priority, records + i*m_record_bytes + sizeof(Key));
+		}
+	}
+
+	// sorts the entries into one run, and seeks to its start, or returns NULL if there are no entries
+	FileStream * sort() {
+
+		write_run();
+		tpie_vector<std::pair<Key,uint64_t>>().swap(m_order);
+		tpie_vector<uint8_t>().swap(m_payloads);
+
+		// merge the runs until only one is left
+		while (m_runs.size() > 1) {
+			std::vector<std::unique_ptr<FileStream>> inputs;
+			while (inputs.size() < PQ_BUILD_MERGE_FANOUT && !m_runs.empty()) {
+				inputs.push_back(std::move(m_runs.front()));
+				m_runs.erase(m_runs.begin());
+			}
+			m_runs.push_back(std::unique_ptr<FileStream>(merge(inputs)));
+		}
+
+		if (m_runs.empty()) {
+			return NULL;
+		}
+		std::unique_ptr<FileStream> run(std::move(m_runs.front()));
+		m_runs.clear();
+		run->seek(0);
+		return run.release();
+	}
+
+protected:
+
+	uint32_t m_num_bytes;
+	uint32_t m_record_bytes;
+	bool m_compressed;
+	uint64_t m_run_capacity;
+	double m_block_factor;
+
+	// entries for the next run, as priorities and indices into the payloads
+	tpie_vector<std::pair<Key,uint64_t>> m_order;
+	tpie_vector<uint8_t> m_payloads;
+
+	std::vector<std::unique_ptr<FileStream>> m_runs;
+
+	// buffer for writing runs
+	tpie_vector<uint8_t> m_records;
+
+	FileStream * new_run_stream() {
+		std::unique_ptr<FileStream> stream(new FileStream(m_record_bytes, m_block_factor));
+		stream->open_temp(m_compressed);
+		return stream.release();
+	}
+
+	void write_run() {
+
+		if (m_order.empty()) {
+			return;
+		}
+
+		std::sort(m_order.begin(), m_order.end());
+
+		std::unique_ptr<FileStream> stream(new_run_stream());
+		uint64_t count = 0;
+		for (const std::pair<Key,uint64_t> & entry : m_order) {
+			uint8_t * record = m_records.data() + count*m_record_bytes;
+			std::memcpy(record, &entry.first, sizeof(Key));
+			std::memcpy(record + sizeof(Key), m_payloads.data() + entry.second*m_num_bytes, m_num_bytes);
+			count++;
+			if (count == PQ_CHECKPOINT_BATCH) {
+				stream->write_all(m_records.data(), count);
+				count = 0;
+			}
+		}
+		stream->write_all(m_records.data(), count);
+
+		m_order.clear();
+		m_payloads.clear();
+		m_runs.push_back(std::move(stream));
+	}
+
+	FileStream * merge(std::vector<std::unique_ptr<FileStream>> & inputs) {
+
+		// read the head of each input, and keep the heads in a heap
+		tpie_vector<uint8_t> heads(inputs.size()*m_record_bytes);
+		auto head = [&](const uint64_t & i) { return heads.data() + i*m_record_bytes; };
+		std::vector<std::pair<Key,uint64_t>> heap;
+		for (uint64_t i=0; i<inputs.size(); i++) {
+			inputs[i]->seek(0);
+			if (inputs[i]->read_all(head(i), 1) == 1) {
+				heap.push_back(std::make_pair(head_priority(head(i)), i));
+			}
+		}
+		std::make_heap(heap.begin(), heap.end(), std::greater<std::pair<Key,uint64_t>>());
+
+		std::unique_ptr<FileStream> stream(new_run_stream());
+		uint64_t count = 0;
+		while (!heap.empty()) {
+
+			std::pop_heap(heap.begin(), heap.end(), std::greater<std::pair<Key,uint64_t>>());
+			uint64_t i = heap.back().second;
+			heap.pop_back();
+
+			std::memcpy(m_records.data() + count*m_record_bytes, head(i), m_record_bytes);
+			count++;
+			if (count == PQ_CHECKPOINT_BATCH) {
+				stream->write_all(m_records.data(), count);
+				count = 0;
+			}
+
+			if (inputs[i]->read_all(head(i), 1) == 1) {
+				heap.push_back(std::make_pair(head_priority(head(i)), i));
+				std::push_heap(heap.begin(), heap.end(), std::greater<std::pair<Key,uint64_t>>());
+			} else {
+				inputs[i].reset();
+			}
+		}
+		stream->write_all(m_records.data(), count);
+
+		return stream.release();
+	}
+
+	static Key head_priority(const uint8_t * record) {
+		Key priority;
+		std::memcpy(&priority, record, sizeof(Key));
+		return priority;
+	}
+};
+
+
+/*
+	Builds a queue from many entries at once: the entries are sorted, and the sorted run becomes the head
+	of a restored queue, so building a queue costs about as much as sorting the entries, instead of pushing
+	them into the queue one at a time.
+*/
+
+template <typename Key>
+class PriorityQueueBuilder : public RunSorter<Key> {
+public:
+
+	PriorityQueueBuilder(const uint32_t & num_bytes, const uint64_t & memory_bytes, const bool & compressed) :
+		RunSorter<Key>(num_bytes, memory_bytes, compressed)
+	{}
+
+	IPriorityQueue<Key> * build() {
+		std::unique_ptr<FileStream> head(this->sort());
+		std::unique_ptr<IPriorityQueue<Key>> queue(IPriorityQueue<Key>::make(this->m_num_bytes, 0, this->m_compressed));
+		return new CheckpointablePriorityQueue<Key>(queue.release(), head.release(), this->m_compressed);
+	}
+};
+
+#endif
@@ -0,0 +1,90 @@
+#ifndef __QUEUE_STATS_HPP__
+#define __QUEUE_STATS_HPP__
+
+#include <cstdint>
+#include <cstddef>
+#include <jni.h>
+#include "jni.hpp"
+
+
+/*
+	Bytes read from and written to a structure's own streams.
+	Streams count the records that go through them, before any compression.
+*/
+struct IOCounts {
+
+	uint64_t bytes_read;
+	uint64_t bytes_written;
+
+	IOCounts() :
+		bytes_read(0),
+		bytes_written(0)
+	{}
+
+	IOCounts & operator += (const IOCounts & other) {
+		bytes_read += other.bytes_read;
+		bytes_written += other.bytes_written;
+		return *this;
+	}
+};
+
+
+/*
+	Queue stats that Java reads from its monitoring threads, without calling into TPIE.
+	The block is a direct buffer that Java owns, so it outlives the queue, and the queue copies its stats into it
+	after every change. Each word is stored atomically, but a reader may see some words updated before others.
+	Queues that TPIE spills for can't count their entries on disk or their I/O, so they publish them as inexact.
+*/
+
+#define STATS_BLOCK_SIZE 0
+#define STATS_BLOCK_EXACT 1
+#define STATS_BLOCK_ENTRIES_ON_DISK 2
+#define STATS_BLOCK_BYTES_READ 3
+#define STATS_BLOCK_BYTES_WRITTEN 4
+#define STATS_BLOCK_WORDS 5
+
+class StatsBlock {
+public:
+
+	StatsBlock() :
+		m_words(NULL)
+	{}
+
+	void attach(uint64_t * words) {
+		m_words = words;
+	}
+
+	bool is_attached() const {
+		return m_words != NULL;
+	}
+
+	void publish(const uint64_t & size, const bool & exact, const uint64_t & entries_on_disk, const IOCounts & io) {
+		if (m_words == NULL) {
+			return;
+		}
+		store(STATS_BLOCK_SIZE, size);
+		store(STATS_BLOCK_EXACT, exact ? 1 : 0);
+		store(STATS_BLOCK_ENTRIES_ON_DISK, entries_on_disk);
+		store(STATS_BLOCK_BYTES_READ, io.bytes_read);
+		store(STATS_BLOCK_BYTES_WRITTEN, io.bytes_written);
+	}
+
+private:
+
+	uint64_t * m_words;
+
+	void store(const int & index, const uint64_t & value) {
+		__atomic_store_n(m_words + index, value, __ATOMIC_RELAXED);
+	}
+};
+
+// the words of a direct java.nio.ByteBuffer that holds a stats block
+inline uint64_t * get_stats_block(JNIEnv * env, jobject jblock) {
+	uint64_t * words = (uint64_t *)env->GetDirectBufferAddress(jblock);
+	if (words == NULL || env->GetDirectBufferCapacity(jblock) < (jlong)(STATS_BLOCK_WORDS*sizeof(uint64_t))) {
+		throw_exception("stats block must be a direct buffer of %d words", STATS_BLOCK_WORDS);
+	}
+	return words;
+}
+
+#endif
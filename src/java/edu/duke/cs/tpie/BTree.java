@@ -0,0 +1,292 @@
+package edu.duke.cs.tpie;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * An ordered map from fixed-width byte string keys to fixed-width ByteBuffer values, stored in external memory.
+ * <p>
+ * Keys are compared byte-by-byte as unsigned values, like strings, so keys written with {@link KeyEncoder}
+ * are ordered by their numeric values. Each key maps to at most one value.
+ * <p>
+ * Only a bounded cache of tree blocks is kept in internal memory, taken from the limit set with
+ * {@link TPIE#start(int)}, so lookup tables much bigger than the Java heap cost the garbage collector nothing.
+ * TPIE's B-tree sets the size of the cache, which doesn't grow with the tree and can't be changed from here.
+ * The cache counts in {@link TPIEStatsMXBean#getInternalBytesUsed()} as it fills up, but it isn't part of
+ * any other structure's memory budget, so leave some room for it when budgeting the rest.
+ * <p>
+ * Keys and values together must fit in 1024 bytes, and are padded out to the next {@link EntrySize}.
+ * <p>
+ * This implementation wraps the <a href="http://madalgo.au.dk/tpie/doc/master/classtpie_1_1btree.html">tpie::btree</a> type.
+ */
+public class BTree extends OffHeap {
+	
+	private static native long create(int keyBytes, int numBytes);
+	private static native void cleanup(long handle);
+	private static native void put(long handle, Entry entry);
+	private static native void putAll(long handle, ByteBuffer data, int offset, int count);
+	private static native boolean get(long handle, Entry entry);
+	private static native boolean remove(long handle, Entry entry);
+	private static native int scan(long handle, ByteBuffer key, int keyOffset, boolean inclusive, ByteBuffer data, int offset, int max);
+	private static native long size(long handle);
+	private static native boolean empty(long handle);
+	
+	private static native long createBuilder(int keyBytes, int numBytes);
+	private static native void cleanupBuilder(long handle);
+	private static native void builderPushAll(long handle, ByteBuffer data, int offset, int count);
+	private static native long build(long handle);
+	
+	/**
+	 * An entry for the tree.
+	 */
+	public class Entry {
+		
+		/**
+		 * Key for the entry.
+		 * <p>
+		 * Key buffers are always {@link BTree#keyBytes} bytes.
+		 */
+		public ByteBuffer key;
+		
+		/**
+		 * Value for the entry.
+		 * <p>
+		 * Value buffers are always {@link BTree#numBytes} bytes.
+		 */
+		public ByteBuffer data;
+		
+		public Entry() {
+			this.key = ByteBuffer.allocate(keyBytes);
+			this.data = ByteBuffer.allocate(numBytes);
+		}
+	}
+	
+	/**
+	 * Builds a tree from entries that are already sorted by key.
+	 * <p>
+	 * Building a tree from sorted entries writes each tree block once, which is much faster
+	 * than putting the entries into an empty tree one at a time. An {@link ExternalSorter}
+	 * is a good way to get the entries in order first.
+	 */
+	public static class Builder extends OffHeap {
+		
+		/**
+		 * Size of the keys in the tree, in bytes.
+		 */
+		public final int keyBytes;
+		
+		/**
+		 * Size of the values in the tree, in bytes.
+		 */
+		public final int numBytes;
+		
+		/**
+		 * Start building a tree whose entries have keys and values of the specified sizes.
+		 * <p>
+		 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+		 * structures to set shared internal memory limits.
+		 */
+		public Builder(int keyBytes, int numBytes) {
+			super(createBuilder(keyBytes, numBytes), (handle) -> cleanupBuilder(handle));
+			this.keyBytes = keyBytes;
+			this.numBytes = numBytes;
+		}
+		
+		/**
+		 * Allocate a buffer big enough for {@code numEntries} packed entries,
+		 * for use with {@link #pushAll(ByteBuffer, int)}.
+		 */
+		public ByteBuffer allocateBatch(int numEntries) {
+			return ByteBuffer.allocate(numEntries*(keyBytes + numBytes));
+		}
+		
+		/**
+		 * Add many entries to the tree with a single call to TPIE.
+		 * <p>
+		 * Entries are read from {@code data} starting at its current position, each one a key followed
+		 * by its value, packed back-to-back. When this method returns, the position of {@code data}
+		 * will have advanced past the entries.
+		 * <p>
+		 * Keys must be strictly increasing, across all calls to this method.
+		 * 
+		 * @param data Packed keys and values of the entries
+		 * @param count Number of entries to push
+		 */
+		public void pushAll(ByteBuffer data, int count) {
+			checkClosed();
+			int batchBytes = Batches.checkBatch(data, count, keyBytes + numBytes);
+			builderPushAll(getHandle(), data, Batches.offset(data), count);
+			data.position(data.position() + batchBytes);
+		}
+		
+		/**
+		 * Finish building the tree.
+		 * <p>
+		 * The builder is closed, and the tree takes over its external memory.
+		 */
+		public BTree build() {
+			checkClosed();
+			long handle = BTree.build(getHandle());
+			close();
+			return new BTree(handle, keyBytes, numBytes);
+		}
+	}
+	
+	/**
+	 * Size of the keys in this tree, in bytes.
+	 */
+	public final int keyBytes;
+	
+	/**
+	 * Size of the values in this tree, in bytes.
+	 */
+	public final int numBytes;
+	
+	/**
+	 * Create an empty tree whose entries have keys and values of the specified sizes.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @see Builder
+	 */
+	public BTree(int keyBytes, int numBytes) {
+		this(create(keyBytes, numBytes), keyBytes, numBytes);
+	}
+	
+	private BTree(long handle, int keyBytes, int numBytes) {
+		super(handle, (h) -> cleanup(h));
+		this.keyBytes = keyBytes;
+		this.numBytes = numBytes;
+	}
+	
+	/**
+	 * Allocate a buffer big enough for {@code numEntries} packed entries,
+	 * for use with {@link #putAll(ByteBuffer, int)} and {@link #scan(ByteBuffer, ByteBuffer, int)}.
+	 */
+	public ByteBuffer allocateBatch(int numEntries) {
+		return ByteBuffer.allocate(numEntries*(keyBytes + numBytes));
+	}
+	
+	/**
+	 * Map the entry's key to the entry's value, replacing any value the key had before.
+	 */
+	public void put(Entry entry) {
+		checkClosed();
+		put(getHandle(), entry);
+	}
+	
+	/**
+	 * Put many entries in the tree with a single call to TPIE.
+	 * <p>
+	 * Entries are read from {@code data} starting at its current position, each one a key followed
+	 * by its value, packed back-to-back. When this method returns, the position of {@code data}
+	 * will have advanced past the entries.
+	 * 
+	 * @param data Packed keys and values of the entries
+	 * @param count Number of entries to put
+	 */
+	public void putAll(ByteBuffer data, int count) {
+		checkClosed();
+		int batchBytes = Batches.checkBatch(data, count, keyBytes + numBytes);
+		putAll(getHandle(), data, Batches.offset(data), count);
+		data.position(data.position() + batchBytes);
+	}
+	
+	/**
+	 * Look up the value for the entry's key, and copy it into the entry's data buffer.
+	 * <p>
+	 * The data buffer will be rewound so the value can be read from the start.
+	 * 
+	 * @return true if the key was found, or false if the tree has no such key.
+	 */
+	public boolean get(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		boolean found = get(getHandle(), entry);
+		entry.data.clear();
+		return found;
+	}
+	
+	private void checkEntry(Entry entry) {
+		if (entry.key.capacity() < keyBytes) {
+			throw new IllegalArgumentException("entry key buffer can't hold " + keyBytes + " bytes");
+		}
+		if (entry.data.capacity() < numBytes || entry.data.isReadOnly()) {
+			throw new IllegalArgumentException("entry buffer can't hold " + numBytes + " bytes");
+		}
+	}
+	
+	/**
+	 * Remove the entry's key, and its value, from the tree.
+	 * 
+	 * @return true if the key was removed, or false if the tree has no such key.
+	 */
+	public boolean remove(Entry entry) {
+		checkClosed();
+		return remove(getHandle(), entry);
+	}
+	
+	/**
+	 * Copy entries out of the tree in key order with a single call to TPIE, starting with the smallest key
+	 * that is at least {@code fromKey}.
+	 * <p>
+	 * Entries are written to {@code data} starting at its current position, each one a key followed
+	 * by its value, packed back-to-back. When this method returns, the position of {@code data}
+	 * will have advanced past the entries.
+	 * <p>
+	 * To scan a range in batches, pass the last key of each batch to {@link #scanAfter(ByteBuffer, ByteBuffer, int)}
+	 * to get the next batch, and stop at the first key past the end of the range.
+	 * 
+	 * @param fromKey The smallest key to scan, read from its current position, or null to scan from the smallest key in the tree
+	 * @param data Receives the packed keys and values
+	 * @param max Maximum number of entries to copy
+	 * @return The number of entries copied, which is less than {@code max} only if the tree ran out of entries
+	 */
+	public int scan(ByteBuffer fromKey, ByteBuffer data, int max) {
+		return scan(fromKey, true, data, max);
+	}
+	
+	/**
+	 * Like {@link #scan(ByteBuffer, ByteBuffer, int)}, but starts with the smallest key that is greater than {@code afterKey}.
+	 */
+	public int scanAfter(ByteBuffer afterKey, ByteBuffer data, int max) {
+		if (afterKey == null) {
+			throw new IllegalArgumentException("key is required");
+		}
+		return scan(afterKey, false, data, max);
+	}
+	
+	private int scan(ByteBuffer key, boolean inclusive, ByteBuffer data, int max) {
+		checkClosed();
+		int recordBytes = keyBytes + numBytes;
+		Batches.checkBatch(data, max, recordBytes);
+		if (data.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
+		int keyOffset = 0;
+		if (key != null) {
+			Batches.checkBatch(key, 1, keyBytes);
+			keyOffset = Batches.offset(key);
+		}
+		int count = scan(getHandle(), key, keyOffset, inclusive, data, Batches.offset(data), max);
+		data.position(data.position() + count*recordBytes);
+		return count;
+	}
+	
+	/**
+	 * Get the number of entries currently in the tree.
+	 */
+	public long size() {
+		checkClosed();
+		return size(getHandle());
+	}
+	
+	/**
+	 * Return true if the tree contains no entries.
+	 */
+	public boolean empty() {
+		checkClosed();
+		return empty(getHandle());
+	}
+}
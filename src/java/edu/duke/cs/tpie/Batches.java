@@ -0,0 +1,42 @@
+package edu.duke.cs.tpie;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Checks for the packed batch buffers passed to TPIE in a single call.
+ */
+class Batches {
+	
+	/**
+	 * Check that {@code data} can be passed to TPIE, and has room for {@code count} records
+	 * of {@code recordBytes} bytes each after its position.
+	 * 
+	 * @return The size of the batch, in bytes
+	 */
+	static int checkBatch(ByteBuffer data, int count, int recordBytes) {
+		if (!data.isDirect() && !data.hasArray()) {
+			throw new IllegalArgumentException("batch buffer must be direct, or be backed by an accessible array");
+		}
+		if (count < 0) {
+			throw new IllegalArgumentException("batch size can't be negative: " + count);
+		}
+		
+		// in long arithmetic, so big counts can't wrap around and pass the check
+		long batchBytes = (long)count*recordBytes;
+		if (data.remaining() < batchBytes) {
+			throw new IllegalArgumentException("buffer has room for " + data.remaining()/recordBytes + " entries, not " + count);
+		}
+		return (int)batchBytes;
+	}
+	
+	/**
+	 * The offset of the buffer's position, from the start of the direct buffer or the backing array.
+	 */
+	static int offset(ByteBuffer data) {
+		if (data.isDirect()) {
+			return data.position();
+		} else {
+			return data.arrayOffset() + data.position();
+		}
+	}
+}
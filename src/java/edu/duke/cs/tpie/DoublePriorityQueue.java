@@ -1,24 +1,49 @@
 package edu.duke.cs.tpie;
 
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 /**
  * A priority queue whose entries have double-valued keys and ByteBuffer payloads.
  * Entries are retrieved from the queue such that entries with the smallest priorities are returned first.
  * <p>
- * This implementation wraps the <a href="http://madalgo.au.dk/tpie/doc/master/classtpie_1_1priority__queue.html">tpie::priority_queue</a> type.
+ * When {@code numBytes} is an {@link EntrySize}, uncompressed queues with a fixed budget wrap the
+ * <a href="http://madalgo.au.dk/tpie/doc/master/classtpie_1_1priority__queue.html">tpie::priority_queue</a> type.
+ * Other queues do their own spilling to sorted runs on disk (RunPriorityQueue in priority_queue.hpp), since TPIE's queue
+ * only takes compile-time entry sizes and writes its own spill files: queues whose entries aren't an {@link EntrySize},
+ * queues with compressed spills (see {@link #withCompressedSpills(int, boolean, boolean)}), and queues whose budgets
+ * change in place (see {@link #withMemoryBudget(int, boolean, long)}). Bounded queues stay in internal memory,
+ * see {@link #bounded(int, boolean, long)}.
  * 
  * @see <a href="http://madalgo.au.dk/tpie/doc/master/priority_queue.html">TPIE Priority queue example</a>
  */
-public class DoublePriorityQueue extends OffHeap {
+public class DoublePriorityQueue extends OffHeap implements MemoryBudgeted {
 	
-	private static native long create(int numBytes);
+	private static native long create(int numBytes, double memoryFraction, boolean compressed);
+	private static native long createBudgeted(int numBytes, long memoryBytes, boolean compressed);
+	private static native long createBounded(int numBytes, long maxEntries);
+	private static native long buildFromBatch(int numBytes, double[] priorities, ByteBuffer data, int offset, int count, boolean compressed);
+	private static native long buildFromFIFOQueue(int numBytes, long fifoHandle, boolean compressed);
+	private static native long buildFromFileStream(int numBytes, long streamHandle, boolean compressed);
+	private static native long restore(int numBytes, String path);
 	private static native void cleanup(long handle);
+	private static native void checkpoint(long handle, String path);
 	private static native void push(long handle, Entry entry);
+	private static native void pushAll(long handle, double[] priorities, ByteBuffer data, int offset, int count);
+	private static native double pushBounded(long handle, Entry entry);
+	private static native double pushAllBounded(long handle, double[] priorities, ByteBuffer data, int offset, int count);
 	private static native Entry top(long handle, DoublePriorityQueue queue);
+	private static native void topInto(long handle, Entry entry);
+	private static native double topPriority(long handle);
 	private static native void pop(long handle);
+	private static native boolean popTop(long handle, Entry entry);
+	private static native int popInto(long handle, double[] priorities, ByteBuffer data, int offset, int max);
 	private static native long size(long handle);
 	private static native boolean empty(long handle);
+	private static native long getMemoryBudget(long handle);
+	private static native void setMemoryBudget(long handle, long memoryBytes);
+	private static native void trackStats(long handle, ByteBuffer block);
 	
 	/**
 	 * An entry for the priority queue.
@@ -35,21 +60,44 @@ public class DoublePriorityQueue extends OffHeap {
 		/**
 		 * Payload for the entry.
 		 * <p>
-		 * Payload buffers are always fixed size, and are determined by the {@link EntrySize} value passed to {@link DoublePriorityQueue#DoublePriorityQueue(EntrySize)}.
+		 * Payload buffers are always fixed size, and are determined by the size passed to the queue's constructor. See {@link DoublePriorityQueue#numBytes}.
 		 */
 		public ByteBuffer data;
 		
 		public Entry() {
 			this.priority = 0;
-			this.data = ByteBuffer.allocate(entrySize.numBytes);
+			this.data = allocate(numBytes);
 		}
 	}
 	
 	/**
-	 * Size of the entries in this queue.
+	 * Size of the entries in this queue, in bytes.
+	 */
+	public final int numBytes;
+	
+	/**
+	 * The smallest {@link EntrySize} that can hold the entries in this queue,
+	 * or null if the entries are bigger than the largest {@link EntrySize}.
+	 * <p>
+	 * Entries aren't padded out to this size, it's only here as a hint.
 	 */
 	public final EntrySize entrySize;
 	
+	/**
+	 * Whether entries for this queue use direct buffers.
+	 * <p>
+	 * See {@link #DoublePriorityQueue(int, boolean)}
+	 */
+	public final boolean useDirectBuffers;
+	
+	private final QueueStats.Counters stats;
+	
+	// for bounded queues, the most entries the queue keeps, or 0 for unbounded queues
+	private final long maxEntries;
+	
+	// bounded queues drop pushes with priorities at least this big
+	private double dropPriority = Double.POSITIVE_INFINITY;
+	
 	/**
 	 * Create a priority queue whose entries will be the specified size.
 	 * <p>
@@ -57,16 +105,306 @@ public class DoublePriorityQueue extends OffHeap {
 	 * structures to set shared internal memory limits.
 	 */
 	public DoublePriorityQueue(EntrySize entrySize) {
-		super(create(entrySize.numBytes), (handle) -> cleanup(handle));
-		this.entrySize = entrySize;
+		this(entrySize.numBytes, false);
+	}
+	
+	/**
+	 * Create a priority queue whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @see #DoublePriorityQueue(int, boolean)
+	 */
+	public DoublePriorityQueue(EntrySize entrySize, boolean useDirectBuffers) {
+		this(entrySize.numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Create a priority queue whose entries will be exactly {@code numBytes} bytes.
+	 * Entries are stored at their exact size, in memory and on disk, whether or not {@code numBytes} is an {@link EntrySize}.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public DoublePriorityQueue(int numBytes) {
+		this(numBytes, false);
+	}
+	
+	/**
+	 * Create a priority queue whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @param useDirectBuffers If true, entry payloads will be allocated as direct buffers, which TPIE can
+	 * read and write in place. Otherwise, payloads will be heap buffers, which the JVM may have to copy
+	 * each time they're passed to TPIE. Direct buffers are more expensive to allocate, but cheaper to
+	 * use, so they work best with large payloads that get reused. See {@link #allocateBatch(int)} too.
+	 */
+	public DoublePriorityQueue(int numBytes, boolean useDirectBuffers) {
+		this(create(numBytes, 1.0, TPIE.isCompressingSpills()), numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Create a priority queue whose entries will be the specified size, and choose whether it compresses its spill files.
+	 * <p>
+	 * Compressed queues keep entries in memory until they fill the queue's memory budget, then write them to disk
+	 * as sorted runs in compressed temporary files, which trades CPU time for less disk traffic. Queues made by
+	 * the constructors compress their spill files if TPIE was started with {@link TPIE#start(int, boolean)}.
+	 * 
+	 * @param compressSpills If true, compress the spill files
+	 * @see #DoublePriorityQueue(int, boolean)
+	 */
+	public static DoublePriorityQueue withCompressedSpills(int numBytes, boolean useDirectBuffers, boolean compressSpills) {
+		return new DoublePriorityQueue(create(numBytes, 1.0, compressSpills), numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Create a priority queue whose entries will be the specified size,
+	 * and that only uses part of TPIE's internal memory before spilling to disk.
+	 * <p>
+	 * Each queue normally sizes its internal buffers to use all of the memory TPIE has available,
+	 * so give each queue a fraction instead when several queues need to share the memory at once.
+	 * 
+	 * @param memoryFraction The fraction of TPIE's available memory this queue may use, in (0,1].
+	 * @see #DoublePriorityQueue(int, boolean)
+	 */
+	public static DoublePriorityQueue withMemoryFraction(int numBytes, boolean useDirectBuffers, double memoryFraction) {
+		return new DoublePriorityQueue(create(numBytes, memoryFraction, TPIE.isCompressingSpills()), numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Create a priority queue whose entries will be the specified size, with its own internal memory budget.
+	 * <p>
+	 * The queue keeps as many entries in memory as fit in the budget, no matter how much memory other structures use,
+	 * and spills the rest to disk. The budget can be changed in place later, see {@link #setMemoryBudget(long)}.
+	 * 
+	 * @param memoryBudget Internal memory budget, in bytes
+	 * @see #DoublePriorityQueue(int, boolean)
+	 * @see #setMemoryBudget(long)
+	 */
+	public static DoublePriorityQueue withMemoryBudget(int numBytes, boolean useDirectBuffers, long memoryBudget) {
+		return new DoublePriorityQueue(createBudgeted(numBytes, checkBudget(memoryBudget), TPIE.isCompressingSpills()), numBytes, useDirectBuffers);
+	}
+	
+	private DoublePriorityQueue(long handle, int numBytes, boolean useDirectBuffers) {
+		this(handle, numBytes, useDirectBuffers, 0);
+	}
+	
+	private DoublePriorityQueue(long handle, int numBytes, boolean useDirectBuffers, long maxEntries) {
+		super(handle, (h) -> cleanup(h));
+		this.numBytes = numBytes;
+		this.entrySize = EntrySize.findBigEnoughSizeFor(numBytes);
+		this.useDirectBuffers = useDirectBuffers;
+		this.maxEntries = maxEntries;
+		
+		// restored queues start out with entries
+		stats = new QueueStats.Counters("DoublePriorityQueue", numBytes, numBytes + Double.BYTES);
+		stats.entriesIn.add(size(handle));
+		stats.memoryBudget.set(getMemoryBudget(handle));
+		trackStats(handle, stats.block);
+	}
+	
+	/**
+	 * Create a priority queue that only keeps the {@code maxEntries} entries with the smallest priorities,
+	 * for beam search and k-best enumeration.
+	 * <p>
+	 * Once the queue is full, each push drops the entry with the largest priority, which may be the pushed entry itself,
+	 * so the queue always holds the best {@code maxEntries} of the entries pushed and not yet popped.
+	 * When priorities tie, the entries already in the queue are kept.
+	 * <p>
+	 * Bounded queues keep their entries in internal memory and never spill to disk, so memory use is proportional
+	 * to {@code maxEntries}, no matter how many entries are pushed. The space for {@code maxEntries} entries is
+	 * taken from TPIE's internal memory when the queue is made, so queues that don't fit in the memory TPIE has left
+	 * are rejected. While the queue is full, pushes whose priorities
+	 * are no smaller than the largest priority in the queue are dropped without calling into TPIE at all.
+	 * Checkpoints of bounded queues restore as unbounded queues.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @param maxEntries Most entries the queue will hold
+	 * @see #DoublePriorityQueue(int, boolean)
+	 */
+	public static DoublePriorityQueue bounded(int numBytes, boolean useDirectBuffers, long maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("bounded queue must hold at least one entry, not " + maxEntries);
+		}
+		return new DoublePriorityQueue(createBounded(numBytes, maxEntries), numBytes, useDirectBuffers, maxEntries);
+	}
+	
+	/**
+	 * Build a priority queue from many entries at once, in a single call to TPIE.
+	 * <p>
+	 * The entries are sorted natively with an external merge sort, and the sorted entries are read back
+	 * as they're popped, the same way a restored queue reads its checkpoint. So building a queue costs about
+	 * as much as sorting the entries, which is much less than pushing them one at a time.
+	 * Entries pushed later are merged with the sorted entries as the queue is popped.
+	 * <p>
+	 * Payloads are read from {@code data} starting at its current position, packed back-to-back
+	 * in {@code numBytes} chunks. The i-th payload gets the priority {@code priorities[i]}.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @param priorities Priorities of the entries
+	 * @param data Packed payloads of the entries
+	 * @param count Number of entries
+	 * @see #DoublePriorityQueue(int, boolean)
+	 * @see #pushAll(double[], ByteBuffer, int)
+	 */
+	public static DoublePriorityQueue build(int numBytes, boolean useDirectBuffers, double[] priorities, ByteBuffer data, int count) {
+		int batchBytes = Batches.checkBatch(data, count, numBytes);
+		if (priorities.length < count) {
+			throw new IllegalArgumentException("not enough priorities for " + count + " entries: " + priorities.length);
+		}
+		long handle = buildFromBatch(numBytes, priorities, data, Batches.offset(data), count, TPIE.isCompressingSpills());
+		data.position(data.position() + batchBytes);
+		return new DoublePriorityQueue(handle, numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Build a priority queue from all the entries in a FIFO queue, leaving the FIFO queue empty.
+	 * <p>
+	 * Each FIFO entry is a record holding the priority as a {@code double} in native byte order
+	 * (see {@link java.nio.ByteOrder#nativeOrder()}), then the payload. So the payloads are
+	 * {@code records.numBytes - Double.BYTES} bytes. This is the same format as checkpoint files.
+	 * 
+	 * @param records FIFO queue of priority and payload records
+	 * @see #build(int, boolean, double[], ByteBuffer, int)
+	 */
+	public static DoublePriorityQueue build(FIFOQueue records, boolean useDirectBuffers) {
+		records.checkClosed();
+		int numBytes = payloadBytes(records.numBytes);
+		long count = records.size();
+		DoublePriorityQueue q = new DoublePriorityQueue(buildFromFIFOQueue(numBytes, records.getHandle(), TPIE.isCompressingSpills()), numBytes, useDirectBuffers);
+		records.countPopped(count);
+		return q;
+	}
+	
+	/**
+	 * Build a priority queue from the records in a file stream, from its current offset to its end.
+	 * When this method returns, the stream's offset will be at the end.
+	 * <p>
+	 * Each record holds the priority as a {@code double} in native byte order
+	 * (see {@link java.nio.ByteOrder#nativeOrder()}), then the payload. So the payloads are
+	 * {@code records.numBytes - Double.BYTES} bytes. This is the same format as checkpoint files,
+	 * so a checkpoint opened as a {@link FileStream} can seed a queue too.
+	 * 
+	 * @param records File stream of priority and payload records
+	 * @see #build(int, boolean, double[], ByteBuffer, int)
+	 */
+	public static DoublePriorityQueue build(FileStream records, boolean useDirectBuffers) {
+		records.checkClosed();
+		int numBytes = payloadBytes(records.numBytes);
+		return new DoublePriorityQueue(buildFromFileStream(numBytes, records.getHandle(), TPIE.isCompressingSpills()), numBytes, useDirectBuffers);
+	}
+	
+	private static int payloadBytes(int recordBytes) {
+		if (recordBytes <= Double.BYTES) {
+			throw new IllegalArgumentException("records must hold a priority and a payload, but are only " + recordBytes + " bytes");
+		}
+		return recordBytes - Double.BYTES;
+	}
+	
+	/**
+	 * Reopen a priority queue from a checkpoint written by {@link #checkpoint(File)}, possibly by another JVM.
+	 * <p>
+	 * The checkpointed entries are read from the checkpoint file as they're needed, rather than pushed
+	 * all over again, so restoring a queue is fast no matter how many entries it has.
+	 * The checkpoint file must not be changed while the restored queue is using it,
+	 * except by checkpointing the restored queue itself.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @param numBytes Size of the entries, which must match the size of the checkpointed queue
+	 */
+	public static DoublePriorityQueue restore(File file, int numBytes) {
+		return restore(file, numBytes, false);
+	}
+	
+	/**
+	 * Reopen a priority queue from a checkpoint written by {@link #checkpoint(File)}.
+	 * 
+	 * @see #restore(File, int)
+	 * @see #DoublePriorityQueue(int, boolean)
+	 */
+	public static DoublePriorityQueue restore(File file, int numBytes, boolean useDirectBuffers) {
+		return new DoublePriorityQueue(restore(numBytes, file.getAbsolutePath()), numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Allocate a buffer big enough for {@code numEntries} packed payloads,
+	 * for use with {@link #pushAll(double[], ByteBuffer, int)} and {@link #popInto(double[], ByteBuffer, int)}.
+	 * <p>
+	 * The buffer will be direct if this queue uses direct buffers.
+	 */
+	public ByteBuffer allocateBatch(int numEntries) {
+		return allocate(numEntries*numBytes);
+	}
+	
+	private ByteBuffer allocate(int size) {
+		if (useDirectBuffers) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
 	}
 	
 	/**
 	 * Add an entry to the queue.
+	 * <p>
+	 * If the queue is bounded and full, the entry with the largest priority is dropped. See {@link #bounded(int, boolean, long)}
 	 */
 	public void push(Entry entry) {
 		checkClosed();
-		push(getHandle(), entry);
+		if (maxEntries == 0) {
+			push(getHandle(), entry);
+		} else if (entry.priority < dropPriority) {
+			dropPriority = pushBounded(getHandle(), entry);
+		}
+		countPushed(1);
+	}
+	
+	/**
+	 * Add many entries to the queue with a single call to TPIE.
+	 * <p>
+	 * Payloads are read from {@code data} starting at its current position, packed back-to-back
+	 * in {@link #numBytes} chunks. The i-th payload gets the priority {@code priorities[i]}.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * <p>
+	 * Pushing entries in batches is much faster than calling {@link #push(Entry)} in a loop,
+	 * since the JNI overhead is paid once per batch, rather than once per entry.
+	 * 
+	 * @param priorities Priorities of the entries
+	 * @param data Packed payloads of the entries
+	 * @param count Number of entries to push
+	 */
+	public void pushAll(double[] priorities, ByteBuffer data, int count) {
+		checkClosed();
+		int batchBytes = Batches.checkBatch(data, count, numBytes);
+		if (priorities.length < count) {
+			throw new IllegalArgumentException("not enough priorities for " + count + " entries: " + priorities.length);
+		}
+		if (maxEntries == 0) {
+			pushAll(getHandle(), priorities, data, Batches.offset(data), count);
+		} else {
+			dropPriority = pushAllBounded(getHandle(), priorities, data, Batches.offset(data), count);
+		}
+		data.position(data.position() + batchBytes);
+		countPushed(count);
+	}
+	
+	private void countPushed(long count) {
+		long size = stats.size();
+		stats.entriesIn.add(count);
+		if (maxEntries > 0) {
+			// each push past the bound drops exactly one entry
+			stats.entriesDropped.add(Math.max(0, size + count - maxEntries));
+		}
 	}
 	
 	/**
@@ -79,6 +417,39 @@ public class DoublePriorityQueue extends OffHeap {
 		return top(getHandle(), this);
 	}
 	
+	/**
+	 * Like {@link #top()}, but copies the entry into {@code entry} rather than allocating a new one.
+	 * <p>
+	 * Reusing entries keeps tight loops from producing garbage. The data buffer will be rewound
+	 * so the payload can be read from the start.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this queue.
+	 * @return {@code entry}, for convenience
+	 */
+	public Entry top(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		topInto(getHandle(), entry);
+		entry.data.clear();
+		return entry;
+	}
+	
+	/**
+	 * Retrieve only the priority of the top entry, without copying its payload.
+	 * <p>
+	 * Does not modify the queue.
+	 */
+	public double topPriority() {
+		checkClosed();
+		return topPriority(getHandle());
+	}
+	
+	private void checkEntry(Entry entry) {
+		if (entry.data.capacity() < numBytes || entry.data.isReadOnly()) {
+			throw new IllegalArgumentException("entry buffer can't hold " + numBytes + " bytes");
+		}
+	}
+	
 	/**
 	 * Remove the top entry from the queue.
 	 * 
@@ -87,6 +458,82 @@ public class DoublePriorityQueue extends OffHeap {
 	public void pop() {
 		checkClosed();
 		pop(getHandle());
+		stats.entriesOut.increment();
+		dropPriority = Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Copy the top entry into {@code entry} and remove it from the queue, all with a single call to TPIE.
+	 * <p>
+	 * Equivalent to {@link #top(Entry)} followed by {@link #pop()}, but only calls into TPIE once.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this queue.
+	 * @return true if an entry was popped, or false if the queue was empty.
+	 */
+	public boolean popTop(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		boolean popped = popTop(getHandle(), entry);
+		entry.data.clear();
+		if (popped) {
+			stats.entriesOut.increment();
+			dropPriority = Double.POSITIVE_INFINITY;
+		}
+		return popped;
+	}
+	
+	/**
+	 * Remove many entries from the top of the queue with a single call to TPIE.
+	 * <p>
+	 * Up to {@code max} entries are popped in priority order. Their payloads are written to {@code data}
+	 * starting at its current position, packed back-to-back in {@link #numBytes} chunks,
+	 * and the priority of the i-th payload is written to {@code priorities[i]}.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * <p>
+	 * Draining the queue in batches is much faster than calling {@link #top()} and {@link #pop()} in a loop,
+	 * since the JNI overhead is paid once per batch, rather than a few times per entry.
+	 * 
+	 * @param priorities Receives the priorities of the popped entries
+	 * @param data Receives the packed payloads of the popped entries
+	 * @param max Maximum number of entries to pop
+	 * @return The number of entries popped, which is less than {@code max} only if the queue ran out of entries
+	 */
+	public int popInto(double[] priorities, ByteBuffer data, int max) {
+		checkClosed();
+		Batches.checkBatch(data, max, numBytes);
+		if (data.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
+		if (priorities.length < max) {
+			throw new IllegalArgumentException("not enough room for " + max + " priorities: " + priorities.length);
+		}
+		int count = popInto(getHandle(), priorities, data, Batches.offset(data), max);
+		data.position(data.position() + count*numBytes);
+		stats.entriesOut.add(count);
+		if (count > 0) {
+			dropPriority = Double.POSITIVE_INFINITY;
+		}
+		return count;
+	}
+	
+	/**
+	 * Save all the entries in the queue to {@code file}, so the queue can be reopened later with {@link #restore(File, int)}.
+	 * <p>
+	 * Entries are written in priority order, and the queue is left with the same entries. Entries pushed since the last
+	 * checkpoint are popped into a sorted file, then every entry is merged into the checkpoint, so a checkpoint costs
+	 * O(k log k) for the k entries pushed since the last checkpoint, plus reading and writing every entry once.
+	 * Afterwards, the queue reads those entries from the checkpoint file instead of holding them itself.
+	 * If the checkpoint fails, no entries are lost.
+	 * <p>
+	 * The new checkpoint is written next to {@code file}, synced to disk, then moved over it, so if the JVM
+	 * or the machine dies while writing a checkpoint, the previous checkpoint is still good. The checkpoint file
+	 * must not be changed while the queue is using it, except by checkpointing the queue again.
+	 * <p>
+	 * Checkpoint files belong to the caller, and aren't removed by TPIE. {@link TPIE#getTempDir()} is a good place for them.
+	 */
+	public void checkpoint(File file) {
+		checkClosed();
+		checkpoint(getHandle(), file.getAbsolutePath());
 	}
 	
 	/**
@@ -106,4 +553,50 @@ public class DoublePriorityQueue extends OffHeap {
 		checkClosed();
 		return empty(getHandle());
 	}
+	
+	/**
+	 * Get the internal memory budget, in bytes.
+	 * <p>
+	 * Queues created without an explicit budget report the budget TPIE picked for them.
+	 */
+	@Override
+	public long getMemoryBudget() {
+		checkClosed();
+		return getMemoryBudget(getHandle());
+	}
+	
+	/**
+	 * Change the internal memory budget.
+	 * <p>
+	 * Queues created with {@link #withMemoryBudget(int, boolean, long)} change their budgets in place, and only
+	 * write the entries with the largest priorities that no longer fit to disk.
+	 * Bounded queues always keep their entries in memory, so their budgets don't change.
+	 * 
+	 * @see MemoryBudgeted#setMemoryBudget(long)
+	 */
+	@Override
+	public void setMemoryBudget(long memoryBytes) {
+		checkClosed();
+		setMemoryBudget(getHandle(), checkBudget(memoryBytes));
+		stats.memoryBudget.set(getMemoryBudget(getHandle()));
+	}
+	
+	/**
+	 * Get a snapshot of the monitoring statistics for this queue.
+	 * <p>
+	 * Safe to call from any thread, since it doesn't call into TPIE.
+	 * 
+	 * @see TPIEStats
+	 */
+	@Override
+	public QueueStats getStats() {
+		return stats.snapshot();
+	}
+	
+	private static long checkBudget(long memoryBytes) {
+		if (memoryBytes <= 0) {
+			throw new IllegalArgumentException("memory budget must be positive, not " + memoryBytes);
+		}
+		return memoryBytes;
+	}
 }
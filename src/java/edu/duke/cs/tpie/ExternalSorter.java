@@ -0,0 +1,207 @@
+package edu.duke.cs.tpie;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * Sorts more entries than fit in internal memory, using an external merge sort.
+ * Entries have double-valued keys and ByteBuffer payloads, just like {@link DoublePriorityQueue},
+ * and are sorted such that entries with the smallest priorities come first.
+ * <p>
+ * Using a sorter has two phases. First, push all the entries, then call {@link #sort()}.
+ * Then, pull the sorted entries back out with {@link #next(Entry)} or {@link #pullInto(double[], ByteBuffer, int)}.
+ * <p>
+ * When all the entries are known up front, a sorter uses about half the I/O of pushing them all into
+ * a {@link DoublePriorityQueue} and popping them back out. The sort is not stable though,
+ * so entries with equal priorities can come out in any order.
+ * <p>
+ * The sorter uses all of TPIE's available internal memory at the time it's created, so it's best
+ * to create sorters when no other large TPIE data structures are in use.
+ * <p>
+ * This implementation wraps the <a href="http://madalgo.au.dk/tpie/doc/master/classtpie_1_1merge__sorter.html">tpie::merge_sorter</a> type.
+ */
+public class ExternalSorter extends OffHeap {
+	
+	private static native long create(int numBytes);
+	private static native void cleanup(long handle);
+	private static native void push(long handle, Entry entry);
+	private static native void pushAll(long handle, double[] priorities, ByteBuffer data, int offset, int count);
+	private static native void sort(long handle);
+	private static native boolean isSorted(long handle);
+	private static native boolean pull(long handle, Entry entry);
+	private static native int pullInto(long handle, double[] priorities, ByteBuffer data, int offset, int max);
+	private static native long size(long handle);
+	
+	/**
+	 * An entry for the sorter.
+	 */
+	public class Entry {
+		
+		/**
+		 * Priority for the entry.
+		 * <p>
+		 * Entries are sorted such that the smallest values come first.
+		 */
+		public double priority;
+		
+		/**
+		 * Payload for the entry.
+		 * <p>
+		 * Payload buffers are always {@link ExternalSorter#numBytes} bytes.
+		 */
+		public ByteBuffer data;
+		
+		public Entry() {
+			this.priority = 0;
+			this.data = ByteBuffer.allocate(numBytes);
+		}
+	}
+	
+	/**
+	 * Size of the entries in this sorter, in bytes.
+	 */
+	public final int numBytes;
+	
+	/**
+	 * Create a sorter whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public ExternalSorter(EntrySize entrySize) {
+		this(entrySize.numBytes);
+	}
+	
+	/**
+	 * Create a sorter whose entries will be exactly {@code numBytes} bytes.
+	 * Entries are stored at their exact size, whether or not {@code numBytes} is an {@link EntrySize}.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public ExternalSorter(int numBytes) {
+		super(create(numBytes), (handle) -> cleanup(handle));
+		this.numBytes = numBytes;
+	}
+	
+	/**
+	 * Add an entry to the sorter.
+	 * <p>
+	 * Entries can only be pushed before calling {@link #sort()}.
+	 */
+	public void push(Entry entry) {
+		checkClosed();
+		push(getHandle(), entry);
+	}
+	
+	/**
+	 * Add many entries to the sorter with a single call to TPIE.
+	 * <p>
+	 * Payloads are read from {@code data} starting at its current position, packed back-to-back
+	 * in {@link #numBytes} chunks. The i-th payload gets the priority {@code priorities[i]}.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * 
+	 * @param priorities Priorities of the entries
+	 * @param data Packed payloads of the entries
+	 * @param count Number of entries to push
+	 */
+	public void pushAll(double[] priorities, ByteBuffer data, int count) {
+		checkClosed();
+		int batchBytes = Batches.checkBatch(data, count, numBytes);
+		if (priorities.length < count) {
+			throw new IllegalArgumentException("not enough priorities for " + count + " entries: " + priorities.length);
+		}
+		pushAll(getHandle(), priorities, data, Batches.offset(data), count);
+		data.position(data.position() + batchBytes);
+	}
+	
+	/**
+	 * Sort all the pushed entries.
+	 * <p>
+	 * After sorting, no more entries can be pushed, but the sorted entries can be pulled.
+	 */
+	public void sort() {
+		checkClosed();
+		sort(getHandle());
+	}
+	
+	/**
+	 * Return true if {@link #sort()} has been called.
+	 */
+	public boolean isSorted() {
+		checkClosed();
+		return isSorted(getHandle());
+	}
+	
+	/**
+	 * Return true if there are sorted entries left to pull.
+	 */
+	public boolean hasNext() {
+		return size() > 0;
+	}
+	
+	/**
+	 * Pull the next sorted entry.
+	 * 
+	 * @return The next entry, or null if there are no more entries.
+	 */
+	public Entry next() {
+		Entry entry = new Entry();
+		if (next(entry)) {
+			return entry;
+		}
+		return null;
+	}
+	
+	/**
+	 * Like {@link #next()}, but copies the entry into {@code entry} rather than allocating a new one.
+	 * <p>
+	 * The data buffer will be rewound so the payload can be read from the start.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this sorter.
+	 * @return true if an entry was pulled, or false if there are no more entries.
+	 */
+	public boolean next(Entry entry) {
+		checkClosed();
+		if (entry.data.capacity() < numBytes || entry.data.isReadOnly()) {
+			throw new IllegalArgumentException("entry buffer can't hold " + numBytes + " bytes");
+		}
+		boolean pulled = pull(getHandle(), entry);
+		entry.data.clear();
+		return pulled;
+	}
+	
+	/**
+	 * Pull many sorted entries with a single call to TPIE.
+	 * <p>
+	 * Payloads are written to {@code data} starting at its current position, packed back-to-back
+	 * in {@link #numBytes} chunks, and the priority of the i-th payload is written to {@code priorities[i]}.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * 
+	 * @param priorities Receives the priorities of the pulled entries
+	 * @param data Receives the packed payloads of the pulled entries
+	 * @param max Maximum number of entries to pull
+	 * @return The number of entries pulled, which is less than {@code max} only if the sorter ran out of entries
+	 */
+	public int pullInto(double[] priorities, ByteBuffer data, int max) {
+		checkClosed();
+		Batches.checkBatch(data, max, numBytes);
+		if (data.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
+		if (priorities.length < max) {
+			throw new IllegalArgumentException("not enough room for " + max + " priorities: " + priorities.length);
+		}
+		int count = pullInto(getHandle(), priorities, data, Batches.offset(data), max);
+		data.position(data.position() + count*numBytes);
+		return count;
+	}
+	
+	/**
+	 * Get the number of entries that have been pushed, but not pulled yet.
+	 */
+	public long size() {
+		checkClosed();
+		return size(getHandle());
+	}
+}
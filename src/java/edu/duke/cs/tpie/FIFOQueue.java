@@ -1,21 +1,33 @@
 package edu.duke.cs.tpie;
 
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 /**
  * A first-in-first-out queue whose entries have ByteBuffer payloads.
  * <p>
  * This implementation wraps the <a href="http://madalgo.au.dk/tpie/doc/master/classtpie_1_1queue.html">tpie::queue</a> type.
  */
-public class FIFOQueue extends OffHeap {
+public class FIFOQueue extends OffHeap implements MemoryBudgeted {
 	
-	private static native long create(int numBytes);
+	private static native long create(int numBytes, long memoryBytes, boolean compressed);
+	private static native long createAsync(int numBytes, long memoryBytes, boolean compressed, int maxBlocksInFlight);
+	private static native long restore(int numBytes, String path);
 	private static native void cleanup(long handle);
+	private static native void checkpoint(long handle, String path);
 	private static native void push(long handle, Entry entry);
+	private static native void pushAll(long handle, ByteBuffer data, int offset, int count);
 	private static native Entry front(long handle, FIFOQueue queue);
+	private static native void frontInto(long handle, Entry entry);
 	private static native void pop(long handle);
+	private static native boolean popFront(long handle, Entry entry);
+	private static native int popInto(long handle, ByteBuffer data, int offset, int max);
 	private static native long size(long handle);
 	private static native boolean empty(long handle);
+	private static native long getMemoryBudget(long handle);
+	private static native void setMemoryBudget(long handle, long memoryBytes);
+	private static native void trackStats(long handle, ByteBuffer block);
 
 	/**
 	 * An entry for the FIFO queue.
@@ -25,20 +37,37 @@ public class FIFOQueue extends OffHeap {
 		/**
 		 * Payload for the entry.
 		 * <p>
-		 * Payload buffers are always fixed size, and are determined by the {@link EntrySize} value passed to {@link DoublePriorityQueue#DoublePriorityQueue(EntrySize)}.
+		 * Payload buffers are always fixed size, and are determined by the size passed to the queue's constructor. See {@link FIFOQueue#numBytes}.
 		 */
 		public ByteBuffer data;
 		
 		public Entry() {
-			this.data = ByteBuffer.allocate(entrySize.numBytes);
+			this.data = allocate(numBytes);
 		}
 	}
 	
 	/**
-	 * Size of the entries in this queue.
+	 * Size of the entries in this queue, in bytes.
+	 */
+	public final int numBytes;
+	
+	/**
+	 * The smallest {@link EntrySize} that can hold the entries in this queue,
+	 * or null if the entries are bigger than the largest {@link EntrySize}.
+	 * <p>
+	 * Entries aren't padded out to this size, it's only here as a hint.
 	 */
 	public final EntrySize entrySize;
 	
+	/**
+	 * Whether entries for this queue use direct buffers.
+	 * <p>
+	 * See {@link #FIFOQueue(int, boolean)}
+	 */
+	public final boolean useDirectBuffers;
+	
+	private final QueueStats.Counters stats;
+	
 	/**
 	 * Create a FIFO queue whose entries will be the specified size.
 	 * <p>
@@ -46,8 +75,180 @@ public class FIFOQueue extends OffHeap {
 	 * structures to set shared internal memory limits.
 	 */
 	public FIFOQueue(EntrySize entrySize) {
-		super(create(entrySize.numBytes), (handle) -> cleanup(handle));
-		this.entrySize = entrySize;
+		this(entrySize.numBytes, false);
+	}
+	
+	/**
+	 * Create a FIFO queue whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @see #FIFOQueue(int, boolean)
+	 */
+	public FIFOQueue(EntrySize entrySize, boolean useDirectBuffers) {
+		this(entrySize.numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Create a FIFO queue whose entries will be exactly {@code numBytes} bytes, with no padding.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public FIFOQueue(int numBytes) {
+		this(numBytes, false);
+	}
+	
+	/**
+	 * Create a FIFO queue whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @param useDirectBuffers If true, entry payloads will be allocated as direct buffers, which TPIE can
+	 * read and write in place. Otherwise, payloads will be heap buffers, which the JVM may have to copy
+	 * each time they're passed to TPIE. Direct buffers are more expensive to allocate, but cheaper to
+	 * use, so they work best with large payloads that get reused. See {@link #allocateBatch(int)} too.
+	 */
+	public FIFOQueue(int numBytes, boolean useDirectBuffers) {
+		this(create(numBytes, 0, TPIE.isCompressingSpills()), numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Create a FIFO queue whose entries will be the specified size, and choose whether it compresses its spill files.
+	 * <p>
+	 * Compressed queues write the entries that don't fit in memory to compressed temporary files,
+	 * which trades CPU time for less disk traffic. Queues made by the constructors compress
+	 * their spill files if TPIE was started with {@link TPIE#start(int, boolean)}.
+	 * 
+	 * @param compressSpills If true, compress the spill files
+	 * @see #FIFOQueue(int, boolean)
+	 */
+	public static FIFOQueue withCompressedSpills(int numBytes, boolean useDirectBuffers, boolean compressSpills) {
+		return new FIFOQueue(create(numBytes, 0, compressSpills), numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Create a FIFO queue whose entries will be the specified size, with its own internal memory budget.
+	 * <p>
+	 * The queue keeps a block of entries in memory at the end of the queue, so the budget sets the block size.
+	 * Small budgets suit queues that are mostly empty, and leave more memory for the structures that need it.
+	 * The budget can be changed in place later, without writing the whole block to disk.
+	 * 
+	 * @param memoryBudget Internal memory budget, in bytes
+	 * @see #FIFOQueue(int, boolean)
+	 * @see #setMemoryBudget(long)
+	 */
+	public static FIFOQueue withMemoryBudget(int numBytes, boolean useDirectBuffers, long memoryBudget) {
+		return new FIFOQueue(create(numBytes, checkBudget(memoryBudget), TPIE.isCompressingSpills()), numBytes, useDirectBuffers);
+	}
+	
+	private FIFOQueue(long handle, int numBytes, boolean useDirectBuffers) {
+		super(handle, (h) -> cleanup(h));
+		this.numBytes = numBytes;
+		this.entrySize = EntrySize.findBigEnoughSizeFor(numBytes);
+		this.useDirectBuffers = useDirectBuffers;
+		
+		// restored queues start out with entries
+		stats = new QueueStats.Counters("FIFOQueue", numBytes, numBytes);
+		stats.entriesIn.add(size(handle));
+		stats.memoryBudget.set(getMemoryBudget(handle));
+		trackStats(handle, stats.block);
+	}
+	
+	/**
+	 * Create a FIFO queue that does its disk I/O on a background thread.
+	 * <p>
+	 * Pushes fill a block of entries in memory, and each full block is handed to a background I/O thread that writes it
+	 * to disk, so the pushing thread only waits when {@code maxBlocksInFlight} blocks are already waiting to be written.
+	 * The I/O thread also reads the next block ahead of time, so {@link #front()} and {@link #pop()} only wait on the disk
+	 * when they catch up with the reads. When no entries are on disk, pops take blocks straight from the pushes.
+	 * <p>
+	 * Blocks are the size of TPIE's block size, and are allocated from TPIE's internal memory: up to
+	 * {@code maxBlocksInFlight} + 4 blocks. They're part of the queue's memory budget, so {@link #getMemoryBudget()}
+	 * includes them. This queue gets TPIE's default budget for the rest, and compresses its spill files
+	 * if TPIE was started with {@link TPIE#start(int, boolean)}.
+	 * The queue still may only be used by one thread at a time.
+	 * If the I/O thread fails, the error is thrown by the next push or pop that waits for it.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @param maxBlocksInFlight Maximum number of full blocks waiting to be written before pushes wait
+	 * @see #FIFOQueue(int, boolean)
+	 */
+	public static FIFOQueue writeBehind(int numBytes, boolean useDirectBuffers, int maxBlocksInFlight) {
+		return new FIFOQueue(createAsync(numBytes, 0, TPIE.isCompressingSpills(), checkBlocks(maxBlocksInFlight)), numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Create a FIFO queue that does its disk I/O on a background thread, with its own internal memory budget,
+	 * and choose whether it compresses its spill files.
+	 * <p>
+	 * The budget covers the blocks in flight too, so it must be bigger than they are.
+	 * 
+	 * @param maxBlocksInFlight Maximum number of full blocks waiting to be written before pushes wait
+	 * @param memoryBudget Internal memory budget, in bytes, including the blocks in flight
+	 * @param compressSpills If true, compress the spill files
+	 * @see #writeBehind(int, boolean, int)
+	 * @see #withMemoryBudget(int, boolean, long)
+	 * @see #withCompressedSpills(int, boolean, boolean)
+	 */
+	public static FIFOQueue writeBehind(int numBytes, boolean useDirectBuffers, int maxBlocksInFlight, long memoryBudget, boolean compressSpills) {
+		return new FIFOQueue(createAsync(numBytes, checkBudget(memoryBudget), compressSpills, checkBlocks(maxBlocksInFlight)), numBytes, useDirectBuffers);
+	}
+	
+	private static int checkBlocks(int maxBlocksInFlight) {
+		if (maxBlocksInFlight <= 0) {
+			throw new IllegalArgumentException("need at least one block in flight, not " + maxBlocksInFlight);
+		}
+		return maxBlocksInFlight;
+	}
+	
+	/**
+	 * Reopen a FIFO queue from a checkpoint written by {@link #checkpoint(File)}, possibly by another JVM.
+	 * <p>
+	 * The checkpointed entries are read from the checkpoint file as they're needed, rather than pushed
+	 * all over again, so restoring a queue is fast no matter how many entries it has.
+	 * The checkpoint file must not be changed while the restored queue is using it,
+	 * except by checkpointing the restored queue itself.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @param numBytes Size of the entries, which must match the size of the checkpointed queue
+	 */
+	public static FIFOQueue restore(File file, int numBytes) {
+		return restore(file, numBytes, false);
+	}
+	
+	/**
+	 * Reopen a FIFO queue from a checkpoint written by {@link #checkpoint(File)}.
+	 * 
+	 * @see #restore(File, int)
+	 * @see #FIFOQueue(int, boolean)
+	 */
+	public static FIFOQueue restore(File file, int numBytes, boolean useDirectBuffers) {
+		return new FIFOQueue(restore(numBytes, file.getAbsolutePath()), numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Allocate a buffer big enough for {@code numEntries} packed payloads,
+	 * for use with {@link #pushAll(ByteBuffer, int)} and {@link #popInto(ByteBuffer, int)}.
+	 * <p>
+	 * The buffer will be direct if this queue uses direct buffers.
+	 */
+	public ByteBuffer allocateBatch(int numEntries) {
+		return allocate(numEntries*numBytes);
+	}
+	
+	private ByteBuffer allocate(int size) {
+		if (useDirectBuffers) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
 	}
 	
 	/**
@@ -56,6 +257,28 @@ public class FIFOQueue extends OffHeap {
 	public void push(Entry entry) {
 		checkClosed();
 		push(getHandle(), entry);
+		stats.entriesIn.increment();
+	}
+	
+	/**
+	 * Add many entries to the queue with a single call to TPIE.
+	 * <p>
+	 * Payloads are read from {@code data} starting at its current position, packed back-to-back
+	 * in {@link #numBytes} chunks, and are added to the queue in that order.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * <p>
+	 * Pushing entries in batches is much faster than calling {@link #push(Entry)} in a loop,
+	 * since the JNI overhead is paid once per batch, rather than once per entry.
+	 * 
+	 * @param data Packed payloads of the entries
+	 * @param count Number of entries to push
+	 */
+	public void pushAll(ByteBuffer data, int count) {
+		checkClosed();
+		int batchBytes = Batches.checkBatch(data, count, numBytes);
+		pushAll(getHandle(), data, Batches.offset(data), count);
+		data.position(data.position() + batchBytes);
+		stats.entriesIn.add(count);
 	}
 	
 	/**
@@ -68,6 +291,29 @@ public class FIFOQueue extends OffHeap {
 		return front(getHandle(), this);
 	}
 	
+	/**
+	 * Like {@link #front()}, but copies the entry into {@code entry} rather than allocating a new one.
+	 * <p>
+	 * Reusing entries keeps tight loops from producing garbage. The data buffer will be rewound
+	 * so the payload can be read from the start.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this queue.
+	 * @return {@code entry}, for convenience
+	 */
+	public Entry front(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		frontInto(getHandle(), entry);
+		entry.data.clear();
+		return entry;
+	}
+	
+	private void checkEntry(Entry entry) {
+		if (entry.data.capacity() < numBytes || entry.data.isReadOnly()) {
+			throw new IllegalArgumentException("entry buffer can't hold " + numBytes + " bytes");
+		}
+	}
+	
 	/**
 	 * Remove the first entry from the queue.
 	 * 
@@ -76,6 +322,71 @@ public class FIFOQueue extends OffHeap {
 	public void pop() {
 		checkClosed();
 		pop(getHandle());
+		stats.entriesOut.increment();
+	}
+	
+	/**
+	 * Copy the first entry into {@code entry} and remove it from the queue, all with a single call to TPIE.
+	 * <p>
+	 * Equivalent to {@link #front(Entry)} followed by {@link #pop()}, but only calls into TPIE once.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this queue.
+	 * @return true if an entry was popped, or false if the queue was empty.
+	 */
+	public boolean popFront(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		boolean popped = popFront(getHandle(), entry);
+		entry.data.clear();
+		if (popped) {
+			stats.entriesOut.increment();
+		}
+		return popped;
+	}
+	
+	/**
+	 * Remove many entries from the front of the queue with a single call to TPIE.
+	 * <p>
+	 * Up to {@code max} entries are popped in first-in-first-out order. Their payloads are written to {@code data}
+	 * starting at its current position, packed back-to-back in {@link #numBytes} chunks.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * <p>
+	 * Draining the queue in batches is much faster than calling {@link #front()} and {@link #pop()} in a loop,
+	 * since the JNI overhead is paid once per batch, rather than a few times per entry.
+	 * 
+	 * @param data Receives the packed payloads of the popped entries
+	 * @param max Maximum number of entries to pop
+	 * @return The number of entries popped, which is less than {@code max} only if the queue ran out of entries
+	 */
+	public int popInto(ByteBuffer data, int max) {
+		checkClosed();
+		Batches.checkBatch(data, max, numBytes);
+		if (data.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
+		int count = popInto(getHandle(), data, Batches.offset(data), max);
+		data.position(data.position() + count*numBytes);
+		stats.entriesOut.add(count);
+		return count;
+	}
+	
+	/**
+	 * Save all the entries in the queue to {@code file}, so the queue can be reopened later with {@link #restore(File, int)}.
+	 * <p>
+	 * Entries are written in first-in-first-out order, and the queue is left with the same entries. Entries pushed since
+	 * the last checkpoint are moved into a file, then every entry is copied into the checkpoint, so a checkpoint costs
+	 * about as much as reading and writing every entry once. Afterwards, the queue reads those entries from the
+	 * checkpoint file instead of holding them itself. If the checkpoint fails, no entries are lost.
+	 * <p>
+	 * The new checkpoint is written next to {@code file}, synced to disk, then moved over it, so if the JVM
+	 * or the machine dies while writing a checkpoint, the previous checkpoint is still good. The checkpoint file
+	 * must not be changed while the queue is using it, except by checkpointing the queue again.
+	 * <p>
+	 * Checkpoint files belong to the caller, and aren't removed by TPIE. {@link TPIE#getTempDir()} is a good place for them.
+	 */
+	public void checkpoint(File file) {
+		checkClosed();
+		checkpoint(getHandle(), file.getAbsolutePath());
 	}
 	
 	/**
@@ -95,4 +406,63 @@ public class FIFOQueue extends OffHeap {
 		checkClosed();
 		return empty(getHandle());
 	}
+	
+	/**
+	 * Get the internal memory budget, in bytes.
+	 * <p>
+	 * Queues created without an explicit budget report the budget TPIE picked for them.
+	 */
+	@Override
+	public long getMemoryBudget() {
+		checkClosed();
+		return getMemoryBudget(getHandle());
+	}
+	
+	/**
+	 * Change the internal memory budget.
+	 * <p>
+	 * Queues created with {@link #withMemoryBudget(int, boolean, long)} or {@link #writeBehind(int, boolean, int)}
+	 * change their budgets in place, and only write the entries that no longer fit to disk.
+	 * 
+	 * @see MemoryBudgeted#setMemoryBudget(long)
+	 */
+	@Override
+	public void setMemoryBudget(long memoryBytes) {
+		checkClosed();
+		setMemoryBudget(getHandle(), checkBudget(memoryBytes));
+		stats.memoryBudget.set(getMemoryBudget(getHandle()));
+	}
+	
+	/**
+	 * Get a snapshot of the monitoring statistics for this queue.
+	 * <p>
+	 * Safe to call from any thread, since it doesn't call into TPIE.
+	 * 
+	 * @see TPIEStats
+	 */
+	@Override
+	public QueueStats getStats() {
+		return stats.snapshot();
+	}
+	
+	/**
+	 * Count entries that native code pushed to this queue, e.g., from a {@link Pipeline}.
+	 */
+	void countPushed(long count) {
+		stats.entriesIn.add(count);
+	}
+	
+	/**
+	 * Count entries that native code popped from this queue, e.g., to build a priority queue.
+	 */
+	void countPopped(long count) {
+		stats.entriesOut.add(count);
+	}
+	
+	private static long checkBudget(long memoryBytes) {
+		if (memoryBytes <= 0) {
+			throw new IllegalArgumentException("memory budget must be positive, not " + memoryBytes);
+		}
+		return memoryBytes;
+	}
 }
@@ -0,0 +1,187 @@
+package edu.duke.cs.tpie;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * A file of fixed-size records that can be written and read sequentially, with block-buffered I/O.
+ * <p>
+ * Unlike {@link FIFOQueue}, a file stream has no queue bookkeeping, records can be read
+ * any number of times, and named files can be reopened later, even by another JVM.
+ * Records can be any size, and are stored back-to-back with no padding.
+ * <p>
+ * Each file stream has a current record index. Reads and writes start at the current index and advance it.
+ * Writing past the end of the stream makes the stream longer.
+ * <p>
+ * This implementation wraps the <a href="http://madalgo.au.dk/tpie/doc/master/classtpie_1_1file__stream.html">tpie::file_stream</a> type.
+ */
+public class FileStream extends OffHeap {
+	
+	private static native long create(int numBytes);
+	private static native long createNamed(int numBytes, String path, int access);
+	private static native void cleanup(long handle);
+	private static native void writeAll(long handle, ByteBuffer data, int offset, int count);
+	private static native int readAll(long handle, ByteBuffer data, int offset, int max);
+	private static native long offset(long handle);
+	private static native void seek(long handle, long index);
+	private static native long size(long handle);
+	private static native void truncate(long handle, long count);
+	
+	/**
+	 * How a named file stream will be used.
+	 */
+	public static enum Access {
+		
+		Read,
+		Write,
+		ReadWrite;
+	}
+	
+	/**
+	 * Size of the records in this stream, in bytes.
+	 */
+	public final int numBytes;
+	
+	/**
+	 * Path of the file backing this stream, or null if the stream uses a temporary file.
+	 */
+	public final File file;
+	
+	/**
+	 * Create a file stream backed by a temporary file, which is deleted when the stream is closed.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public FileStream(int numBytes) {
+		super(create(numBytes), (handle) -> cleanup(handle));
+		this.numBytes = numBytes;
+		this.file = null;
+	}
+	
+	/**
+	 * Create a file stream backed by a temporary file, which is deleted when the stream is closed.
+	 * 
+	 * @see #FileStream(int)
+	 */
+	public FileStream(EntrySize entrySize) {
+		this(entrySize.numBytes);
+	}
+	
+	/**
+	 * Open a file stream backed by the named file, which is kept when the stream is closed.
+	 * <p>
+	 * If the file already exists, its records will be read from the start. Otherwise, a new file will be created,
+	 * unless {@code access} is {@link Access#Read}.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public FileStream(int numBytes, File file, Access access) {
+		super(createNamed(numBytes, file.getAbsolutePath(), access.ordinal()), (handle) -> cleanup(handle));
+		this.numBytes = numBytes;
+		this.file = file;
+	}
+	
+	/**
+	 * Allocate a buffer big enough for {@code numRecords} packed records,
+	 * for use with {@link #write(ByteBuffer, int)} and {@link #read(ByteBuffer, int)}.
+	 */
+	public ByteBuffer allocateBatch(int numRecords) {
+		return ByteBuffer.allocate(numRecords*numBytes);
+	}
+	
+	/**
+	 * Write one record, read from {@code data} starting at its current position.
+	 */
+	public void write(ByteBuffer data) {
+		write(data, 1);
+	}
+	
+	/**
+	 * Write many records with a single call to TPIE.
+	 * <p>
+	 * Records are read from {@code data} starting at its current position, packed back-to-back
+	 * in {@link #numBytes} chunks. When this method returns, the position of {@code data}
+	 * will have advanced past the records.
+	 */
+	public void write(ByteBuffer data, int count) {
+		checkClosed();
+		int batchBytes = Batches.checkBatch(data, count, numBytes);
+		writeAll(getHandle(), data, Batches.offset(data), count);
+		data.position(data.position() + batchBytes);
+	}
+	
+	/**
+	 * Read one record into {@code data} starting at its current position.
+	 * 
+	 * @return true if a record was read, or false if the stream has no more records.
+	 */
+	public boolean read(ByteBuffer data) {
+		return read(data, 1) == 1;
+	}
+	
+	/**
+	 * Read many records with a single call to TPIE.
+	 * <p>
+	 * Records are written to {@code data} starting at its current position, packed back-to-back
+	 * in {@link #numBytes} chunks. When this method returns, the position of {@code data}
+	 * will have advanced past the records.
+	 * 
+	 * @return The number of records read, which is less than {@code max} only if the stream ran out of records
+	 */
+	public int read(ByteBuffer data, int max) {
+		checkClosed();
+		Batches.checkBatch(data, max, numBytes);
+		if (data.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
+		int count = readAll(getHandle(), data, Batches.offset(data), max);
+		data.position(data.position() + count*numBytes);
+		return count;
+	}
+	
+	/**
+	 * Get the index of the record that will be read or written next.
+	 */
+	public long offset() {
+		checkClosed();
+		return offset(getHandle());
+	}
+	
+	/**
+	 * Move to the record at {@code index}, so it will be read or written next.
+	 * <p>
+	 * Seeking to {@link #size()} moves to the end of the stream, so the next write will append a record.
+	 */
+	public void seek(long index) {
+		checkClosed();
+		seek(getHandle(), index);
+	}
+	
+	/**
+	 * Return true if there are records between the current index and the end of the stream.
+	 */
+	public boolean canRead() {
+		return offset() < size();
+	}
+	
+	/**
+	 * Get the number of records in the stream.
+	 */
+	public long size() {
+		checkClosed();
+		return size(getHandle());
+	}
+	
+	/**
+	 * Remove all records after the first {@code count} records.
+	 * <p>
+	 * If the current index is past the new end of the stream, it will be moved to the new end.
+	 */
+	public void truncate(long count) {
+		checkClosed();
+		truncate(getHandle(), count);
+	}
+}
@@ -0,0 +1,282 @@
+package edu.duke.cs.tpie;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * A priority queue whose entries have int-valued keys and ByteBuffer payloads.
+ * Entries are retrieved from the queue such that entries with the smallest priorities are returned first.
+ * <p>
+ * Keys are compared as 32-bit integers, and only take 4 bytes per entry,
+ * rather than the 8 bytes used by {@link DoublePriorityQueue} and {@link LongPriorityQueue}.
+ * <p>
+ * This implementation wraps the <a href="http://madalgo.au.dk/tpie/doc/master/classtpie_1_1priority__queue.html">tpie::priority_queue</a> type.
+ * 
+ * @see <a href="http://madalgo.au.dk/tpie/doc/master/priority_queue.html">TPIE Priority queue example</a>
+ */
+public class IntPriorityQueue extends OffHeap {
+	
+	private static native long create(int numBytes);
+	private static native void cleanup(long handle);
+	private static native void push(long handle, Entry entry);
+	private static native void pushAll(long handle, int[] priorities, ByteBuffer data, int offset, int count);
+	private static native Entry top(long handle, IntPriorityQueue queue);
+	private static native void topInto(long handle, Entry entry);
+	private static native void pop(long handle);
+	private static native boolean popTop(long handle, Entry entry);
+	private static native int popInto(long handle, int[] priorities, ByteBuffer data, int offset, int max);
+	private static native long size(long handle);
+	private static native boolean empty(long handle);
+	
+	/**
+	 * An entry for the priority queue.
+	 */
+	public class Entry {
+		
+		/**
+		 * Priority for the entry.
+		 * <p>
+		 * Entries are ordered such that the smallest values are retrieved first from the queue.
+		 */
+		public int priority;
+		
+		/**
+		 * Payload for the entry.
+		 * <p>
+		 * Payload buffers are always fixed size, and are determined by the size passed to the queue's constructor. See {@link IntPriorityQueue#numBytes}.
+		 */
+		public ByteBuffer data;
+		
+		public Entry() {
+			this.priority = 0;
+			this.data = allocate(numBytes);
+		}
+	}
+	
+	/**
+	 * Size of the entries in this queue, in bytes.
+	 */
+	public final int numBytes;
+	
+	/**
+	 * The smallest {@link EntrySize} that can hold the entries in this queue,
+	 * or null if the entries are bigger than the largest {@link EntrySize}.
+	 * <p>
+	 * Entries aren't padded out to this size, it's only here as a hint.
+	 */
+	public final EntrySize entrySize;
+	
+	/**
+	 * Whether entries for this queue use direct buffers.
+	 * <p>
+	 * See {@link #IntPriorityQueue(int, boolean)}
+	 */
+	public final boolean useDirectBuffers;
+	
+	/**
+	 * Create a priority queue whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public IntPriorityQueue(EntrySize entrySize) {
+		this(entrySize.numBytes, false);
+	}
+	
+	/**
+	 * Create a priority queue whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @see #IntPriorityQueue(int, boolean)
+	 */
+	public IntPriorityQueue(EntrySize entrySize, boolean useDirectBuffers) {
+		this(entrySize.numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Create a priority queue whose entries will be exactly {@code numBytes} bytes, with no padding.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public IntPriorityQueue(int numBytes) {
+		this(numBytes, false);
+	}
+	
+	/**
+	 * Create a priority queue whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @param useDirectBuffers If true, entry payloads will be allocated as direct buffers, which TPIE can
+	 * read and write in place. Otherwise, payloads will be heap buffers, which the JVM may have to copy
+	 * each time they're passed to TPIE. Direct buffers are more expensive to allocate, but cheaper to
+	 * use, so they work best with large payloads that get reused. See {@link #allocateBatch(int)} too.
+	 */
+	public IntPriorityQueue(int numBytes, boolean useDirectBuffers) {
+		super(create(numBytes), (handle) -> cleanup(handle));
+		this.numBytes = numBytes;
+		this.entrySize = EntrySize.findBigEnoughSizeFor(numBytes);
+		this.useDirectBuffers = useDirectBuffers;
+	}
+	
+	/**
+	 * Allocate a buffer big enough for {@code numEntries} packed payloads,
+	 * for use with {@link #pushAll(int[], ByteBuffer, int)} and {@link #popInto(int[], ByteBuffer, int)}.
+	 * <p>
+	 * The buffer will be direct if this queue uses direct buffers.
+	 */
+	public ByteBuffer allocateBatch(int numEntries) {
+		return allocate(numEntries*numBytes);
+	}
+	
+	private ByteBuffer allocate(int size) {
+		if (useDirectBuffers) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
+	}
+	
+	/**
+	 * Add an entry to the queue.
+	 */
+	public void push(Entry entry) {
+		checkClosed();
+		push(getHandle(), entry);
+	}
+	
+	/**
+	 * Add many entries to the queue with a single call to TPIE.
+	 * <p>
+	 * Payloads are read from {@code data} starting at its current position, packed back-to-back
+	 * in {@link #numBytes} chunks. The i-th payload gets the priority {@code priorities[i]}.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * <p>
+	 * Pushing entries in batches is much faster than calling {@link #push(Entry)} in a loop,
+	 * since the JNI overhead is paid once per batch, rather than once per entry.
+	 * 
+	 * @param priorities Priorities of the entries
+	 * @param data Packed payloads of the entries
+	 * @param count Number of entries to push
+	 */
+	public void pushAll(int[] priorities, ByteBuffer data, int count) {
+		checkClosed();
+		int batchBytes = Batches.checkBatch(data, count, numBytes);
+		if (priorities.length < count) {
+			throw new IllegalArgumentException("not enough priorities for " + count + " entries: " + priorities.length);
+		}
+		pushAll(getHandle(), priorities, data, Batches.offset(data), count);
+		data.position(data.position() + batchBytes);
+	}
+	
+	/**
+	 * Retrieve the entry from the queue with the smallest priority value.
+	 * <p>
+	 * Does not modify the queue.
+	 */
+	public Entry top() {
+		checkClosed();
+		return top(getHandle(), this);
+	}
+	
+	/**
+	 * Like {@link #top()}, but copies the entry into {@code entry} rather than allocating a new one.
+	 * <p>
+	 * Reusing entries keeps tight loops from producing garbage. The data buffer will be rewound
+	 * so the payload can be read from the start.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this queue.
+	 * @return {@code entry}, for convenience
+	 */
+	public Entry top(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		topInto(getHandle(), entry);
+		entry.data.clear();
+		return entry;
+	}
+	
+	private void checkEntry(Entry entry) {
+		if (entry.data.capacity() < numBytes || entry.data.isReadOnly()) {
+			throw new IllegalArgumentException("entry buffer can't hold " + numBytes + " bytes");
+		}
+	}
+	
+	/**
+	 * Remove the top entry from the queue.
+	 * 
+	 * See {@link #top()}
+	 */
+	public void pop() {
+		checkClosed();
+		pop(getHandle());
+	}
+	
+	/**
+	 * Copy the top entry into {@code entry} and remove it from the queue, all with a single call to TPIE.
+	 * <p>
+	 * Equivalent to {@link #top(Entry)} followed by {@link #pop()}, but only calls into TPIE once.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this queue.
+	 * @return true if an entry was popped, or false if the queue was empty.
+	 */
+	public boolean popTop(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		boolean popped = popTop(getHandle(), entry);
+		entry.data.clear();
+		return popped;
+	}
+	
+	/**
+	 * Remove many entries from the top of the queue with a single call to TPIE.
+	 * <p>
+	 * Up to {@code max} entries are popped in priority order. Their payloads are written to {@code data}
+	 * starting at its current position, packed back-to-back in {@link #numBytes} chunks,
+	 * and the priority of the i-th payload is written to {@code priorities[i]}.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * <p>
+	 * Draining the queue in batches is much faster than calling {@link #top()} and {@link #pop()} in a loop,
+	 * since the JNI overhead is paid once per batch, rather than a few times per entry.
+	 * 
+	 * @param priorities Receives the priorities of the popped entries
+	 * @param data Receives the packed payloads of the popped entries
+	 * @param max Maximum number of entries to pop
+	 * @return The number of entries popped, which is less than {@code max} only if the queue ran out of entries
+	 */
+	public int popInto(int[] priorities, ByteBuffer data, int max) {
+		checkClosed();
+		Batches.checkBatch(data, max, numBytes);
+		if (data.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
+		if (priorities.length < max) {
+			throw new IllegalArgumentException("not enough room for " + max + " priorities: " + priorities.length);
+		}
+		int count = popInto(getHandle(), priorities, data, Batches.offset(data), max);
+		data.position(data.position() + count*numBytes);
+		return count;
+	}
+	
+	/**
+	 * Get the number of elements currently in the queue.
+	 * <p>
+	 * Since TPIE queues use external memory, some of the entries may be currently residing on disk.
+	 */
+	public long size() {
+		checkClosed();
+		return size(getHandle());
+	}
+	
+	/**
+	 * Return true if the queue contains no entries.
+	 */
+	public boolean empty() {
+		checkClosed();
+		return empty(getHandle());
+	}
+}
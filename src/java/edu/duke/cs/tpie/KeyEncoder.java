@@ -0,0 +1,71 @@
+package edu.duke.cs.tpie;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes primitive values into key bytes for {@link KeyedPriorityQueue}.
+ * <p>
+ * The encodings preserve order: if {@code a < b}, then the bytes for {@code a} compare less than
+ * the bytes for {@code b} when compared byte-by-byte as unsigned values. Values are always written
+ * big-endian, regardless of the byte order of the buffer.
+ * <p>
+ * Doubles are ordered like {@link Double#compare(double, double)}, so {@code -0.0} comes before {@code 0.0},
+ * and NaN comes after positive infinity.
+ */
+public class KeyEncoder {
+	
+	public static final int DoubleBytes = 8;
+	public static final int LongBytes = 8;
+	public static final int IntBytes = 4;
+	
+	public static void putDouble(ByteBuffer buf, double val) {
+		long bits = Double.doubleToLongBits(val);
+		// flip all the bits of negative numbers, and just the sign bit of positive numbers
+		putBits(buf, bits ^ ((bits >> 63) | Long.MIN_VALUE));
+	}
+	
+	public static double getDouble(ByteBuffer buf) {
+		long bits = getBits(buf);
+		return Double.longBitsToDouble(bits ^ ((~bits >> 63) | Long.MIN_VALUE));
+	}
+	
+	public static void putLong(ByteBuffer buf, long val) {
+		putBits(buf, val ^ Long.MIN_VALUE);
+	}
+	
+	public static long getLong(ByteBuffer buf) {
+		return getBits(buf) ^ Long.MIN_VALUE;
+	}
+	
+	public static void putInt(ByteBuffer buf, int val) {
+		int bits = val ^ Integer.MIN_VALUE;
+		if (buf.order() == ByteOrder.LITTLE_ENDIAN) {
+			bits = Integer.reverseBytes(bits);
+		}
+		buf.putInt(bits);
+	}
+	
+	public static int getInt(ByteBuffer buf) {
+		int bits = buf.getInt();
+		if (buf.order() == ByteOrder.LITTLE_ENDIAN) {
+			bits = Integer.reverseBytes(bits);
+		}
+		return bits ^ Integer.MIN_VALUE;
+	}
+	
+	private static void putBits(ByteBuffer buf, long bits) {
+		if (buf.order() == ByteOrder.LITTLE_ENDIAN) {
+			bits = Long.reverseBytes(bits);
+		}
+		buf.putLong(bits);
+	}
+	
+	private static long getBits(ByteBuffer buf) {
+		long bits = buf.getLong();
+		if (buf.order() == ByteOrder.LITTLE_ENDIAN) {
+			bits = Long.reverseBytes(bits);
+		}
+		return bits;
+	}
+}
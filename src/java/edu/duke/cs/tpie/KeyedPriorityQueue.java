@@ -0,0 +1,166 @@
+package edu.duke.cs.tpie;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A priority queue whose entries have fixed-width byte string keys and ByteBuffer payloads.
+ * Entries are retrieved from the queue such that entries with the smallest keys are returned first.
+ * <p>
+ * Keys are compared byte-by-byte as unsigned values, like strings. Compound keys can be built by writing
+ * several key columns one after another, e.g. with {@link KeyEncoder}, so that entries are ordered by the
+ * first column, then the second column, and so on. The ordering happens entirely inside TPIE.
+ * <p>
+ * Entries with equal keys are ordered by their payloads, in the same way. If entries with equal keys
+ * need to come out in the order they were pushed, write a counter as the last key column.
+ * <p>
+ * Keys and payloads together must fit in 1024 bytes, and are padded out to the next {@link EntrySize}.
+ * <p>
+ * This implementation wraps the <a href="http://madalgo.au.dk/tpie/doc/master/classtpie_1_1priority__queue.html">tpie::priority_queue</a> type.
+ */
+public class KeyedPriorityQueue extends OffHeap {
+	
+	private static native long create(int keyBytes, int numBytes);
+	private static native void cleanup(long handle);
+	private static native void push(long handle, Entry entry);
+	private static native Entry top(long handle, KeyedPriorityQueue queue);
+	private static native void topInto(long handle, Entry entry);
+	private static native void pop(long handle);
+	private static native boolean popTop(long handle, Entry entry);
+	private static native long size(long handle);
+	private static native boolean empty(long handle);
+	
+	/**
+	 * An entry for the priority queue.
+	 */
+	public class Entry {
+		
+		/**
+		 * Key for the entry.
+		 * <p>
+		 * Key buffers are always {@link KeyedPriorityQueue#keyBytes} bytes.
+		 * Entries are ordered such that the smallest keys are retrieved first from the queue.
+		 */
+		public ByteBuffer key;
+		
+		/**
+		 * Payload for the entry.
+		 * <p>
+		 * Payload buffers are always {@link KeyedPriorityQueue#numBytes} bytes.
+		 */
+		public ByteBuffer data;
+		
+		public Entry() {
+			this.key = ByteBuffer.allocate(keyBytes);
+			this.data = ByteBuffer.allocate(numBytes);
+		}
+	}
+	
+	/**
+	 * Size of the keys in this queue, in bytes.
+	 */
+	public final int keyBytes;
+	
+	/**
+	 * Size of the payloads in this queue, in bytes.
+	 */
+	public final int numBytes;
+	
+	/**
+	 * Create a priority queue whose entries have keys and payloads of the specified sizes.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public KeyedPriorityQueue(int keyBytes, int numBytes) {
+		super(create(keyBytes, numBytes), (handle) -> cleanup(handle));
+		this.keyBytes = keyBytes;
+		this.numBytes = numBytes;
+	}
+	
+	/**
+	 * Add an entry to the queue.
+	 */
+	public void push(Entry entry) {
+		checkClosed();
+		push(getHandle(), entry);
+	}
+	
+	/**
+	 * Retrieve the entry from the queue with the smallest key.
+	 * <p>
+	 * Does not modify the queue.
+	 */
+	public Entry top() {
+		checkClosed();
+		return top(getHandle(), this);
+	}
+	
+	/**
+	 * Like {@link #top()}, but copies the entry into {@code entry} rather than allocating a new one.
+	 * <p>
+	 * The key and data buffers will be rewound so they can be read from the start.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this queue.
+	 * @return {@code entry}, for convenience
+	 */
+	public Entry top(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		topInto(getHandle(), entry);
+		entry.key.clear();
+		entry.data.clear();
+		return entry;
+	}
+	
+	private void checkEntry(Entry entry) {
+		if (entry.key.capacity() < keyBytes || entry.key.isReadOnly()) {
+			throw new IllegalArgumentException("entry key buffer can't hold " + keyBytes + " bytes");
+		}
+		if (entry.data.capacity() < numBytes || entry.data.isReadOnly()) {
+			throw new IllegalArgumentException("entry buffer can't hold " + numBytes + " bytes");
+		}
+	}
+	
+	/**
+	 * Remove the top entry from the queue.
+	 * 
+	 * See {@link #top()}
+	 */
+	public void pop() {
+		checkClosed();
+		pop(getHandle());
+	}
+	
+	/**
+	 * Copy the top entry into {@code entry} and remove it from the queue, all with a single call to TPIE.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this queue.
+	 * @return true if an entry was popped, or false if the queue was empty.
+	 */
+	public boolean popTop(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		boolean popped = popTop(getHandle(), entry);
+		entry.key.clear();
+		entry.data.clear();
+		return popped;
+	}
+	
+	/**
+	 * Get the number of elements currently in the queue.
+	 * <p>
+	 * Since TPIE queues use external memory, some of the entries may be currently residing on disk.
+	 */
+	public long size() {
+		checkClosed();
+		return size(getHandle());
+	}
+	
+	/**
+	 * Return true if the queue contains no entries.
+	 */
+	public boolean empty() {
+		checkClosed();
+		return empty(getHandle());
+	}
+}
@@ -0,0 +1,31 @@
+package edu.duke.cs.tpie;
+
+/**
+ * A TPIE data structure with its own internal memory budget.
+ * <p>
+ * The structure keeps as many entries in internal memory as fit in its budget, and spills the rest to disk.
+ * Budgets can be changed while the structure is in use, either one at a time with {@link #setMemoryBudget(long)},
+ * or for several structures at once with {@link TPIE#rebalance(java.util.Map)}.
+ */
+public interface MemoryBudgeted {
+	
+	/**
+	 * Get the internal memory budget, in bytes.
+	 */
+	long getMemoryBudget();
+	
+	/**
+	 * Change the internal memory budget.
+	 * <p>
+	 * Structures created with their own budget change it in place: a bigger budget keeps every entry in memory,
+	 * and a smaller one only writes the entries that no longer fit to disk. While the entries are copied into the new
+	 * buffers, the structure briefly holds both the old buffers and the new ones.
+	 * TPIE's own buffers can't be resized, so other structures write their entries in memory to disk the first time
+	 * their budget changes, and free their old buffers before they allocate new ones that can be resized.
+	 * If the new buffers can't be allocated, the structure keeps its old budget and the error is thrown,
+	 * and no entries are lost.
+	 * 
+	 * @param memoryBytes The new budget, in bytes
+	 */
+	void setMemoryBudget(long memoryBytes);
+}
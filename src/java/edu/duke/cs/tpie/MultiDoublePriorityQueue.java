@@ -0,0 +1,342 @@
+package edu.duke.cs.tpie;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.duke.cs.tpie.DoublePriorityQueue.Entry;
+
+/**
+ * A relaxed priority queue that many threads can push to and pop from at once,
+ * with double-valued keys and ByteBuffer payloads.
+ * <p>
+ * A {@link DoublePriorityQueue} can only be used by one thread at a time, so sharing one between
+ * threads means putting every push and pop behind a single lock. This queue is a <em>MultiQueue</em> instead:
+ * it's made of several independent {@link DoublePriorityQueue} shards, each with its own lock.
+ * <ul>
+ * <li>Each thread pushes to its own shard. If another thread holds that shard's lock,
+ * the push goes to the next free shard rather than waiting.</li>
+ * <li>A pop picks two shards at random, and pops the top entry of the shard with the smaller top priority.</li>
+ * </ul>
+ * Threads rarely touch the same shard at the same time, so throughput scales with the number of threads,
+ * as long as there are at least a couple shards per thread.
+ * <p>
+ * In exchange, pops are only approximately in priority order. The <em>rank error</em> of a pop is the number of entries
+ * in the whole queue with smaller priorities than the popped entry. When entries are spread evenly over the shards,
+ * choosing the better of two random shards keeps the expected rank error in O({@link #numShards}) no matter how
+ * many entries have been pushed and popped, and the rank error exceeds O({@link #numShards} log {@link #numShards})
+ * only with very small probability. A single random shard, by comparison, has a rank error that grows without bound.
+ * Pushing to per-thread shards keeps entries spread evenly when the threads push similar work, as they do in
+ * parallel best-first search, where each thread pushes the neighbors of the nodes it popped. If one thread pushes
+ * much better entries than the others, they'll still come out first, but they may wait behind O({@link #numShards})
+ * worse entries.
+ * <p>
+ * Pops only return false when every shard is empty, so this queue never loses entries, it only reorders them a little.
+ * The {@link #size()} and {@link #empty()} methods are exact when no other threads are using the queue,
+ * and approximate otherwise.
+ * <p>
+ * Each shard is a regular TPIE priority queue that spills to disk when it runs out of internal memory.
+ * The shards split the memory TPIE has available when the queue is created evenly between them.
+ * 
+ * @see DoublePriorityQueue
+ */
+public class MultiDoublePriorityQueue implements Closeable {
+	
+	private static class Shard {
+		
+		final DoublePriorityQueue queue;
+		final ReentrantLock lock = new ReentrantLock();
+		
+		// cached copies of the queue state, so threads can pick shards without taking locks or calling TPIE
+		// only written while holding the lock
+		volatile long size = 0;
+		volatile double topPriority = Double.POSITIVE_INFINITY;
+		
+		Shard(DoublePriorityQueue queue) {
+			this.queue = queue;
+		}
+		
+		void pushed(double priority, long count) {
+			size += count;
+			if (priority < topPriority) {
+				topPriority = priority;
+			}
+		}
+		
+		void popped(long count) {
+			size -= count;
+			if (size > 0) {
+				topPriority = queue.topPriority();
+			} else {
+				topPriority = Double.POSITIVE_INFINITY;
+			}
+		}
+	}
+	
+	/**
+	 * Size of the entries in this queue, in bytes.
+	 */
+	public final int numBytes;
+	
+	/**
+	 * Number of shards in this queue.
+	 */
+	public final int numShards;
+	
+	/**
+	 * Whether entries for this queue use direct buffers.
+	 * <p>
+	 * See {@link DoublePriorityQueue#DoublePriorityQueue(int, boolean)}
+	 */
+	public final boolean useDirectBuffers;
+	
+	private final Shard[] shards;
+	private final AtomicInteger nextThreadShard = new AtomicInteger(0);
+	private final ThreadLocal<Integer> threadShard;
+	
+	/**
+	 * Create a relaxed priority queue with a couple shards per available processor.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @see #MultiDoublePriorityQueue(int, int, boolean)
+	 */
+	public MultiDoublePriorityQueue(int numBytes) {
+		this(numBytes, 2*Runtime.getRuntime().availableProcessors(), false);
+	}
+	
+	/**
+	 * Create a relaxed priority queue whose entries will be exactly {@code numBytes} bytes.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @param numShards Number of shards. More shards means less contention between threads, but a bigger rank error.
+	 * Twice the number of threads using the queue is a good place to start.
+	 * @param useDirectBuffers See {@link DoublePriorityQueue#DoublePriorityQueue(int, boolean)}
+	 */
+	public MultiDoublePriorityQueue(int numBytes, int numShards, boolean useDirectBuffers) {
+		
+		if (numShards <= 0) {
+			throw new IllegalArgumentException("need at least one shard, not " + numShards);
+		}
+		
+		this.numBytes = numBytes;
+		this.numShards = numShards;
+		this.useDirectBuffers = useDirectBuffers;
+		
+		// give each new thread the next shard, so threads are spread evenly
+		threadShard = ThreadLocal.withInitial(() -> Math.floorMod(nextThreadShard.getAndIncrement(), numShards));
+		
+		// split the memory available now, since each shard's buffers make less available to the next one
+		long availableBytes = TPIE.getInternalBytesLimit() - TPIE.getInternalBytesUsed();
+		long shardBytes = Math.max(1, availableBytes/numShards);
+		
+		shards = new Shard[numShards];
+		try {
+			for (int i=0; i<numShards; i++) {
+				shards[i] = new Shard(DoublePriorityQueue.withMemoryBudget(numBytes, useDirectBuffers, shardBytes));
+			}
+		} catch (RuntimeException ex) {
+			close();
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Make a new entry for this queue.
+	 */
+	public Entry newEntry() {
+		checkClosed();
+		return shards[0].queue.new Entry();
+	}
+	
+	/**
+	 * Allocate a buffer big enough for {@code numEntries} packed payloads,
+	 * for use with {@link #pushAll(double[], ByteBuffer, int)}.
+	 * <p>
+	 * The buffer will be direct if this queue uses direct buffers.
+	 */
+	public ByteBuffer allocateBatch(int numEntries) {
+		checkClosed();
+		return shards[0].queue.allocateBatch(numEntries);
+	}
+	
+	/**
+	 * Add an entry to the current thread's shard.
+	 * 
+	 * @param entry An entry made by {@link #newEntry()}
+	 */
+	public void push(Entry entry) {
+		checkClosed();
+		Shard shard = lockPushShard();
+		try {
+			shard.queue.push(entry);
+			shard.pushed(entry.priority, 1);
+		} finally {
+			shard.lock.unlock();
+		}
+	}
+	
+	/**
+	 * Add many entries to the current thread's shard with a single call to TPIE.
+	 * 
+	 * @see DoublePriorityQueue#pushAll(double[], ByteBuffer, int)
+	 */
+	public void pushAll(double[] priorities, ByteBuffer data, int count) {
+		checkClosed();
+		Shard shard = lockPushShard();
+		try {
+			shard.queue.pushAll(priorities, data, count);
+			double min = Double.POSITIVE_INFINITY;
+			for (int i=0; i<count; i++) {
+				min = Math.min(min, priorities[i]);
+			}
+			shard.pushed(min, count);
+		} finally {
+			shard.lock.unlock();
+		}
+	}
+	
+	private Shard lockPushShard() {
+		
+		// try this thread's shard first, then the others in order
+		int home = threadShard.get();
+		for (int i=0; i<shards.length; i++) {
+			Shard shard = shards[(home + i) % shards.length];
+			if (shard.lock.tryLock()) {
+				return shard;
+			}
+		}
+		
+		// every shard is busy, so just wait for ours
+		Shard shard = shards[home];
+		shard.lock.lock();
+		return shard;
+	}
+	
+	/**
+	 * Remove an entry with one of the smallest priorities in the queue, and copy it into {@code entry}.
+	 * <p>
+	 * The popped entry is the top of the better of two random shards, so it's only approximately the top of the
+	 * whole queue. See the class documentation for the bound on how far from the top it can be.
+	 * 
+	 * @param entry Receives the entry. Must have been made by {@link #newEntry()}.
+	 * @return true if an entry was popped, or false if every shard was empty.
+	 */
+	public boolean popTop(Entry entry) {
+		checkClosed();
+		
+		ThreadLocalRandom rand = ThreadLocalRandom.current();
+		for (int i=0; i<shards.length; i++) {
+			
+			// pick the better of two random shards, using the cached tops
+			Shard a = shards[rand.nextInt(shards.length)];
+			Shard b = shards[rand.nextInt(shards.length)];
+			Shard shard = isBetter(b, a) ? b : a;
+			if (shard.size <= 0) {
+				continue;
+			}
+			
+			// another thread is using that shard, so pick again rather than wait
+			if (!shard.lock.tryLock()) {
+				continue;
+			}
+			try {
+				if (pop(shard, entry)) {
+					return true;
+				}
+			} finally {
+				shard.lock.unlock();
+			}
+		}
+		
+		// we keep missing, so the queue is nearly empty or very busy
+		// check every shard before reporting that it's empty
+		int start = rand.nextInt(shards.length);
+		for (int i=0; i<shards.length; i++) {
+			Shard shard = shards[(start + i) % shards.length];
+			shard.lock.lock();
+			try {
+				if (pop(shard, entry)) {
+					return true;
+				}
+			} finally {
+				shard.lock.unlock();
+			}
+		}
+		return false;
+	}
+	
+	private static boolean isBetter(Shard a, Shard b) {
+		if (a.size <= 0) {
+			return false;
+		}
+		return b.size <= 0 || a.topPriority < b.topPriority;
+	}
+	
+	private static boolean pop(Shard shard, Entry entry) {
+		if (shard.size <= 0) {
+			return false;
+		}
+		shard.queue.popTop(entry);
+		shard.popped(1);
+		return true;
+	}
+	
+	/**
+	 * Get the number of entries currently in the queue.
+	 * <p>
+	 * Since other threads may be pushing and popping at the same time, this is only a snapshot.
+	 */
+	public long size() {
+		checkClosed();
+		long size = 0;
+		for (Shard shard : shards) {
+			size += shard.size;
+		}
+		return size;
+	}
+	
+	/**
+	 * Return true if the queue contains no entries.
+	 * <p>
+	 * Since other threads may be pushing and popping at the same time, this is only a snapshot.
+	 */
+	public boolean empty() {
+		checkClosed();
+		for (Shard shard : shards) {
+			if (shard.size > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Reclaim off-heap memory used by all the shards.
+	 * <p>
+	 * No other threads may use the queue while it's closing.
+	 */
+	@Override
+	public void close() {
+		for (Shard shard : shards) {
+			if (shard != null) {
+				shard.queue.close();
+			}
+		}
+	}
+	
+	public boolean isClosed() {
+		return shards[0].queue.isClosed();
+	}
+	
+	public void checkClosed() {
+		if (isClosed()) {
+			throw new OffHeap.ClosedException();
+		}
+	}
+}
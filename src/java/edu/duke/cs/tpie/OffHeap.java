@@ -3,6 +3,7 @@ package edu.duke.cs.tpie;
 import java.io.Closeable;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
@@ -45,16 +46,35 @@ public abstract class OffHeap implements GarbageDetectable, Closeable {
 		}
 	}
 	
-	private static List<WeakReference<OffHeap>> liveRefs = new ArrayList<>();
+	// synchronized, since monitoring tools read it from their own threads
+	private static List<WeakReference<OffHeap>> liveRefs = Collections.synchronizedList(new ArrayList<>());
 	
 	public static void cleanAll() {
-		for (WeakReference<OffHeap> ref : liveRefs) {
-			OffHeap obj = ref.get();
-			if (obj != null) {
-				obj.close();
+		synchronized (liveRefs) {
+			for (WeakReference<OffHeap> ref : liveRefs) {
+				OffHeap obj = ref.get();
+				if (obj != null) {
+					obj.close();
+				}
 			}
+			liveRefs.clear();
 		}
-		liveRefs.clear();
+	}
+	
+	/**
+	 * Get all the objects that haven't been closed or garbage collected yet.
+	 */
+	static List<OffHeap> getLive() {
+		List<OffHeap> live = new ArrayList<>();
+		synchronized (liveRefs) {
+			for (WeakReference<OffHeap> ref : liveRefs) {
+				OffHeap obj = ref.get();
+				if (obj != null && !obj.isClosed()) {
+					live.add(obj);
+				}
+			}
+		}
+		return live;
 	}
 	
 	private HandleCleaner cleaner;
@@ -91,4 +111,15 @@ public abstract class OffHeap implements GarbageDetectable, Closeable {
 			throw new ClosedException();
 		}
 	}
+	
+	/**
+	 * Get monitoring statistics for this object, or null if it doesn't keep any.
+	 * <p>
+	 * Called from monitoring threads, so implementations must not call into TPIE.
+	 * 
+	 * @see TPIEStats
+	 */
+	QueueStats getStats() {
+		return null;
+	}
 }
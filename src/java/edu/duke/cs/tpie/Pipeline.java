@@ -0,0 +1,222 @@
+package edu.duke.cs.tpie;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chain of record processing stages that runs entirely inside TPIE, with a single call from Java.
+ * <p>
+ * A pipeline reads fixed-size records from a source, passes them through any number of projection
+ * and sort stages, then writes them to an output. Stages are fused, so records are handed directly
+ * from one stage to the next without being written to disk in between. Only sort stages use external memory,
+ * and the internal memory set with {@link TPIE#start(int)} is split evenly among them.
+ * <p>
+ * For example, to sort the records of a file stream by an 8-byte key at the end of each record,
+ * and keep just the keys:
+ * <pre>{@code
+ * long count = Pipeline.from(stream)
+ *     .project(stream.numBytes - 8, 8)
+ *     .sort(8)
+ *     .writeTo(queue);
+ * }</pre>
+ * <p>
+ * Sources, outputs, and record sizes are checked when stages are added, so a bad pipeline fails before anything runs.
+ */
+public class Pipeline {
+	
+	private static native long run(int[] program, long[] handles);
+	
+	// opcodes for the native program, see Pipeline.cpp
+	private static final int FromQueue = 1;
+	private static final int FromStream = 2;
+	private static final int Project = 3;
+	private static final int Sort = 4;
+	private static final int ToQueue = 5;
+	private static final int ToStream = 6;
+	
+	private List<Integer> program;
+	private List<OffHeap> resources;
+	private int numBytes;
+	
+	private Pipeline(int op, OffHeap source, int numBytes) {
+		this.program = new ArrayList<>();
+		this.resources = new ArrayList<>();
+		this.numBytes = numBytes;
+		addResource(op, source);
+	}
+	
+	/**
+	 * Start a pipeline that drains the entries of {@code queue}, in first-in-first-out order.
+	 */
+	public static Pipeline from(FIFOQueue queue) {
+		return new Pipeline(FromQueue, queue, queue.numBytes);
+	}
+	
+	/**
+	 * Start a pipeline that reads the records of {@code stream}, from its current index to its end.
+	 */
+	public static Pipeline from(FileStream stream) {
+		return new Pipeline(FromStream, stream, stream.numBytes);
+	}
+	
+	/**
+	 * Get the size of the records coming out of the last stage, in bytes.
+	 */
+	public int getNumBytes() {
+		return numBytes;
+	}
+	
+	/**
+	 * Keep only {@code length} bytes of each record, starting at {@code offset}.
+	 */
+	public Pipeline project(int offset, int length) {
+		return project(new int[] { offset }, new int[] { length });
+	}
+	
+	/**
+	 * Build new records from byte ranges of each record.
+	 * <p>
+	 * Range {@code i} starts at {@code offsets[i]} and has {@code lengths[i]} bytes. Ranges are copied
+	 * into the new record back-to-back, in order. Ranges may overlap or repeat.
+	 */
+	public Pipeline project(int[] offsets, int[] lengths) {
+		checkNotRun();
+		if (offsets.length != lengths.length) {
+			throw new IllegalArgumentException("need one length for each offset");
+		}
+		int projectedBytes = 0;
+		for (int i=0; i<offsets.length; i++) {
+			checkRange(offsets[i], lengths[i], "projection range");
+			projectedBytes += lengths[i];
+		}
+		if (projectedBytes <= 0) {
+			throw new IllegalArgumentException("projection must keep at least one byte");
+		}
+		program.add(Project);
+		program.add(offsets.length);
+		for (int i=0; i<offsets.length; i++) {
+			program.add(offsets[i]);
+			program.add(lengths[i]);
+		}
+		numBytes = projectedBytes;
+		return this;
+	}
+	
+	/**
+	 * Sort records by their first {@code keyBytes} bytes.
+	 * 
+	 * @see #sort(int, int)
+	 */
+	public Pipeline sort(int keyBytes) {
+		return sort(0, keyBytes);
+	}
+	
+	/**
+	 * Sort records by the {@code keyBytes} bytes starting at {@code keyOffset}.
+	 * <p>
+	 * Keys are compared byte-by-byte as unsigned values, like {@link KeyedPriorityQueue} keys,
+	 * so keys written with {@link KeyEncoder} sort by their numeric values. Records with equal keys
+	 * come out in no particular order.
+	 * <p>
+	 * Records must fit in 1024 bytes to be sorted.
+	 */
+	public Pipeline sort(int keyOffset, int keyBytes) {
+		checkNotRun();
+		checkRange(keyOffset, keyBytes, "sort key");
+		if (EntrySize.findBigEnoughSizeFor(numBytes) == null) {
+			throw new IllegalArgumentException("can't sort " + numBytes + "-byte records");
+		}
+		program.add(Sort);
+		program.add(keyOffset);
+		program.add(keyBytes);
+		return this;
+	}
+	
+	private void checkRange(int offset, int length, String name) {
+		if (offset < 0 || length < 0 || offset + length > numBytes) {
+			throw new IllegalArgumentException(name + " [" + offset + "," + (offset + length) + ") is outside of the " + numBytes + "-byte record");
+		}
+	}
+	
+	/**
+	 * Run the pipeline, pushing the records that come out of the last stage to {@code queue}.
+	 * The queue can't be the pipeline's source.
+	 * 
+	 * @return The number of records pushed
+	 */
+	public long writeTo(FIFOQueue queue) {
+		checkOutput(queue, queue.numBytes);
+		addResource(ToQueue, queue);
+		return run();
+	}
+	
+	/**
+	 * Run the pipeline, writing the records that come out of the last stage to {@code stream},
+	 * starting at its current index. The stream can't be the pipeline's source.
+	 * 
+	 * @return The number of records written
+	 */
+	public long writeTo(FileStream stream) {
+		checkOutput(stream, stream.numBytes);
+		addResource(ToStream, stream);
+		return run();
+	}
+	
+	private void checkNotRun() {
+		if (program == null) {
+			throw new IllegalStateException("pipeline already ran");
+		}
+	}
+	
+	private void checkOutput(OffHeap output, int outputBytes) {
+		checkNotRun();
+		if (output == resources.get(0)) {
+			// the pipeline would keep reading its own output
+			throw new IllegalArgumentException("pipeline can't write to its own source");
+		}
+		if (outputBytes != numBytes) {
+			throw new IllegalArgumentException("pipeline makes " + numBytes + "-byte records, but the output takes " + outputBytes + "-byte records");
+		}
+	}
+	
+	private void addResource(int op, OffHeap resource) {
+		program.add(op);
+		program.add(resources.size());
+		resources.add(resource);
+	}
+	
+	private long run() {
+		
+		int[] programArray = new int[program.size()];
+		for (int i=0; i<programArray.length; i++) {
+			programArray[i] = program.get(i);
+		}
+		
+		long[] handles = new long[resources.size()];
+		for (int i=0; i<handles.length; i++) {
+			OffHeap resource = resources.get(i);
+			resource.checkClosed();
+			handles[i] = resource.getHandle();
+		}
+		
+		OffHeap source = resources.get(0);
+		OffHeap output = resources.get(resources.size() - 1);
+		long sourceSize = source instanceof FIFOQueue ? ((FIFOQueue)source).size() : 0;
+		
+		// pipelines run only once, since the source is used up
+		program = null;
+		resources = null;
+		
+		long count = run(programArray, handles);
+		
+		// the records moved in native code, so count them for the queues' stats
+		if (source instanceof FIFOQueue) {
+			((FIFOQueue)source).countPopped(sourceSize);
+		}
+		if (output instanceof FIFOQueue) {
+			((FIFOQueue)output).countPushed(count);
+		}
+		
+		return count;
+	}
+}
@@ -0,0 +1,201 @@
+package edu.duke.cs.tpie;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A snapshot of the monitoring statistics for one queue.
+ * <p>
+ * The queue publishes its size, its entries on disk, and the bytes it read and wrote for them after every change,
+ * so the stats stay right even when native code moves entries, e.g., {@link Pipeline#writeTo(FIFOQueue)}.
+ * Queues that spill entries to their own runs and files count them exactly: queues created with a memory budget
+ * or with compressed spills. When TPIE does the spilling, e.g., for priority queues created with a memory fraction, the entries on disk
+ * are estimated from the queue's memory budget instead, see {@link #isEntriesOnDiskExact()}, and only TPIE's
+ * library totals count their I/O (see {@link TPIEStatsMXBean#getBytesRead()} and {@link TPIEStatsMXBean#getBytesWritten()}).
+ * <p>
+ * Only the queues with a memory budget keep statistics: {@link FIFOQueue} and {@link DoublePriorityQueue},
+ * including the shards of a {@link MultiDoublePriorityQueue}. The other structures don't, since there's
+ * no budget to estimate their entries in memory from, but their disk I/O is still in the library totals.
+ */
+public class QueueStats {
+	
+	/**
+	 * Running counts for a live queue.
+	 * <p>
+	 * Only the thread using the queue writes the counts, and monitoring threads read them without calling into TPIE.
+	 * A snapshot taken while the queue is in use may see some counts updated before others.
+	 * <p>
+	 * The native queue writes its own counts to {@link #block}, which Java owns, so it stays valid after the queue closes.
+	 */
+	static class Counters {
+		
+		// words of the native stats block, see queue_stats.hpp
+		private static final int Size = 0;
+		private static final int Exact = 1;
+		private static final int EntriesOnDisk = 2;
+		private static final int BytesRead = 3;
+		private static final int BytesWritten = 4;
+		private static final int NumWords = 5;
+		
+		final String type;
+		final int entryBytes;
+		final int recordBytes;
+		
+		final LongAdder entriesIn = new LongAdder();
+		final LongAdder entriesOut = new LongAdder();
+		final LongAdder entriesDropped = new LongAdder();
+		final AtomicLong memoryBudget = new AtomicLong();
+		final ByteBuffer block = ByteBuffer.allocateDirect(NumWords*Long.BYTES).order(ByteOrder.nativeOrder());
+		
+		/**
+		 * @param recordBytes Bytes TPIE stores per entry, including any key
+		 */
+		Counters(String type, int entryBytes, int recordBytes) {
+			this.type = type;
+			this.entryBytes = entryBytes;
+			this.recordBytes = recordBytes;
+		}
+		
+		long size() {
+			return entriesIn.sum() - entriesOut.sum() - entriesDropped.sum();
+		}
+		
+		private long word(int index) {
+			return block.getLong(index*Long.BYTES);
+		}
+		
+		QueueStats snapshot() {
+			return new QueueStats(this);
+		}
+	}
+	
+	private final String type;
+	private final int entryBytes;
+	private final long size;
+	private final long memoryBudget;
+	private final long entriesOnDisk;
+	private final boolean entriesOnDiskExact;
+	private final long bytesRead;
+	private final long bytesWritten;
+	private final long payloadBytesPushed;
+	private final long payloadBytesPopped;
+	private final long entriesDropped;
+	
+	private QueueStats(Counters counters) {
+		
+		long entriesIn = counters.entriesIn.sum();
+		long entriesOut = counters.entriesOut.sum();
+		long entriesDropped = counters.entriesDropped.sum();
+		
+		this.type = counters.type;
+		this.entryBytes = counters.entryBytes;
+		this.size = counters.word(Counters.Size);
+		this.memoryBudget = counters.memoryBudget.get();
+		this.entriesOnDiskExact = counters.word(Counters.Exact) != 0;
+		if (entriesOnDiskExact) {
+			this.entriesOnDisk = Math.min(size, counters.word(Counters.EntriesOnDisk));
+		} else {
+			// the entries that don't fit in the budget must be on disk, though TPIE may spill entries sooner than that
+			this.entriesOnDisk = Math.max(0, size - memoryBudget/Math.max(1, counters.recordBytes));
+		}
+		this.bytesRead = counters.word(Counters.BytesRead);
+		this.bytesWritten = counters.word(Counters.BytesWritten);
+		this.payloadBytesPushed = entriesIn*entryBytes;
+		this.payloadBytesPopped = entriesOut*entryBytes;
+		this.entriesDropped = entriesDropped;
+	}
+	
+	/**
+	 * The kind of queue, e.g., {@code DoublePriorityQueue}.
+	 */
+	public String getType() {
+		return type;
+	}
+	
+	/**
+	 * Size of the entry payloads, in bytes.
+	 */
+	public int getEntryBytes() {
+		return entryBytes;
+	}
+	
+	/**
+	 * Number of entries in the queue.
+	 */
+	public long getSize() {
+		return size;
+	}
+	
+	/**
+	 * The queue's internal memory budget, in bytes.
+	 */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+	
+	/**
+	 * Number of entries in internal memory.
+	 */
+	public long getEntriesInMemory() {
+		return size - entriesOnDisk;
+	}
+	
+	/**
+	 * Number of entries spilled to disk, estimated unless {@link #isEntriesOnDiskExact()}.
+	 */
+	public long getEntriesOnDisk() {
+		return entriesOnDisk;
+	}
+	
+	/**
+	 * True if the queue counted its entries on disk, false if they're estimated from its memory budget.
+	 */
+	public boolean isEntriesOnDiskExact() {
+		return entriesOnDiskExact;
+	}
+	
+	/**
+	 * Bytes the queue read from its spilled runs, files, and checkpoints, before any compression.
+	 * <p>
+	 * Doesn't include entries TPIE spills for the queue, see {@link #isEntriesOnDiskExact()}.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+	
+	/**
+	 * Bytes the queue wrote to its spilled runs, files, and checkpoints, before any compression.
+	 * <p>
+	 * Doesn't include entries TPIE spills for the queue, see {@link #isEntriesOnDiskExact()}.
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+	
+	/**
+	 * Total payload bytes pushed to the queue, including entries restored from a checkpoint.
+	 * <p>
+	 * These are the bytes passed in by callers, not bytes written to disk. See {@link TPIEStatsMXBean#getBytesWritten()}.
+	 */
+	public long getPayloadBytesPushed() {
+		return payloadBytesPushed;
+	}
+	
+	/**
+	 * Total payload bytes popped from the queue.
+	 * <p>
+	 * These are the bytes passed out to callers, not bytes read from disk. See {@link TPIEStatsMXBean#getBytesRead()}.
+	 */
+	public long getPayloadBytesPopped() {
+		return payloadBytesPopped;
+	}
+	
+	/**
+	 * Number of entries dropped by a bounded queue, see {@link DoublePriorityQueue#bounded(int, boolean, long)}.
+	 */
+	public long getEntriesDropped() {
+		return entriesDropped;
+	}
+}
@@ -0,0 +1,262 @@
+package edu.duke.cs.tpie;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * A last-in-first-out stack whose entries have ByteBuffer payloads.
+ * <p>
+ * Pushes and pops only touch the top of the stack, so TPIE reads and writes whole blocks,
+ * no matter how far the stack grows past internal memory.
+ * <p>
+ * This implementation wraps the <a href="http://madalgo.au.dk/tpie/doc/master/classtpie_1_1stack.html">tpie::stack</a> type.
+ */
+public class Stack extends OffHeap {
+	
+	private static native long create(int numBytes);
+	private static native void cleanup(long handle);
+	private static native void push(long handle, Entry entry);
+	private static native void pushAll(long handle, ByteBuffer data, int offset, int count);
+	private static native Entry top(long handle, Stack stack);
+	private static native void topInto(long handle, Entry entry);
+	private static native void pop(long handle);
+	private static native boolean popTop(long handle, Entry entry);
+	private static native int popInto(long handle, ByteBuffer data, int offset, int max);
+	private static native long size(long handle);
+	private static native boolean empty(long handle);
+
+	/**
+	 * An entry for the stack.
+	 */
+	public class Entry {
+		
+		/**
+		 * Payload for the entry.
+		 * <p>
+		 * Payload buffers are always fixed size, and are determined by the size passed to the stack's constructor. See {@link Stack#numBytes}.
+		 */
+		public ByteBuffer data;
+		
+		public Entry() {
+			this.data = allocate(numBytes);
+		}
+	}
+	
+	/**
+	 * Size of the entries in this stack, in bytes.
+	 */
+	public final int numBytes;
+	
+	/**
+	 * The smallest {@link EntrySize} that can hold the entries in this stack,
+	 * or null if the entries are bigger than the largest {@link EntrySize}.
+	 * <p>
+	 * Entries aren't padded out to this size, it's only here as a hint.
+	 */
+	public final EntrySize entrySize;
+	
+	/**
+	 * Whether entries for this stack use direct buffers.
+	 * <p>
+	 * See {@link #Stack(int, boolean)}
+	 */
+	public final boolean useDirectBuffers;
+	
+	/**
+	 * Create a stack whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public Stack(EntrySize entrySize) {
+		this(entrySize.numBytes, false);
+	}
+	
+	/**
+	 * Create a stack whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @see #Stack(int, boolean)
+	 */
+	public Stack(EntrySize entrySize, boolean useDirectBuffers) {
+		this(entrySize.numBytes, useDirectBuffers);
+	}
+	
+	/**
+	 * Create a stack whose entries will be exactly {@code numBytes} bytes, with no padding.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public Stack(int numBytes) {
+		this(numBytes, false);
+	}
+	
+	/**
+	 * Create a stack whose entries will be the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 * 
+	 * @param useDirectBuffers If true, entry payloads will be allocated as direct buffers, which TPIE can
+	 * read and write in place. Otherwise, payloads will be heap buffers, which the JVM may have to copy
+	 * each time they're passed to TPIE. Direct buffers are more expensive to allocate, but cheaper to
+	 * use, so they work best with large payloads that get reused. See {@link #allocateBatch(int)} too.
+	 */
+	public Stack(int numBytes, boolean useDirectBuffers) {
+		super(create(numBytes), (handle) -> cleanup(handle));
+		this.numBytes = numBytes;
+		this.entrySize = EntrySize.findBigEnoughSizeFor(numBytes);
+		this.useDirectBuffers = useDirectBuffers;
+	}
+	
+	/**
+	 * Allocate a buffer big enough for {@code numEntries} packed payloads,
+	 * for use with {@link #pushAll(ByteBuffer, int)} and {@link #popInto(ByteBuffer, int)}.
+	 * <p>
+	 * The buffer will be direct if this stack uses direct buffers.
+	 */
+	public ByteBuffer allocateBatch(int numEntries) {
+		return allocate(numEntries*numBytes);
+	}
+	
+	private ByteBuffer allocate(int size) {
+		if (useDirectBuffers) {
+			return ByteBuffer.allocateDirect(size);
+		} else {
+			return ByteBuffer.allocate(size);
+		}
+	}
+	
+	/**
+	 * Add an entry to the top of the stack.
+	 */
+	public void push(Entry entry) {
+		checkClosed();
+		push(getHandle(), entry);
+	}
+	
+	/**
+	 * Add many entries to the stack with a single call to TPIE.
+	 * <p>
+	 * Payloads are read from {@code data} starting at its current position, packed back-to-back
+	 * in {@link #numBytes} chunks, and are pushed in that order, so the last payload ends up on top.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * <p>
+	 * Pushing entries in batches is much faster than calling {@link #push(Entry)} in a loop,
+	 * since the JNI overhead is paid once per batch, rather than once per entry.
+	 * 
+	 * @param data Packed payloads of the entries
+	 * @param count Number of entries to push
+	 */
+	public void pushAll(ByteBuffer data, int count) {
+		checkClosed();
+		int batchBytes = Batches.checkBatch(data, count, numBytes);
+		pushAll(getHandle(), data, Batches.offset(data), count);
+		data.position(data.position() + batchBytes);
+	}
+	
+	/**
+	 * Retrieve the top entry from the stack.
+	 * <p>
+	 * Does not modify the stack.
+	 */
+	public Entry top() {
+		checkClosed();
+		return top(getHandle(), this);
+	}
+	
+	/**
+	 * Like {@link #top()}, but copies the entry into {@code entry} rather than allocating a new one.
+	 * <p>
+	 * Reusing entries keeps tight loops from producing garbage. The data buffer will be rewound
+	 * so the payload can be read from the start.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this stack.
+	 * @return {@code entry}, for convenience
+	 */
+	public Entry top(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		topInto(getHandle(), entry);
+		entry.data.clear();
+		return entry;
+	}
+	
+	private void checkEntry(Entry entry) {
+		if (entry.data.capacity() < numBytes || entry.data.isReadOnly()) {
+			throw new IllegalArgumentException("entry buffer can't hold " + numBytes + " bytes");
+		}
+	}
+	
+	/**
+	 * Remove the top entry from the stack.
+	 * 
+	 * See {@link #top()}
+	 */
+	public void pop() {
+		checkClosed();
+		pop(getHandle());
+	}
+	
+	/**
+	 * Copy the top entry into {@code entry} and remove it from the stack, all with a single call to TPIE.
+	 * <p>
+	 * Equivalent to {@link #top(Entry)} followed by {@link #pop()}, but only calls into TPIE once.
+	 * 
+	 * @param entry Receives the entry. Must have been created for this stack.
+	 * @return true if an entry was popped, or false if the stack was empty.
+	 */
+	public boolean popTop(Entry entry) {
+		checkClosed();
+		checkEntry(entry);
+		boolean popped = popTop(getHandle(), entry);
+		entry.data.clear();
+		return popped;
+	}
+	
+	/**
+	 * Remove many entries from the top of the stack with a single call to TPIE.
+	 * <p>
+	 * Up to {@code max} entries are popped in last-in-first-out order. Their payloads are written to {@code data}
+	 * starting at its current position, packed back-to-back in {@link #numBytes} chunks.
+	 * When this method returns, the position of {@code data} will have advanced past the payloads.
+	 * <p>
+	 * Draining the stack in batches is much faster than calling {@link #top()} and {@link #pop()} in a loop,
+	 * since the JNI overhead is paid once per batch, rather than a few times per entry.
+	 * 
+	 * @param data Receives the packed payloads of the popped entries
+	 * @param max Maximum number of entries to pop
+	 * @return The number of entries popped, which is less than {@code max} only if the stack ran out of entries
+	 */
+	public int popInto(ByteBuffer data, int max) {
+		checkClosed();
+		Batches.checkBatch(data, max, numBytes);
+		if (data.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
+		int count = popInto(getHandle(), data, Batches.offset(data), max);
+		data.position(data.position() + count*numBytes);
+		return count;
+	}
+	
+	/**
+	 * Get the number of elements currently in the stack.
+	 * <p>
+	 * Since TPIE stacks use external memory, some of the entries may be currently residing on disk.
+	 */
+	public long size() {
+		checkClosed();
+		return size(getHandle());
+	}
+	
+	/**
+	 * Return true if the stack contains no entries.
+	 */
+	public boolean empty() {
+		checkClosed();
+		return empty(getHandle());
+	}
+}
@@ -5,12 +5,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
 
 import org.apache.commons.io.IOUtils;
 
 public class TPIE {
 	
-	private static boolean isStarted = false;
+	private static volatile boolean isStarted = false;
+	private static volatile boolean isCompressingSpills = false;
+	
+	// held while TPIE starts and stops, so monitoring threads can't call into TPIE while it's stopping
+	private static final Object lock = new Object();
 	
 	private static native void init(int internalMiB);
 	private static native void cleanup();
@@ -26,11 +34,37 @@ public class TPIE {
 	 * This memory is allocated off of the Java heap and will not be shown by JVM heap profilers.
 	 */
 	public static void start(int internalMiB) {
+		start(internalMiB, false);
+	}
+	
+	/**
+	 * Start the TPIE library, configure the size of the internal memory, and choose whether
+	 * queues compress their spill files by default.
+	 * <p>
+	 * Compressed spill files cost CPU time to write and read, but can take much less disk space and bandwidth
+	 * when the entries compress well, e.g. sparse bit vectors or small integers. Queues that spill a lot
+	 * are often limited by the disk, so trading spare CPU time for less disk traffic can make them faster.
+	 * Queues can also choose compression for themselves, see {@link FIFOQueue#withCompressedSpills(int, boolean, boolean)}
+	 * and {@link DoublePriorityQueue#withCompressedSpills(int, boolean, boolean)}.
+	 * <p>
+	 * If TPIE is already started, this does nothing.
+	 * 
+	 * @param internalMiB See {@link #start(int)}
+	 * @param compressSpills If true, queues compress their spill files unless they're told otherwise.
+	 */
+	public static void start(int internalMiB, boolean compressSpills) {
+		synchronized (lock) {
+			startLocked(internalMiB, compressSpills);
+		}
+	}
+	
+	private static void startLocked(int internalMiB, boolean compressSpills) {
 		
 		if (isStarted) {
 			return;
 		}
 		isStarted = true;
+		isCompressingSpills = compressSpills;
 		
 		// export the native lib and load it
 		// TODO: cross-platform support
@@ -52,6 +86,7 @@ public class TPIE {
 		internalMiB = Math.max(internalMiB, 16);
 		
 		init(internalMiB);
+		TPIEStats.register();
 		
 		// make sure cleanup gets called
 		Runtime.getRuntime().addShutdownHook(new Thread() {
@@ -72,10 +107,89 @@ public class TPIE {
 	 * or if for some reason the JVM shutdown hooks aren't operating (e.g., in a JPype environment).
 	 */
 	public static void stop() {
-		if (isStarted) {
-			isStarted = false;
-			OffHeap.cleanAll();
-			cleanup();
+		synchronized (lock) {
+			if (isStarted) {
+				isStarted = false;
+				isCompressingSpills = false;
+				TPIEStats.unregister();
+				OffHeap.cleanAll();
+				cleanup();
+			}
+		}
+	}
+	
+	static boolean isStarted() {
+		return isStarted;
+	}
+	
+	/**
+	 * Call into TPIE from a thread that doesn't own any TPIE data structures, e.g., a monitoring thread.
+	 * 
+	 * @return The result of {@code call}, or {@code otherwise} if TPIE isn't started.
+	 */
+	static long ifStarted(LongSupplier call, long otherwise) {
+		synchronized (lock) {
+			return isStarted ? call.getAsLong() : otherwise;
+		}
+	}
+	
+	/**
+	 * Return true if queues compress their spill files by default.
+	 * 
+	 * @see #start(int, boolean)
+	 */
+	public static boolean isCompressingSpills() {
+		return isCompressingSpills;
+	}
+	
+	/**
+	 * Redistribute the internal memory budgets of some live data structures, in proportion to the given weights.
+	 * <p>
+	 * The structures share the memory they already have between them, so the total budget doesn't change.
+	 * For example, to give a big frontier queue most of the memory held by it and a few work queues:
+	 * <pre>
+	 * Map&lt;MemoryBudgeted,Double&gt; weights = new HashMap&lt;&gt;();
+	 * weights.put(frontier, 0.9);
+	 * for (FIFOQueue q : workQueues) {
+	 *     weights.put(q, 0.1/workQueues.size());
+	 * }
+	 * TPIE.rebalance(weights);
+	 * </pre>
+	 * Budgets are shrunk before any are grown, so the budgets in use never add up to more than the total,
+	 * except for the one structure whose buffers are being copied. Structures only write the entries that no longer fit
+	 * in their new budgets to disk, see {@link MemoryBudgeted#setMemoryBudget(long)}.
+	 * 
+	 * @param weights Relative share of the memory for each structure. Weights don't need to add up to one.
+	 * @see MemoryBudgeted#setMemoryBudget(long)
+	 */
+	public static void rebalance(Map<? extends MemoryBudgeted,Double> weights) {
+		
+		long totalBytes = 0;
+		double totalWeight = 0;
+		for (Map.Entry<? extends MemoryBudgeted,Double> entry : weights.entrySet()) {
+			if (!(entry.getValue() > 0)) {
+				throw new IllegalArgumentException("weights must be positive, not " + entry.getValue());
+			}
+			totalBytes += entry.getKey().getMemoryBudget();
+			totalWeight += entry.getValue();
+		}
+		
+		// shrink first, then grow
+		List<MemoryBudgeted> growing = new ArrayList<>();
+		List<Long> growingBytes = new ArrayList<>();
+		for (Map.Entry<? extends MemoryBudgeted,Double> entry : weights.entrySet()) {
+			MemoryBudgeted structure = entry.getKey();
+			long memoryBytes = Math.max(1, (long)(totalBytes*entry.getValue()/totalWeight));
+			long oldBytes = structure.getMemoryBudget();
+			if (memoryBytes < oldBytes) {
+				structure.setMemoryBudget(memoryBytes);
+			} else if (memoryBytes > oldBytes) {
+				growing.add(structure);
+				growingBytes.add(memoryBytes);
+			}
+		}
+		for (int i=0; i<growing.size(); i++) {
+			growing.get(i).setMemoryBudget(growingBytes.get(i));
 		}
 	}
 	
@@ -91,7 +205,19 @@ public class TPIE {
 	 * @param block A block of code to run using TPIE.
 	 */
 	public static void use(int internalMiB, Block block) {
-		TPIE.start(internalMiB);
+		use(internalMiB, false, block);
+	}
+	
+	/**
+	 * Convenience method to initialize TPIE, run a block of code, and then make sure TPIE
+	 * is cleaned up before returning.
+	 * 
+	 * @param internalMiB internalMiB Size of the internal memory (in MiB) to reserve exclusively for TPIE.
+	 * @param compressSpills If true, queues compress their spill files by default. See {@link #start(int, boolean)}
+	 * @param block A block of code to run using TPIE.
+	 */
+	public static void use(int internalMiB, boolean compressSpills, Block block) {
+		TPIE.start(internalMiB, compressSpills);
 		try {
 			block.run();
 		} catch (Exception ex) {
@@ -119,8 +245,38 @@ public class TPIE {
 	 */
 	public static native void setTempDir(String dir, String subdir);
 	
+	/**
+	 * Get the directory where TPIE keeps temporary files.
+	 */
+	public static native String getTempDir();
+	
 	/**
 	 * Get the total number of bytes currently used in temporary storage.
 	 */
 	public static native long getExternalBytes();
+	
+	/**
+	 * Get the size of the internal memory pool, in bytes.
+	 */
+	public static native long getInternalBytesLimit();
+	
+	/**
+	 * Get the number of bytes of the internal memory pool currently in use.
+	 */
+	public static native long getInternalBytesUsed();
+	
+	/**
+	 * Get the total number of bytes TPIE has read from disk.
+	 */
+	public static native long getBytesRead();
+	
+	/**
+	 * Get the total number of bytes TPIE has written to disk.
+	 */
+	public static native long getBytesWritten();
+	
+	/**
+	 * Get the size of TPIE's disk blocks, in bytes.
+	 */
+	public static native long getBlockSize();
 }
@@ -0,0 +1,119 @@
+package edu.duke.cs.tpie;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Monitoring statistics for TPIE.
+ * <p>
+ * {@link TPIE#start(int)} registers an instance with the platform MBean server, so existing JVM monitoring tools
+ * (e.g., JConsole, or a JMX exporter) can read the statistics. Use {@link #get()} to read them directly.
+ */
+public class TPIEStats implements TPIEStatsMXBean {
+	
+	private static final String ObjectNameString = "edu.duke.cs.tpie:type=TPIEStats";
+	
+	private static final TPIEStats instance = new TPIEStats();
+	
+	/**
+	 * Get the statistics for this JVM.
+	 */
+	public static TPIEStats get() {
+		return instance;
+	}
+	
+	static void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(ObjectNameString));
+		} catch (InstanceAlreadyExistsException ex) {
+			// already registered, nothing to do
+		} catch (JMException ex) {
+			throw new Error("can't register TPIE statistics", ex);
+		}
+	}
+	
+	static void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.unregisterMBean(new ObjectName(ObjectNameString));
+		} catch (InstanceNotFoundException ex) {
+			// not registered, nothing to do
+		} catch (JMException ex) {
+			throw new Error("can't unregister TPIE statistics", ex);
+		}
+	}
+	
+	private TPIEStats() {}
+	
+	@Override
+	public long getInternalBytesLimit() {
+		return TPIE.ifStarted(TPIE::getInternalBytesLimit, 0);
+	}
+	
+	@Override
+	public long getInternalBytesUsed() {
+		return TPIE.ifStarted(TPIE::getInternalBytesUsed, 0);
+	}
+	
+	@Override
+	public long getExternalBytes() {
+		return TPIE.ifStarted(TPIE::getExternalBytes, 0);
+	}
+	
+	@Override
+	public long getBytesRead() {
+		return TPIE.ifStarted(TPIE::getBytesRead, 0);
+	}
+	
+	@Override
+	public long getBytesWritten() {
+		return TPIE.ifStarted(TPIE::getBytesWritten, 0);
+	}
+	
+	@Override
+	public long getBlockSize() {
+		return TPIE.ifStarted(TPIE::getBlockSize, 0);
+	}
+	
+	@Override
+	public long getBlocksRead() {
+		return blocks(getBytesRead());
+	}
+	
+	@Override
+	public long getBlocksWritten() {
+		return blocks(getBytesWritten());
+	}
+	
+	private long blocks(long bytes) {
+		long blockSize = getBlockSize();
+		if (blockSize <= 0) {
+			return 0;
+		}
+		return (bytes + blockSize - 1)/blockSize;
+	}
+	
+	@Override
+	public int getLiveStructures() {
+		return OffHeap.getLive().size();
+	}
+	
+	@Override
+	public List<QueueStats> getQueues() {
+		List<QueueStats> queues = new ArrayList<>();
+		for (OffHeap obj : OffHeap.getLive()) {
+			QueueStats stats = obj.getStats();
+			if (stats != null) {
+				queues.add(stats);
+			}
+		}
+		return queues;
+	}
+}
@@ -0,0 +1,63 @@
+package edu.duke.cs.tpie;
+
+import java.util.List;
+
+/**
+ * Monitoring statistics for TPIE, published over JMX as {@code edu.duke.cs.tpie:type=TPIEStats}
+ * while TPIE is started.
+ * <p>
+ * The memory and I/O counters come straight from TPIE's memory manager and statistics, and cover all of TPIE.
+ * The queue statistics come from each live queue. See {@link QueueStats}.
+ */
+public interface TPIEStatsMXBean {
+	
+	/**
+	 * Size of TPIE's internal memory pool, in bytes. See {@link TPIE#start(int)}.
+	 */
+	long getInternalBytesLimit();
+	
+	/**
+	 * Bytes of the internal memory pool currently in use.
+	 */
+	long getInternalBytesUsed();
+	
+	/**
+	 * Bytes currently used in temporary storage on disk. See {@link TPIE#getExternalBytes()}.
+	 */
+	long getExternalBytes();
+	
+	/**
+	 * Total bytes read from disk, by every TPIE structure.
+	 */
+	long getBytesRead();
+	
+	/**
+	 * Total bytes written to disk, by every TPIE structure.
+	 */
+	long getBytesWritten();
+	
+	/**
+	 * Size of TPIE's disk blocks, in bytes.
+	 */
+	long getBlockSize();
+	
+	/**
+	 * Total blocks read from disk.
+	 */
+	long getBlocksRead();
+	
+	/**
+	 * Total blocks written to disk.
+	 */
+	long getBlocksWritten();
+	
+	/**
+	 * Number of TPIE data structures that haven't been closed or garbage collected yet.
+	 */
+	int getLiveStructures();
+	
+	/**
+	 * Statistics for every live queue that keeps them. See {@link QueueStats} for which queues do.
+	 */
+	List<QueueStats> getQueues();
+}
@@ -0,0 +1,130 @@
+package edu.duke.cs.tpie;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A priority queue whose entries have double-valued keys and variable-length ByteBuffer payloads.
+ * Entries are retrieved from the queue such that entries with the smallest priorities are returned first.
+ * Entries with equal priorities are returned in the order they were pushed.
+ * <p>
+ * Unlike {@link DoublePriorityQueue}, payloads don't need to be padded out to a fixed size. Each entry is
+ * stored once with its priority, a sequence number, and a length prefix, in 20 bytes. Entries stay in a heap in memory
+ * until it fills up, then they're sorted and written to runs on disk, packed back-to-back into fixed-size chunks,
+ * so only the last chunk of each run is padded. Smaller chunks waste less space, but larger chunks
+ * are faster to read and write.
+ * <p>
+ * The queue uses the internal memory TPIE has available when it's created: half for the heap, and half for the run buffers.
+ */
+public class VariableDoublePriorityQueue extends OffHeap {
+	
+	private static native long create(int chunkBytes);
+	private static native void cleanup(long handle);
+	private static native void push(long handle, double priority, ByteBuffer data, int offset, int numBytes);
+	private static native Entry top(long handle, VariableDoublePriorityQueue queue);
+	private static native void pop(long handle);
+	private static native long size(long handle);
+	private static native boolean empty(long handle);
+	
+	/**
+	 * An entry for the priority queue.
+	 */
+	public class Entry {
+		
+		/**
+		 * Priority for the entry.
+		 * <p>
+		 * Entries are ordered such that the smallest values are retrieved first from the queue.
+		 */
+		public double priority;
+		
+		/**
+		 * Payload for the entry.
+		 * <p>
+		 * When pushing entries, the payload is the bytes between the buffer's position and its limit.
+		 * Entries retrieved from the queue have buffers whose capacity is exactly the size of the payload.
+		 */
+		public ByteBuffer data;
+		
+		public Entry(int numBytes) {
+			this.priority = 0;
+			this.data = ByteBuffer.allocate(numBytes);
+		}
+	}
+	
+	/**
+	 * Size of the chunks that runs on disk are packed into.
+	 */
+	public final EntrySize chunkSize;
+	
+	/**
+	 * Create a priority queue whose runs on disk will be packed into 64-byte chunks.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public VariableDoublePriorityQueue() {
+		this(EntrySize.Bytes64);
+	}
+	
+	/**
+	 * Create a priority queue whose runs on disk will be packed into chunks of the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public VariableDoublePriorityQueue(EntrySize chunkSize) {
+		super(create(chunkSize.numBytes), (handle) -> cleanup(handle));
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * Add an entry to the queue.
+	 */
+	public void push(Entry entry) {
+		checkClosed();
+		ByteBuffer data = entry.data;
+		if (!data.isDirect() && !data.hasArray()) {
+			throw new IllegalArgumentException("payload buffer must be direct, or be backed by an accessible array");
+		}
+		int offset = data.isDirect() ? data.position() : data.arrayOffset() + data.position();
+		push(getHandle(), entry.priority, data, offset, data.remaining());
+	}
+	
+	/**
+	 * Retrieve the entry from the queue with the smallest priority value.
+	 * <p>
+	 * Does not modify the queue.
+	 */
+	public Entry top() {
+		checkClosed();
+		return top(getHandle(), this);
+	}
+	
+	/**
+	 * Remove the top entry from the queue.
+	 * 
+	 * See {@link #top()}
+	 */
+	public void pop() {
+		checkClosed();
+		pop(getHandle());
+	}
+	
+	/**
+	 * Get the number of entries currently in the queue.
+	 * <p>
+	 * Since TPIE queues use external memory, some of the entries may be currently residing on disk.
+	 */
+	public long size() {
+		checkClosed();
+		return size(getHandle());
+	}
+	
+	/**
+	 * Return true if the queue contains no entries.
+	 */
+	public boolean empty() {
+		checkClosed();
+		return empty(getHandle());
+	}
+}
@@ -0,0 +1,119 @@
+package edu.duke.cs.tpie;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A first-in-first-out queue whose entries have variable-length ByteBuffer payloads.
+ * <p>
+ * Unlike {@link FIFOQueue}, payloads don't need to be padded out to a fixed size. Each payload is
+ * stored with a length prefix, and entries are packed back-to-back into fixed-size chunks, so entries share chunks
+ * and nothing is padded. Smaller chunks keep less of the queue in the partially-filled chunks at either end,
+ * but larger chunks are faster to read and write.
+ * <p>
+ * This implementation wraps the <a href="http://madalgo.au.dk/tpie/doc/master/classtpie_1_1queue.html">tpie::queue</a> type.
+ */
+public class VariableFIFOQueue extends OffHeap {
+	
+	private static native long create(int chunkBytes);
+	private static native void cleanup(long handle);
+	private static native void push(long handle, ByteBuffer data, int offset, int numBytes);
+	private static native Entry front(long handle, VariableFIFOQueue queue);
+	private static native void pop(long handle);
+	private static native long size(long handle);
+	private static native boolean empty(long handle);
+	
+	/**
+	 * An entry for the FIFO queue.
+	 */
+	public class Entry {
+		
+		/**
+		 * Payload for the entry.
+		 * <p>
+		 * When pushing entries, the payload is the bytes between the buffer's position and its limit.
+		 * Entries retrieved from the queue have buffers whose capacity is exactly the size of the payload.
+		 */
+		public ByteBuffer data;
+		
+		public Entry(int numBytes) {
+			this.data = ByteBuffer.allocate(numBytes);
+		}
+	}
+	
+	/**
+	 * Size of the chunks that entries are packed into.
+	 */
+	public final EntrySize chunkSize;
+	
+	/**
+	 * Create a FIFO queue whose entries will be packed into 32-byte chunks.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public VariableFIFOQueue() {
+		this(EntrySize.Bytes32);
+	}
+	
+	/**
+	 * Create a FIFO queue whose entries will be packed into chunks of the specified size.
+	 * <p>
+	 * Be sure to call {@link TPIE#start(int)} before allocating any TPIE data
+	 * structures to set shared internal memory limits.
+	 */
+	public VariableFIFOQueue(EntrySize chunkSize) {
+		super(create(chunkSize.numBytes), (handle) -> cleanup(handle));
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * Add an entry to the queue.
+	 */
+	public void push(Entry entry) {
+		checkClosed();
+		ByteBuffer data = entry.data;
+		if (!data.isDirect() && !data.hasArray()) {
+			throw new IllegalArgumentException("payload buffer must be direct, or be backed by an accessible array");
+		}
+		int offset = data.isDirect() ? data.position() : data.arrayOffset() + data.position();
+		push(getHandle(), data, offset, data.remaining());
+	}
+	
+	/**
+	 * Retrieve the first entry from the queue.
+	 * <p>
+	 * Does not modify the queue.
+	 */
+	public Entry front() {
+		checkClosed();
+		return front(getHandle(), this);
+	}
+	
+	/**
+	 * Remove the first entry from the queue.
+	 * 
+	 * See {@link #front()}
+	 */
+	public void pop() {
+		checkClosed();
+		pop(getHandle());
+	}
+	
+	/**
+	 * Get the number of entries currently in the queue.
+	 * <p>
+	 * Since TPIE queues use external memory, some of the entries may be currently residing on disk.
+	 */
+	public long size() {
+		checkClosed();
+		return size(getHandle());
+	}
+	
+	/**
+	 * Return true if the queue contains no entries.
+	 */
+	public boolean empty() {
+		checkClosed();
+		return empty(getHandle());
+	}
+}
@@ -0,0 +1,516 @@
+package edu.duke.cs.tpie.serialization;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.duke.cs.tpie.EntrySize;
+
+/**
+ * Serializers generated from the fields of a class, so they don't have to be written by hand.
+ * <p>
+ * The fields are packed back-to-back into the entry, with no padding, so the entry is as small as it can be,
+ * and the serializer picks the smallest {@link EntrySize} that fits using {@link EntrySize#findBigEnoughSizeFor(int)}.
+ * Each field is read and written with a single absolute {@link ByteBuffer} get or put at a fixed offset,
+ * through method handles made once per class, so nothing is boxed.
+ * <p>
+ * The serialized fields are all the non-static, non-transient fields of the class and its superclasses,
+ * superclass fields first, in declaration order. Use {@link Order} to pick the fields and their order explicitly.
+ * Only primitive fields can be serialized.
+ * <p>
+ * Deserialized objects are made with a constructor that takes every serialized field, in order,
+ * if the class has one, so immutable classes with final fields work as they are. Otherwise,
+ * the class needs a no-argument constructor, and the fields are set directly. Either constructor can be private.
+ * <p>
+ * For example:
+ * <pre>
+ * class Node {
+ * 	final long id;
+ * 	&#64;Priority final double cost;
+ * 	final int depth;
+ * 	Node(long id, double cost, int depth) { ... }
+ * }
+ * 
+ * SerializingDoublePriorityQueue&lt;Node&gt; q = new SerializingDoublePriorityQueue&lt;&gt;(LayoutSerializers.forPriorityQueue(Node.class));
+ * </pre>
+ * In priority queues, the {@link Priority} field is stored as the entry's priority rather than in the payload,
+ * so the {@code Node} payload is 12 bytes, and fits in {@link EntrySize#Bytes16}.
+ */
+public class LayoutSerializers {
+	
+	/**
+	 * Lists the names of the fields to serialize, in the order they're stored.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.TYPE)
+	public static @interface Order {
+		String[] value();
+	}
+	
+	/**
+	 * Marks the {@code double} field that holds the priority, for {@link LayoutSerializers#forPriorityQueue(Class)}.
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target(ElementType.FIELD)
+	public static @interface Priority {}
+	
+	/**
+	 * Make a serializer for {@link SerializingFIFOQueue} or {@link SerializingStack}.
+	 * <p>
+	 * Every serialized field is stored in the payload, including the {@link Priority} field, if any.
+	 * 
+	 * @throws IllegalArgumentException if the class can't be serialized
+	 */
+	public static <T> SerializingFIFOQueue.Serializer<T> forFIFOQueue(Class<T> type) {
+		
+		Layout<T> layout = new Layout<>(type, false);
+		
+		return new SerializingFIFOQueue.Serializer<T>() {
+			
+			@Override
+			public EntrySize getEntrySize() {
+				return layout.entrySize;
+			}
+			
+			@Override
+			public int getNumBytes() {
+				return layout.getNumBytes();
+			}
+			
+			@Override
+			public void serialize(T val, ByteBuffer buf) {
+				layout.write(val, buf);
+			}
+			
+			@Override
+			public T deserialize(ByteBuffer buf) {
+				return layout.read(0, buf);
+			}
+		};
+	}
+	
+	/**
+	 * Make a serializer for {@link SerializingDoublePriorityQueue} or {@link SerializingExternalSorter}.
+	 * <p>
+	 * The class must have exactly one {@code double} field marked with {@link Priority}. That field is
+	 * stored as the entry's priority, and every other serialized field is stored in the payload.
+	 * 
+	 * @throws IllegalArgumentException if the class can't be serialized, or has no priority field
+	 */
+	public static <T> SerializingDoublePriorityQueue.Serializer<T> forPriorityQueue(Class<T> type) {
+		
+		Layout<T> layout = new Layout<>(type, true);
+		
+		return new SerializingDoublePriorityQueue.Serializer<T>() {
+			
+			@Override
+			public EntrySize getEntrySize() {
+				return layout.entrySize;
+			}
+			
+			@Override
+			public int getNumBytes() {
+				return layout.getNumBytes();
+			}
+			
+			@Override
+			public double serialize(T val, ByteBuffer buf) {
+				return layout.write(val, buf);
+			}
+			
+			@Override
+			public T deserialize(double priority, ByteBuffer buf) {
+				return layout.read(priority, buf);
+			}
+		};
+	}
+	
+	private static enum Primitive {
+		
+		Boolean(boolean.class, 1, "get"),
+		Byte(byte.class, 1, "get"),
+		Char(char.class, 2, "getChar"),
+		Short(short.class, 2, "getShort"),
+		Int(int.class, 4, "getInt"),
+		Long(long.class, 8, "getLong"),
+		Float(float.class, 4, "getFloat"),
+		Double(double.class, 8, "getDouble");
+		
+		public final Class<?> type;
+		public final int numBytes;
+		public final String getterName;
+		
+		private Primitive(Class<?> type, int numBytes, String getterName) {
+			this.type = type;
+			this.numBytes = numBytes;
+			this.getterName = getterName;
+		}
+		
+		public static Primitive of(Field field) {
+			for (Primitive p : values()) {
+				if (p.type == field.getType()) {
+					return p;
+				}
+			}
+			throw new IllegalArgumentException("can't serialize field " + field.getName() + " of type " + field.getType().getName()
+				+ ", only primitive fields are supported");
+		}
+	}
+	
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+	private static final MethodHandle addOffset;
+	private static final MethodHandle byteToBoolean;
+	
+	static {
+		try {
+			addOffset = lookup.findStatic(LayoutSerializers.class, "addOffset", MethodType.methodType(int.class, int.class, int.class));
+			byteToBoolean = lookup.findStatic(LayoutSerializers.class, "byteToBoolean", MethodType.methodType(boolean.class, byte.class));
+		} catch (ReflectiveOperationException ex) {
+			throw new Error(ex);
+		}
+	}
+	
+	@SuppressWarnings("unused")
+	private static int addOffset(int base, int offset) {
+		return base + offset;
+	}
+	
+	@SuppressWarnings("unused")
+	private static boolean byteToBoolean(byte b) {
+		return b != 0;
+	}
+	
+	/**
+	 * One field, at a fixed offset in the payload.
+	 */
+	private static class Slot {
+		
+		public final Field field;
+		public final Primitive primitive;
+		public final int offset;
+		
+		// exact types: (Object)prim, and (Object,prim)void
+		private final MethodHandle getter;
+		private MethodHandle setter = null;
+		
+		public Slot(Field field, int offset)
+		throws IllegalAccessException {
+			this.field = field;
+			this.primitive = Primitive.of(field);
+			this.offset = offset;
+			getter = lookup.unreflectGetter(field).asType(MethodType.methodType(primitive.type, Object.class));
+		}
+		
+		public void makeSetter()
+		throws IllegalAccessException {
+			setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, primitive.type));
+		}
+		
+		/**
+		 * Returns a method handle (ByteBuffer,int)prim that reads this field relative to a base offset.
+		 */
+		public MethodHandle makeReader()
+		throws ReflectiveOperationException {
+			Class<?> returnType = primitive == Primitive.Boolean ? byte.class : primitive.type;
+			MethodHandle reader = lookup.findVirtual(ByteBuffer.class, primitive.getterName, MethodType.methodType(returnType, int.class));
+			reader = MethodHandles.filterArguments(reader, 1, MethodHandles.insertArguments(addOffset, 1, offset));
+			if (primitive == Primitive.Boolean) {
+				reader = MethodHandles.filterReturnValue(reader, byteToBoolean);
+			}
+			return reader;
+		}
+		
+		public void write(Object obj, ByteBuffer buf, int base)
+		throws Throwable {
+			int i = base + offset;
+			switch (primitive) {
+				case Boolean: buf.put(i, (boolean)getter.invokeExact(obj) ? (byte)1 : (byte)0); break;
+				case Byte: buf.put(i, (byte)getter.invokeExact(obj)); break;
+				case Char: buf.putChar(i, (char)getter.invokeExact(obj)); break;
+				case Short: buf.putShort(i, (short)getter.invokeExact(obj)); break;
+				case Int: buf.putInt(i, (int)getter.invokeExact(obj)); break;
+				case Long: buf.putLong(i, (long)getter.invokeExact(obj)); break;
+				case Float: buf.putFloat(i, (float)getter.invokeExact(obj)); break;
+				case Double: buf.putDouble(i, (double)getter.invokeExact(obj)); break;
+			}
+		}
+		
+		public void read(Object obj, ByteBuffer buf, int base)
+		throws Throwable {
+			int i = base + offset;
+			switch (primitive) {
+				case Boolean: setter.invokeExact(obj, buf.get(i) != 0); break;
+				case Byte: setter.invokeExact(obj, buf.get(i)); break;
+				case Char: setter.invokeExact(obj, buf.getChar(i)); break;
+				case Short: setter.invokeExact(obj, buf.getShort(i)); break;
+				case Int: setter.invokeExact(obj, buf.getInt(i)); break;
+				case Long: setter.invokeExact(obj, buf.getLong(i)); break;
+				case Float: setter.invokeExact(obj, buf.getFloat(i)); break;
+				case Double: setter.invokeExact(obj, buf.getDouble(i)); break;
+			}
+		}
+	}
+	
+	private static class Layout<T> {
+		
+		public final Class<T> type;
+		public final int numBytes;
+		public final EntrySize entrySize;
+		
+		// the payload fields, and the priority field if there is one
+		private final Slot[] slots;
+		private final Slot priority;
+		
+		// either a constructor that takes every field, as (double,ByteBuffer,int)Object
+		// or a no-arg constructor, as ()Object, and the slots have setters
+		private final MethodHandle fromBuffer;
+		private final MethodHandle newInstance;
+		
+		public Layout(Class<T> type, boolean withPriority) {
+			
+			this.type = type;
+			
+			List<Field> fields = getFields(type);
+			Field priorityField = getPriorityField(fields, withPriority);
+			
+			try {
+				
+				// pack the payload fields in order
+				List<Slot> slots = new ArrayList<>();
+				Slot priority = null;
+				int offset = 0;
+				for (Field field : fields) {
+					field.setAccessible(true);
+					if (field == priorityField) {
+						priority = new Slot(field, -1);
+					} else {
+						Slot slot = new Slot(field, offset);
+						slots.add(slot);
+						offset += slot.primitive.numBytes;
+					}
+				}
+				this.slots = slots.toArray(new Slot[slots.size()]);
+				this.priority = priority;
+				this.numBytes = offset;
+				this.entrySize = EntrySize.findBigEnoughSizeFor(Math.max(1, numBytes));
+				
+				// prefer the constructor that takes all the fields, so final fields work
+				Constructor<?> fieldsCtor = findConstructor(type, fields);
+				if (fieldsCtor != null) {
+					fieldsCtor.setAccessible(true);
+					this.fromBuffer = makeFromBuffer(lookup.unreflectConstructor(fieldsCtor), fields);
+					this.newInstance = null;
+				} else {
+					Constructor<T> noArgCtor;
+					try {
+						noArgCtor = type.getDeclaredConstructor();
+					} catch (NoSuchMethodException ex) {
+						throw new IllegalArgumentException("can't deserialize " + type.getName()
+							+ ", it needs a no-arg constructor, or a constructor that takes every serialized field in order");
+					}
+					noArgCtor.setAccessible(true);
+					this.fromBuffer = null;
+					this.newInstance = lookup.unreflectConstructor(noArgCtor).asType(MethodType.methodType(Object.class));
+					for (Slot slot : this.slots) {
+						slot.makeSetter();
+					}
+					if (priority != null) {
+						priority.makeSetter();
+					}
+				}
+				
+			} catch (ReflectiveOperationException ex) {
+				throw new IllegalArgumentException("can't serialize " + type.getName(), ex);
+			}
+		}
+		
+		private static List<Field> getFields(Class<?> type) {
+			
+			if (Modifier.isAbstract(type.getModifiers()) || type.isInterface()) {
+				throw new IllegalArgumentException("can't serialize abstract type " + type.getName());
+			}
+			
+			// if the order is explicit, use it
+			Order order = type.getAnnotation(Order.class);
+			if (order != null) {
+				List<Field> fields = new ArrayList<>();
+				for (String name : order.value()) {
+					fields.add(findField(type, name));
+				}
+				return fields;
+			}
+			
+			// otherwise, use every instance field, superclasses first
+			List<Class<?>> types = new ArrayList<>();
+			for (Class<?> t = type; t != null && t != Object.class; t = t.getSuperclass()) {
+				types.add(0, t);
+			}
+			List<Field> fields = new ArrayList<>();
+			for (Class<?> t : types) {
+				for (Field field : t.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+						fields.add(field);
+					}
+				}
+			}
+			return fields;
+		}
+		
+		private static Field findField(Class<?> type, String name) {
+			for (Class<?> t = type; t != null; t = t.getSuperclass()) {
+				try {
+					Field field = t.getDeclaredField(name);
+					if (Modifier.isStatic(field.getModifiers())) {
+						throw new IllegalArgumentException("can't serialize static field " + name);
+					}
+					return field;
+				} catch (NoSuchFieldException ex) {
+					// try the superclass
+				}
+			}
+			throw new IllegalArgumentException("no field named " + name + " in " + type.getName());
+		}
+		
+		private static Field getPriorityField(List<Field> fields, boolean withPriority) {
+			Field priorityField = null;
+			for (Field field : fields) {
+				if (field.isAnnotationPresent(Priority.class)) {
+					if (priorityField != null) {
+						throw new IllegalArgumentException("only one field can be the priority, not both " + priorityField.getName() + " and " + field.getName());
+					}
+					if (field.getType() != double.class) {
+						throw new IllegalArgumentException("priority field " + field.getName() + " must be a double");
+					}
+					priorityField = field;
+				}
+			}
+			if (!withPriority) {
+				return null;
+			}
+			if (priorityField == null) {
+				throw new IllegalArgumentException("priority queues need a double field marked with @Priority");
+			}
+			return priorityField;
+		}
+		
+		private static Constructor<?> findConstructor(Class<?> type, List<Field> fields) {
+			Class<?>[] fieldTypes = new Class<?>[fields.size()];
+			for (int i=0; i<fields.size(); i++) {
+				fieldTypes[i] = fields.get(i).getType();
+			}
+			for (Constructor<?> ctor : type.getDeclaredConstructors()) {
+				if (fieldTypes.length > 0 && Arrays.equals(ctor.getParameterTypes(), fieldTypes)) {
+					return ctor;
+				}
+			}
+			return null;
+		}
+		
+		/**
+		 * Turns the constructor into (double,ByteBuffer,int)Object, where each argument comes from
+		 * the priority or a read from the buffer.
+		 */
+		private MethodHandle makeFromBuffer(MethodHandle ctor, List<Field> fields)
+		throws ReflectiveOperationException {
+			
+			// replace each field argument with a (ByteBuffer,int) reader, starting from the end so the positions don't move
+			// the priority argument stays a double
+			int s = slots.length;
+			for (int i=fields.size() - 1; i>=0; i--) {
+				if (priority == null || fields.get(i) != priority.field) {
+					s--;
+					ctor = MethodHandles.collectArguments(ctor, i, slots[s].makeReader());
+				}
+			}
+			
+			// then send the same three arguments to all the readers
+			MethodType type = ctor.type();
+			int[] reorder = new int[type.parameterCount()];
+			for (int i=0; i<reorder.length; i++) {
+				Class<?> paramType = type.parameterType(i);
+				if (paramType == double.class) {
+					reorder[i] = 0;
+				} else if (paramType == ByteBuffer.class) {
+					reorder[i] = 1;
+				} else {
+					reorder[i] = 2;
+				}
+			}
+			return MethodHandles.permuteArguments(
+				ctor.asType(type.changeReturnType(Object.class)),
+				MethodType.methodType(Object.class, double.class, ByteBuffer.class, int.class),
+				reorder
+			);
+		}
+		
+		public int getNumBytes() {
+			return entrySize != null ? entrySize.numBytes : numBytes;
+		}
+		
+		/**
+		 * Writes the payload at the buffer's position, and advances it.
+		 * Returns the priority, or 0 if there's no priority field.
+		 */
+		public double write(T val, ByteBuffer buf) {
+			int base = buf.position();
+			try {
+				for (Slot slot : slots) {
+					slot.write(val, buf, base);
+				}
+				buf.position(base + numBytes);
+				if (priority != null) {
+					return (double)priority.getter.invokeExact((Object)val);
+				}
+				return 0;
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+		
+		/**
+		 * Reads the payload at the buffer's position, and advances it.
+		 */
+		public T read(double priorityValue, ByteBuffer buf) {
+			int base = buf.position();
+			try {
+				Object obj;
+				if (fromBuffer != null) {
+					obj = (Object)fromBuffer.invokeExact(priorityValue, buf, base);
+				} else {
+					obj = (Object)newInstance.invokeExact();
+					for (Slot slot : slots) {
+						slot.read(obj, buf, base);
+					}
+					if (priority != null) {
+						priority.setter.invokeExact(obj, priorityValue);
+					}
+				}
+				buf.position(base + numBytes);
+				return type.cast(obj);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+		
+		private RuntimeException rethrow(Throwable t) {
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException)t;
+			} else if (t instanceof Error) {
+				throw (Error)t;
+			}
+			throw new RuntimeException("can't serialize " + type.getName(), t);
+		}
+	}
+}
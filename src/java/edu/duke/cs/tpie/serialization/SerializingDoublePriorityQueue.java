@@ -1,6 +1,7 @@
 package edu.duke.cs.tpie.serialization;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import edu.duke.cs.tpie.DoublePriorityQueue;
 import edu.duke.cs.tpie.DoublePriorityQueue.Entry;
@@ -9,6 +10,11 @@ import edu.duke.cs.tpie.OffHeapWrapper;
 
 /**
  * Wrapper for {@link DoublePriorityQueue} that automatically serializes and deserializes Java types. 
+ * <p>
+ * Pushes are serialized into a small batch on the Java side, and sent to TPIE in a single call when the batch
+ * fills up, or when the queue needs to find its top entry. The top object is deserialized once and cached until
+ * the next {@link #pop()}, or until a push with a smaller priority replaces it, so pushes of bigger priorities
+ * don't cross JNI at all. Apart from what the {@link Serializer} allocates, pushes and peeks make no garbage.
  */
 public class SerializingDoublePriorityQueue<T> extends OffHeapWrapper {
 	
@@ -23,6 +29,16 @@ public class SerializingDoublePriorityQueue<T> extends OffHeapWrapper {
 		 */
 		EntrySize getEntrySize();
 		
+		/**
+		 * Returns the exact size of {@link ByteBuffer} needed for serialization.
+		 * <p>
+		 * Defaults to the size of {@link #getEntrySize()}. Override this to store entries
+		 * of any size without padding them out to an {@link EntrySize}.
+		 */
+		default int getNumBytes() {
+			return getEntrySize().numBytes;
+		}
+		
 		/**
 		 * Serialize {@code val} into {@code buf} and retrieve its priority.
 		 * @param val The source object
@@ -40,35 +56,100 @@ public class SerializingDoublePriorityQueue<T> extends OffHeapWrapper {
 		T deserialize(double priority, ByteBuffer buf);
 	}
 	
+	// big enough to skip most JNI calls, small enough to keep in cache
+	private static final int MaxBatchEntries = 64;
+	private static final int MaxBatchBytes = 64*1024;
+	
 	public final Serializer<T> serializer;
 	private DoublePriorityQueue queue;
 	
+	// pushed entries that haven't been sent to TPIE yet, and views of each entry in the batch
+	private final ByteBuffer batch;
+	private final ByteBuffer[] slots;
+	private final double[] priorities;
+	private int batchSize = 0;
+	
+	// the top entry in TPIE, which is the top of the whole queue,
+	// since no entry in the batch has a smaller priority
+	private final Entry scratch;
+	private T top = null;
+	private double topPriority = 0;
+	private boolean hasTop = false;
+	
 	/**
 	 * @param serializer Instance of {@link Serializer} that can serialize and deserialize instances of {@code T}.
 	 */
 	public SerializingDoublePriorityQueue(Serializer<T> serializer) {
 		this.serializer = serializer;
-		this.queue = new DoublePriorityQueue(serializer.getEntrySize());
+		this.queue = new DoublePriorityQueue(serializer.getNumBytes());
 		this.setWrapped(this.queue);
+		
+		int numBytes = queue.numBytes;
+		int batchEntries = Math.max(1, Math.min(MaxBatchEntries, MaxBatchBytes/numBytes));
+		batch = queue.allocateBatch(batchEntries);
+		slots = new ByteBuffer[batchEntries];
+		for (int i=0; i<batchEntries; i++) {
+			batch.limit((i + 1)*numBytes);
+			batch.position(i*numBytes);
+			slots[i] = batch.slice();
+		}
+		batch.clear();
+		priorities = new double[batchEntries];
+		scratch = queue.new Entry();
 	}
 
 	/**
 	 * Adds {@code val} to the queue.
 	 */
 	public void push(T val) {
-		Entry entry = queue.new Entry();
-		entry.priority = serializer.serialize(val, entry.data);
-		queue.push(entry);
+		queue.checkClosed();
+		if (batchSize == slots.length) {
+			flush();
+		}
+		
+		// serialize into a zeroed slot, just like a new entry
+		int numBytes = queue.numBytes;
+		Arrays.fill(batch.array(), batch.arrayOffset() + batchSize*numBytes, batch.arrayOffset() + (batchSize + 1)*numBytes, (byte)0);
+		ByteBuffer slot = slots[batchSize];
+		slot.clear();
+		double priority = serializer.serialize(val, slot);
+		priorities[batchSize] = priority;
+		batchSize++;
+		
+		// a smaller priority means a new top
+		if (hasTop && priority < topPriority) {
+			top = null;
+			hasTop = false;
+		}
+	}
+	
+	private void flush() {
+		if (batchSize > 0) {
+			batch.limit(batchSize*queue.numBytes);
+			queue.pushAll(priorities, batch, batchSize);
+			batch.clear();
+			batchSize = 0;
+		}
 	}
 
 	/**
 	 * Retrieve the entry from the queue with the smallest priority value.
 	 * <p>
 	 * Does not modify the queue.
+	 * <p>
+	 * The entry is only deserialized once, and the same object is returned until the top entry changes,
+	 * so callers shouldn't modify it.
 	 */
 	public T top() {
-		Entry entry = queue.top();
-		return serializer.deserialize(entry.priority, entry.data);
+		queue.checkClosed();
+		if (!hasTop) {
+			flush();
+			queue.top(scratch);
+			top = serializer.deserialize(scratch.priority, scratch.data);
+			topPriority = scratch.priority;
+			hasTop = true;
+		}
+		return top;
 	}
 
 	/**
@@ -77,7 +158,15 @@ public class SerializingDoublePriorityQueue<T> extends OffHeapWrapper {
 	 * See {@link #top()}
 	 */
 	public void pop() {
+		queue.checkClosed();
+		
+		// without a cached top, the batch might hold the top entry
+		if (!hasTop) {
+			flush();
+		}
 		queue.pop();
+		top = null;
+		hasTop = false;
 	}
 	
 	/**
@@ -86,13 +175,13 @@ public class SerializingDoublePriorityQueue<T> extends OffHeapWrapper {
 	 * Since TPIE queues use external memory, some of the entries may be currently residing on disk.
 	 */
 	public long size() {
-		return queue.size();
+		return queue.size() + batchSize;
 	}
 	
 	/**
 	 * Return true if the queue contains no entries.
 	 */
 	public boolean empty() {
-		return queue.empty();
+		return batchSize == 0 && queue.empty();
 	}
 }
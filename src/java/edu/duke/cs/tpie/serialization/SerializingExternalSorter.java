@@ -0,0 +1,71 @@
+package edu.duke.cs.tpie.serialization;
+
+import edu.duke.cs.tpie.ExternalSorter;
+import edu.duke.cs.tpie.ExternalSorter.Entry;
+import edu.duke.cs.tpie.OffHeapWrapper;
+import edu.duke.cs.tpie.serialization.SerializingDoublePriorityQueue.Serializer;
+
+/**
+ * Wrapper for {@link ExternalSorter} that automatically serializes and deserializes Java types.
+ * <p>
+ * Uses the same {@link Serializer} as {@link SerializingDoublePriorityQueue}.
+ */
+public class SerializingExternalSorter<T> extends OffHeapWrapper {
+	
+	public final Serializer<T> serializer;
+	private ExternalSorter sorter;
+	
+	/**
+	 * @param serializer Instance of {@link Serializer} that can serialize and deserialize instances of {@code T}.
+	 */
+	public SerializingExternalSorter(Serializer<T> serializer) {
+		this.serializer = serializer;
+		this.sorter = new ExternalSorter(serializer.getNumBytes());
+		this.setWrapped(this.sorter);
+	}
+	
+	/**
+	 * Adds {@code val} to the sorter.
+	 */
+	public void push(T val) {
+		Entry entry = sorter.new Entry();
+		entry.priority = serializer.serialize(val, entry.data);
+		sorter.push(entry);
+	}
+	
+	/**
+	 * Sort all the pushed values.
+	 * 
+	 * See {@link ExternalSorter#sort()}
+	 */
+	public void sort() {
+		sorter.sort();
+	}
+	
+	/**
+	 * Return true if there are sorted values left to pull.
+	 */
+	public boolean hasNext() {
+		return sorter.hasNext();
+	}
+	
+	/**
+	 * Pull the next sorted value.
+	 * 
+	 * @return The next value, or null if there are no more values.
+	 */
+	public T next() {
+		Entry entry = sorter.next();
+		if (entry == null) {
+			return null;
+		}
+		return serializer.deserialize(entry.priority, entry.data);
+	}
+	
+	/**
+	 * Get the number of values that have been pushed, but not pulled yet.
+	 */
+	public long size() {
+		return sorter.size();
+	}
+}
@@ -1,6 +1,7 @@
 package edu.duke.cs.tpie.serialization;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import edu.duke.cs.tpie.EntrySize;
 import edu.duke.cs.tpie.FIFOQueue;
@@ -9,6 +10,11 @@ import edu.duke.cs.tpie.OffHeapWrapper;
 
 /**
  * Wrapper for {@link FIFOQueue} that automatically serializes and deserializes Java types. 
+ * <p>
+ * Pushes are serialized into a small batch on the Java side, and only sent to TPIE when the batch fills up,
+ * so most pushes don't cross JNI at all. When TPIE runs out of entries, pops take entries straight from the batch.
+ * The front object is deserialized once and cached until the next {@link #pop()},
+ * so apart from what the {@link Serializer} allocates, pushes and peeks make no garbage.
  */
 public class SerializingFIFOQueue<T> extends OffHeapWrapper {
 	
@@ -23,6 +29,16 @@ public class SerializingFIFOQueue<T> extends OffHeapWrapper {
 		 */
 		EntrySize getEntrySize();
 		
+		/**
+		 * Returns the exact size of {@link ByteBuffer} needed for serialization.
+		 * <p>
+		 * Defaults to the size of {@link #getEntrySize()}. Override this to store entries
+		 * of any size without padding them out to an {@link EntrySize}.
+		 */
+		default int getNumBytes() {
+			return getEntrySize().numBytes;
+		}
+		
 		/**
 		 * Serialize {@code val} into {@code buf}.
 		 * @param val The source object
@@ -38,35 +54,99 @@ public class SerializingFIFOQueue<T> extends OffHeapWrapper {
 		T deserialize(ByteBuffer buf);
 	}
 	
+	// big enough to skip most JNI calls, small enough to keep in cache
+	private static final int MaxBatchEntries = 64;
+	private static final int MaxBatchBytes = 64*1024;
+	
 	public final Serializer<T> serializer;
 	private FIFOQueue queue;
 	
+	// pushed entries that haven't been sent to TPIE yet, and views of each entry in the batch
+	private final ByteBuffer batch;
+	private final ByteBuffer[] slots;
+	private int batchStart = 0;
+	private int batchEnd = 0;
+	
+	// number of entries in TPIE, which are all older than the entries in the batch
+	private long queuedSize = 0;
+	
+	private final Entry scratch;
+	private T front = null;
+	private boolean hasFront = false;
+	
 	/**
 	 * @param serializer Instance of {@link Serializer} that can serialize and deserialize instances of {@code T}.
 	 */
 	public SerializingFIFOQueue(Serializer<T> serializer) {
 		this.serializer = serializer;
-		this.queue = new FIFOQueue(serializer.getEntrySize());
+		this.queue = new FIFOQueue(serializer.getNumBytes());
 		this.setWrapped(this.queue);
+		
+		int numBytes = queue.numBytes;
+		int batchEntries = Math.max(1, Math.min(MaxBatchEntries, MaxBatchBytes/numBytes));
+		batch = queue.allocateBatch(batchEntries);
+		slots = new ByteBuffer[batchEntries];
+		for (int i=0; i<batchEntries; i++) {
+			batch.limit((i + 1)*numBytes);
+			batch.position(i*numBytes);
+			slots[i] = batch.slice();
+		}
+		batch.clear();
+		scratch = queue.new Entry();
 	}
 
 	/**
 	 * Adds {@code val} to the queue.
 	 */
 	public void push(T val) {
-		Entry entry = queue.new Entry();
-		serializer.serialize(val, entry.data);
-		queue.push(entry);
+		queue.checkClosed();
+		if (batchEnd == slots.length) {
+			flush();
+		}
+		
+		// serialize into a zeroed slot, just like a new entry
+		int numBytes = queue.numBytes;
+		Arrays.fill(batch.array(), batch.arrayOffset() + batchEnd*numBytes, batch.arrayOffset() + (batchEnd + 1)*numBytes, (byte)0);
+		ByteBuffer slot = slots[batchEnd];
+		slot.clear();
+		serializer.serialize(val, slot);
+		batchEnd++;
+	}
+	
+	private void flush() {
+		int count = batchEnd - batchStart;
+		if (count > 0) {
+			batch.limit(batchEnd*queue.numBytes);
+			batch.position(batchStart*queue.numBytes);
+			queue.pushAll(batch, count);
+			batch.clear();
+			queuedSize += count;
+		}
+		batchStart = 0;
+		batchEnd = 0;
 	}
 
 	/**
 	 * Retrieve the first entry from the queue.
 	 * <p>
 	 * Does not modify the queue.
+	 * <p>
+	 * The entry is only deserialized once, and the same object is returned until the next {@link #pop()},
+	 * so callers shouldn't modify it.
 	 */
 	public T front() {
-		Entry entry = queue.front();
-		return serializer.deserialize(entry.data);
+		queue.checkClosed();
+		if (!hasFront) {
+			if (queuedSize == 0 && batchStart < batchEnd) {
+				ByteBuffer slot = slots[batchStart];
+				slot.clear();
+				front = serializer.deserialize(slot);
+			} else {
+				front = serializer.deserialize(queue.front(scratch).data);
+			}
+			hasFront = true;
+		}
+		return front;
 	}
 
 	/**
@@ -75,7 +155,19 @@ public class SerializingFIFOQueue<T> extends OffHeapWrapper {
 	 * See {@link #front()}
 	 */
 	public void pop() {
-		queue.pop();
+		queue.checkClosed();
+		if (queuedSize == 0 && batchStart < batchEnd) {
+			batchStart++;
+			if (batchStart == batchEnd) {
+				batchStart = 0;
+				batchEnd = 0;
+			}
+		} else {
+			queue.pop();
+			queuedSize--;
+		}
+		front = null;
+		hasFront = false;
 	}
 	
 	/**
@@ -84,13 +176,14 @@ public class SerializingFIFOQueue<T> extends OffHeapWrapper {
 	 * Since TPIE queues use external memory, some of the entries may be currently residing on disk.
 	 */
 	public long size() {
-		return queue.size();
+		queue.checkClosed();
+		return queuedSize + batchEnd - batchStart;
 	}
 	
 	/**
 	 * Return true if the queue contains no entries.
 	 */
 	public boolean empty() {
-		return queue.empty();
+		return size() == 0;
 	}
 }
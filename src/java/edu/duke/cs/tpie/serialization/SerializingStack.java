@@ -0,0 +1,67 @@
+package edu.duke.cs.tpie.serialization;
+
+import edu.duke.cs.tpie.OffHeapWrapper;
+import edu.duke.cs.tpie.Stack;
+import edu.duke.cs.tpie.Stack.Entry;
+
+/**
+ * Wrapper for {@link Stack} that automatically serializes and deserializes Java types. 
+ */
+public class SerializingStack<T> extends OffHeapWrapper {
+	
+	public final SerializingFIFOQueue.Serializer<T> serializer;
+	private Stack stack;
+	
+	/**
+	 * @param serializer Instance of {@link SerializingFIFOQueue.Serializer} that can serialize and deserialize instances of {@code T}.
+	 */
+	public SerializingStack(SerializingFIFOQueue.Serializer<T> serializer) {
+		this.serializer = serializer;
+		this.stack = new Stack(serializer.getNumBytes());
+		this.setWrapped(this.stack);
+	}
+	
+	/**
+	 * Adds {@code val} to the top of the stack.
+	 */
+	public void push(T val) {
+		Entry entry = stack.new Entry();
+		serializer.serialize(val, entry.data);
+		stack.push(entry);
+	}
+	
+	/**
+	 * Retrieve the top entry from the stack.
+	 * <p>
+	 * Does not modify the stack.
+	 */
+	public T top() {
+		Entry entry = stack.top();
+		return serializer.deserialize(entry.data);
+	}
+	
+	/**
+	 * Remove the top entry from the stack.
+	 * 
+	 * See {@link #top()}
+	 */
+	public void pop() {
+		stack.pop();
+	}
+	
+	/**
+	 * Get the number of elements currently in the stack.
+	 * <p>
+	 * Since TPIE stacks use external memory, some of the entries may be currently residing on disk.
+	 */
+	public long size() {
+		return stack.size();
+	}
+	
+	/**
+	 * Return true if the stack contains no entries.
+	 */
+	public boolean empty() {
+		return stack.empty();
+	}
+}
@@ -0,0 +1,197 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.BTree.Entry;
+
+public class TestBTree extends TestBase {
+	
+	@Test
+	public void createCloseOne() {
+		useTPIE(() -> {
+			BTree t = new BTree(KeyEncoder.LongBytes, 8);
+			t.close();
+			assertThat(t.isClosed(), is(true));
+			assertCleanedUp();
+		});
+	}
+	
+	@Test
+	public void putGetRemove() {
+		useTPIE(() -> {
+			try (BTree t = new BTree(KeyEncoder.LongBytes, 8)) {
+				
+				Entry entry = t.new Entry();
+				for (long key : new long[] { 5, -3, 42, 0 }) {
+					entry.key.clear();
+					KeyEncoder.putLong(entry.key, key);
+					entry.data.putDouble(0, key*1.5);
+					t.put(entry);
+				}
+				assertThat(t.size(), is(4L));
+				
+				for (long key : new long[] { 5, -3, 42, 0 }) {
+					entry.key.clear();
+					KeyEncoder.putLong(entry.key, key);
+					assertThat(t.get(entry), is(true));
+					assertThat(entry.data.getDouble(), is(key*1.5));
+				}
+				
+				entry.key.clear();
+				KeyEncoder.putLong(entry.key, 7);
+				assertThat(t.get(entry), is(false));
+				
+				// replace a value
+				entry.key.clear();
+				KeyEncoder.putLong(entry.key, 42);
+				entry.data.putDouble(0, 1.0);
+				t.put(entry);
+				assertThat(t.size(), is(4L));
+				entry.data.putDouble(0, 0.0);
+				assertThat(t.get(entry), is(true));
+				assertThat(entry.data.getDouble(), is(1.0));
+				
+				// remove
+				assertThat(t.remove(entry), is(true));
+				assertThat(t.remove(entry), is(false));
+				assertThat(t.get(entry), is(false));
+				assertThat(t.size(), is(3L));
+			}
+		});
+	}
+	
+	@Test
+	public void scan() {
+		useTPIE(() -> {
+			int n = 1000;
+			try (BTree t = new BTree(KeyEncoder.IntBytes, 12)) {
+				
+				// put the keys in a random order
+				Random rand = new Random(12345);
+				TreeMap<Integer,Long> expected = new TreeMap<>();
+				ByteBuffer batch = t.allocateBatch(n);
+				for (int i=0; i<n; i++) {
+					int key = rand.nextInt(10000) - 5000;
+					long value = rand.nextLong();
+					expected.put(key, value);
+					KeyEncoder.putInt(batch, key);
+					batch.putLong(value);
+					batch.putInt(key);
+				}
+				batch.flip();
+				t.putAll(batch, n);
+				assertThat(t.size(), is((long)expected.size()));
+				
+				// scan the range [-100,100] in small batches
+				ByteBuffer key = ByteBuffer.allocate(KeyEncoder.IntBytes);
+				KeyEncoder.putInt(key, -100);
+				key.flip();
+				ByteBuffer data = t.allocateBatch(7);
+				int count = t.scan(key, data, 7);
+				StringBuilder scanned = new StringBuilder();
+				outer: while (count > 0) {
+					data.flip();
+					for (int i=0; i<count; i++) {
+						key.clear();
+						data.get(key.array());
+						int k = KeyEncoder.getInt(key);
+						key.clear();
+						if (k > 100) {
+							break outer;
+						}
+						assertThat(data.getLong(), is(expected.get(k)));
+						assertThat(data.getInt(), is(k));
+						scanned.append(k).append(",");
+					}
+					data.clear();
+					count = t.scanAfter(key, data, 7);
+				}
+				
+				StringBuilder want = new StringBuilder();
+				for (int k : expected.subMap(-100, true, 100, true).keySet()) {
+					want.append(k).append(",");
+				}
+				assertThat(scanned.toString(), is(want.toString()));
+				
+				// scan everything from the start
+				data = t.allocateBatch(n);
+				assertThat(t.scan(null, data, n), is(expected.size()));
+				data.flip();
+				for (int k : expected.keySet()) {
+					assertThat(KeyEncoder.getInt(data), is(k));
+					data.position(data.position() + 12);
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void build() {
+		useTPIE(() -> {
+			int n = 1000;
+			BTree.Builder b = new BTree.Builder(KeyEncoder.LongBytes, 8);
+			ByteBuffer batch = b.allocateBatch(n/2);
+			for (int half=0; half<2; half++) {
+				batch.clear();
+				for (int i=0; i<n/2; i++) {
+					long key = (half*n/2 + i)*3L;
+					KeyEncoder.putLong(batch, key);
+					batch.putLong(-key);
+				}
+				batch.flip();
+				b.pushAll(batch, n/2);
+			}
+			
+			try (BTree t = b.build()) {
+				assertThat(b.isClosed(), is(true));
+				assertThat(t.size(), is((long)n));
+				
+				Entry entry = t.new Entry();
+				for (long key=0; key<n*3; key++) {
+					entry.key.clear();
+					KeyEncoder.putLong(entry.key, key);
+					assertThat(t.get(entry), is(key % 3 == 0));
+					if (key % 3 == 0) {
+						assertThat(entry.data.getLong(), is(-key));
+					}
+				}
+				
+				// built trees can still be changed
+				entry.key.clear();
+				KeyEncoder.putLong(entry.key, 1);
+				entry.data.putLong(0, 1);
+				t.put(entry);
+				assertThat(t.size(), is((long)n + 1));
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void buildUnsorted() {
+		useTPIE(() -> {
+			try (BTree.Builder b = new BTree.Builder(KeyEncoder.IntBytes, 4)) {
+				ByteBuffer batch = b.allocateBatch(2);
+				KeyEncoder.putInt(batch, 5);
+				batch.putInt(0);
+				KeyEncoder.putInt(batch, 4);
+				batch.putInt(0);
+				batch.flip();
+				b.pushAll(batch, 2);
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void tooBig() {
+		useTPIE(() -> {
+			new BTree(24, 1024);
+		});
+	}
+}
@@ -3,6 +3,17 @@ package edu.duke.cs.tpie;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
 import org.junit.Test;
 
 import edu.duke.cs.tpie.DoublePriorityQueue.Entry;
@@ -67,7 +78,7 @@ public class TestDoublePriorityQueue extends TestBase {
 	public void pushTop8() {
 		useTPIE(() -> {
 			try (DoublePriorityQueue q = new DoublePriorityQueue(EntrySize.Bytes8)) {
-			
+				
 				Entry entry = q.new Entry();
 				entry.priority = 1.0;
 				entry.data.putDouble(3.141592654);
@@ -93,7 +104,7 @@ public class TestDoublePriorityQueue extends TestBase {
 	public void sort() {
 		useTPIE(() -> {
 			try (DoublePriorityQueue q = new DoublePriorityQueue(EntrySize.Bytes8)) {
-			
+				
 				EntryDoubleFactory f = (priority, data) -> {
 					Entry entry = q.new Entry();
 					entry.priority = priority;
@@ -136,6 +147,164 @@ public class TestDoublePriorityQueue extends TestBase {
 		});
 	}
 	
+	@Test
+	public void pushAll() {
+		useTPIE(() -> {
+			try (DoublePriorityQueue q = new DoublePriorityQueue(EntrySize.Bytes8)) {
+				
+				double[] priorities = { 9.0, 3.0, 5.0, 7.0, 4.0, 2.0 };
+				ByteBuffer data = ByteBuffer.allocate(priorities.length*8);
+				for (double priority : priorities) {
+					data.putDouble(priority*10);
+				}
+				data.flip();
+				
+				q.pushAll(priorities, data, priorities.length);
+				assertThat(data.hasRemaining(), is(false));
+				assertThat(q.size(), is(6L));
+				
+				for (double priority : new double[] { 2.0, 3.0, 4.0, 5.0, 7.0, 9.0 }) {
+					Entry entry = q.top();
+					assertThat(entry.priority, is(priority));
+					assertThat(entry.data.getDouble(), is(priority*10));
+					q.pop();
+				}
+				
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void popInto() {
+		useTPIE(() -> {
+			try (DoublePriorityQueue q = new DoublePriorityQueue(EntrySize.Bytes8)) {
+				
+				for (double priority : new double[] { 9.0, 3.0, 5.0, 7.0, 4.0, 2.0 }) {
+					Entry entry = q.new Entry();
+					entry.priority = priority;
+					entry.data.putDouble(priority*10);
+					q.push(entry);
+				}
+				
+				double[] priorities = new double[4];
+				ByteBuffer data = ByteBuffer.allocate(4*8);
+				
+				assertThat(q.popInto(priorities, data, 4), is(4));
+				assertThat(data.hasRemaining(), is(false));
+				assertThat(q.size(), is(2L));
+				data.flip();
+				for (double priority : new double[] { 2.0, 3.0, 4.0, 5.0 }) {
+					assertThat(data.getDouble(), is(priority*10));
+				}
+				assertThat(priorities, is(new double[] { 2.0, 3.0, 4.0, 5.0 }));
+				
+				data.clear();
+				assertThat(q.popInto(priorities, data, 4), is(2));
+				assertThat(data.position(), is(2*8));
+				assertThat(data.getDouble(0), is(70.0));
+				assertThat(data.getDouble(8), is(90.0));
+				assertThat(priorities[0], is(7.0));
+				assertThat(priorities[1], is(9.0));
+				
+				assertThat(q.empty(), is(true));
+				data.clear();
+				assertThat(q.popInto(priorities, data, 4), is(0));
+			}
+		});
+	}
+	
+	@Test
+	public void directBuffers() {
+		useTPIE(() -> {
+			try (DoublePriorityQueue q = new DoublePriorityQueue(EntrySize.Bytes16, true)) {
+				
+				Entry entry = q.new Entry();
+				assertThat(entry.data.isDirect(), is(true));
+				entry.priority = 5.0;
+				entry.data.putLong(42);
+				entry.data.putLong(-42);
+				q.push(entry);
+				
+				double[] priorities = { 7.0, 1.0 };
+				ByteBuffer data = q.allocateBatch(2);
+				assertThat(data.isDirect(), is(true));
+				data.putLong(7).putLong(-7);
+				data.putLong(1).putLong(-1);
+				data.flip();
+				q.pushAll(priorities, data, 2);
+				
+				Entry entry2 = q.top();
+				assertThat(entry2.data.isDirect(), is(true));
+				assertThat(entry2.priority, is(1.0));
+				assertThat(entry2.data.getLong(), is(1L));
+				assertThat(entry2.data.getLong(), is(-1L));
+				
+				data = q.allocateBatch(3);
+				assertThat(q.popInto(priorities = new double[3], data, 3), is(3));
+				assertThat(priorities, is(new double[] { 1.0, 5.0, 7.0 }));
+				data.flip();
+				for (long i : new long[] { 1, 42, 7 }) {
+					assertThat(data.getLong(), is(i));
+					assertThat(data.getLong(), is(-i));
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void topReuse() {
+		useTPIE(() -> {
+			for (boolean useDirectBuffers : new boolean[] { false, true }) {
+				try (DoublePriorityQueue q = new DoublePriorityQueue(EntrySize.Bytes8, useDirectBuffers)) {
+					
+					Entry entry = q.new Entry();
+					entry.priority = 2.0;
+					entry.data.putDouble(4.2);
+					q.push(entry);
+					entry.priority = 1.0;
+					entry.data.putDouble(0, 5.3);
+					q.push(entry);
+					
+					Entry reused = q.new Entry();
+					assertThat(q.top(reused), sameInstance(reused));
+					assertThat(reused.priority, is(1.0));
+					assertThat(reused.data.getDouble(), is(5.3));
+					q.pop();
+					
+					assertThat(q.top(reused), sameInstance(reused));
+					assertThat(reused.priority, is(2.0));
+					assertThat(reused.data.getDouble(), is(4.2));
+					q.pop();
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void popTop() {
+		useTPIE(() -> {
+			try (DoublePriorityQueue q = new DoublePriorityQueue(EntrySize.Bytes8)) {
+				
+				Entry entry = q.new Entry();
+				for (double priority : new double[] { 3.0, 1.0, 2.0 }) {
+					entry.priority = priority;
+					entry.data.putDouble(0, priority*10);
+					q.push(entry);
+				}
+				
+				for (double priority : new double[] { 1.0, 2.0, 3.0 }) {
+					assertThat(q.popTop(entry), is(true));
+					assertThat(entry.priority, is(priority));
+					assertThat(entry.data.getDouble(), is(priority*10));
+				}
+				
+				assertThat(q.empty(), is(true));
+				assertThat(q.popTop(entry), is(false));
+			}
+		});
+	}
+	
 	@Test
 	public void dataSizes() {
 		useTPIE(() -> {
@@ -158,6 +327,580 @@ public class TestDoublePriorityQueue extends TestBase {
 		});
 	}
 	
+	@Test
+	public void arbitrarySizes() {
+		useTPIE(() -> {
+			// sizes that get padded, and sizes that get chunked
+			for (int numBytes : new int[] { 1, 12, 24, 72, 136, 520, 1030, 3000 }) {
+				try (DoublePriorityQueue q = new DoublePriorityQueue(numBytes)) {
+					
+					assertThat(q.numBytes, is(numBytes));
+					
+					// push out of order, and look at the top in between, so some entries go before the loaded top
+					Random rand = new Random(numBytes);
+					int n = 200;
+					for (int i=0; i<n; i++) {
+						Entry entry = q.new Entry();
+						assertThat(entry.data.capacity(), is(numBytes));
+						entry.priority = rand.nextInt(50);
+						for (int j=0; j<numBytes; j++) {
+							entry.data.put((byte)(entry.priority + j));
+						}
+						q.push(entry);
+						assertThat(q.top().priority, lessThanOrEqualTo(entry.priority));
+					}
+					assertThat(q.size(), is((long)n));
+					
+					// drain half one at a time, and half in a batch
+					double lastPriority = Double.NEGATIVE_INFINITY;
+					for (int i=0; i<n/2; i++) {
+						Entry entry = q.top();
+						assertThat(entry.priority, greaterThanOrEqualTo(lastPriority));
+						for (int j=0; j<numBytes; j++) {
+							assertThat(entry.data.get(), is((byte)(entry.priority + j)));
+						}
+						lastPriority = entry.priority;
+						q.pop();
+					}
+					double[] priorities = new double[n];
+					ByteBuffer data = q.allocateBatch(n);
+					assertThat(q.popInto(priorities, data, n), is(n/2));
+					data.flip();
+					for (int i=0; i<n/2; i++) {
+						assertThat(priorities[i], greaterThanOrEqualTo(lastPriority));
+						for (int j=0; j<numBytes; j++) {
+							assertThat(data.get(), is((byte)(priorities[i] + j)));
+						}
+						lastPriority = priorities[i];
+					}
+					assertThat(q.empty(), is(true));
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void checkpointRestore() {
+		File file = new File(System.getProperty("java.io.tmpdir"), "tpie-test-dpq.checkpoint");
+		try {
+			
+			useTPIE(() -> {
+				try (DoublePriorityQueue q = new DoublePriorityQueue(EntrySize.Bytes8)) {
+					
+					// push the even priorities
+					Entry entry = q.new Entry();
+					for (int i=0; i<100; i+=2) {
+						entry.priority = i;
+						entry.data.putInt(0, i*10);
+						q.push(entry);
+					}
+					q.checkpoint(file);
+					assertThat(q.size(), is(50L));
+					assertThat(q.top().priority, is(0.0));
+				}
+			});
+			
+			// restore as if in a new JVM
+			useTPIE(() -> {
+				try (DoublePriorityQueue q = DoublePriorityQueue.restore(file, 8)) {
+					assertThat(q.size(), is(50L));
+					
+					// push the odd priorities, which should get merged with the checkpointed ones
+					Entry entry = q.new Entry();
+					for (int i=1; i<100; i+=2) {
+						entry.priority = i;
+						entry.data.putInt(0, i*10);
+						q.push(entry);
+					}
+					assertThat(q.size(), is(100L));
+					
+					for (int i=0; i<20; i++) {
+						assertThat(q.popTop(entry), is(true));
+						assertThat(entry.priority, is((double)i));
+						assertThat(entry.data.getInt(), is(i*10));
+					}
+					
+					q.checkpoint(file);
+					assertThat(q.size(), is(80L));
+					
+					double[] priorities = new double[80];
+					ByteBuffer data = q.allocateBatch(80);
+					assertThat(q.popInto(priorities, data, 80), is(80));
+					for (int i=0; i<80; i++) {
+						assertThat(priorities[i], is(20.0 + i));
+					}
+				}
+			});
+			
+			useTPIE(() -> {
+				try (DoublePriorityQueue q = DoublePriorityQueue.restore(file, 8)) {
+					assertThat(q.size(), is(80L));
+					Entry entry = q.new Entry();
+					for (int i=20; i<100; i++) {
+						assertThat(q.popTop(entry), is(true));
+						assertThat(entry.priority, is((double)i));
+						assertThat(entry.data.getInt(), is(i*10));
+					}
+					assertThat(q.empty(), is(true));
+				}
+			});
+			
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void checkpointRepeatedly() {
+		File file = new File(System.getProperty("java.io.tmpdir"), "tpie-test-dpq-repeat.checkpoint");
+		try {
+			for (int numBytes : new int[] { 8, 12 }) {
+				for (boolean compressed : new boolean[] { false, true }) {
+					useTPIE(() -> {
+						try (DoublePriorityQueue q = DoublePriorityQueue.withCompressedSpills(numBytes, false, compressed)) {
+							
+							// interleave pushes, pops and checkpoints
+							Random rand = new Random(12345);
+							TreeSet<Double> expected = new TreeSet<>();
+							Entry entry = q.new Entry();
+							for (int round=0; round<5; round++) {
+								for (int i=0; i<1000; i++) {
+									entry.priority = rand.nextDouble();
+									entry.data.putDouble(0, entry.priority);
+									q.push(entry);
+									expected.add(entry.priority);
+								}
+								for (int i=0; i<300; i++) {
+									assertThat(q.popTop(entry), is(true));
+									assertThat(entry.priority, is(expected.pollFirst()));
+								}
+								q.checkpoint(file);
+								assertThat(q.size(), is((long)expected.size()));
+							}
+							
+							// the queue and the checkpoint should both have every entry, in order
+							try (DoublePriorityQueue restored = DoublePriorityQueue.restore(file, numBytes)) {
+								assertThat(restored.size(), is(q.size()));
+								for (double priority : expected) {
+									assertThat(restored.popTop(entry), is(true));
+									assertThat(entry.priority, is(priority));
+									assertThat(entry.data.getDouble(), is(priority));
+									assertThat(q.popTop(entry), is(true));
+									assertThat(entry.priority, is(priority));
+								}
+								assertThat(q.empty(), is(true));
+								assertThat(restored.empty(), is(true));
+							}
+						}
+					});
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void memoryBudget() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				try (DoublePriorityQueue q = DoublePriorityQueue.withMemoryBudget(numBytes, false, 1024L*1024)) {
+					assertThat(q.getMemoryBudget(), is(1024L*1024));
+					
+					Entry entry = q.new Entry();
+					for (int i=0; i<100; i++) {
+						entry.priority = (i*37) % 100;
+						entry.data.putInt(0, i);
+						q.push(entry);
+					}
+					
+					// changing the budget shouldn't change the entries
+					q.setMemoryBudget(2*1024*1024);
+					assertThat(q.getMemoryBudget(), is(2L*1024*1024));
+					assertThat(q.size(), is(100L));
+					for (int i=0; i<100; i++) {
+						assertThat(q.popTop(entry), is(true));
+						assertThat(entry.priority, is((double)i));
+						assertThat(entry.data.getInt(), is((i*73) % 100));
+					}
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void memoryBudgetRepeatedly() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				try (DoublePriorityQueue q = DoublePriorityQueue.withMemoryBudget(numBytes, false, 1024L*1024)) {
+					
+					// shrinking to a tiny budget writes the largest entries to runs, growing doesn't write any
+					Entry entry = q.new Entry();
+					for (int i=0; i<10; i++) {
+						for (int j=0; j<100; j++) {
+							entry.priority = (j*37 + i) % 1000;
+							q.push(entry);
+						}
+						q.setMemoryBudget(i % 2 == 0 ? 1024L : 1024L*1024);
+					}
+					assertThat(q.size(), is(1000L));
+					
+					double last = Double.NEGATIVE_INFINITY;
+					for (int i=0; i<1000; i++) {
+						assertThat(q.popTop(entry), is(true));
+						assertThat(entry.priority, greaterThanOrEqualTo(last));
+						last = entry.priority;
+					}
+					assertThat(q.size(), is(0L));
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void memoryBudgetWithoutBudget() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				try (DoublePriorityQueue q = new DoublePriorityQueue(numBytes, false)) {
+					
+					// the first change moves the entries out of TPIE's queue, the rest change the budget in place
+					Entry entry = q.new Entry();
+					for (int i=0; i<3; i++) {
+						for (int j=0; j<100; j++) {
+							entry.priority = (j*37 + i) % 300;
+							q.push(entry);
+						}
+						q.setMemoryBudget((i + 1)*1024L);
+						assertThat(q.getMemoryBudget(), is((i + 1)*1024L));
+					}
+					assertThat(q.size(), is(300L));
+					
+					double last = Double.NEGATIVE_INFINITY;
+					for (int i=0; i<300; i++) {
+						assertThat(q.popTop(entry), is(true));
+						assertThat(entry.priority, greaterThanOrEqualTo(last));
+						last = entry.priority;
+					}
+					assertThat(q.size(), is(0L));
+				}
+			});
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void badMemoryBudget() {
+		DoublePriorityQueue.withMemoryBudget(8, false, -1L);
+	}
+	
+	@Test
+	public void compressedSpills() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				try (DoublePriorityQueue q = DoublePriorityQueue.withCompressedSpills(numBytes, false, true)) {
+					
+					// use a small budget, so the entries spill to many runs, which then get merged
+					q.setMemoryBudget(64*1024);
+					
+					final int numEntries = 50*1000;
+					Random rand = new Random(12345);
+					Entry entry = q.new Entry();
+					for (int i=0; i<numEntries; i++) {
+						entry.priority = rand.nextInt(numEntries);
+						entry.data.putInt(0, (int)entry.priority);
+						q.push(entry);
+					}
+					assertThat(q.size(), is((long)numEntries));
+					
+					// pop half, push more, then pop the rest
+					double last = Double.NEGATIVE_INFINITY;
+					for (int i=0; i<numEntries/2; i++) {
+						assertThat(q.popTop(entry), is(true));
+						assertThat(entry.priority, greaterThanOrEqualTo(last));
+						assertThat(entry.data.getInt(0), is((int)entry.priority));
+						last = entry.priority;
+					}
+					for (int i=0; i<numEntries; i++) {
+						entry.priority = last + rand.nextInt(numEntries);
+						entry.data.putInt(0, (int)entry.priority);
+						q.push(entry);
+					}
+					for (int i=0; i<3*numEntries/2; i++) {
+						assertThat(q.popTop(entry), is(true));
+						assertThat(entry.priority, greaterThanOrEqualTo(last));
+						assertThat(entry.data.getInt(0), is((int)entry.priority));
+						last = entry.priority;
+					}
+					assertThat(q.empty(), is(true));
+					assertThat(q.popTop(entry), is(false));
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void compressedSpillsByDefault() {
+		TPIE.use(16, true, () -> {
+			try (DoublePriorityQueue q = new DoublePriorityQueue(8)) {
+				Entry entry = q.new Entry();
+				for (int i=0; i<100; i++) {
+					entry.priority = (i*37) % 100;
+					q.push(entry);
+				}
+				for (int i=0; i<100; i++) {
+					assertThat(q.popTop(entry), is(true));
+					assertThat(entry.priority, is((double)i));
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void bounded() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				final int maxEntries = 100;
+				try (DoublePriorityQueue q = DoublePriorityQueue.bounded(numBytes, false, maxEntries)) {
+					
+					// push distinct priorities in random order, so there are no ties
+					List<Integer> priorities = new ArrayList<>();
+					for (int i=0; i<10000; i++) {
+						priorities.add(i);
+					}
+					Collections.shuffle(priorities, new Random(12345));
+					
+					// keep the best entries in a sorted set too, and pop now and then
+					TreeSet<Integer> expected = new TreeSet<>();
+					Entry entry = q.new Entry();
+					for (int i=0; i<priorities.size(); i++) {
+						int priority = priorities.get(i);
+						entry.priority = priority;
+						entry.data.putInt(0, priority);
+						q.push(entry);
+						expected.add(priority);
+						if (expected.size() > maxEntries) {
+							expected.pollLast();
+						}
+						if (i % 7 == 0) {
+							assertThat(q.popTop(entry), is(true));
+							assertThat(entry.priority, is((double)expected.first()));
+							assertThat(entry.data.getInt(0), is(expected.pollFirst()));
+						}
+						assertThat(q.size(), is((long)expected.size()));
+					}
+					assertThat(q.getStats().getSize(), is((long)expected.size()));
+					assertThat(q.getStats().getEntriesDropped(), greaterThan(0L));
+					
+					// then pop the rest
+					while (!expected.isEmpty()) {
+						assertThat(q.popTop(entry), is(true));
+						assertThat(entry.data.getInt(0), is(expected.pollFirst()));
+					}
+					assertThat(q.empty(), is(true));
+					assertThat(q.popTop(entry), is(false));
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void boundedPushAll() {
+		useTPIE(() -> {
+			try (DoublePriorityQueue q = DoublePriorityQueue.bounded(8, true, 3)) {
+				
+				ByteBuffer batch = q.allocateBatch(5);
+				for (int i=0; i<5; i++) {
+					batch.putLong(i);
+				}
+				batch.flip();
+				q.pushAll(new double[] { 5.0, 1.0, 4.0, 2.0, 3.0 }, batch, 5);
+				assertThat(q.size(), is(3L));
+				assertThat(q.getStats().getEntriesDropped(), is(2L));
+				
+				// worse entries are dropped, better ones replace the worst
+				Entry entry = q.new Entry();
+				entry.priority = 9.0;
+				q.push(entry);
+				entry.priority = 0.0;
+				entry.data.putLong(0, 5);
+				q.push(entry);
+				assertThat(q.size(), is(3L));
+				
+				double[] priorities = new double[3];
+				ByteBuffer data = q.allocateBatch(3);
+				assertThat(q.popInto(priorities, data, 3), is(3));
+				assertThat(priorities, is(new double[] { 0.0, 1.0, 2.0 }));
+				data.flip();
+				assertThat(data.getLong(), is(5L));
+				assertThat(data.getLong(), is(1L));
+				assertThat(data.getLong(), is(3L));
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void boundedNoEntries() {
+		DoublePriorityQueue.bounded(8, false, 0);
+	}
+	
+	@Test(expected=Exception.class)
+	public void boundedTooBig() {
+		useTPIE(() -> {
+			
+			// way more entries than fit in TPIE's memory
+			DoublePriorityQueue.bounded(8, false, 1L << 40).close();
+		});
+	}
+
+	@Test
+	public void buildFromBatch() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				
+				// use enough entries for a few sorted runs
+				final int numEntries = 1000*1000;
+				Random rand = new Random(12345);
+				double[] priorities = new double[numEntries];
+				ByteBuffer data = ByteBuffer.allocate(numEntries*numBytes);
+				for (int i=0; i<numEntries; i++) {
+					priorities[i] = rand.nextInt(numEntries);
+					data.putInt(i*numBytes, (int)priorities[i]);
+				}
+				
+				try (DoublePriorityQueue q = DoublePriorityQueue.build(numBytes, false, priorities, data, numEntries)) {
+					assertThat(data.position(), is(numEntries*numBytes));
+					assertThat(q.size(), is((long)numEntries));
+					
+					// pushes should be merged with the built entries
+					Entry entry = q.new Entry();
+					for (int i=0; i<1000; i++) {
+						entry.priority = rand.nextInt(numEntries);
+						entry.data.putInt(0, (int)entry.priority);
+						q.push(entry);
+					}
+					
+					double last = Double.NEGATIVE_INFINITY;
+					for (int i=0; i<numEntries + 1000; i++) {
+						assertThat(q.popTop(entry), is(true));
+						assertThat(entry.priority, greaterThanOrEqualTo(last));
+						assertThat(entry.data.getInt(0), is((int)entry.priority));
+						last = entry.priority;
+					}
+					assertThat(q.empty(), is(true));
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void buildEmpty() {
+		useTPIE(() -> {
+			try (DoublePriorityQueue q = DoublePriorityQueue.build(8, false, new double[0], ByteBuffer.allocate(0), 0)) {
+				assertThat(q.empty(), is(true));
+				Entry entry = q.new Entry();
+				entry.priority = 5.0;
+				q.push(entry);
+				assertThat(q.popTop(entry), is(true));
+				assertThat(entry.priority, is(5.0));
+			}
+		});
+	}
+	
+	@Test
+	public void buildFromFIFOQueue() {
+		useTPIE(() -> {
+			try (FIFOQueue records = new FIFOQueue(Double.BYTES + 8)) {
+				
+				FIFOQueue.Entry record = records.new Entry();
+				record.data.order(ByteOrder.nativeOrder());
+				for (int i=0; i<100; i++) {
+					record.data.putDouble(0, (i*37) % 100);
+					record.data.putLong(Double.BYTES, i);
+					records.push(record);
+				}
+				
+				try (DoublePriorityQueue q = DoublePriorityQueue.build(records, false)) {
+					assertThat(q.numBytes, is(8));
+					assertThat(records.empty(), is(true));
+					assertThat(records.getStats().getSize(), is(0L));
+					assertThat(records.getStats().getPayloadBytesPopped(), is(100L*(Double.BYTES + 8)));
+					assertThat(q.size(), is(100L));
+					Entry entry = q.new Entry();
+					for (int i=0; i<100; i++) {
+						assertThat(q.popTop(entry), is(true));
+						assertThat(entry.priority, is((double)i));
+						assertThat(entry.data.order(ByteOrder.nativeOrder()).getLong(0), is((i*73L) % 100));
+					}
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void buildFromFileStream() {
+		File file = new File(System.getProperty("java.io.tmpdir"), "tpie-test-dpq-build.checkpoint");
+		try {
+			useTPIE(() -> {
+				
+				// checkpoints hold records too
+				try (DoublePriorityQueue q = new DoublePriorityQueue(8)) {
+					Entry entry = q.new Entry();
+					for (int i=0; i<100; i++) {
+						entry.priority = 99 - i;
+						entry.data.putInt(0, 99 - i);
+						q.push(entry);
+					}
+					q.checkpoint(file);
+				}
+				
+				try (FileStream records = new FileStream(Double.BYTES + 8, file, FileStream.Access.Read)) {
+					records.seek(10);
+					try (DoublePriorityQueue q = DoublePriorityQueue.build(records, false)) {
+						assertThat(records.canRead(), is(false));
+						assertThat(q.size(), is(90L));
+						Entry entry = q.new Entry();
+						for (int i=10; i<100; i++) {
+							assertThat(q.popTop(entry), is(true));
+							assertThat(entry.priority, is((double)i));
+							assertThat(entry.data.getInt(0), is(i));
+						}
+					}
+				}
+			});
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test(expected=Exception.class)
+	public void buildFromSmallRecords() {
+		useTPIE(() -> {
+			try (FIFOQueue records = new FIFOQueue(Double.BYTES)) {
+				DoublePriorityQueue.build(records, false);
+			}
+		});
+	}
+	
+	@Test
+	public void rebalance() {
+		useTPIE(() -> {
+			try (DoublePriorityQueue big = DoublePriorityQueue.withMemoryBudget(8, false, 1024L*1024)) {
+				try (FIFOQueue small = FIFOQueue.withMemoryBudget(8, false, 1024L*1024)) {
+					
+					Map<MemoryBudgeted,Double> weights = new HashMap<>();
+					weights.put(big, 3.0);
+					weights.put(small, 1.0);
+					TPIE.rebalance(weights);
+					
+					// the total budget should be split 3:1
+					assertThat(big.getMemoryBudget(), is(1536L*1024));
+					assertThat(small.getMemoryBudget(), is(512L*1024));
+				}
+			}
+		});
+	}
+	
 	@Test(expected=Exception.class)
 	public void empty() {
 		useTPIE(() -> {
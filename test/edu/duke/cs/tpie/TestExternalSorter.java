@@ -0,0 +1,153 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.ExternalSorter.Entry;
+
+public class TestExternalSorter extends TestBase {
+	
+	@Test
+	public void createCloseOne() {
+		useTPIE(() -> {
+			ExternalSorter s = new ExternalSorter(EntrySize.Bytes8);
+			s.close();
+			assertThat(s.isClosed(), is(true));
+			assertCleanedUp();
+		});
+	}
+	
+	@Test
+	public void sort() {
+		useTPIE(() -> {
+			try (ExternalSorter s = new ExternalSorter(EntrySize.Bytes8)) {
+				
+				for (double priority : new double[] { 9.0, 3.0, 5.0, 7.0, 4.0, 2.0 }) {
+					Entry entry = s.new Entry();
+					entry.priority = priority;
+					entry.data.putDouble(priority*10);
+					s.push(entry);
+				}
+				assertThat(s.size(), is(6L));
+				assertThat(s.isSorted(), is(false));
+				
+				s.sort();
+				assertThat(s.isSorted(), is(true));
+				
+				for (double priority : new double[] { 2.0, 3.0, 4.0, 5.0, 7.0, 9.0 }) {
+					assertThat(s.hasNext(), is(true));
+					Entry entry = s.next();
+					assertThat(entry.priority, is(priority));
+					assertThat(entry.data.getDouble(), is(priority*10));
+				}
+				assertThat(s.hasNext(), is(false));
+				assertThat(s.next(), is(nullValue()));
+			}
+		});
+	}
+	
+	@Test
+	public void anySize() {
+		useTPIE(() -> {
+			for (int numBytes : new int[] { 1, 24, 72, 1030 }) {
+				try (ExternalSorter s = new ExternalSorter(numBytes)) {
+					
+					for (double priority : new double[] { 9.0, 3.0, 5.0, 7.0, 4.0, 2.0 }) {
+						Entry entry = s.new Entry();
+						entry.priority = priority;
+						for (int i=0; i<numBytes; i++) {
+							entry.data.put((byte)(priority + i));
+						}
+						s.push(entry);
+					}
+					s.sort();
+					
+					for (double priority : new double[] { 2.0, 3.0, 4.0, 5.0, 7.0, 9.0 }) {
+						Entry entry = s.next();
+						assertThat(entry.priority, is(priority));
+						for (int i=0; i<numBytes; i++) {
+							assertThat(entry.data.get(), is((byte)(priority + i)));
+						}
+					}
+					assertThat(s.hasNext(), is(false));
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void batches() {
+		useTPIE(() -> {
+			int numBytes = 12;
+			try (ExternalSorter s = new ExternalSorter(numBytes)) {
+				
+				// push in batches
+				Random rand = new Random(12345);
+				int n = 1000;
+				int batchSize = 64;
+				double[] expected = new double[n];
+				double[] priorities = new double[batchSize];
+				ByteBuffer data = ByteBuffer.allocate(batchSize*numBytes);
+				for (int i=0; i<n; i+=batchSize) {
+					int count = Math.min(batchSize, n - i);
+					data.clear();
+					for (int j=0; j<count; j++) {
+						priorities[j] = rand.nextDouble();
+						expected[i + j] = priorities[j];
+						data.putDouble(priorities[j]);
+						data.putInt(i + j);
+					}
+					data.flip();
+					s.pushAll(priorities, data, count);
+				}
+				s.sort();
+				Arrays.sort(expected);
+				
+				// pull in batches
+				int i = 0;
+				while (true) {
+					data.clear();
+					int count = s.pullInto(priorities, data, batchSize);
+					if (count == 0) {
+						break;
+					}
+					data.flip();
+					for (int j=0; j<count; j++) {
+						assertThat(priorities[j], is(expected[i]));
+						assertThat(data.getDouble(), is(expected[i]));
+						data.getInt();
+						i++;
+					}
+				}
+				assertThat(i, is(n));
+				assertThat(s.size(), is(0L));
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void pushAfterSort() {
+		useTPIE(() -> {
+			try (ExternalSorter s = new ExternalSorter(EntrySize.Bytes8)) {
+				s.sort();
+				s.push(s.new Entry());
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void pullBeforeSort() {
+		useTPIE(() -> {
+			try (ExternalSorter s = new ExternalSorter(EntrySize.Bytes8)) {
+				s.push(s.new Entry());
+				s.next();
+			}
+		});
+	}
+}
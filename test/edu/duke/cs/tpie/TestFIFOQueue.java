@@ -3,6 +3,9 @@ package edu.duke.cs.tpie;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+
 import org.junit.Test;
 
 import edu.duke.cs.tpie.FIFOQueue.Entry;
@@ -67,7 +70,7 @@ public class TestFIFOQueue extends TestBase {
 	public void pushFront8() {
 		useTPIE(() -> {
 			try (FIFOQueue q = new FIFOQueue(EntrySize.Bytes8)) {
-			
+				
 				Entry entry = q.new Entry();
 				entry.data.putDouble(3.141592654);
 				entry.data.clear();
@@ -91,7 +94,7 @@ public class TestFIFOQueue extends TestBase {
 	public void fifo() {
 		useTPIE(() -> {
 			try (FIFOQueue q = new FIFOQueue(EntrySize.Bytes8)) {
-			
+				
 				EntryFactory f = (data) -> {
 					Entry entry = q.new Entry();
 					entry.data.putDouble(data);
@@ -132,6 +135,149 @@ public class TestFIFOQueue extends TestBase {
 		});
 	}
 	
+	@Test
+	public void pushAll() {
+		useTPIE(() -> {
+			try (FIFOQueue q = new FIFOQueue(EntrySize.Bytes8)) {
+				
+				double[] values = { 5.3, 4.2, 7.3, 2.9, 1.0, 8.5 };
+				ByteBuffer data = ByteBuffer.allocate(values.length*8);
+				for (double value : values) {
+					data.putDouble(value);
+				}
+				data.flip();
+				
+				q.pushAll(data, values.length);
+				assertThat(data.hasRemaining(), is(false));
+				assertThat(q.size(), is(6L));
+				
+				for (double value : values) {
+					assertThat(q.front().data.getDouble(), is(value));
+					q.pop();
+				}
+				
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void popInto() {
+		useTPIE(() -> {
+			try (FIFOQueue q = new FIFOQueue(EntrySize.Bytes8)) {
+				
+				double[] values = { 5.3, 4.2, 7.3, 2.9, 1.0, 8.5 };
+				for (double value : values) {
+					Entry entry = q.new Entry();
+					entry.data.putDouble(value);
+					q.push(entry);
+				}
+				
+				ByteBuffer data = ByteBuffer.allocate(4*8);
+				
+				assertThat(q.popInto(data, 4), is(4));
+				assertThat(data.hasRemaining(), is(false));
+				assertThat(q.size(), is(2L));
+				data.flip();
+				for (int i=0; i<4; i++) {
+					assertThat(data.getDouble(), is(values[i]));
+				}
+				
+				data.clear();
+				assertThat(q.popInto(data, 4), is(2));
+				assertThat(data.position(), is(2*8));
+				assertThat(data.getDouble(0), is(values[4]));
+				assertThat(data.getDouble(8), is(values[5]));
+				
+				assertThat(q.empty(), is(true));
+				data.clear();
+				assertThat(q.popInto(data, 4), is(0));
+			}
+		});
+	}
+	
+	@Test
+	public void directBuffers() {
+		useTPIE(() -> {
+			try (FIFOQueue q = new FIFOQueue(EntrySize.Bytes16, true)) {
+				
+				Entry entry = q.new Entry();
+				assertThat(entry.data.isDirect(), is(true));
+				entry.data.putLong(42);
+				entry.data.putLong(-42);
+				q.push(entry);
+				
+				ByteBuffer data = q.allocateBatch(2);
+				assertThat(data.isDirect(), is(true));
+				data.putLong(7).putLong(-7);
+				data.putLong(1).putLong(-1);
+				data.flip();
+				q.pushAll(data, 2);
+				
+				Entry entry2 = q.front();
+				assertThat(entry2.data.isDirect(), is(true));
+				assertThat(entry2.data.getLong(), is(42L));
+				assertThat(entry2.data.getLong(), is(-42L));
+				
+				data = q.allocateBatch(3);
+				assertThat(q.popInto(data, 3), is(3));
+				data.flip();
+				for (long i : new long[] { 42, 7, 1 }) {
+					assertThat(data.getLong(), is(i));
+					assertThat(data.getLong(), is(-i));
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void frontReuse() {
+		useTPIE(() -> {
+			for (boolean useDirectBuffers : new boolean[] { false, true }) {
+				try (FIFOQueue q = new FIFOQueue(EntrySize.Bytes8, useDirectBuffers)) {
+					
+					Entry entry = q.new Entry();
+					entry.data.putDouble(0, 5.3);
+					q.push(entry);
+					entry.data.putDouble(0, 4.2);
+					q.push(entry);
+					
+					Entry reused = q.new Entry();
+					assertThat(q.front(reused), sameInstance(reused));
+					assertThat(reused.data.getDouble(), is(5.3));
+					q.pop();
+					
+					assertThat(q.front(reused), sameInstance(reused));
+					assertThat(reused.data.getDouble(), is(4.2));
+					q.pop();
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void popFront() {
+		useTPIE(() -> {
+			try (FIFOQueue q = new FIFOQueue(EntrySize.Bytes8)) {
+				
+				Entry entry = q.new Entry();
+				double[] values = { 3.0, 1.0, 2.0 };
+				for (double value : values) {
+					entry.data.putDouble(0, value);
+					q.push(entry);
+				}
+				
+				for (double value : values) {
+					assertThat(q.popFront(entry), is(true));
+					assertThat(entry.data.getDouble(), is(value));
+				}
+				
+				assertThat(q.empty(), is(true));
+				assertThat(q.popFront(entry), is(false));
+			}
+		});
+	}
+	
 	@Test
 	public void dataSizes() {
 		useTPIE(() -> {
@@ -153,6 +299,479 @@ public class TestFIFOQueue extends TestBase {
 		});
 	}
 	
+	@Test
+	public void arbitrarySizes() {
+		useTPIE(() -> {
+			for (int numBytes : new int[] { 1, 12, 24, 72, 1000, 1030, 3000 }) {
+				try (FIFOQueue q = new FIFOQueue(numBytes)) {
+					
+					assertThat(q.numBytes, is(numBytes));
+					
+					// interleave pushes and pops so entries come from full blocks and partial blocks
+					int n = 200;
+					int next = 0;
+					for (int i=0; i<n; i++) {
+						Entry entry = q.new Entry();
+						assertThat(entry.data.capacity(), is(numBytes));
+						for (int j=0; j<numBytes; j++) {
+							entry.data.put((byte)(i + j));
+						}
+						q.push(entry);
+						if (i % 3 == 2) {
+							Entry entry2 = q.front();
+							for (int j=0; j<numBytes; j++) {
+								assertThat(entry2.data.get(), is((byte)(next + j)));
+							}
+							q.pop();
+							next++;
+						}
+					}
+					
+					// drain the rest in a batch
+					ByteBuffer data = q.allocateBatch(n);
+					assertThat(q.popInto(data, n), is(n - next));
+					data.flip();
+					for (; next<n; next++) {
+						for (int j=0; j<numBytes; j++) {
+							assertThat(data.get(), is((byte)(next + j)));
+						}
+					}
+					assertThat(q.empty(), is(true));
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void checkpointRestore() {
+		File file = new File(System.getProperty("java.io.tmpdir"), "tpie-test-fifo.checkpoint");
+		try {
+			for (int numBytes : new int[] { 8, 12 }) {
+				
+				useTPIE(() -> {
+					try (FIFOQueue q = new FIFOQueue(numBytes)) {
+						
+						Entry entry = q.new Entry();
+						for (int i=0; i<100; i++) {
+							entry.data.putInt(0, i);
+							q.push(entry);
+						}
+						q.checkpoint(file);
+						assertThat(q.size(), is(100L));
+						
+						// the queue should still work after the checkpoint
+						for (int i=0; i<10; i++) {
+							assertThat(q.front().data.getInt(), is(i));
+							q.pop();
+						}
+						entry.data.putInt(0, -1);
+						q.push(entry);
+					}
+				});
+				
+				// restore as if in a new JVM
+				useTPIE(() -> {
+					try (FIFOQueue q = FIFOQueue.restore(file, numBytes)) {
+						assertThat(q.size(), is(100L));
+						
+						// push some more, which should come out after the checkpointed entries
+						Entry entry = q.new Entry();
+						for (int i=100; i<110; i++) {
+							entry.data.putInt(0, i);
+							q.push(entry);
+						}
+						assertThat(q.size(), is(110L));
+						
+						for (int i=0; i<50; i++) {
+							assertThat(q.front().data.getInt(), is(i));
+							q.pop();
+						}
+						
+						// checkpoint the restored queue over its own checkpoint
+						q.checkpoint(file);
+						assertThat(q.size(), is(60L));
+						ByteBuffer data = q.allocateBatch(60);
+						assertThat(q.popInto(data, 60), is(60));
+						for (int i=0; i<60; i++) {
+							assertThat(data.getInt(i*numBytes), is(50 + i));
+						}
+					}
+				});
+				
+				useTPIE(() -> {
+					try (FIFOQueue q = FIFOQueue.restore(file, numBytes)) {
+						assertThat(q.size(), is(60L));
+						ByteBuffer data = q.allocateBatch(60);
+						assertThat(q.popInto(data, 60), is(60));
+						for (int i=0; i<60; i++) {
+							assertThat(data.getInt(i*numBytes), is(50 + i));
+						}
+						assertThat(q.empty(), is(true));
+					}
+				});
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void checkpointRepeatedly() {
+		File file = new File(System.getProperty("java.io.tmpdir"), "tpie-test-fifo-repeat.checkpoint");
+		try {
+			for (int numBytes : new int[] { 8, 12 }) {
+				for (boolean compressed : new boolean[] { false, true }) {
+					useTPIE(() -> {
+						try (FIFOQueue q = FIFOQueue.writeBehind(numBytes, false, 2, 7*TPIE.getBlockSize(), compressed)) {
+							
+							// interleave pushes, pops and checkpoints
+							Entry entry = q.new Entry();
+							int next = 0;
+							int front = 0;
+							for (int round=0; round<5; round++) {
+								for (int i=0; i<1000; i++) {
+									entry.data.putInt(0, next++);
+									q.push(entry);
+								}
+								for (int i=0; i<300; i++) {
+									assertThat(q.front().data.getInt(), is(front++));
+									q.pop();
+								}
+								q.checkpoint(file);
+								assertThat(q.size(), is((long)(next - front)));
+							}
+							
+							// the queue and the checkpoint should both have every entry, in order
+							try (FIFOQueue restored = FIFOQueue.restore(file, numBytes)) {
+								assertThat(restored.size(), is(q.size()));
+								while (!q.empty()) {
+									assertThat(restored.front().data.getInt(), is(front));
+									assertThat(q.front().data.getInt(), is(front));
+									restored.pop();
+									q.pop();
+									front++;
+								}
+								assertThat(front, is(next));
+								assertThat(restored.empty(), is(true));
+							}
+						}
+					});
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test(expected=Exception.class)
+	public void restoreWrongSize() {
+		File file = new File(System.getProperty("java.io.tmpdir"), "tpie-test-fifo-size.checkpoint");
+		try {
+			useTPIE(() -> {
+				try (FIFOQueue q = new FIFOQueue(12)) {
+					q.push(q.new Entry());
+					q.checkpoint(file);
+				}
+				FIFOQueue.restore(file, 8);
+			});
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void memoryBudget() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				try (FIFOQueue q = FIFOQueue.withMemoryBudget(numBytes, false, 64*1024)) {
+					assertThat(q.getMemoryBudget(), is(64L*1024));
+					
+					Entry entry = q.new Entry();
+					for (int i=0; i<100; i++) {
+						entry.data.putInt(0, i);
+						q.push(entry);
+					}
+					
+					// changing the budget shouldn't change the entries
+					q.setMemoryBudget(256*1024);
+					assertThat(q.getMemoryBudget(), is(256L*1024));
+					assertThat(q.size(), is(100L));
+					for (int i=0; i<100; i++) {
+						assertThat(q.front().data.getInt(), is(i));
+						q.pop();
+					}
+				}
+				
+				// queues without a budget get the default
+				try (FIFOQueue q = new FIFOQueue(numBytes)) {
+					assertThat(q.getMemoryBudget(), greaterThan(0L));
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void memoryBudgetRepeatedly() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				try (FIFOQueue q = FIFOQueue.withMemoryBudget(numBytes, false, 64*1024)) {
+					
+					// shrinking to a tiny budget writes the oldest entries in memory to disk, growing doesn't write any
+					Entry entry = q.new Entry();
+					for (int i=0; i<1000; i++) {
+						entry.data.putInt(0, i);
+						q.push(entry);
+						if (i % 100 == 99) {
+							q.setMemoryBudget(i/100 % 2 == 0 ? 256 : 64L*1024);
+						}
+					}
+					assertThat(q.size(), is(1000L));
+					
+					for (int i=0; i<1000; i++) {
+						assertThat(q.front().data.getInt(), is(i));
+						q.pop();
+					}
+					assertThat(q.size(), is(0L));
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void memoryBudgetWithoutBudget() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				try (FIFOQueue q = new FIFOQueue(numBytes)) {
+					
+					// the first change moves the entries out of TPIE's queue, the rest change the budget in place
+					Entry entry = q.new Entry();
+					for (int i=0; i<300; i++) {
+						entry.data.putInt(0, i);
+						q.push(entry);
+						if (i % 100 == 99) {
+							q.setMemoryBudget((i/100 + 1)*1024L);
+							assertThat(q.getMemoryBudget(), is((i/100 + 1)*1024L));
+						}
+					}
+					
+					for (int i=0; i<300; i++) {
+						assertThat(q.front().data.getInt(), is(i));
+						q.pop();
+					}
+					assertThat(q.size(), is(0L));
+				}
+			});
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void badMemoryBudget() {
+		FIFOQueue.withMemoryBudget(8, false, 0);
+	}
+	
+	@Test(expected=Exception.class)
+	public void pushAllTooMany() {
+		useTPIE(() -> {
+			try (FIFOQueue q = new FIFOQueue(64)) {
+				
+				// the batch size in bytes would wrap around to one entry
+				q.pushAll(q.allocateBatch(1), (1 << 26) + 1);
+			}
+		});
+	}
+	
+	@Test
+	public void writeBehind() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				try (FIFOQueue q = FIFOQueue.writeBehind(numBytes, true, 2)) {
+					
+					// push enough entries for many blocks, so some wait on the I/O thread
+					final int numEntries = 2*1000*1000;
+					final int batchSize = 1000;
+					ByteBuffer data = q.allocateBatch(batchSize);
+					for (int i=0; i<numEntries; i+=batchSize) {
+						data.clear();
+						for (int j=0; j<batchSize; j++) {
+							data.putInt(j*numBytes, i + j);
+						}
+						q.pushAll(data, batchSize);
+					}
+					assertThat(q.size(), is((long)numEntries));
+					
+					// pop some one at a time, and the rest in batches, while pushing more
+					Entry entry = q.new Entry();
+					for (int i=0; i<1000; i++) {
+						assertThat(q.popFront(entry), is(true));
+						assertThat(entry.data.getInt(0), is(i));
+						entry.data.putInt(0, numEntries + i);
+						q.push(entry);
+					}
+					for (int i=1000; i<numEntries + 1000; i+=batchSize) {
+						data.clear();
+						assertThat(q.popInto(data, batchSize), is(batchSize));
+						for (int j=0; j<batchSize; j++) {
+							assertThat(data.getInt(j*numBytes), is(i + j));
+						}
+					}
+					assertThat(q.empty(), is(true));
+					assertThat(q.popFront(entry), is(false));
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void writeBehindInMemory() {
+		useTPIE(() -> {
+			try (FIFOQueue q = FIFOQueue.writeBehind(8, false, 1)) {
+				
+				// a few entries never fill a block, so they never leave the pushing thread
+				Entry entry = q.new Entry();
+				for (int i=0; i<10; i++) {
+					entry.data.putLong(0, i);
+					q.push(entry);
+				}
+				for (int i=0; i<10; i++) {
+					assertThat(q.front().data.getLong(), is((long)i));
+					q.pop();
+					entry.data.putLong(0, 10 + i);
+					q.push(entry);
+				}
+				
+				// the budget includes the blocks in flight
+				q.setMemoryBudget(6*TPIE.getBlockSize());
+				assertThat(q.getMemoryBudget(), is(6*TPIE.getBlockSize()));
+				for (int i=0; i<10; i++) {
+					assertThat(q.front().data.getLong(), is(10L + i));
+					q.pop();
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void writeBehindBudget() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				long memoryBudget = 7*TPIE.getBlockSize();
+				try (FIFOQueue q = FIFOQueue.writeBehind(numBytes, false, 2, memoryBudget, true)) {
+					assertThat(q.getMemoryBudget(), is(memoryBudget));
+					
+					// push enough entries for a few blocks, so some go through the I/O thread
+					final int numEntries = 1000*1000;
+					Entry entry = q.new Entry();
+					for (int i=0; i<numEntries; i++) {
+						entry.data.putInt(0, i);
+						q.push(entry);
+					}
+					for (int i=0; i<numEntries; i++) {
+						assertThat(q.popFront(entry), is(true));
+						assertThat(entry.data.getInt(0), is(i));
+					}
+					assertThat(q.empty(), is(true));
+				}
+			});
+		}
+	}
+	
+	@Test(expected=Exception.class)
+	public void writeBehindBudgetTooSmall() {
+		useTPIE(() -> {
+			
+			// not even enough for the blocks in flight
+			FIFOQueue.writeBehind(8, false, 2, TPIE.getBlockSize(), false);
+		});
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void writeBehindNoBlocks() {
+		FIFOQueue.writeBehind(8, false, 0);
+	}
+	
+	@Test(expected=Exception.class)
+	public void writeBehindEmpty() {
+		useTPIE(() -> {
+			try (FIFOQueue q = FIFOQueue.writeBehind(8, false, 1)) {
+				q.pop();
+			}
+		});
+	}
+	
+	@Test
+	public void compressedSpills() {
+		for (int numBytes : new int[] { 8, 12 }) {
+			useTPIE(() -> {
+				try (FIFOQueue q = FIFOQueue.withCompressedSpills(numBytes, false, true)) {
+					
+					// use a small budget, so most of the entries spill
+					q.setMemoryBudget(64*1024);
+					
+					final int numEntries = 100*1000;
+					Entry entry = q.new Entry();
+					for (int i=0; i<numEntries; i++) {
+						entry.data.putInt(0, i);
+						q.push(entry);
+					}
+					assertThat(q.size(), is((long)numEntries));
+					
+					// pop half, push more, then pop the rest in batches
+					for (int i=0; i<numEntries/2; i++) {
+						assertThat(q.popFront(entry), is(true));
+						assertThat(entry.data.getInt(0), is(i));
+					}
+					for (int i=numEntries; i<2*numEntries; i++) {
+						entry.data.putInt(0, i);
+						q.push(entry);
+					}
+					final int batchSize = 1000;
+					ByteBuffer data = q.allocateBatch(batchSize);
+					for (int i=numEntries/2; i<2*numEntries; i+=batchSize) {
+						data.clear();
+						assertThat(q.popInto(data, batchSize), is(batchSize));
+						for (int j=0; j<batchSize; j++) {
+							assertThat(data.getInt(j*numBytes), is(i + j));
+						}
+					}
+					assertThat(q.empty(), is(true));
+					assertThat(q.popFront(entry), is(false));
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void compressedSpillsByDefault() {
+		TPIE.use(16, true, () -> {
+			assertThat(TPIE.isCompressingSpills(), is(true));
+			try (FIFOQueue q = new FIFOQueue(8)) {
+				Entry entry = q.new Entry();
+				for (int i=0; i<100; i++) {
+					entry.data.putInt(0, i);
+					q.push(entry);
+				}
+				for (int i=0; i<100; i++) {
+					assertThat(q.front().data.getInt(), is(i));
+					q.pop();
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+		useTPIE(() -> {
+			assertThat(TPIE.isCompressingSpills(), is(false));
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void emptyArbitrarySize() {
+		useTPIE(() -> {
+			try (FIFOQueue q = new FIFOQueue(12)) {
+				q.front();
+			}
+		});
+	}
+	
 	@Test(expected=Exception.class)
 	public void empty() {
 		useTPIE(() -> {
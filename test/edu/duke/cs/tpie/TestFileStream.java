@@ -0,0 +1,186 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestFileStream extends TestBase {
+	
+	@Test
+	public void createCloseOne() {
+		useTPIE(() -> {
+			FileStream s = new FileStream(EntrySize.Bytes8);
+			s.close();
+			assertThat(s.isClosed(), is(true));
+			assertCleanedUp();
+		});
+	}
+	
+	@Test
+	public void writeRead() {
+		useTPIE(() -> {
+			try (FileStream s = new FileStream(EntrySize.Bytes8)) {
+				
+				ByteBuffer buf = s.allocateBatch(1);
+				for (long i=0; i<10; i++) {
+					buf.clear();
+					buf.putLong(i*10);
+					buf.flip();
+					s.write(buf);
+				}
+				assertThat(s.size(), is(10L));
+				assertThat(s.offset(), is(10L));
+				assertThat(s.canRead(), is(false));
+				
+				s.seek(0);
+				for (long i=0; i<10; i++) {
+					buf.clear();
+					assertThat(s.read(buf), is(true));
+					buf.flip();
+					assertThat(buf.getLong(), is(i*10));
+				}
+				buf.clear();
+				assertThat(s.read(buf), is(false));
+			}
+		});
+	}
+	
+	@Test
+	public void batches() {
+		useTPIE(() -> {
+			int numBytes = 12;
+			int n = 1000;
+			try (FileStream s = new FileStream(numBytes)) {
+				
+				Random rand = new Random(12345);
+				int[] ints = new int[n];
+				ByteBuffer batch = s.allocateBatch(n);
+				for (int i=0; i<n; i++) {
+					ints[i] = rand.nextInt();
+					batch.putInt(ints[i]);
+					batch.putLong(i);
+				}
+				batch.flip();
+				s.write(batch, n);
+				assertThat(batch.remaining(), is(0));
+				assertThat(s.size(), is((long)n));
+				
+				// read it back in uneven batches
+				s.seek(0);
+				batch.clear();
+				int numRead = 0;
+				while (true) {
+					int count = s.read(batch, Math.min(n - numRead, 300));
+					numRead += count;
+					if (count == 0) {
+						break;
+					}
+				}
+				assertThat(numRead, is(n));
+				batch.flip();
+				for (int i=0; i<n; i++) {
+					assertThat(batch.getInt(), is(ints[i]));
+					assertThat(batch.getLong(), is((long)i));
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void seekTruncate() {
+		useTPIE(() -> {
+			try (FileStream s = new FileStream(EntrySize.Bytes8)) {
+				
+				ByteBuffer batch = s.allocateBatch(10);
+				for (long i=0; i<10; i++) {
+					batch.putLong(i);
+				}
+				batch.flip();
+				s.write(batch, 10);
+				
+				// random access
+				ByteBuffer buf = s.allocateBatch(1);
+				s.seek(7);
+				assertThat(s.read(buf), is(true));
+				assertThat(buf.getLong(0), is(7L));
+				assertThat(s.offset(), is(8L));
+				
+				// overwrite in the middle
+				s.seek(3);
+				buf.clear();
+				buf.putLong(0, 42L);
+				s.write(buf);
+				assertThat(s.size(), is(10L));
+				s.seek(3);
+				buf.clear();
+				s.read(buf);
+				assertThat(buf.getLong(0), is(42L));
+				
+				// truncate before the current index
+				s.seek(8);
+				s.truncate(5);
+				assertThat(s.size(), is(5L));
+				assertThat(s.offset(), is(5L));
+				assertThat(s.canRead(), is(false));
+				
+				// append after truncating
+				buf.clear();
+				buf.putLong(0, 99L);
+				s.write(buf);
+				assertThat(s.size(), is(6L));
+				s.seek(5);
+				buf.clear();
+				s.read(buf);
+				assertThat(buf.getLong(0), is(99L));
+			}
+		});
+	}
+	
+	@Test(expected=RuntimeException.class)
+	public void seekPastEnd() {
+		useTPIE(() -> {
+			try (FileStream s = new FileStream(EntrySize.Bytes8)) {
+				s.seek(1);
+			}
+		});
+	}
+	
+	@Test
+	public void namedReopen()
+	throws IOException {
+		File file = File.createTempFile("tpie-test-", ".stream");
+		file.delete();
+		try {
+			useTPIE(() -> {
+				
+				try (FileStream s = new FileStream(4, file, FileStream.Access.Write)) {
+					ByteBuffer batch = s.allocateBatch(100);
+					for (int i=0; i<100; i++) {
+						batch.putInt(i);
+					}
+					batch.flip();
+					s.write(batch, 100);
+				}
+				
+				try (FileStream s = new FileStream(4, file, FileStream.Access.Read)) {
+					assertThat(s.size(), is(100L));
+					ByteBuffer batch = s.allocateBatch(100);
+					assertThat(s.read(batch, 100), is(100));
+					batch.flip();
+					for (int i=0; i<100; i++) {
+						assertThat(batch.getInt(), is(i));
+					}
+				}
+			});
+			assertThat(file.exists(), is(true));
+		} finally {
+			file.delete();
+		}
+	}
+}
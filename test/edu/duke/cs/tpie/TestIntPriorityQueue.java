@@ -0,0 +1,97 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.IntPriorityQueue.Entry;
+
+public class TestIntPriorityQueue extends TestBase {
+	
+	@Test
+	public void createCloseOne() {
+		useTPIE(() -> {
+			IntPriorityQueue q = new IntPriorityQueue(EntrySize.Bytes8);
+			q.close();
+			assertThat(q.isClosed(), is(true));
+			assertCleanedUp();
+		});
+	}
+	
+	@Test
+	public void sort() {
+		useTPIE(() -> {
+			try (IntPriorityQueue q = new IntPriorityQueue(EntrySize.Bytes8)) {
+				
+				int[] priorities = { 9, Integer.MIN_VALUE, 3, -5, Integer.MAX_VALUE, 0 };
+				for (int priority : priorities) {
+					Entry entry = q.new Entry();
+					entry.priority = priority;
+					entry.data.putInt(priority);
+					q.push(entry);
+				}
+				assertThat(q.size(), is((long)priorities.length));
+				
+				for (int priority : new int[] { Integer.MIN_VALUE, -5, 0, 3, 9, Integer.MAX_VALUE }) {
+					Entry entry = q.top();
+					assertThat(entry.priority, is(priority));
+					assertThat(entry.data.getInt(), is(priority));
+					q.pop();
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void pushAllPopInto() {
+		useTPIE(() -> {
+			for (int numBytes : new int[] { 4, 8, 20, 100 }) {
+				try (IntPriorityQueue q = new IntPriorityQueue(numBytes)) {
+					
+					int[] priorities = { 9, 3, 5, 7, 4, 2 };
+					ByteBuffer data = q.allocateBatch(10);
+					for (int priority : priorities) {
+						data.putInt(priority*10);
+						data.position(data.position() + numBytes - 4);
+					}
+					data.flip();
+					q.pushAll(priorities, data, priorities.length);
+					assertThat(q.size(), is(6L));
+					
+					int[] popped = new int[10];
+					data.clear();
+					assertThat(q.popInto(popped, data, 10), is(6));
+					data.flip();
+					for (int priority : new int[] { 2, 3, 4, 5, 7, 9 }) {
+						assertThat(data.getInt(), is(priority*10));
+						data.position(data.position() + numBytes - 4);
+					}
+					assertThat(q.empty(), is(true));
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void popTop() {
+		useTPIE(() -> {
+			try (IntPriorityQueue q = new IntPriorityQueue(EntrySize.Bytes8)) {
+				
+				Entry entry = q.new Entry();
+				entry.priority = 42;
+				entry.data.putInt(7);
+				q.push(entry);
+				
+				Entry entry2 = q.new Entry();
+				assertThat(q.popTop(entry2), is(true));
+				assertThat(entry2.priority, is(42));
+				assertThat(entry2.data.getInt(), is(7));
+				assertThat(q.popTop(entry2), is(false));
+			}
+		});
+	}
+}
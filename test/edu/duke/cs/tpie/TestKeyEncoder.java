@@ -0,0 +1,70 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class TestKeyEncoder {
+	
+	private static int compareBytes(ByteBuffer a, ByteBuffer b) {
+		for (int i=0; i<a.capacity(); i++) {
+			int cmp = Integer.compare(a.get(i) & 0xff, b.get(i) & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return 0;
+	}
+	
+	@Test
+	public void doubleOrder() {
+		double[] vals = { Double.NEGATIVE_INFINITY, -Double.MAX_VALUE, -1.5, -Double.MIN_VALUE, -0.0, 0.0, Double.MIN_VALUE, 1.0, 1.5, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NaN };
+		for (int i=0; i<vals.length; i++) {
+			for (int j=0; j<vals.length; j++) {
+				ByteBuffer a = ByteBuffer.allocate(8);
+				ByteBuffer b = ByteBuffer.allocate(8);
+				KeyEncoder.putDouble(a, vals[i]);
+				KeyEncoder.putDouble(b, vals[j]);
+				assertThat(Integer.signum(compareBytes(a, b)), is(Integer.signum(Double.compare(vals[i], vals[j]))));
+				a.flip();
+				assertThat(Double.compare(KeyEncoder.getDouble(a), vals[i]), is(0));
+			}
+		}
+	}
+	
+	@Test
+	public void longOrder() {
+		long[] vals = { Long.MIN_VALUE, -1L << 53, -2, -1, 0, 1, 2, (1L << 53) + 1, Long.MAX_VALUE };
+		for (int i=0; i<vals.length; i++) {
+			for (int j=0; j<vals.length; j++) {
+				ByteBuffer a = ByteBuffer.allocate(8);
+				ByteBuffer b = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+				KeyEncoder.putLong(a, vals[i]);
+				KeyEncoder.putLong(b, vals[j]);
+				assertThat(Integer.signum(compareBytes(a, b)), is(Integer.signum(Long.compare(vals[i], vals[j]))));
+				b.flip();
+				assertThat(KeyEncoder.getLong(b), is(vals[j]));
+			}
+		}
+	}
+	
+	@Test
+	public void intOrder() {
+		int[] vals = { Integer.MIN_VALUE, -2, -1, 0, 1, 2, Integer.MAX_VALUE };
+		for (int i=0; i<vals.length; i++) {
+			for (int j=0; j<vals.length; j++) {
+				ByteBuffer a = ByteBuffer.allocate(4);
+				ByteBuffer b = ByteBuffer.allocate(4);
+				KeyEncoder.putInt(a, vals[i]);
+				KeyEncoder.putInt(b, vals[j]);
+				assertThat(Integer.signum(compareBytes(a, b)), is(Integer.signum(Integer.compare(vals[i], vals[j]))));
+				a.flip();
+				assertThat(KeyEncoder.getInt(a), is(vals[i]));
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.KeyedPriorityQueue.Entry;
+
+public class TestKeyedPriorityQueue extends TestBase {
+	
+	@Test
+	public void createCloseOne() {
+		useTPIE(() -> {
+			KeyedPriorityQueue q = new KeyedPriorityQueue(8, 8);
+			q.close();
+			assertThat(q.isClosed(), is(true));
+			assertCleanedUp();
+		});
+	}
+	
+	@Test
+	public void compoundKeys() {
+		useTPIE(() -> {
+			// order by f, then by h, then by push order, like an A* frontier
+			int keyBytes = KeyEncoder.DoubleBytes + KeyEncoder.DoubleBytes + KeyEncoder.LongBytes;
+			try (KeyedPriorityQueue q = new KeyedPriorityQueue(keyBytes, 4)) {
+				
+				Random rand = new Random(12345);
+				List<double[]> expected = new ArrayList<>();
+				for (int i=0; i<500; i++) {
+					double f = rand.nextInt(10) - 5;
+					double h = rand.nextInt(3)*0.5;
+					expected.add(new double[] { f, h, i });
+					
+					Entry entry = q.new Entry();
+					KeyEncoder.putDouble(entry.key, f);
+					KeyEncoder.putDouble(entry.key, h);
+					KeyEncoder.putLong(entry.key, i);
+					entry.data.putInt(i);
+					q.push(entry);
+				}
+				assertThat(q.size(), is(500L));
+				
+				Comparator<double[]> byF = Comparator.comparingDouble(a -> a[0]);
+				Collections.sort(expected, byF.thenComparingDouble(a -> a[1]).thenComparingDouble(a -> a[2]));
+				
+				Entry entry = q.new Entry();
+				for (double[] exp : expected) {
+					assertThat(q.popTop(entry), is(true));
+					assertThat(KeyEncoder.getDouble(entry.key), is(exp[0]));
+					assertThat(KeyEncoder.getDouble(entry.key), is(exp[1]));
+					assertThat(KeyEncoder.getLong(entry.key), is((long)exp[2]));
+					assertThat(entry.data.getInt(), is((int)exp[2]));
+				}
+				assertThat(q.popTop(entry), is(false));
+			}
+		});
+	}
+	
+	@Test
+	public void topThenPop() {
+		useTPIE(() -> {
+			try (KeyedPriorityQueue q = new KeyedPriorityQueue(KeyEncoder.IntBytes, 8)) {
+				
+				for (int i : new int[] { 5, -3, 12 }) {
+					Entry entry = q.new Entry();
+					KeyEncoder.putInt(entry.key, i);
+					entry.data.putDouble(i*1.5);
+					q.push(entry);
+				}
+				
+				for (int i : new int[] { -3, 5, 12 }) {
+					Entry entry = q.top();
+					assertThat(KeyEncoder.getInt(entry.key), is(i));
+					assertThat(entry.data.getDouble(), is(i*1.5));
+					q.pop();
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void tooBig() {
+		useTPIE(() -> {
+			new KeyedPriorityQueue(24, 1001);
+		});
+	}
+}
@@ -0,0 +1,97 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.LongPriorityQueue.Entry;
+
+public class TestLongPriorityQueue extends TestBase {
+	
+	@Test
+	public void createCloseOne() {
+		useTPIE(() -> {
+			LongPriorityQueue q = new LongPriorityQueue(EntrySize.Bytes8);
+			q.close();
+			assertThat(q.isClosed(), is(true));
+			assertCleanedUp();
+		});
+	}
+	
+	@Test
+	public void sortBigKeys() {
+		useTPIE(() -> {
+			try (LongPriorityQueue q = new LongPriorityQueue(EntrySize.Bytes8)) {
+				
+				// these keys are all the same double, but different longs
+				long big = 1L << 60;
+				long[] priorities = { big + 3, big + 1, Long.MIN_VALUE, big + 2, -5, Long.MAX_VALUE, big };
+				for (long priority : priorities) {
+					Entry entry = q.new Entry();
+					entry.priority = priority;
+					entry.data.putLong(priority);
+					q.push(entry);
+				}
+				assertThat(q.size(), is((long)priorities.length));
+				
+				for (long priority : new long[] { Long.MIN_VALUE, -5, big, big + 1, big + 2, big + 3, Long.MAX_VALUE }) {
+					Entry entry = q.top();
+					assertThat(entry.priority, is(priority));
+					assertThat(entry.data.getLong(), is(priority));
+					q.pop();
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void pushAllPopInto() {
+		useTPIE(() -> {
+			try (LongPriorityQueue q = new LongPriorityQueue(12)) {
+				
+				long[] priorities = { 9, 3, 5, 7, 4, 2 };
+				ByteBuffer data = q.allocateBatch(10);
+				for (long priority : priorities) {
+					data.putLong(priority*10);
+					data.putInt((int)priority);
+				}
+				data.flip();
+				q.pushAll(priorities, data, priorities.length);
+				assertThat(q.size(), is(6L));
+				
+				long[] popped = new long[10];
+				data.clear();
+				assertThat(q.popInto(popped, data, 10), is(6));
+				data.flip();
+				for (long priority : new long[] { 2, 3, 4, 5, 7, 9 }) {
+					assertThat(data.getLong(), is(priority*10));
+					assertThat(data.getInt(), is((int)priority));
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void popTop() {
+		useTPIE(() -> {
+			try (LongPriorityQueue q = new LongPriorityQueue(EntrySize.Bytes8)) {
+				
+				Entry entry = q.new Entry();
+				entry.priority = 42;
+				entry.data.putLong(7);
+				q.push(entry);
+				
+				Entry entry2 = q.new Entry();
+				assertThat(q.popTop(entry2), is(true));
+				assertThat(entry2.priority, is(42L));
+				assertThat(entry2.data.getLong(), is(7L));
+				assertThat(q.popTop(entry2), is(false));
+			}
+		});
+	}
+}
@@ -0,0 +1,204 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.DoublePriorityQueue.Entry;
+import edu.duke.cs.tpie.OffHeap.ClosedException;
+
+public class TestMultiDoublePriorityQueue extends TestBase {
+	
+	@Test
+	public void createClose() {
+		useTPIE(() -> {
+			MultiDoublePriorityQueue q = new MultiDoublePriorityQueue(8, 4, false);
+			q.close();
+			assertThat(q.isClosed(), is(true));
+			assertCleanedUp();
+		});
+	}
+	
+	@Test(expected=ClosedException.class)
+	public void useAfterClose() {
+		AtomicReference<MultiDoublePriorityQueue> q = new AtomicReference<>();
+		useTPIE(() -> {
+			q.set(new MultiDoublePriorityQueue(8, 4, false));
+			q.get().close();
+		});
+		q.get().empty();
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void noShards() {
+		new MultiDoublePriorityQueue(8, 0, false);
+	}
+	
+	@Test
+	public void popEmpty() {
+		useTPIE(() -> {
+			try (MultiDoublePriorityQueue q = new MultiDoublePriorityQueue(8, 4, false)) {
+				assertThat(q.empty(), is(true));
+				assertThat(q.popTop(q.newEntry()), is(false));
+			}
+		});
+	}
+	
+	@Test
+	public void oneThreadIsExact() {
+		useTPIE(() -> {
+			try (MultiDoublePriorityQueue q = new MultiDoublePriorityQueue(8, 4, false)) {
+				
+				// one thread always gets its own shard, so pops come out in order
+				Entry entry = q.newEntry();
+				for (int i=0; i<100; i++) {
+					entry.priority = (i*37) % 100;
+					entry.data.putLong(i);
+					entry.data.clear();
+					q.push(entry);
+				}
+				assertThat(q.size(), is(100L));
+				
+				for (int i=0; i<100; i++) {
+					assertThat(q.popTop(entry), is(true));
+					assertThat(entry.priority, is((double)i));
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void pushAll() {
+		useTPIE(() -> {
+			try (MultiDoublePriorityQueue q = new MultiDoublePriorityQueue(8, 2, true)) {
+				
+				ByteBuffer batch = q.allocateBatch(3);
+				batch.putLong(1);
+				batch.putLong(2);
+				batch.putLong(3);
+				batch.flip();
+				q.pushAll(new double[] { 3.0, 1.0, 2.0 }, batch, 3);
+				assertThat(q.size(), is(3L));
+				
+				Entry entry = q.newEntry();
+				assertThat(q.popTop(entry), is(true));
+				assertThat(entry.priority, is(1.0));
+				assertThat(entry.data.getLong(), is(2L));
+			}
+		});
+	}
+	
+	@Test
+	public void manyThreads() {
+		useTPIE(() -> {
+			
+			final int numThreads = 4;
+			final int numEntries = 2000;
+			
+			try (MultiDoublePriorityQueue q = new MultiDoublePriorityQueue(8, 2*numThreads, false)) {
+				
+				// push from all the threads at once
+				runThreads(numThreads, (t) -> {
+					Entry entry = q.newEntry();
+					for (int i=0; i<numEntries; i++) {
+						long id = t*numEntries + i;
+						entry.priority = id % 1000;
+						entry.data.putLong(id);
+						entry.data.clear();
+						q.push(entry);
+					}
+				});
+				assertThat(q.size(), is((long)numThreads*numEntries));
+				
+				// pop from all the threads at once
+				boolean[] popped = new boolean[numThreads*numEntries];
+				runThreads(numThreads, (t) -> {
+					Entry entry = q.newEntry();
+					while (q.popTop(entry)) {
+						int id = (int)entry.data.getLong();
+						assertThat(entry.priority, is((double)(id % 1000)));
+						synchronized (popped) {
+							assertThat(popped[id], is(false));
+							popped[id] = true;
+						}
+					}
+				});
+				
+				// every entry should come out exactly once
+				assertThat(q.empty(), is(true));
+				boolean[] expected = new boolean[numThreads*numEntries];
+				Arrays.fill(expected, true);
+				assertThat(popped, is(expected));
+			}
+		});
+	}
+	
+	@Test
+	public void rankError() {
+		useTPIE(() -> {
+			
+			final int numShards = 8;
+			
+			try (MultiDoublePriorityQueue q = new MultiDoublePriorityQueue(8, numShards, false)) {
+				
+				// spread the entries over all the shards, one thread per shard
+				runThreads(numShards, (t) -> {
+					Entry entry = q.newEntry();
+					for (int i=0; i<1000; i++) {
+						entry.priority = i*numShards + t;
+						q.push(entry);
+					}
+				});
+				
+				// entries should come out nearly in order
+				Entry entry = q.newEntry();
+				double sumError = 0;
+				int count = 0;
+				while (q.popTop(entry)) {
+					sumError += Math.abs(entry.priority - count);
+					count++;
+				}
+				assertThat(count, is(numShards*1000));
+				assertThat(sumError/count, lessThan(10.0*numShards));
+			}
+		});
+	}
+	
+	private static interface ThreadBody {
+		void run(int thread) throws Exception;
+	}
+	
+	private static void runThreads(int numThreads, ThreadBody body) throws Exception {
+		
+		AtomicReference<Throwable> error = new AtomicReference<>(null);
+		List<Thread> threads = new ArrayList<>();
+		for (int i=0; i<numThreads; i++) {
+			final int t = i;
+			threads.add(new Thread(() -> {
+				try {
+					body.run(t);
+				} catch (Throwable ex) {
+					error.compareAndSet(null, ex);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		if (error.get() != null) {
+			throw new AssertionError(error.get());
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestPipeline extends TestBase {
+	
+	@Test
+	public void streamProjectSortQueue() {
+		useTPIE(() -> {
+			int n = 1000;
+			try (FileStream stream = new FileStream(20)) {
+				try (FIFOQueue queue = new FIFOQueue(12)) {
+					
+					// records are: 8 bytes of junk, a long key, then an int payload
+					Random rand = new Random(12345);
+					long[] keys = new long[n];
+					ByteBuffer batch = stream.allocateBatch(n);
+					for (int i=0; i<n; i++) {
+						keys[i] = rand.nextLong();
+						batch.putLong(rand.nextLong());
+						KeyEncoder.putLong(batch, keys[i]);
+						batch.putInt(i);
+					}
+					batch.flip();
+					stream.write(batch, n);
+					stream.seek(0);
+					
+					// keep the key and payload, and sort by key
+					Pipeline pipeline = Pipeline.from(stream)
+						.project(8, 12)
+						.sort(8);
+					assertThat(pipeline.getNumBytes(), is(12));
+					assertThat(pipeline.writeTo(queue), is((long)n));
+					assertThat(queue.size(), is((long)n));
+					
+					long[] sortedKeys = keys.clone();
+					Arrays.sort(sortedKeys);
+					ByteBuffer data = queue.allocateBatch(n);
+					queue.popInto(data, n);
+					data.flip();
+					for (int i=0; i<n; i++) {
+						long key = KeyEncoder.getLong(data);
+						assertThat(key, is(sortedKeys[i]));
+						assertThat(keys[data.getInt()], is(key));
+					}
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void queueSortSortStream() {
+		useTPIE(() -> {
+			try (FIFOQueue queue = new FIFOQueue(EntrySize.Bytes8)) {
+				try (FileStream stream = new FileStream(4)) {
+					
+					int[][] records = { { 3, 1 }, { 1, 2 }, { 2, 2 }, { 3, 0 }, { 1, 1 } };
+					ByteBuffer batch = queue.allocateBatch(records.length);
+					for (int[] record : records) {
+						KeyEncoder.putInt(batch, record[0]);
+						KeyEncoder.putInt(batch, record[1]);
+					}
+					batch.flip();
+					queue.pushAll(batch, records.length);
+					
+					// sort by the second column, then the first, and swap the columns, then keep the second one
+					long count = Pipeline.from(queue)
+						.sort(4, 4)
+						.project(new int[] { 4, 0 }, new int[] { 4, 4 })
+						.sort(0, 8)
+						.project(4, 4)
+						.writeTo(stream);
+					assertThat(count, is(5L));
+					assertThat(queue.empty(), is(true));
+					
+					stream.seek(0);
+					ByteBuffer data = stream.allocateBatch(5);
+					assertThat(stream.read(data, 5), is(5));
+					data.flip();
+					for (int expected : new int[] { 3, 1, 3, 1, 2 }) {
+						assertThat(KeyEncoder.getInt(data), is(expected));
+					}
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void queueToQueueStats() {
+		useTPIE(() -> {
+			try (FIFOQueue in = new FIFOQueue(EntrySize.Bytes8)) {
+				try (FIFOQueue out = new FIFOQueue(4)) {
+					
+					ByteBuffer batch = in.allocateBatch(10);
+					for (int i=0; i<10; i++) {
+						KeyEncoder.putLong(batch, i);
+					}
+					batch.flip();
+					in.pushAll(batch, 10);
+					
+					assertThat(Pipeline.from(in).project(4, 4).writeTo(out), is(10L));
+					
+					// the queues count the records the pipeline moved
+					assertThat(in.getStats().getSize(), is(0L));
+					assertThat(in.getStats().getPayloadBytesPopped(), is(80L));
+					assertThat(out.getStats().getSize(), is(10L));
+					assertThat(out.getStats().getPayloadBytesPushed(), is(40L));
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void empty() {
+		useTPIE(() -> {
+			try (FIFOQueue in = new FIFOQueue(EntrySize.Bytes8)) {
+				try (FIFOQueue out = new FIFOQueue(EntrySize.Bytes8)) {
+					assertThat(Pipeline.from(in).sort(8).writeTo(out), is(0L));
+					assertThat(out.empty(), is(true));
+				}
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void wrongOutputSize() {
+		useTPIE(() -> {
+			try (FIFOQueue in = new FIFOQueue(EntrySize.Bytes16)) {
+				try (FIFOQueue out = new FIFOQueue(EntrySize.Bytes16)) {
+					Pipeline.from(in).project(0, 8).writeTo(out);
+				}
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void writeToSource() {
+		useTPIE(() -> {
+			try (FIFOQueue queue = new FIFOQueue(EntrySize.Bytes8)) {
+				queue.push(queue.new Entry());
+				Pipeline.from(queue).project(0, 8).writeTo(queue);
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void badProjection() {
+		useTPIE(() -> {
+			try (FIFOQueue in = new FIFOQueue(EntrySize.Bytes8)) {
+				Pipeline.from(in).project(4, 8);
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void runTwice() {
+		useTPIE(() -> {
+			try (FIFOQueue in = new FIFOQueue(EntrySize.Bytes8)) {
+				try (FIFOQueue out = new FIFOQueue(EntrySize.Bytes8)) {
+					Pipeline pipeline = Pipeline.from(in);
+					pipeline.writeTo(out);
+					pipeline.writeTo(out);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,207 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.Stack.Entry;
+
+public class TestStack extends TestBase {
+	
+	@Test
+	public void createCloseOne() {
+		useTPIE(() -> {
+			Stack s = new Stack(EntrySize.Bytes8);
+			s.close();
+			assertThat(s.isClosed(), is(true));
+			assertCleanedUp();
+		});
+	}
+	
+	@Test
+	public void tryCreateOne() {
+		useTPIE(() -> {
+			try (Stack s = new Stack(EntrySize.Bytes8)) {}
+			assertCleanedUp();
+		});
+	}
+	
+	@Test
+	public void lifo() {
+		useTPIE(() -> {
+			try (Stack s = new Stack(EntrySize.Bytes8)) {
+				
+				double[] values = { 5.3, 4.2, 7.3, 2.9, 1.0, 8.5 };
+				for (double value : values) {
+					Entry entry = s.new Entry();
+					entry.data.putDouble(value);
+					s.push(entry);
+				}
+				
+				assertThat(s.size(), is(6L));
+				assertThat(s.empty(), is(false));
+				
+				for (int i=values.length - 1; i>=0; i--) {
+					assertThat(s.top().data.getDouble(), is(values[i]));
+					s.pop();
+				}
+				
+				assertThat(s.size(), is(0L));
+				assertThat(s.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void pushAllPopInto() {
+		useTPIE(() -> {
+			try (Stack s = new Stack(EntrySize.Bytes8)) {
+				
+				double[] values = { 5.3, 4.2, 7.3, 2.9, 1.0, 8.5 };
+				ByteBuffer data = s.allocateBatch(values.length);
+				for (double value : values) {
+					data.putDouble(value);
+				}
+				data.flip();
+				
+				s.pushAll(data, values.length);
+				assertThat(data.hasRemaining(), is(false));
+				assertThat(s.size(), is(6L));
+				assertThat(s.top().data.getDouble(), is(8.5));
+				
+				data = s.allocateBatch(4);
+				assertThat(s.popInto(data, 4), is(4));
+				assertThat(s.size(), is(2L));
+				data.flip();
+				for (int i=5; i>=2; i--) {
+					assertThat(data.getDouble(), is(values[i]));
+				}
+				
+				data.clear();
+				assertThat(s.popInto(data, 4), is(2));
+				assertThat(data.getDouble(0), is(values[1]));
+				assertThat(data.getDouble(8), is(values[0]));
+				
+				assertThat(s.empty(), is(true));
+				data.clear();
+				assertThat(s.popInto(data, 4), is(0));
+			}
+		});
+	}
+	
+	@Test
+	public void topReuse() {
+		useTPIE(() -> {
+			try (Stack s = new Stack(EntrySize.Bytes8)) {
+				
+				Entry entry = s.new Entry();
+				double[] values = { 3.0, 1.0, 2.0 };
+				for (double value : values) {
+					entry.data.putDouble(0, value);
+					s.push(entry);
+				}
+				
+				Entry reused = s.new Entry();
+				assertThat(s.top(reused), sameInstance(reused));
+				assertThat(reused.data.getDouble(), is(2.0));
+				
+				for (int i=values.length - 1; i>=0; i--) {
+					assertThat(s.popTop(entry), is(true));
+					assertThat(entry.data.getDouble(), is(values[i]));
+				}
+				
+				assertThat(s.empty(), is(true));
+				assertThat(s.popTop(entry), is(false));
+			}
+		});
+	}
+	
+	@Test
+	public void dataSizes() {
+		useTPIE(() -> {
+			for (EntrySize size : EntrySize.values()) {
+				try (Stack s = new Stack(size)) {
+					
+					Entry entry = s.new Entry();
+					entry.data.putInt(0, 0x12345678);
+					entry.data.putInt(size.numBytes - 4, 0x98765432);
+					
+					s.push(entry);
+					
+					Entry entry2 = s.top();
+					String msg = "size: " + size;
+					assertThat(msg, entry2.data.getInt(0), is(0x12345678));
+					assertThat(msg, entry2.data.getInt(size.numBytes - 4), is(0x98765432));
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void arbitrarySizes() {
+		useTPIE(() -> {
+			for (int numBytes : new int[] { 1, 12, 24, 72, 1000, 1030, 3000 }) {
+				try (Stack s = new Stack(numBytes)) {
+					
+					assertThat(s.numBytes, is(numBytes));
+					
+					// interleave pushes, peeks, and pops so entries cross block boundaries both ways
+					Deque<Integer> expected = new ArrayDeque<>();
+					int n = 200;
+					for (int i=0; i<n; i++) {
+						Entry entry = s.new Entry();
+						assertThat(entry.data.capacity(), is(numBytes));
+						for (int j=0; j<numBytes; j++) {
+							entry.data.put((byte)(i + j));
+						}
+						s.push(entry);
+						expected.push(i);
+						if (i % 3 == 2) {
+							int top = expected.pop();
+							Entry entry2 = s.top();
+							for (int j=0; j<numBytes; j++) {
+								assertThat(entry2.data.get(), is((byte)(top + j)));
+							}
+							s.pop();
+						}
+					}
+					assertThat(s.size(), is((long)expected.size()));
+					
+					// drain the rest in a batch
+					ByteBuffer data = s.allocateBatch(n);
+					assertThat(s.popInto(data, n), is(expected.size()));
+					data.flip();
+					for (int i : expected) {
+						for (int j=0; j<numBytes; j++) {
+							assertThat(data.get(), is((byte)(i + j)));
+						}
+					}
+					assertThat(s.empty(), is(true));
+				}
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void emptyArbitrarySize() {
+		useTPIE(() -> {
+			try (Stack s = new Stack(12)) {
+				s.top();
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void empty() {
+		useTPIE(() -> {
+			try (Stack s = new Stack(EntrySize.Bytes8)) {
+				s.pop();
+			}
+		});
+	}
+}
@@ -0,0 +1,107 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+public class TestTPIEStats extends TestBase {
+	
+	private static final ObjectName Name;
+	
+	static {
+		try {
+			Name = new ObjectName("edu.duke.cs.tpie:type=TPIEStats");
+		} catch (Exception ex) {
+			throw new Error(ex);
+		}
+	}
+	
+	@Test
+	public void registered() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		useTPIE(() -> {
+			assertThat(server.isRegistered(Name), is(true));
+			assertThat((Long)server.getAttribute(Name, "InternalBytesLimit"), is(16L*1024*1024));
+			assertThat((Long)server.getAttribute(Name, "BlockSize"), greaterThan(0L));
+		});
+		assertThat(server.isRegistered(Name), is(false));
+	}
+	
+	@Test
+	public void queues() {
+		useTPIE(() -> {
+			try (DoublePriorityQueue q = DoublePriorityQueue.withMemoryBudget(8, false, 1024L*1024)) {
+				
+				DoublePriorityQueue.Entry entry = q.new Entry();
+				for (int i=0; i<10; i++) {
+					entry.priority = i;
+					q.push(entry);
+				}
+				q.pop();
+				
+				QueueStats stats = q.getStats();
+				assertThat(stats.getType(), is("DoublePriorityQueue"));
+				assertThat(stats.getEntryBytes(), is(8));
+				assertThat(stats.getSize(), is(9L));
+				assertThat(stats.getMemoryBudget(), is(1024L*1024));
+				assertThat(stats.getEntriesInMemory(), is(9L));
+				assertThat(stats.getEntriesOnDisk(), is(0L));
+				assertThat(stats.getPayloadBytesPushed(), is(80L));
+				assertThat(stats.getPayloadBytesPopped(), is(8L));
+				
+				try (FIFOQueue q2 = new FIFOQueue(16)) {
+					List<QueueStats> queues = TPIEStats.get().getQueues();
+					assertThat(queues.size(), is(2));
+					assertThat(TPIEStats.get().getLiveStructures(), is(2));
+				}
+				
+				// JMX tools see the stats as composite data
+				CompositeData[] queues = (CompositeData[])ManagementFactory.getPlatformMBeanServer().getAttribute(Name, "Queues");
+				assertThat(queues.length, is(1));
+				assertThat(queues[0].get("size"), is(9L));
+				assertThat(queues[0].get("payloadBytesPushed"), is(80L));
+			}
+		});
+	}
+	
+	@Test
+	public void queuesOnDisk() {
+		useTPIE(() -> {
+			try (FIFOQueue records = FIFOQueue.withMemoryBudget(16, false, 1024)) {
+				
+				FIFOQueue.Entry record = records.new Entry();
+				record.data.order(ByteOrder.nativeOrder());
+				for (int i=0; i<1000; i++) {
+					record.data.putDouble(0, i);
+					records.push(record);
+				}
+				
+				// the budget only fits a few entries, so the queue counts the rest on its own files
+				QueueStats stats = records.getStats();
+				assertThat(stats.getSize(), is(1000L));
+				assertThat(stats.isEntriesOnDiskExact(), is(true));
+				assertThat(stats.getEntriesOnDisk(), greaterThan(0L));
+				assertThat(stats.getEntriesInMemory(), lessThan(1000L));
+				assertThat(stats.getBytesWritten(), greaterThan(0L));
+				
+				// native code drains the FIFO queue, and its stats keep up
+				try (DoublePriorityQueue q = DoublePriorityQueue.build(records, false)) {
+					stats = records.getStats();
+					assertThat(stats.getSize(), is(0L));
+					assertThat(stats.getEntriesOnDisk(), is(0L));
+					assertThat(stats.getBytesRead(), is(stats.getBytesWritten()));
+					assertThat(q.getStats().getSize(), is(1000L));
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,200 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.VariableDoublePriorityQueue.Entry;
+
+public class TestVariableDoublePriorityQueue extends TestBase {
+	
+	@Test
+	public void createCloseOne() {
+		useTPIE(() -> {
+			VariableDoublePriorityQueue q = new VariableDoublePriorityQueue();
+			q.close();
+			assertThat(q.isClosed(), is(true));
+			assertCleanedUp();
+		});
+	}
+	
+	@Test
+	public void pushTopEmpty() {
+		useTPIE(() -> {
+			try (VariableDoublePriorityQueue q = new VariableDoublePriorityQueue(EntrySize.Bytes8)) {
+				
+				Entry entry = q.new Entry(0);
+				entry.priority = 4.2;
+				q.push(entry);
+				
+				Entry entry2 = q.top();
+				assertThat(entry2.priority, is(4.2));
+				assertThat(entry2.data.capacity(), is(0));
+				q.pop();
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void mixedSizes() {
+		for (EntrySize chunkSize : EntrySize.values()) {
+			useTPIE(() -> {
+				try (VariableDoublePriorityQueue q = new VariableDoublePriorityQueue(chunkSize)) {
+					
+					// push in reverse priority order, sizes around the chunk boundaries
+					int[] sizes = new int[] { 1, chunkSize.numBytes - 4, chunkSize.numBytes - 3, chunkSize.numBytes, 3*chunkSize.numBytes + 1, 5 };
+					for (int i=sizes.length - 1; i>=0; i--) {
+						Entry entry = q.new Entry(sizes[i]);
+						entry.priority = i;
+						for (int j=0; j<sizes[i]; j++) {
+							entry.data.put((byte)(i + j));
+						}
+						entry.data.flip();
+						q.push(entry);
+					}
+					assertThat(q.size(), is((long)sizes.length));
+					
+					for (int i=0; i<sizes.length; i++) {
+						Entry entry = q.top();
+						assertThat(entry.priority, is((double)i));
+						assertThat(entry.data.capacity(), is(sizes[i]));
+						for (int j=0; j<sizes[i]; j++) {
+							assertThat(entry.data.get(), is((byte)(i + j)));
+						}
+						q.pop();
+					}
+					assertThat(q.empty(), is(true));
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void equalPrioritiesInPushOrder() {
+		useTPIE(() -> {
+			try (VariableDoublePriorityQueue q = new VariableDoublePriorityQueue(EntrySize.Bytes8)) {
+				
+				// multi-chunk entries with equal priorities shouldn't interleave
+				for (int i=0; i<10; i++) {
+					Entry entry = q.new Entry(30);
+					entry.priority = 1.0;
+					while (entry.data.hasRemaining()) {
+						entry.data.put((byte)i);
+					}
+					entry.data.flip();
+					q.push(entry);
+				}
+				
+				for (int i=0; i<10; i++) {
+					Entry entry = q.top();
+					assertThat(entry.data.capacity(), is(30));
+					while (entry.data.hasRemaining()) {
+						assertThat(entry.data.get(), is((byte)i));
+					}
+					q.pop();
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void pushBeforeLoadedTop() {
+		useTPIE(() -> {
+			try (VariableDoublePriorityQueue q = new VariableDoublePriorityQueue(EntrySize.Bytes8)) {
+				
+				Random rand = new Random(12345);
+				int n = 1000;
+				double[] priorities = new double[n];
+				for (int i=0; i<n; i++) {
+					priorities[i] = rand.nextInt(100);
+					Entry entry = q.new Entry(12);
+					entry.priority = priorities[i];
+					entry.data.putDouble(priorities[i]);
+					entry.data.putInt(i);
+					entry.data.flip();
+					q.push(entry);
+					
+					// look at the top after each push so new entries sometimes go before the loaded top
+					assertThat(q.top().priority, lessThanOrEqualTo(priorities[i]));
+				}
+				
+				double lastPriority = Double.NEGATIVE_INFINITY;
+				int lastIndex = -1;
+				for (int i=0; i<n; i++) {
+					Entry entry = q.top();
+					double priority = entry.data.getDouble();
+					int index = entry.data.getInt();
+					assertThat(entry.priority, is(priority));
+					assertThat(priorities[index], is(priority));
+					assertThat(priority, greaterThanOrEqualTo(lastPriority));
+					if (priority == lastPriority) {
+						assertThat(index, greaterThan(lastIndex));
+					}
+					lastPriority = priority;
+					lastIndex = index;
+					q.pop();
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void spillToRuns() {
+		useTPIE(() -> {
+			
+			// leave the queue only a little of TPIE's memory, so it spills many runs and merges them
+			try (DoublePriorityQueue reserved = DoublePriorityQueue.withMemoryBudget(8, false, 28L*1024*1024)) {
+				try (VariableDoublePriorityQueue q = new VariableDoublePriorityQueue(EntrySize.Bytes32)) {
+					
+					// the expected entries, as priority and push index
+					PriorityQueue<double[]> expected = new PriorityQueue<>((a, b) -> {
+						int c = Double.compare(a[0], b[0]);
+						return c != 0 ? c : Double.compare(a[1], b[1]);
+					});
+					
+					Random rand = new Random(12345);
+					int n = 40000;
+					for (int i=0; i<n; i++) {
+						Entry entry = q.new Entry(4 + rand.nextInt(500));
+						entry.priority = rand.nextInt(1000);
+						entry.data.putInt(i);
+						entry.data.rewind();
+						q.push(entry);
+						expected.add(new double[] { entry.priority, i });
+						
+						// pop some along the way, so popped payloads pile up in memory
+						if (i % 3 == 0) {
+							assertThat(q.top().data.getInt(), is((int)expected.poll()[1]));
+							q.pop();
+						}
+					}
+					assertThat(q.size(), is((long)expected.size()));
+					
+					while (!expected.isEmpty()) {
+						double[] next = expected.poll();
+						Entry entry = q.top();
+						assertThat(entry.priority, is(next[0]));
+						assertThat(entry.data.getInt(), is((int)next[1]));
+						q.pop();
+					}
+					assertThat(q.empty(), is(true));
+				}
+			}
+		});
+	}
+	
+	@Test(expected=RuntimeException.class)
+	public void topEmpty() {
+		useTPIE(() -> {
+			try (VariableDoublePriorityQueue q = new VariableDoublePriorityQueue()) {
+				q.top();
+			}
+		});
+	}
+}
@@ -0,0 +1,154 @@
+package edu.duke.cs.tpie;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.VariableFIFOQueue.Entry;
+
+public class TestVariableFIFOQueue extends TestBase {
+	
+	@Test
+	public void createCloseOne() {
+		useTPIE(() -> {
+			VariableFIFOQueue q = new VariableFIFOQueue();
+			q.close();
+			assertThat(q.isClosed(), is(true));
+			assertCleanedUp();
+		});
+	}
+	
+	@Test
+	public void pushFrontEmpty() {
+		useTPIE(() -> {
+			try (VariableFIFOQueue q = new VariableFIFOQueue(EntrySize.Bytes8)) {
+				
+				q.push(q.new Entry(0));
+				
+				Entry entry = q.front();
+				assertThat(entry.data.capacity(), is(0));
+				q.pop();
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void mixedSizes() {
+		for (EntrySize chunkSize : EntrySize.values()) {
+			useTPIE(() -> {
+				try (VariableFIFOQueue q = new VariableFIFOQueue(chunkSize)) {
+					
+					// sizes around the chunk boundaries
+					int[] sizes = new int[] { 1, chunkSize.numBytes - 4, chunkSize.numBytes - 3, chunkSize.numBytes, 3*chunkSize.numBytes + 1, 5 };
+					for (int i=0; i<sizes.length; i++) {
+						Entry entry = q.new Entry(sizes[i]);
+						for (int j=0; j<sizes[i]; j++) {
+							entry.data.put((byte)(i + j));
+						}
+						entry.data.flip();
+						q.push(entry);
+					}
+					assertThat(q.size(), is((long)sizes.length));
+					
+					for (int i=0; i<sizes.length; i++) {
+						Entry entry = q.front();
+						assertThat(entry.data.capacity(), is(sizes[i]));
+						for (int j=0; j<sizes[i]; j++) {
+							assertThat(entry.data.get(), is((byte)(i + j)));
+						}
+						q.pop();
+					}
+					assertThat(q.empty(), is(true));
+				}
+			});
+		}
+	}
+	
+	@Test
+	public void pushRemaining() {
+		useTPIE(() -> {
+			try (VariableFIFOQueue q = new VariableFIFOQueue(EntrySize.Bytes8)) {
+				
+				// only the bytes between position and limit get pushed
+				Entry entry = q.new Entry(16);
+				for (int i=0; i<16; i++) {
+					entry.data.put((byte)i);
+				}
+				entry.data.position(2);
+				entry.data.limit(13);
+				q.push(entry);
+				
+				Entry entry2 = q.front();
+				assertThat(entry2.data.capacity(), is(11));
+				for (int i=2; i<13; i++) {
+					assertThat(entry2.data.get(), is((byte)i));
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void pushWhileFrontLoaded() {
+		useTPIE(() -> {
+			try (VariableFIFOQueue q = new VariableFIFOQueue(EntrySize.Bytes8)) {
+				
+				for (int i=0; i<10; i++) {
+					Entry entry = q.new Entry(20);
+					entry.data.putInt(i);
+					entry.data.clear();
+					q.push(entry);
+					assertThat(q.front().data.getInt(), is(0));
+				}
+				
+				for (int i=0; i<10; i++) {
+					assertThat(q.front().data.getInt(), is(i));
+					q.pop();
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void pushPopInterleaved() {
+		useTPIE(() -> {
+			try (VariableFIFOQueue q = new VariableFIFOQueue(EntrySize.Bytes16)) {
+				
+				// entries span chunks and share them, and pops catch up with the partly-filled tail chunk
+				Random rand = new Random(12345);
+				int popped = 0;
+				for (int i=0; i<1000; i++) {
+					Entry entry = q.new Entry(4 + rand.nextInt(40));
+					entry.data.putInt(i);
+					entry.data.rewind();
+					q.push(entry);
+					while (popped <= i && rand.nextBoolean()) {
+						assertThat(q.front().data.getInt(), is(popped));
+						q.pop();
+						popped++;
+					}
+				}
+				assertThat(q.size(), is((long)(1000 - popped)));
+				
+				for (; popped<1000; popped++) {
+					assertThat(q.front().data.getInt(), is(popped));
+					q.pop();
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test(expected=RuntimeException.class)
+	public void frontEmpty() {
+		useTPIE(() -> {
+			try (VariableFIFOQueue q = new VariableFIFOQueue()) {
+				q.front();
+			}
+		});
+	}
+}
@@ -0,0 +1,168 @@
+package edu.duke.cs.tpie.serialization;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.EntrySize;
+import edu.duke.cs.tpie.TestBase;
+import edu.duke.cs.tpie.serialization.LayoutSerializers.Order;
+import edu.duke.cs.tpie.serialization.LayoutSerializers.Priority;
+
+public class TestLayoutSerializers extends TestBase {
+	
+	// immutable, made with the all-fields constructor
+	private static class Node {
+		
+		public final long id;
+		@Priority public final double cost;
+		public final int depth;
+		
+		public Node(long id, double cost, int depth) {
+			this.id = id;
+			this.cost = cost;
+			this.depth = depth;
+		}
+	}
+	
+	// mutable, made with the no-arg constructor, with every primitive type
+	private static class Everything {
+		
+		boolean z;
+		byte b;
+		char c;
+		short s;
+		int i;
+		long j;
+		float f;
+		@Priority double d;
+		transient int notSaved;
+		static int alsoNotSaved;
+		
+		@SuppressWarnings("unused")
+		private Everything() {}
+		
+		Everything(int n) {
+			z = n % 2 == 0;
+			b = (byte)n;
+			c = (char)('a' + n);
+			s = (short)(n*3);
+			i = n*5;
+			j = n*7L;
+			f = n*1.5f;
+			d = n*2.5;
+			notSaved = n;
+		}
+	}
+	
+	@Order({ "b", "a" })
+	private static class Ordered {
+		
+		int a;
+		long b;
+		
+		Ordered() {}
+	}
+	
+	private static class NotPrimitive {
+		
+		String name;
+		
+		NotPrimitive() {}
+	}
+	
+	@Test
+	public void entrySizes() {
+		
+		// 8 + 8 + 4 bytes
+		assertThat(LayoutSerializers.forFIFOQueue(Node.class).getEntrySize(), is(EntrySize.Bytes32));
+		assertThat(LayoutSerializers.forFIFOQueue(Node.class).getNumBytes(), is(32));
+		
+		// the priority isn't in the payload, so 8 + 4 bytes
+		assertThat(LayoutSerializers.forPriorityQueue(Node.class).getEntrySize(), is(EntrySize.Bytes16));
+		
+		// 1 + 1 + 2 + 2 + 4 + 8 + 4 bytes
+		assertThat(LayoutSerializers.forPriorityQueue(Everything.class).getEntrySize(), is(EntrySize.Bytes32));
+		
+		assertThat(LayoutSerializers.forFIFOQueue(Ordered.class).getEntrySize(), is(EntrySize.Bytes16));
+	}
+	
+	@Test
+	public void layout() {
+		
+		Ordered o = new Ordered();
+		o.a = 5;
+		o.b = 42;
+		
+		// fields are packed in the given order
+		ByteBuffer buf = ByteBuffer.allocate(16);
+		LayoutSerializers.forFIFOQueue(Ordered.class).serialize(o, buf);
+		assertThat(buf.position(), is(12));
+		assertThat(buf.getLong(0), is(42L));
+		assertThat(buf.getInt(8), is(5));
+		
+		buf.flip();
+		Ordered o2 = LayoutSerializers.forFIFOQueue(Ordered.class).deserialize(buf);
+		assertThat(o2.a, is(5));
+		assertThat(o2.b, is(42L));
+		assertThat(buf.position(), is(12));
+	}
+	
+	@Test
+	public void priorityQueue() {
+		useTPIE(() -> {
+			try (SerializingDoublePriorityQueue<Node> q = new SerializingDoublePriorityQueue<>(LayoutSerializers.forPriorityQueue(Node.class))) {
+				
+				for (int i=0; i<100; i++) {
+					int j = (i*37) % 100;
+					q.push(new Node(j*10, j, j % 7));
+				}
+				for (int i=0; i<100; i++) {
+					Node node = q.top();
+					assertThat(node.cost, is((double)i));
+					assertThat(node.id, is(i*10L));
+					assertThat(node.depth, is(i % 7));
+					q.pop();
+				}
+			}
+		});
+	}
+	
+	@Test
+	public void fifoQueue() {
+		useTPIE(() -> {
+			try (SerializingFIFOQueue<Everything> q = new SerializingFIFOQueue<>(LayoutSerializers.forFIFOQueue(Everything.class))) {
+				
+				for (int n=0; n<100; n++) {
+					q.push(new Everything(n));
+				}
+				for (int n=0; n<100; n++) {
+					Everything e = q.front();
+					assertThat(e.z, is(n % 2 == 0));
+					assertThat(e.b, is((byte)n));
+					assertThat(e.c, is((char)('a' + n)));
+					assertThat(e.s, is((short)(n*3)));
+					assertThat(e.i, is(n*5));
+					assertThat(e.j, is(n*7L));
+					assertThat(e.f, is(n*1.5f));
+					assertThat(e.d, is(n*2.5));
+					assertThat(e.notSaved, is(0));
+					q.pop();
+				}
+			}
+		});
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void notPrimitive() {
+		LayoutSerializers.forFIFOQueue(NotPrimitive.class);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void noPriority() {
+		LayoutSerializers.forPriorityQueue(Ordered.class);
+	}
+}
@@ -78,4 +78,105 @@ public class TestSerializaingDoublePriorityQueue extends TestBase {
 			}
 		});
 	}
+	
+	private static class Item {
+		
+		public final double priority;
+		public final long num;
+		
+		public Item(double priority, long num) {
+			this.priority = priority;
+			this.num = num;
+		}
+	}
+	
+	private static final Serializer<Item> itemSerializer = new Serializer<Item>() {
+
+		@Override
+		public EntrySize getEntrySize() {
+			return EntrySize.Bytes8;
+		}
+
+		@Override
+		public double serialize(Item val, ByteBuffer buf) {
+			buf.putLong(val.num);
+			return val.priority;
+		}
+
+		@Override
+		public Item deserialize(double priority, ByteBuffer buf) {
+			return new Item(priority, buf.getLong());
+		}
+	};
+	
+	@Test
+	public void manyEntries() {
+		useTPIE(() -> {
+			try (SerializingDoublePriorityQueue<Item> q = new SerializingDoublePriorityQueue<>(itemSerializer)) {
+				
+				// more than one batch, in scrambled order
+				for (int i=0; i<1000; i++) {
+					int j = (i*337) % 1000;
+					q.push(new Item(j, j));
+				}
+				assertThat(q.size(), is(1000L));
+				
+				// pop half, pushing some back with bigger priorities
+				for (int i=0; i<500; i++) {
+					assertThat(q.top().priority, is((double)i));
+					q.pop();
+					if (i % 2 == 0) {
+						q.push(new Item(1000 + i, i));
+					}
+				}
+				for (int i=500; i<1000; i++) {
+					assertThat(q.top().priority, is((double)i));
+					q.pop();
+				}
+				for (int i=0; i<500; i+=2) {
+					assertThat(q.top().priority, is(1000.0 + i));
+					assertThat(q.top().num, is((long)i));
+					q.pop();
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void cachedTop() {
+		useTPIE(() -> {
+			try (SerializingDoublePriorityQueue<Item> q = new SerializingDoublePriorityQueue<>(itemSerializer)) {
+				
+				q.push(new Item(5.0, 1));
+				Item top = q.top();
+				assertThat(q.top(), sameInstance(top));
+				
+				// bigger priorities don't change the top
+				q.push(new Item(7.0, 2));
+				assertThat(q.top(), sameInstance(top));
+				
+				// smaller ones do
+				q.push(new Item(3.0, 3));
+				assertThat(q.top().num, is(3L));
+				assertThat(q.size(), is(3L));
+				
+				q.pop();
+				assertThat(q.top().num, is(1L));
+				q.pop();
+				assertThat(q.top().num, is(2L));
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void popEmpty() {
+		useTPIE(() -> {
+			try (SerializingDoublePriorityQueue<Item> q = new SerializingDoublePriorityQueue<>(itemSerializer)) {
+				q.push(new Item(1.0, 1));
+				q.pop();
+				q.pop();
+			}
+		});
+	}
 }
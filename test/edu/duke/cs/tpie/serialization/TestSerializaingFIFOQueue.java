@@ -68,4 +68,84 @@ public class TestSerializaingFIFOQueue extends TestBase {
 			}
 		});
 	}
+	
+	private static class Item {
+		
+		public final long num;
+		
+		public Item(long num) {
+			this.num = num;
+		}
+	}
+	
+	private static final Serializer<Item> itemSerializer = new Serializer<Item>() {
+
+		@Override
+		public EntrySize getEntrySize() {
+			return EntrySize.Bytes8;
+		}
+
+		@Override
+		public void serialize(Item val, ByteBuffer buf) {
+			buf.putLong(val.num);
+		}
+
+		@Override
+		public Item deserialize(ByteBuffer buf) {
+			return new Item(buf.getLong());
+		}
+	};
+	
+	@Test
+	public void manyEntries() {
+		useTPIE(() -> {
+			try (SerializingFIFOQueue<Item> q = new SerializingFIFOQueue<>(itemSerializer)) {
+				
+				// more than one batch, with pops in between
+				for (int i=0; i<1000; i++) {
+					q.push(new Item(i));
+					if (i % 3 == 0) {
+						assertThat(q.front().num, is((long)i/3));
+						q.pop();
+					}
+				}
+				assertThat(q.size(), is(1000L - 334));
+				for (int i=334; i<1000; i++) {
+					assertThat(q.front().num, is((long)i));
+					q.pop();
+				}
+				assertThat(q.empty(), is(true));
+			}
+		});
+	}
+	
+	@Test
+	public void cachedFront() {
+		useTPIE(() -> {
+			try (SerializingFIFOQueue<Item> q = new SerializingFIFOQueue<>(itemSerializer)) {
+				
+				q.push(new Item(1));
+				Item front = q.front();
+				assertThat(q.front(), sameInstance(front));
+				
+				// pushes don't change the front
+				q.push(new Item(2));
+				assertThat(q.front(), sameInstance(front));
+				
+				q.pop();
+				assertThat(q.front().num, is(2L));
+			}
+		});
+	}
+	
+	@Test(expected=Exception.class)
+	public void popEmpty() {
+		useTPIE(() -> {
+			try (SerializingFIFOQueue<Item> q = new SerializingFIFOQueue<>(itemSerializer)) {
+				q.push(new Item(1));
+				q.pop();
+				q.pop();
+			}
+		});
+	}
 }
@@ -0,0 +1,81 @@
+package edu.duke.cs.tpie.serialization;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import edu.duke.cs.tpie.EntrySize;
+import edu.duke.cs.tpie.TestBase;
+import edu.duke.cs.tpie.serialization.SerializingDoublePriorityQueue.Serializer;
+
+public class TestSerializingExternalSorter extends TestBase {
+	
+	@Test
+	public void test() {
+		
+		class Thing {
+			
+			public final double priority;
+			public final long num;
+			
+			public Thing(double priority, long num) {
+				this.priority = priority;
+				this.num = num;
+			}
+		}
+		
+		Serializer<Thing> serializer = new Serializer<Thing>() {
+			
+			@Override
+			public EntrySize getEntrySize() {
+				return EntrySize.Bytes8;
+			}
+			
+			@Override
+			public double serialize(Thing val, ByteBuffer buf) {
+				buf.putLong(val.num);
+				return val.priority;
+			}
+			
+			@Override
+			public Thing deserialize(double priority, ByteBuffer buf) {
+				return new Thing(priority, buf.getLong());
+			}
+		};
+		
+		useTPIE(() -> {
+			try (SerializingExternalSorter<Thing> s = new SerializingExternalSorter<>(serializer)) {
+				
+				s.push(new Thing(4.2, 0));
+				s.push(new Thing(0.1, 5));
+				s.push(new Thing(9.9, Long.MIN_VALUE));
+				s.push(new Thing(5.0, Long.MAX_VALUE));
+				assertThat(s.size(), is(4L));
+				
+				s.sort();
+				
+				Thing thing = s.next();
+				assertThat(thing.priority, is(0.1));
+				assertThat(thing.num, is(5L));
+				
+				thing = s.next();
+				assertThat(thing.priority, is(4.2));
+				assertThat(thing.num, is(0L));
+				
+				thing = s.next();
+				assertThat(thing.priority, is(5.0));
+				assertThat(thing.num, is(Long.MAX_VALUE));
+				
+				thing = s.next();
+				assertThat(thing.priority, is(9.9));
+				assertThat(thing.num, is(Long.MIN_VALUE));
+				
+				assertThat(s.hasNext(), is(false));
+				assertThat(s.size(), is(0L));
+			}
+		});
+	}
+}